@@ -9,6 +9,7 @@ package com.thecoderscorner.menu.controller;
 import com.thecoderscorner.menu.controller.manageditem.*;
 import com.thecoderscorner.menu.domain.*;
 import com.thecoderscorner.menu.domain.state.CurrentScrollPosition;
+import com.thecoderscorner.menu.domain.state.MenuState;
 import com.thecoderscorner.menu.domain.state.MenuTree;
 import com.thecoderscorner.menu.domain.util.AbstractMenuItemVisitor;
 import com.thecoderscorner.menu.domain.util.MenuItemHelper;
@@ -17,6 +18,7 @@ import com.thecoderscorner.menu.remote.commands.AckStatus;
 import com.thecoderscorner.menu.remote.commands.DialogMode;
 import com.thecoderscorner.menu.remote.commands.MenuButtonType;
 import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -26,13 +28,12 @@ import javafx.scene.layout.*;
 import javafx.stage.Stage;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 
 /**
  * This is the window controller, responsible for all actions to do the main window. It listens to change
@@ -61,8 +62,17 @@ public class MainWindowController {
     //
 
     // The highlighting of an items background after a change is done by holding
-    // the time since the last change and ticking every 100ms to check it.
-    private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1, new NamedDaemonThreadFactory("ui-executor"));
+    // the time since the last change and ticking every 100ms to check it. Only the
+    // items that are currently highlighted are held here, and only on the FX thread.
+    private static final long ANIMATION_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private Set<ManagedMenuItem> animatingItems = new HashSet<>();
+    private long lastAnimationTick;
+
+    // Changes from the remote are collected here as they arrive, and rendered once per
+    // JavaFX frame. When a device sends many changes to the same item between frames, only
+    // the latest value is drawn, rather than queuing a Platform.runLater for every change.
+    private ConflatedMenuChanges pendingChanges;
+    private AnimationTimer frameTimer;
 
     // The remoteControl reference passed in from the app. This is the means to get events from and
     // control a remote menu
@@ -90,9 +100,17 @@ public class MainWindowController {
     public void initialise(MenuTree menuTree, RemoteMenuController remoteControl) {
         this.menuTree = menuTree;
         this.remoteControl = remoteControl;
+        this.pendingChanges = new ConflatedMenuChanges(menuTree);
 
-        // we spin up a monitor that counts down changed fields resetting the background colour after a few seconds.
-        executor.scheduleAtFixedRate(this::updatedFieldChecker, 1000, 100, TimeUnit.MILLISECONDS);
+        // on every frame we render the items that have changed since the last one, and count down changed
+        // fields resetting the background colour after a few seconds.
+        frameTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                renderPendingChanges(now);
+            }
+        };
+        frameTimer.start();
 
         //
         // register a listener that will handle all the connectivity and change events. Take careful note of the
@@ -103,13 +121,13 @@ public class MainWindowController {
 
             /**
              * This is called whenever a menu item value changes. If value only is true only the value has changed, and
-             * the item is unaffected.
+             * the item is unaffected. We don't render here, the change is recorded and drawn on the next frame.
              * @param item the item that has changed
              * @param valueOnly true if only the current value has changed, false if the MenuItem has changed too
              */
             @Override
             public void menuItemChanged(MenuItem item, boolean valueOnly) {
-                Platform.runLater(() -> renderItemValue(item));
+                pendingChanges.itemChanged(item);
             }
 
             public void dialogUpdate(DialogMode mode, String header, String buffer, MenuButtonType btn1, MenuButtonType btn2) {
@@ -144,6 +162,7 @@ public class MainWindowController {
                     bootstrapComplete.set(true);
                     updateConnectionDetails();
                     itemGrid.getChildren().clear();
+                    animatingItems.clear();
                     var name = remoteControl.getConnector().getRemoteParty().getName();
                     buildGrid(MenuTree.ROOT, name,0, 0);
                 });
@@ -197,11 +216,22 @@ public class MainWindowController {
         }
     }
 
-    private void updatedFieldChecker() {
-        var toAnimate = managedMenuItems.values().stream().filter(ManagedMenuItem::isAnimating).collect(Collectors.toList());
-
-        if(!toAnimate.isEmpty()) {
-            Platform.runLater(()-> toAnimate.forEach(ManagedMenuItem::tick));
+    /**
+     * Called on the FX thread for each frame, renders every item that changed since the last frame, then
+     * every 100ms ticks the items that are highlighted after a change.
+     * @param now the time of the frame in nanoseconds
+     */
+    private void renderPendingChanges(long now) {
+        pendingChanges.flush(this::renderItemValue);
+
+        if(now - lastAnimationTick >= ANIMATION_TICK_NANOS) {
+            lastAnimationTick = now;
+            var iterator = animatingItems.iterator();
+            while(iterator.hasNext()) {
+                var managedItem = iterator.next();
+                managedItem.tick();
+                if(!managedItem.isAnimating()) iterator.remove();
+            }
         }
     }
 
@@ -320,12 +350,22 @@ public class MainWindowController {
      * When there's a change in value for an item, this code takes care of rendering it.
      * @param item the item to render
      */
-    @SuppressWarnings("unchecked")
     private void renderItemValue(MenuItem<?> item) {
+        renderItemValue(item, menuTree.getMenuState(item));
+    }
+
+    /**
+     * Renders a value for an item that has already been read from the tree.
+     * @param item the item to render
+     * @param state the state of the item to render
+     */
+    @SuppressWarnings("unchecked")
+    private void renderItemValue(MenuItem<?> item, MenuState<?> state) {
         // only proceed if there's a label to be updated..
         ManagedMenuItem managedMenuItem = managedMenuItems.get(item.getId());
-        if (managedMenuItem == null) return; // safety check
-        managedMenuItem.itemChanged(menuTree.getMenuState(item));
+        if (managedMenuItem == null || state == null) return; // safety check
+        managedMenuItem.itemChanged(state);
+        animatingItems.add(managedMenuItem);
     }
 
     /**
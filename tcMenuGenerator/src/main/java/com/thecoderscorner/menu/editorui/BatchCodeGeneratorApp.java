@@ -0,0 +1,114 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.editorui;
+
+import com.thecoderscorner.menu.editorui.controller.ConfigurationStorage;
+import com.thecoderscorner.menu.editorui.controller.PrefsConfigurationStorage;
+import com.thecoderscorner.menu.editorui.generator.BatchCodeGenerator;
+import com.thecoderscorner.menu.editorui.generator.OnlineLibraryVersionDetector;
+import com.thecoderscorner.menu.editorui.generator.arduino.ArduinoLibraryInstaller;
+import com.thecoderscorner.menu.editorui.generator.plugin.DefaultXmlPluginLoader;
+import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
+import com.thecoderscorner.menu.editorui.generator.plugin.PluginEmbeddedPlatformsImpl;
+import com.thecoderscorner.menu.editorui.project.FileBasedProjectPersistor;
+import com.thecoderscorner.menu.editorui.util.SimpleHttpClient;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.prefs.Preferences;
+
+import static com.thecoderscorner.menu.editorui.generator.OnlineLibraryVersionDetector.ReleaseType;
+
+/**
+ * The starting point for generating code from the command line without the user interface, for example from a build
+ * server. Each project is generated with the platform, plugins and properties last used in the designer, unless one
+ * or more platforms are given, in which case every project is generated for each of them:
+ *
+ * <pre>
+ *     BatchCodeGeneratorApp [--platform boardId]... [--threads count] project.emf...
+ * </pre>
+ *
+ * The plugins are loaded once from the same directories as the designer uses. The time taken for each project is
+ * printed, and the exit code is non zero if any project failed.
+ */
+public class BatchCodeGeneratorApp {
+
+    public static void main(String[] args) throws Exception {
+        var projectFiles = new ArrayList<Path>();
+        var platformIds = new ArrayList<String>();
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if ((args[i].equals("--platform") || args[i].equals("--threads")) && i + 1 == args.length) {
+                usage("Missing value for " + args[i]);
+            }
+            else if (args[i].equals("--platform")) {
+                platformIds.add(args[++i]);
+            }
+            else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].startsWith("--")) {
+                usage("Unknown option " + args[i]);
+            }
+            else {
+                projectFiles.add(Paths.get(args[i]));
+            }
+        }
+        if (projectFiles.isEmpty()) usage("No project files given");
+        if (threads < 1) usage("Threads must be at least one");
+
+        PluginEmbeddedPlatformsImpl platforms = new PluginEmbeddedPlatformsImpl();
+        ConfigurationStorage prefsStore = new PrefsConfigurationStorage();
+        DefaultXmlPluginLoader manager = new DefaultXmlPluginLoader(platforms, prefsStore);
+
+        var stream = Preferences.userNodeForPackage(MenuEditorApp.class).get("ReleaseStream", ReleaseType.STABLE.toString());
+        var libraryVersionDetector = new OnlineLibraryVersionDetector(new SimpleHttpClient(), ReleaseType.valueOf(stream));
+        var homeDirectory = System.getProperty("homeDirectoryOverride", System.getProperty("user.home"));
+        platforms.setInstaller(new ArduinoLibraryInstaller(homeDirectory, libraryVersionDetector, manager,
+                prefsStore, true));
+
+        manager.loadPlugins(MenuEditorApp.configuredPluginPaths());
+        manager.getLoadErrrors().forEach(err -> System.err.println("Plugin not loaded: " + err));
+
+        List<EmbeddedPlatform> platformOverrides = new ArrayList<>();
+        for (var id : platformIds) {
+            try {
+                platformOverrides.add(platforms.getEmbeddedPlatformFromId(id));
+            }
+            catch (IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+        }
+
+        var generator = new BatchCodeGenerator(platforms, manager, new FileBasedProjectPersistor());
+        var executor = Executors.newFixedThreadPool(threads);
+        List<BatchCodeGenerator.BatchResult> results;
+        long started = System.currentTimeMillis();
+        try {
+            results = generator.generate(projectFiles, platformOverrides, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        results.forEach(System.out::println);
+        long failed = results.stream().filter(result -> !result.isSuccessful()).count();
+        System.out.printf("Generated %d of %d in %dms using %d threads%n", results.size() - failed, results.size(),
+                System.currentTimeMillis() - started, threads);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: BatchCodeGeneratorApp [--platform boardId]... [--threads count] project.emf...");
+        System.exit(2);
+    }
+}
@@ -137,7 +137,7 @@ public class MenuEditorApp extends Application {
         });
     }
 
-    private List<Path> configuredPluginPaths() {
+    static List<Path> configuredPluginPaths() {
         var list = new ArrayList<Path>();
         list.add(Paths.get(System.getProperty("user.home"), ".tcmenu", "plugins"));
         var additionalPlugins = System.getProperty("additionalPluginsDir");
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.editorui.generator;
+
+import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
+import com.thecoderscorner.menu.editorui.generator.core.NameAndKey;
+import com.thecoderscorner.menu.editorui.generator.core.SubSystem;
+import com.thecoderscorner.menu.editorui.generator.core.TcMenuConversionException;
+import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginItem;
+import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginManager;
+import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
+import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatforms;
+import com.thecoderscorner.menu.editorui.generator.plugin.RequiredSourceFile;
+import com.thecoderscorner.menu.editorui.project.MenuTreeWithCodeOptions;
+import com.thecoderscorner.menu.editorui.project.ProjectPersistor;
+import com.thecoderscorner.menu.editorui.util.StringHelper;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * Generates the code for many projects without the user interface, for example on a build server. The plugins
+ * available for each platform and subsystem are looked up from the plugin manager once and then shared by every
+ * project, and each project file is opened once however many platforms it is generated for.
+ *
+ * Each project is generated with the plugins and property values that were last used to generate it from the
+ * designer. Projects are generated in parallel on the executor provided, but the platforms of one project are
+ * generated one after another, as they all write into the project's directory.
+ */
+public class BatchCodeGenerator {
+    private final System.Logger logger = System.getLogger(getClass().getSimpleName());
+
+    private final EmbeddedPlatforms platforms;
+    private final CodePluginManager pluginManager;
+    private final ProjectPersistor persistor;
+    private final Map<String, List<CodePluginItem>> pluginsByPlatform = new ConcurrentHashMap<>();
+
+    public BatchCodeGenerator(EmbeddedPlatforms platforms, CodePluginManager pluginManager, ProjectPersistor persistor) {
+        this.platforms = platforms;
+        this.pluginManager = pluginManager;
+        this.persistor = persistor;
+    }
+
+    /**
+     * Generates the code for every project given, waiting until all of them are complete.
+     * @param projectFiles the project files to generate code for
+     * @param platformOverrides the platforms to generate each project for, or empty to use the one saved in each project
+     * @param executor the executor that projects are generated on
+     * @return a result for each project and platform, in the order the projects were given
+     */
+    public List<BatchResult> generate(List<Path> projectFiles, List<EmbeddedPlatform> platformOverrides,
+                                      Executor executor) {
+        var running = projectFiles.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> generateProject(file, platformOverrides), executor))
+                .collect(Collectors.toList());
+
+        return running.stream()
+                .flatMap(project -> project.join().stream())
+                .collect(Collectors.toList());
+    }
+
+    private List<BatchResult> generateProject(Path projectFile, List<EmbeddedPlatform> platformOverrides) {
+        long started = System.nanoTime();
+        MenuTreeWithCodeOptions project;
+        List<EmbeddedPlatform> toGenerate;
+        try {
+            project = persistor.open(projectFile.toString());
+            toGenerate = platformOverrides.isEmpty()
+                    ? List.of(platforms.getEmbeddedPlatformFromId(project.getOptions().getEmbeddedPlatform()))
+                    : platformOverrides;
+        }
+        catch (Exception e) {
+            logger.log(ERROR, "Unable to open project " + projectFile, e);
+            return List.of(new BatchResult(projectFile, null, false, timeSince(started),
+                    "Project could not be opened: " + e.getMessage()));
+        }
+
+        var results = new ArrayList<BatchResult>();
+        for (var platform : toGenerate) {
+            results.add(generateForPlatform(projectFile, project, platform));
+        }
+        return results;
+    }
+
+    private BatchResult generateForPlatform(Path projectFile, MenuTreeWithCodeOptions project, EmbeddedPlatform platform) {
+        long started = System.nanoTime();
+        var options = project.getOptions();
+        try {
+            var creators = creatorsFor(platform, options);
+            var generator = platforms.getCodeGeneratorFor(platform, options);
+            var name = projectFile.getFileName() + " [" + platform.getBoardId() + "] ";
+            generator.setLoggerFunction(line -> logger.log(INFO, name + line));
+
+            boolean converted = generator.startConversion(projectFile.toAbsolutePath().getParent(), creators,
+                    project.getMenuTree(), new NameAndKey(options.getApplicationUUID().toString(),
+                            options.getApplicationName()), pluginFilesOf(creators), options.isSaveToSrc());
+
+            return new BatchResult(projectFile, platform, converted, timeSince(started),
+                    converted ? null : "Conversion failed, see the log for details");
+        }
+        catch (Exception e) {
+            logger.log(ERROR, "Unable to generate " + projectFile + " for " + platform, e);
+            return new BatchResult(projectFile, platform, false, timeSince(started), e.getMessage());
+        }
+    }
+
+    private List<CodePluginItem> creatorsFor(EmbeddedPlatform platform, CodeGeneratorOptions options)
+            throws TcMenuConversionException {
+        var creators = new ArrayList<CodePluginItem>();
+        addCreator(creators, platform, SubSystem.DISPLAY, options.getLastDisplayUuid(), options);
+        addCreator(creators, platform, SubSystem.INPUT, options.getLastInputUuid(), options);
+        addCreator(creators, platform, SubSystem.REMOTE, options.getLastRemoteCapabilitiesUuid(), options);
+        return creators;
+    }
+
+    /**
+     * The creators are the plugins last used by the project, so the files they need are the project's previous plugin
+     * files, which the generator compares with the files now needed to remove any that are no longer used. This is
+     * the same list that the designer gives from the plugins selected when the generate dialog opens.
+     */
+    private static List<String> pluginFilesOf(List<CodePluginItem> creators) {
+        return creators.stream()
+                .flatMap(creator -> creator.getRequiredSourceFiles().stream())
+                .map(RequiredSourceFile::getFileName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Adds the plugin last used by the project for a subsystem. Unlike the designer, it does not fall back to another
+     * plugin when the one saved cannot be found, as a build should not quietly produce different code. When the
+     * project has never been generated, the first plugin available is used, as the designer would.
+     */
+    private void addCreator(List<CodePluginItem> creators, EmbeddedPlatform platform, SubSystem subSystem,
+                            String pluginId, CodeGeneratorOptions options) throws TcMenuConversionException {
+        var available = pluginsByPlatform.computeIfAbsent(platform.getBoardId() + "/" + subSystem,
+                key -> pluginManager.getPluginsThatMatch(platform, subSystem));
+
+        CodePluginItem plugin;
+        if (StringHelper.isStringEmptyOrNull(pluginId)) {
+            if (available.isEmpty()) return;
+            plugin = available.get(0);
+        }
+        else {
+            plugin = available.stream()
+                    .filter(item -> item.getId().equals(pluginId))
+                    .findFirst()
+                    .orElseThrow(() -> new TcMenuConversionException("The " + subSystem + " plugin " + pluginId
+                            + " is not installed for " + platform.getBoardId()));
+        }
+        creators.add(withProjectProperties(plugin, options.getLastProperties()));
+    }
+
+    /**
+     * The plugins are shared by every project, so each project is given a copy of the plugin holding its own
+     * property values.
+     */
+    private CodePluginItem withProjectProperties(CodePluginItem plugin, List<CreatorProperty> savedProperties) {
+        var saved = savedProperties != null ? savedProperties : List.<CreatorProperty>of();
+        var properties = plugin.getProperties().stream()
+                .map(prop -> new CreatorProperty(prop.getName(), prop.getDescription(), saved.stream()
+                        .filter(p -> prop.getName().equals(p.getName()) && prop.getSubsystem().equals(p.getSubsystem()))
+                        .map(CreatorProperty::getLatestValue)
+                        .findFirst()
+                        .orElse(prop.getInitialValue()),
+                        prop.getSubsystem(), prop.getPropType(), prop.getValidationRules()))
+                .collect(Collectors.toList());
+
+        return plugin.copyWith(plugin.getConfig(), properties);
+    }
+
+    private static Duration timeSince(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The outcome of generating one project for one platform.
+     */
+    public static class BatchResult {
+        private final Path projectFile;
+        private final EmbeddedPlatform platform;
+        private final boolean successful;
+        private final Duration timeTaken;
+        private final String error;
+
+        public BatchResult(Path projectFile, EmbeddedPlatform platform, boolean successful, Duration timeTaken,
+                           String error) {
+            this.projectFile = projectFile;
+            this.platform = platform;
+            this.successful = successful;
+            this.timeTaken = timeTaken;
+            this.error = error;
+        }
+
+        public Path getProjectFile() {
+            return projectFile;
+        }
+
+        /**
+         * @return the platform generated for, or null if the project could not be opened.
+         */
+        public EmbeddedPlatform getPlatform() {
+            return platform;
+        }
+
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        public Duration getTimeTaken() {
+            return timeTaken;
+        }
+
+        /**
+         * @return the reason generation failed, or null if it succeeded.
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-7s %6dms  %s [%s]%s", successful ? "OK" : "FAILED", timeTaken.toMillis(),
+                    projectFile, platform != null ? platform.getBoardId() : "-", error != null ? "  " + error : "");
+        }
+    }
+}
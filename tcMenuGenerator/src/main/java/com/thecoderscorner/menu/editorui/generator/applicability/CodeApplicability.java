@@ -6,10 +6,8 @@
 
 package com.thecoderscorner.menu.editorui.generator.applicability;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
-
-import java.util.Collection;
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
 public interface CodeApplicability {
-    boolean isApplicable(Collection<CreatorProperty> properties);
+    boolean isApplicable(CodeConversionContext context);
 }
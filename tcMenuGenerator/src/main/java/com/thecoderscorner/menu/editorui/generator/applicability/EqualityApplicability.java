@@ -6,9 +6,7 @@
 
 package com.thecoderscorner.menu.editorui.generator.applicability;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
-
-import java.util.Collection;
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
 public class EqualityApplicability implements CodeApplicability {
     private final String propertyId;
@@ -23,13 +21,9 @@ public class EqualityApplicability implements CodeApplicability {
     }
 
     @Override
-    public boolean isApplicable(Collection<CreatorProperty> properties)
+    public boolean isApplicable(CodeConversionContext context)
     {
-        var prop = properties.stream().filter(p -> p.getName().equals(propertyId))
-            .map(CreatorProperty::getLatestValue)
-            .findFirst().orElse("");
-
-        var match = prop.equals(value);
+        var match = context.getPropertyValue(propertyId).equals(value);
         return invert ? !match : match;
     }
 
@@ -6,9 +6,8 @@
 
 package com.thecoderscorner.menu.editorui.generator.applicability;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
-import java.util.Collection;
 import java.util.regex.Pattern;
 
 public class MatchesApplicability implements CodeApplicability {
@@ -22,13 +21,9 @@ public class MatchesApplicability implements CodeApplicability {
     }
 
     @Override
-    public boolean isApplicable(Collection<CreatorProperty> properties)
+    public boolean isApplicable(CodeConversionContext context)
     {
-        var prop = properties.stream().filter(p -> p.getName().equals(propertyId))
-            .map(CreatorProperty::getLatestValue)
-            .findFirst().orElse("");
-
-        return compiledMatch.matcher(prop).matches();
+        return compiledMatch.matcher(context.getPropertyValue(propertyId)).matches();
     }
 
     @Override
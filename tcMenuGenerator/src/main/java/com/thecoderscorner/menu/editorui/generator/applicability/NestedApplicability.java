@@ -6,9 +6,8 @@
 
 package com.thecoderscorner.menu.editorui.generator.applicability;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
-import java.util.Collection;
 import java.util.List;
 
 public class NestedApplicability implements CodeApplicability {
@@ -22,17 +21,17 @@ public class NestedApplicability implements CodeApplicability {
     }
 
     @Override
-    public boolean isApplicable(Collection<CreatorProperty> properties)
+    public boolean isApplicable(CodeConversionContext context)
     {
         var ret = (nestingMode == NestingMode.AND) ? true : false;
 
         if (nestingMode == NestingMode.AND)
         {
-            for (var applicability : applicabilityList) ret = ret && applicability.isApplicable(properties);
+            for (var applicability : applicabilityList) ret = ret && context.isApplicable(applicability);
         }
         else
         {
-            for (var applicability : applicabilityList) ret = ret || applicability.isApplicable(properties);
+            for (var applicability : applicabilityList) ret = ret || context.isApplicable(applicability);
         }
         return ret;
     }
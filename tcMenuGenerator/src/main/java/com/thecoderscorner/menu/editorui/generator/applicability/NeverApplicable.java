@@ -6,13 +6,11 @@
 
 package com.thecoderscorner.menu.editorui.generator.applicability;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
-
-import java.util.Collection;
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
 public class NeverApplicable implements CodeApplicability {
     @Override
-    public boolean isApplicable(Collection<CreatorProperty> properties) {
+    public boolean isApplicable(CodeConversionContext context) {
         return false;
     }
 
@@ -6,20 +6,33 @@
 
 package com.thecoderscorner.menu.editorui.generator.core;
 
+import com.thecoderscorner.menu.editorui.generator.applicability.CodeApplicability;
+import com.thecoderscorner.menu.editorui.generator.parameters.ExpressionTemplate;
 import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
 import com.thecoderscorner.menu.editorui.generator.validation.CannedPropertyValidators;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * When code is being converted we need to know the context of the conversion, this context should contain all the
  * properties of the conversion and the name of the root item in the tree. It also contains the platform.
+ *
+ * The value of each property is indexed by name when the context is created, and as the properties do not change
+ * during a conversion, the result of each applicability check is remembered for the rest of the conversion. Expression
+ * templates start with those parsed when the plugins were loaded, and any other expression that is expanded is added
+ * for the rest of the conversion.
  */
 public class CodeConversionContext {
     private final String rootObject;
     private final Collection<CreatorProperty> properties;
     private final EmbeddedPlatform platform;
+    private final Map<String, String> valuesByName = new HashMap<>();
+    private final Map<CodeApplicability, Boolean> applicabilityResults = new ConcurrentHashMap<>();
+    private final Map<String, ExpressionTemplate> templates = new ConcurrentHashMap<>();
 
     public CodeConversionContext(EmbeddedPlatform platform, String rootObject, Collection<CreatorProperty> properties) {
         this.rootObject = rootObject;
@@ -29,6 +42,14 @@ public class CodeConversionContext {
         properties.add(new CreatorProperty("TARGET", "Target", platform.getBoardId(), SubSystem.INPUT, CreatorProperty.PropType.TEXTUAL, CannedPropertyValidators.textValidator()));
         this.properties = properties;
         this.platform = platform;
+
+        for (var prop : properties) {
+            // where two properties have the same name, the first one wins as it always has.
+            if (!valuesByName.containsKey(prop.getName())) {
+                var value = prop.getLatestValue();
+                valuesByName.put(prop.getName(), value != null ? value : "");
+            }
+        }
     }
 
     public String getRootObject() {
@@ -42,4 +63,48 @@ public class CodeConversionContext {
     public EmbeddedPlatform getPlatform() {
         return platform;
     }
+
+    /**
+     * @param name the name of the property
+     * @return the value of the property, or an empty string if there is no such property.
+     */
+    public String getPropertyValue(String name) {
+        return valuesByName.getOrDefault(name, "");
+    }
+
+    /**
+     * Makes the templates that were parsed as a plugin was loaded available to this conversion.
+     * @param pluginTemplates the templates by expression
+     */
+    public void addTemplates(Map<String, ExpressionTemplate> pluginTemplates) {
+        templates.putAll(pluginTemplates);
+    }
+
+    /**
+     * @param expression the expression to be expanded
+     * @return the template for the expression, which is parsed now if no plugin provided it.
+     */
+    public ExpressionTemplate templateFor(String expression) {
+        var template = templates.get(expression);
+        if (template == null) {
+            template = ExpressionTemplate.parse(expression);
+            templates.putIfAbsent(expression, template);
+        }
+        return template;
+    }
+
+    /**
+     * Checks if something is applicable to this conversion, only evaluating each applicability once.
+     * @param applicability the applicability to check
+     * @return true if applicable, otherwise false.
+     */
+    public boolean isApplicable(CodeApplicability applicability) {
+        // not computeIfAbsent, as nested applicability checks its children through here too.
+        var result = applicabilityResults.get(applicability);
+        if (result == null) {
+            result = applicability.isApplicable(this);
+            applicabilityResults.put(applicability, result);
+        }
+        return result;
+    }
 }
@@ -25,7 +25,7 @@ public interface CodeGenerator {
      * @param directory the place to store the output files.
      * @param generators the list of generators to use, assumed to be in priority order
      * @param menuTree the tree of menu items to be represented
-     * @return
+     * @return true if the conversion completed, otherwise false, in which case the reason has been logged.
      */
     boolean startConversion(Path directory, List<CodePluginItem> generators, MenuTree menuTree,
                             NameAndKey nameKey, List<String> previousPluginFiles, boolean saveToSrc);
@@ -39,7 +39,7 @@ public class CodeVariableCppExtractor implements CodeVariableExtractor {
     @Override
     public String mapFunctions(List<FunctionDefinition> functions) {
         return functions.stream()
-                .filter(fn -> fn.getApplicability().isApplicable(context.getProperties()))
+                .filter(fn -> context.isApplicable(fn.getApplicability()))
                 .map(this::functionToCode)
                 .collect(Collectors.joining(LINE_BREAK));
 
@@ -108,7 +108,7 @@ public class CodeVariableCppExtractor implements CodeVariableExtractor {
     public String mapVariables(List<CodeVariable> variables) {
         return variables.stream()
                 .filter(CodeVariable::isVariableDefNeeded)
-                .filter(cv -> cv.getApplicability().isApplicable(context.getProperties()))
+                .filter(cv -> context.isApplicable(cv.getApplicability()))
                 .distinct().map(this::variableToCode)
                 .collect(Collectors.joining(LINE_BREAK));
     }
@@ -149,7 +149,7 @@ public class CodeVariableCppExtractor implements CodeVariableExtractor {
     public String mapExports(List<CodeVariable> variables) {
         return variables.stream().filter(CodeVariable::isExported)
                 .distinct()
-                .filter(cv -> cv.getApplicability().isApplicable(context.getProperties()))
+                .filter(cv -> context.isApplicable(cv.getApplicability()))
                 .map(this::exportToCode)
                 .collect(Collectors.joining(LINE_BREAK));
 
@@ -172,7 +172,7 @@ public class CodeVariableCppExtractor implements CodeVariableExtractor {
     @Override
     public String mapIncludes(List<HeaderDefinition> includeList) {
         return includeList.stream()
-                .filter(inc -> inc.getApplicability().isApplicable(context.getProperties()))
+                .filter(inc -> context.isApplicable(inc.getApplicability()))
                 .distinct()
                 .sorted(Comparator.comparingInt(HeaderDefinition::getPriority))
                 .map(this::headerToString)
@@ -17,6 +17,7 @@ import com.thecoderscorner.menu.editorui.generator.arduino.CallbackRequirement;
 import com.thecoderscorner.menu.editorui.generator.arduino.MenuItemToEmbeddedGenerator;
 import com.thecoderscorner.menu.editorui.generator.parameters.CodeParameter;
 import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginItem;
+import com.thecoderscorner.menu.editorui.generator.plugin.CodeReplacement;
 import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
 import com.thecoderscorner.menu.editorui.generator.plugin.FunctionDefinition;
 import com.thecoderscorner.menu.editorui.generator.plugin.RequiredSourceFile;
@@ -26,11 +27,15 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -40,6 +45,15 @@ import static java.lang.System.Logger.Level.INFO;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 
+/**
+ * The base of all the code generators, it converts the menu tree and plugins into a header and source file, copies
+ * in the plugin files, and then leaves the platform specific parts to the subclass in internalConversion.
+ *
+ * The menu structure, callbacks and variable names are worked out once up front, after which the header, source
+ * and plugin files are rendered at the same time on the fork join pool, as none of them depend on each other. Files
+ * whose content is the same as what is already on disk are not written again, so that IDEs and build tools do not
+ * see them as changed when regenerating many times.
+ */
 public abstract class CoreCodeGenerator implements CodeGenerator {
     protected final System.Logger logger = System.getLogger(getClass().getSimpleName());
     public static final String LINE_BREAK = System.getProperty("line.separator");
@@ -68,6 +82,8 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
     protected CodeConversionContext context;
     protected VariableNameGenerator namingGenerator;
     protected NameAndKey nameAndKey;
+    private Map<Integer, String> menuNames = Map.of();
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
 
     public CoreCodeGenerator(SketchFileAdjuster adjuster, ArduinoLibraryInstaller installer, EmbeddedPlatform embeddedPlatform,
                              CodeGeneratorOptions options) {
@@ -82,6 +98,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
         this.menuTree = menuTree;
         this.nameAndKey = nameKey;
         namingGenerator = new VariableNameGenerator(menuTree, options.isNamingRecursive());
+        menuNames = nameAllMenuItems(menuTree);
         this.previousPluginFiles = previousPluginFiles;
         logLine("Starting " + embeddedPlatform.getBoardId() + " generate into : " + directory);
 
@@ -101,18 +118,31 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
             String root = getFirstMenuVariable(menuTree);
             var allProps = codeGenerators.stream().flatMap(gen -> gen.getProperties().stream()).collect(Collectors.toList());
             context = new CodeConversionContext(embeddedPlatform, root, allProps);
-            CodeVariableExtractor extractor = new CodeVariableCppExtractor(
-                    context, usesProgMem
-            );
+            codeGenerators.forEach(gen -> context.addTemplates(gen.getExpressionTemplates()));
 
             Collection<BuildStructInitializer> menuStructure = generateMenusInOrder(menuTree);
 
             // generate the source by first generating the CPP and H for the menu definition and then
-            // update the sketch. Also, if any plugins have changed, then update them.
+            // update the sketch. Also, if any plugins have changed, then update them. The three do not
+            // depend on each other so run at the same time, each with its own extractor as they hold state.
             Map<MenuItem, CallbackRequirement> callbackFunctions = callBackFunctions(menuTree);
-            generateHeaders(codeGenerators, headerFile, menuStructure, extractor, callbackFunctions);
-            generateSource(codeGenerators, cppFile, menuStructure, projectName, extractor, callbackFunctions);
-            dealWithRequiredPlugins(codeGenerators, srcDir);
+            var finalSrcDir = srcDir;
+            runTogether(List.of(
+                    forkJoinPool.submit(() -> {
+                        generateHeaders(codeGenerators, headerFile, menuStructure,
+                                new CodeVariableCppExtractor(context, usesProgMem), callbackFunctions);
+                        return null;
+                    }),
+                    forkJoinPool.submit(() -> {
+                        generateSource(codeGenerators, cppFile, menuStructure, projectName,
+                                new CodeVariableCppExtractor(context, usesProgMem), callbackFunctions);
+                        return null;
+                    }),
+                    forkJoinPool.submit(() -> {
+                        dealWithRequiredPlugins(codeGenerators, finalSrcDir);
+                        return null;
+                    })
+            ));
 
             internalConversion(directory, srcDir, callbackFunctions, projectName);
 
@@ -123,6 +153,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
             logLine("The conversion process has failed with an error: " + e.getMessage());
             logLine("A more complete error can be found in the log file in <Home>/.tcMenu");
             logger.log(ERROR, "Exception caught while converting code: ", e);
+            return false;
         }
 
         return true;
@@ -130,47 +161,99 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
 
     protected abstract void internalConversion(Path directory, Path srcDir, Map<MenuItem, CallbackRequirement> callbackFunctions, String projectName) throws TcMenuConversionException;
 
+    /**
+     * Sets the pool that the header, source and plugin files are generated on, by default the common pool.
+     * @param forkJoinPool the pool to use for generation
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Waits for all the tasks to complete, even if one fails, so that no task is still writing files afterwards.
+     * The first failure is then rethrown.
+     */
+    private void runTogether(List<ForkJoinTask<Void>> tasks) throws TcMenuConversionException {
+        TcMenuConversionException failure = null;
+        for (var task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new TcMenuConversionException("Conversion interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure != null) continue;
+                if (e.getCause() instanceof TcMenuConversionException) {
+                    failure = (TcMenuConversionException) e.getCause();
+                } else {
+                    failure = new TcMenuConversionException("Unexpected exception during conversion", e.getCause());
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Works out the variable name of every item once, as the recursive naming walks up the tree each time.
+     */
+    private Map<Integer, String> nameAllMenuItems(MenuTree menuTree) {
+        var names = new HashMap<Integer, String>();
+        for (var item : menuTree.getAllMenuItems()) {
+            names.put(item.getId(), StringHelper.isStringEmptyOrNull(item.getVariableName())
+                    ? namingGenerator.makeNameToVar(item) : item.getVariableName());
+        }
+        return Collections.unmodifiableMap(names);
+    }
+
+    /**
+     * Writes the data to the file, unless the file already holds exactly the same data.
+     * @param file the file to write
+     * @param data the new contents of the file
+     * @return true if the file was written, false if it was unchanged.
+     * @throws IOException if the file could not be read or written
+     */
+    protected boolean writeIfChanged(Path file, byte[] data) throws IOException {
+        if (Files.exists(file) && Files.size(file) == data.length && Arrays.equals(Files.readAllBytes(file), data)) {
+            logLine("No changes to " + file.getFileName() + ", left as it was");
+            return false;
+        }
+        Files.write(file, data, TRUNCATE_EXISTING, CREATE);
+        return true;
+    }
+
 
     private List<FunctionDefinition> generateReadOnlyLocal() {
-        var allFunctions = new ArrayList<FunctionDefinition>();
-
-        allFunctions.addAll(menuTree.getAllMenuItems().stream().filter(MenuItem::isReadOnly)
-                .map(item -> {
-                    var params = List.of(new CodeParameter(null, true, "true"));
-                    return new FunctionDefinition("setReadOnly", "menu" + menuNameFor(item), false, params, new AlwaysApplicable());
-                })
-                .collect(Collectors.toList())
-        );
-
-        allFunctions.addAll(menuTree.getAllMenuItems().stream().filter(MenuItem::isLocalOnly)
-                .map(item -> {
-                    var params = List.of(new CodeParameter(null, true, "true"));
-                    return new FunctionDefinition("setLocalOnly", "menu" + menuNameFor(item), false, params, new AlwaysApplicable());
-                })
-                .collect(Collectors.toList())
-        );
-
-        allFunctions.addAll(menuTree.getAllMenuItems().stream().filter(this::isSecureSubMenu)
-                .map(item -> {
-                    var params = List.of(new CodeParameter(null, true, "true"));
-                    return new FunctionDefinition("setSecured", "menu" + menuNameFor(item), false, params, new AlwaysApplicable());
-                })
-                .collect(Collectors.toList())
-        );
-
-        // lastly we deal with any INVISIBLE items, visible is the default.
-        allFunctions.addAll(menuTree.getAllMenuItems().stream().filter((item) -> !item.isVisible())
-                .map(item -> {
-                    var params = List.of(new CodeParameter(null, true, "false"));
-                    return new FunctionDefinition("setVisible", "menu" + menuNameFor(item), false, params, new AlwaysApplicable());
-                })
-                .collect(Collectors.toList())
-        );
+        // a single pass over the items in id order, so the output is the same every time it is generated, keeping
+        // each kind of call in its own list so they stay grouped in the output.
+        var items = new ArrayList<MenuItem>(menuTree.getAllMenuItems());
+        items.sort(Comparator.comparingInt(MenuItem::getId));
+        var readOnly = new ArrayList<FunctionDefinition>();
+        var localOnly = new ArrayList<FunctionDefinition>();
+        var secured = new ArrayList<FunctionDefinition>();
+        var invisible = new ArrayList<FunctionDefinition>();
+        for (var item : items) {
+            if (item.isReadOnly()) readOnly.add(flagFunction("setReadOnly", item, "true"));
+            if (item.isLocalOnly()) localOnly.add(flagFunction("setLocalOnly", item, "true"));
+            if (isSecureSubMenu(item)) secured.add(flagFunction("setSecured", item, "true"));
+            // lastly we deal with any INVISIBLE items, visible is the default.
+            if (!item.isVisible()) invisible.add(flagFunction("setVisible", item, "false"));
+        }
 
+        var allFunctions = new ArrayList<FunctionDefinition>(readOnly);
+        allFunctions.addAll(localOnly);
+        allFunctions.addAll(secured);
+        allFunctions.addAll(invisible);
         return allFunctions;
     }
 
+    private FunctionDefinition flagFunction(String function, MenuItem item, String value) {
+        var params = List.of(new CodeParameter(null, true, value));
+        return new FunctionDefinition(function, "menu" + menuNameFor(item), false, params, new AlwaysApplicable());
+    }
+
     private String menuNameFor(MenuItem item) {
+        var name = menuNames.get(item.getId());
+        if (name != null) return name;
         if(StringHelper.isStringEmptyOrNull(item.getVariableName())) {
             return namingGenerator.makeNameToVar(item);
         }
@@ -224,36 +307,62 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
 
     protected void generatePluginsForCreator(CodePluginItem item, Path directory) throws TcMenuConversionException {
         var expando = new CodeParameter(null, true, "");
+        // the replacements are usually shared by all the files in a plugin, so each is only expanded once.
+        var expandedReplacements = new HashMap<CodeReplacement, String>();
         for (var file : item.getRequiredSourceFiles()) {
             try {
-
-                // get the source (either from the plugin or from the tcMenu library)
-                String fileNamePart;
-                String fileData;
                 Path location = item.getConfig().getPath().resolve(file.getFileName());
-                try (var sourceInputStream = new FileInputStream(location.toFile())) {
-                    fileData = new String(sourceInputStream.readAllBytes());
-                    fileNamePart = Paths.get(file.getFileName()).getFileName().toString();
-                } catch (Exception e) {
-                    throw new TcMenuConversionException("Unable to locate file in plugin: " + file, e);
+                if (!Files.exists(location)) {
+                    throw new TcMenuConversionException("Unable to locate file in plugin: " + file);
                 }
+                Path destination = directory.resolve(Paths.get(file.getFileName()).getFileName().toString());
 
-                for (var cr : file.getReplacementList()) {
-                    if (cr.getApplicability().isApplicable(context.getProperties())) {
-                        var replacement = StringHelper.escapeRex(expando.expandExpression(context, cr.getReplace()));
-                        fileData = fileData.replaceAll(cr.getFind(), replacement);
+                var replacements = file.getReplacementList().stream()
+                        .filter(cr -> context.isApplicable(cr.getApplicability()))
+                        .collect(Collectors.toList());
+
+                if (replacements.isEmpty()) {
+                    if (copyIfChanged(location, destination)) logLine("Copied " + file);
+                    continue;
+                }
+
+                String fileData = new String(Files.readAllBytes(location));
+                for (var cr : replacements) {
+                    // the patterns were compiled as the plugin loaded, and the file is only copied when one matches.
+                    var matcher = cr.getFindPattern().matcher(fileData);
+                    if (matcher.find()) {
+                        var replacement = expandedReplacements.computeIfAbsent(cr,
+                                r -> StringHelper.escapeRex(expando.expandExpression(context, r.getReplace())));
+                        fileData = matcher.replaceAll(replacement);
                     }
                 }
 
                 // and copy into the destination
-                Files.write(directory.resolve(fileNamePart), fileData.getBytes(), TRUNCATE_EXISTING, CREATE);
-                logLine("Copied with replacement " + file);
+                if (writeIfChanged(destination, fileData.getBytes())) logLine("Copied with replacement " + file);
             } catch (Exception e) {
                 throw new TcMenuConversionException("Unexpected exception processing " + file, e);
             }
         }
     }
 
+    /**
+     * Copies a file unless the destination already holds exactly the same data. The copy itself is left to the
+     * file system, the data is only read here when the sizes match and the contents have to be compared.
+     * @param source the file to copy
+     * @param destination where to copy it to
+     * @return true if the file was copied, false if it was unchanged.
+     * @throws IOException if either file could not be read or the copy failed
+     */
+    protected boolean copyIfChanged(Path source, Path destination) throws IOException {
+        if (Files.exists(destination) && Files.size(destination) == Files.size(source)
+                && Arrays.equals(Files.readAllBytes(destination), Files.readAllBytes(source))) {
+            logLine("No changes to " + destination.getFileName() + ", left as it was");
+            return false;
+        }
+        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
     @Override
     public void setLoggerFunction(Consumer<String> uiLogger) {
         this.uiLogger = uiLogger;
@@ -327,7 +436,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
                                   String projectName, CodeVariableExtractor extractor,
                                   Map<MenuItem, CallbackRequirement> callbackRequirements) throws TcMenuConversionException {
 
-        try (Writer writer = new BufferedWriter(new FileWriter(cppFile))) {
+        try (Writer writer = new StringWriter(16384)) {
             logLine("Writing out source CPP file: " + cppFile);
 
             writer.write(COMMENT_HEADER);
@@ -377,6 +486,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
             writer.write(LINE_BREAK + "}" + LINE_BREAK);
             writer.write(LINE_BREAK);
 
+            writeIfChanged(Paths.get(cppFile), writer.toString().getBytes());
             logLine("Finished processing source file.");
 
         } catch (Exception e) {
@@ -390,7 +500,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
                                    String headerFile, Collection<BuildStructInitializer> menuStructure,
                                    CodeVariableExtractor extractor,
                                    Map<MenuItem, CallbackRequirement> allCallbacks) throws TcMenuConversionException {
-        try (Writer writer = new BufferedWriter(new FileWriter(headerFile))) {
+        try (Writer writer = new StringWriter(8192)) {
 
             logLine("Writing out header file: " + headerFile);
 
@@ -418,7 +528,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
             // and put the exports in the file too
             writer.write(extractor.mapExports(embeddedCreators.stream()
                     .flatMap(ecc -> ecc.getVariables().stream())
-                    .filter(var -> var.getApplicability().isApplicable(context.getProperties()))
+                    .filter(var -> context.isApplicable(var.getApplicability()))
                     .collect(Collectors.toList())
             ));
             writer.write(LINE_BREAK + LINE_BREAK + "// all menu item forward references." + LINE_BREAK);
@@ -454,6 +564,7 @@ public abstract class CoreCodeGenerator implements CodeGenerator {
             writer.write(LINE_BREAK + "void setupMenu();" + LINE_BREAK);
             writer.write(LINE_BREAK + "#endif // MENU_GENERATED_CODE_H" + LINE_BREAK);
 
+            writeIfChanged(Paths.get(headerFile), writer.toString().getBytes());
             logLine("Finished processing header file.");
         } catch (Exception e) {
             logLine("Failed to generate header file: " + e.getMessage());
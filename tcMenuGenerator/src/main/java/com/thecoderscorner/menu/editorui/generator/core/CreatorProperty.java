@@ -88,6 +88,14 @@ public class CreatorProperty {
         this.validationRules = rules;
     }
 
+    /**
+     * @return a new property with the same definition as this one, holding the initial value rather than any value
+     * that has since been set.
+     */
+    public CreatorProperty copyWithInitialValue() {
+        return new CreatorProperty(name, description, initialValue, subsystem, propType, validationRules);
+    }
+
     public void resetToInitial() {
         this.latestValue = this.initialValue;
     }
@@ -6,7 +6,6 @@
 
 package com.thecoderscorner.menu.editorui.generator.parameters;
 
-import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
 import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
 
 public class CodeParameter {
@@ -32,57 +31,7 @@ public class CodeParameter {
     public String expandExpression(CodeConversionContext context, String text)
     {
         if (text == null) return "NULL";
-        var sb = new StringBuilder();
-
-        int i = 0;
-        while(i < text.length())
-        {
-            boolean escape = false;
-            if(text.charAt(i) == '\\' && (i + 1) < text.length())
-            {
-                escape = true;
-                ++i;
-            }
-            if(text.charAt(i) == '$' && !escape)
-            {
-                i = ParseVariable(text, ++i, sb, context) + 1;
-            }
-            else
-            {
-                sb.append(text.charAt(i));
-                i++;
-            }
-        }
-        return sb.toString();
-    }
-
-    private int ParseVariable(String text, int start, StringBuilder sb, CodeConversionContext context)
-    {
-        if (start >= text.length()) return start;
-
-        StringBuilder variableName = new StringBuilder();
-        int i = start;
-        if (text.charAt(i) == '{')
-        {
-            while (++i < text.length() && text.charAt(i) != '}')
-            {
-                variableName.append(text.charAt(i));
-            }
-        }
-        else
-        {
-            sb.append(text.charAt(i));
-            return start;
-        }
-
-        var varStr = variableName.toString();
-
-        var varValue = context.getProperties().stream()
-                .filter(prop -> prop.getName().equals(varStr))
-                .map(CreatorProperty::getLatestValue)
-                .findFirst().orElse("");
-        sb.append(varValue);
-        return i;
+        return context.templateFor(text).expand(context);
     }
 
     public String getType() {
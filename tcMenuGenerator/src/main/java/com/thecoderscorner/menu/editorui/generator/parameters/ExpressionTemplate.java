@@ -0,0 +1,87 @@
+/*
+ * Copyright (c)  2016-2020 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.editorui.generator.parameters;
+
+import com.thecoderscorner.menu.editorui.generator.core.CodeConversionContext;
+
+import java.util.ArrayList;
+
+/**
+ * An expression from a plugin that has been split up into the text around each ${VARIABLE} and the names of the
+ * variables, so that it can be expanded many times without parsing it again. A backslash escapes the character
+ * that follows it, and a $ not followed by a brace is dropped.
+ *
+ * The expressions in a plugin are parsed as it is loaded and kept by the plugin item, so they are thrown away with the
+ * plugin when it is reloaded. During a conversion the CodeConversionContext looks templates up, any expression that
+ * no plugin provided is parsed the first time it is expanded and kept only until the conversion ends.
+ */
+public class ExpressionTemplate {
+    private final String[] literals;
+    private final String[] variables;
+
+    private ExpressionTemplate(String[] literals, String[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * @param context the conversion context that variables are taken from
+     * @return the expression with each variable replaced by its value, or an empty string if it has no value.
+     */
+    public String expand(CodeConversionContext context) {
+        if (variables.length == 0) return literals[0];
+
+        var sb = new StringBuilder();
+        sb.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(context.getPropertyValue(variables[i]));
+            sb.append(literals[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param text the expression to parse
+     * @return a template for the expression, that is not kept anywhere.
+     */
+    public static ExpressionTemplate parse(String text) {
+        var literals = new ArrayList<String>();
+        var variables = new ArrayList<String>();
+        var sb = new StringBuilder();
+
+        int i = 0;
+        while (i < text.length()) {
+            boolean escape = false;
+            if (text.charAt(i) == '\\' && (i + 1) < text.length()) {
+                escape = true;
+                ++i;
+            }
+            if (text.charAt(i) == '$' && !escape) {
+                if (++i >= text.length()) break;
+                if (text.charAt(i) == '{') {
+                    var variableName = new StringBuilder();
+                    while (++i < text.length() && text.charAt(i) != '}') {
+                        variableName.append(text.charAt(i));
+                    }
+                    literals.add(sb.toString());
+                    variables.add(variableName.toString());
+                    sb.setLength(0);
+                }
+                else {
+                    sb.append(text.charAt(i));
+                }
+            }
+            else {
+                sb.append(text.charAt(i));
+            }
+            i++;
+        }
+        literals.add(sb.toString());
+
+        return new ExpressionTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+}
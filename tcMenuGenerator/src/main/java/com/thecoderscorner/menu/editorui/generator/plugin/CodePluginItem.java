@@ -9,8 +9,10 @@ package com.thecoderscorner.menu.editorui.generator.plugin;
 import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
 import com.thecoderscorner.menu.editorui.generator.core.SubSystem;
 import com.thecoderscorner.menu.editorui.generator.core.HeaderDefinition;
+import com.thecoderscorner.menu.editorui.generator.parameters.ExpressionTemplate;
 
 import java.util.List;
+import java.util.Map;
 
 public class CodePluginItem {
     private String id;
@@ -27,6 +29,7 @@ public class CodePluginItem {
     private List<HeaderDefinition> includeFiles;
     private List<RequiredSourceFile> requiredSourceFiles;
     private List<FunctionDefinition> functions;
+    private Map<String, ExpressionTemplate> expressionTemplates = Map.of();
 
     public CodePluginItem() {
     }
@@ -143,6 +146,44 @@ public class CodePluginItem {
         this.functions = functions;
     }
 
+    /**
+     * @return the templates for every expression in this plugin, parsed when it was loaded, by expression.
+     */
+    public Map<String, ExpressionTemplate> getExpressionTemplates() {
+        return expressionTemplates;
+    }
+
+    public void setExpressionTemplates(Map<String, ExpressionTemplate> expressionTemplates) {
+        this.expressionTemplates = expressionTemplates;
+    }
+
+    /**
+     * Creates a copy of this plugin that belongs to the given config and has its own properties, everything else
+     * that was loaded with the plugin, including the expression templates, is shared with this item.
+     * @param config the config that the copy belongs to
+     * @param properties the properties of the copy
+     * @return a copy of this plugin with the config and properties provided
+     */
+    public CodePluginItem copyWith(CodePluginConfig config, List<CreatorProperty> properties) {
+        var item = new CodePluginItem();
+        item.setId(id);
+        item.setDescription(description);
+        item.setExtendedDescription(extendedDescription);
+        item.setSupportedPlatforms(supportedPlatforms);
+        item.setRequiredLibraries(requiredLibraries);
+        item.setSubsystem(subsystem);
+        item.setImageFileName(imageFileName);
+        item.setDocsLink(docsLink);
+        item.setConfig(config);
+        item.setProperties(properties);
+        item.setVariables(variables);
+        item.setIncludeFiles(includeFiles);
+        item.setRequiredSourceFiles(requiredSourceFiles);
+        item.setFunctions(functions);
+        item.setExpressionTemplates(expressionTemplates);
+        return item;
+    }
+
     @Override
     public String toString() {
         return "CodePluginItem{" +
@@ -8,13 +8,17 @@ package com.thecoderscorner.menu.editorui.generator.plugin;
 
 import com.thecoderscorner.menu.editorui.generator.applicability.CodeApplicability;
 
+import java.util.regex.Pattern;
+
 public class CodeReplacement {
     private final String find;
+    private final Pattern findPattern;
     private final String replace;
     private final CodeApplicability applicability;
 
     public CodeReplacement(String find, String replace, CodeApplicability applicability) {
         this.find = find;
+        this.findPattern = Pattern.compile(find);
         this.replace = replace;
         this.applicability = applicability;
     }
@@ -23,6 +27,13 @@ public class CodeReplacement {
         return find;
     }
 
+    /**
+     * @return the find expression compiled when the replacement was created.
+     */
+    public Pattern getFindPattern() {
+        return findPattern;
+    }
+
     public String getReplace() {
         return replace;
     }
@@ -13,6 +13,7 @@ import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
 import com.thecoderscorner.menu.editorui.generator.core.HeaderDefinition;
 import com.thecoderscorner.menu.editorui.generator.core.SubSystem;
 import com.thecoderscorner.menu.editorui.generator.parameters.CodeParameter;
+import com.thecoderscorner.menu.editorui.generator.parameters.ExpressionTemplate;
 import com.thecoderscorner.menu.editorui.generator.parameters.LambdaCodeParameter;
 import com.thecoderscorner.menu.editorui.generator.parameters.LambdaDefinition;
 import com.thecoderscorner.menu.editorui.generator.parameters.ReferenceCodeParameter;
@@ -26,15 +27,19 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -48,6 +53,9 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
     private final ConfigurationStorage configStorage;
     private List<String> loadErrrors = new CopyOnWriteArrayList<>();
     private List<Path> sourceDirs;
+    private final Map<Path, LoadedLibrary> loadedLibraries = new ConcurrentHashMap<>();
+    private final DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+    private final ThreadLocal<DocumentBuilder> documentBuilders = ThreadLocal.withInitial(this::newDocumentBuilder);
 
     public DefaultXmlPluginLoader(EmbeddedPlatforms embeddedPlatforms, ConfigurationStorage storage) {
         this.embeddedPlatforms = embeddedPlatforms;
@@ -62,36 +70,125 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
 
     @Override
     public void reload() {
-        synchronized (allPlugins) {
-            allPlugins.clear();
-        }
-
         loadErrrors.clear();
+        var loaded = new ArrayList<CodePluginConfig>();
         try {
+            var pluginDirs = new ArrayList<Path>();
             for (var path : sourceDirs) {
                 logger.log(INFO, "Traversing " + path + " for plugins");
-                for (var dir : Files.list(path).filter(f -> Files.isDirectory(f)).collect(Collectors.toList())) {
-                    if (Files.exists((dir.resolve("tcmenu-plugin.xml")))) {
-                        logger.log(System.Logger.Level.INFO, "Plugin xml found in " + dir);
-                        var loadedPlugin = loadPluginLib(dir);
-                        if (loadedPlugin != null) {
-                            synchronized (allPlugins) {
-                                allPlugins.add(loadedPlugin);
-                            }
+                try (var dirs = Files.list(path)) {
+                    for (var dir : dirs.filter(f -> Files.isDirectory(f)).collect(Collectors.toList())) {
+                        if (Files.exists((dir.resolve("tcmenu-plugin.xml")))) {
+                            logger.log(System.Logger.Level.INFO, "Plugin xml found in " + dir);
+                            pluginDirs.add(dir);
                         } else {
-                            logger.log(ERROR, "Plugin didn't load" + dir);
-                            loadErrrors.add(dir + " did not contain valid plugin");
+                            loadErrrors.add(dir + " was not a plugin, no tcmenu-plugin.xml");
                         }
-                    } else {
-                        loadErrrors.add(dir + " was not a plugin, no tcmenu-plugin.xml");
                     }
                 }
             }
+
+            // each library is independent of the others so they are all loaded at once, but kept in the order found.
+            var libraries = pluginDirs.parallelStream()
+                    .map(this::loadOrReuseLibrary)
+                    .collect(Collectors.toList());
+
+            for (int i = 0; i < libraries.size(); i++) {
+                if (libraries.get(i) != null) {
+                    loaded.add(libraries.get(i));
+                } else {
+                    logger.log(ERROR, "Plugin didn't load" + pluginDirs.get(i));
+                    loadErrrors.add(pluginDirs.get(i) + " did not contain valid plugin");
+                }
+            }
             logger.log(INFO, "Plugins are now fully loaded");
         } catch (Exception ex) {
             logger.log(ERROR, "Plugins not loaded!", ex);
             loadErrrors.add("Exception processing plugins, see log");
         }
+
+        synchronized (allPlugins) {
+            allPlugins.clear();
+            allPlugins.addAll(loaded);
+        }
+    }
+
+    /**
+     * Loads a plugin library, unless it was loaded before and none of its files have changed since, in which case
+     * a copy of the library already loaded is used, along with the errors from when it was loaded.
+     */
+    private CodePluginConfig loadOrReuseLibrary(Path directoryPath) {
+        String fingerprint;
+        try {
+            fingerprint = fingerprintOf(directoryPath);
+        } catch (IOException e) {
+            logger.log(ERROR, "Unable to read plugin directory " + directoryPath, e);
+            return null;
+        }
+
+        var cached = loadedLibraries.get(directoryPath);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            logger.log(INFO, "Plugins in directory " + directoryPath + " are unchanged since they were loaded");
+            loadErrrors.addAll(cached.errors);
+            return copyOfLibrary(cached.config);
+        }
+
+        var errors = new ArrayList<String>();
+        var config = loadPluginLib(directoryPath, errors);
+        loadErrrors.addAll(errors);
+        if (config != null) {
+            loadedLibraries.put(directoryPath, new LoadedLibrary(fingerprint, config, errors));
+            return copyOfLibrary(config);
+        } else {
+            loadedLibraries.remove(directoryPath);
+        }
+        return config;
+    }
+
+    /**
+     * The properties of a plugin hold the values entered for a project, so each reload is given its own copy of the
+     * library, with every property back at its initial value. Everything else in a plugin is never changed once it
+     * is loaded, so it is shared between the copies.
+     */
+    private CodePluginConfig copyOfLibrary(CodePluginConfig loaded) {
+        var config = new CodePluginConfig();
+        config.setPath(loaded.getPath());
+        config.setModuleName(loaded.getModuleName());
+        config.setName(loaded.getName());
+        config.setLicense(loaded.getLicense());
+        config.setLicenseUrl(loaded.getLicenseUrl());
+        config.setVendor(loaded.getVendor());
+        config.setVendorUrl(loaded.getVendorUrl());
+        config.setVersion(loaded.getVersion());
+        config.setPlugins(loaded.getPlugins().stream().map(item -> copyOfItem(item, config)).collect(Collectors.toList()));
+        return config;
+    }
+
+    private CodePluginItem copyOfItem(CodePluginItem loaded, CodePluginConfig config) {
+        return loaded.copyWith(config, loaded.getProperties().stream()
+                .map(CreatorProperty::copyWithInitialValue)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the name, size and modification time of every file in the library, which between them change
+     * whenever anything loaded from the library does.
+     */
+    private String fingerprintOf(Path directoryPath) throws IOException {
+        List<Path> libraryFiles;
+        try (var files = Files.walk(directoryPath)) {
+            libraryFiles = files.filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        var sb = new StringBuilder(256);
+        for (var file : libraryFiles) {
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            sb.append(directoryPath.relativize(file)).append(':').append(attributes.size()).append(':')
+                    .append(attributes.lastModifiedTime().toMillis()).append(';');
+        }
+        return sb.toString();
     }
 
     public List<String> getLoadErrrors() {
@@ -127,16 +224,19 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
     }
 
     public CodePluginConfig loadPluginLib(Path directoryPath) {
+        return loadPluginLib(directoryPath, loadErrrors);
+    }
+
+    /**
+     * Loads a plugin library, adding a message to the errors provided for each plugin in it that does not load.
+     */
+    private CodePluginConfig loadPluginLib(Path directoryPath, List<String> errors) {
         logger.log(System.Logger.Level.INFO, "Loading plugins in directory " + directoryPath);
 
         try {
             var pluginConfigFile = directoryPath.resolve("tcmenu-plugin.xml");
             byte[] dataToLoad = Files.readAllBytes(pluginConfigFile);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = null;
-            dBuilder = factory.newDocumentBuilder();
-            ByteArrayInputStream in = new ByteArrayInputStream(dataToLoad);
-            Document doc = dBuilder.parse(in);
+            Document doc = parseXml(dataToLoad);
             var root = doc.getDocumentElement();
 
             var shortName = root.getAttribute("shortName");
@@ -165,10 +265,12 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
                         return created;
                     } else {
                         logger.log(WARNING, "Failed loading " + pluginName);
+                        errors.add(path + " did not load");
                         return null;
                     }
                 } catch (IOException e) {
                     logger.log(ERROR, "Exception while loading plugin", e);
+                    errors.add(directoryPath + " could not read " + ele.getTextContent().trim());
                     return null;
                 }
             }));
@@ -198,10 +300,7 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
 
     public CodePluginItem loadPlugin(String dataToLoad) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = factory.newDocumentBuilder();
-            ByteArrayInputStream in = new ByteArrayInputStream(dataToLoad.getBytes());
-            Document doc = dBuilder.parse(in);
+            Document doc = parseXml(dataToLoad.getBytes());
             var root = doc.getDocumentElement();
 
             var requiresVersion = root.getAttribute("requiresDesigner");
@@ -254,6 +353,8 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
                     new RequiredSourceFile(getAttributeOrDefault(ele, "name", ""), replacements)
             ));
 
+            item.setExpressionTemplates(parseExpressions(item));
+
             return item;
         } catch (Exception ex) {
             logger.log(ERROR, "Unable to generate plugin " + dataToLoad, ex);
@@ -261,6 +362,71 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
         }
     }
 
+    /**
+     * Parses xml with a document builder kept for the current thread, as creating the factory and builder for every
+     * file takes longer than parsing the small files that plugins are made of.
+     */
+    private Document parseXml(byte[] data) throws IOException, SAXException {
+        var builder = documentBuilders.get();
+        try {
+            return builder.parse(new ByteArrayInputStream(data));
+        } finally {
+            builder.reset();
+        }
+    }
+
+    private DocumentBuilder newDocumentBuilder() {
+        // the factory is not thread safe, so only one builder is created at a time.
+        synchronized (documentFactory) {
+            try {
+                return documentFactory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException("No xml parser is available", e);
+            }
+        }
+    }
+
+    /**
+     * Parses every expression in the plugin now, so that generating code only has to expand them.
+     * @return the templates for the plugin's expressions, by expression.
+     */
+    private Map<String, ExpressionTemplate> parseExpressions(CodePluginItem item) {
+        var templates = new HashMap<String, ExpressionTemplate>();
+        item.getIncludeFiles().forEach(inc -> parseExpression(templates, inc.getHeaderName()));
+        for (var variable : item.getVariables()) {
+            parseExpression(templates, variable.getObjectName());
+            parseExpression(templates, variable.getVariableName());
+            parseExpressions(templates, variable.getParameterList());
+        }
+        parseFunctionExpressions(templates, item.getFunctions());
+        item.getRequiredSourceFiles().forEach(file -> file.getReplacementList()
+                .forEach(replacement -> parseExpression(templates, replacement.getReplace())));
+        return Collections.unmodifiableMap(templates);
+    }
+
+    private void parseFunctionExpressions(Map<String, ExpressionTemplate> templates, List<FunctionDefinition> functions) {
+        for (var function : functions) {
+            parseExpression(templates, function.getObjectName());
+            parseExpressions(templates, function.getParameters());
+        }
+    }
+
+    private void parseExpressions(Map<String, ExpressionTemplate> templates, List<CodeParameter> parameters) {
+        for (var param : parameters) {
+            parseExpression(templates, param.getValue());
+            parseExpression(templates, param.getDefaultValue());
+            if (param instanceof LambdaCodeParameter) {
+                var lambda = ((LambdaCodeParameter) param).getLambda();
+                parseExpressions(templates, lambda.getParams());
+                parseFunctionExpressions(templates, lambda.getFunctionDefinitions());
+            }
+        }
+    }
+
+    private void parseExpression(Map<String, ExpressionTemplate> templates, String expression) {
+        if (expression != null) templates.computeIfAbsent(expression, ExpressionTemplate::parse);
+    }
+
     private List<FunctionDefinition> generateFunctions(Element fnElements, Map<String, LambdaDefinition> lambdas,
                                                        Map<String, CodeApplicability> applicByKey) {
         var functionList = new ArrayList<FunctionDefinition>();
@@ -515,4 +681,16 @@ public class DefaultXmlPluginLoader implements CodePluginManager {
         if (ch == null || ch.size() == 0) return null;
         return (Element) ch.get(0);
     }
+
+    private static class LoadedLibrary {
+        private final String fingerprint;
+        private final CodePluginConfig config;
+        private final List<String> errors;
+
+        LoadedLibrary(String fingerprint, CodePluginConfig config, List<String> errors) {
+            this.fingerprint = fingerprint;
+            this.config = config;
+            this.errors = List.copyOf(errors);
+        }
+    }
 }
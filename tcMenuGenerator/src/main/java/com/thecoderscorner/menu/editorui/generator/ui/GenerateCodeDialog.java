@@ -12,6 +12,7 @@ import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginItem;
 import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginManager;
 import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
 import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatforms;
+import com.thecoderscorner.menu.editorui.generator.plugin.RequiredSourceFile;
 import com.thecoderscorner.menu.editorui.project.CurrentEditorProject;
 import com.thecoderscorner.menu.editorui.uimodel.CurrentProjectEditorUI;
 import com.thecoderscorner.menu.editorui.util.UiHelper;
@@ -54,7 +55,7 @@ public class GenerateCodeDialog {
     private List<CodePluginItem> displaysSupported;
     private List<CodePluginItem> inputsSupported;
     private List<CodePluginItem> remotesSupported;
-    private List<String> initialPlugins = new ArrayList<>();
+    private List<String> initialPlugins = List.of();
 
     private UICodePluginItem currentDisplay;
     private UICodePluginItem currentInput;
@@ -118,6 +119,12 @@ public class GenerateCodeDialog {
         currentRemote.getStyleClass().add("uiCodeGen");
         centerPane.getChildren().add(currentRemote);
 
+        // the files of the plugins in use when the dialog opened, any no longer needed are removed by the generator.
+        initialPlugins = Arrays.asList(itemInput, itemDisplay, itemRemote).stream()
+                .flatMap(item -> item.getRequiredSourceFiles().stream())
+                .map(RequiredSourceFile::getFileName)
+                .collect(Collectors.toList());
+
         buildTable();
 
         ButtonBar buttonBar = new ButtonBar();
@@ -19,7 +19,6 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
 
-import static com.thecoderscorner.menu.domain.util.MenuItemHelper.asSubMenu;
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.INFO;
 
@@ -60,18 +59,13 @@ public class FileBasedProjectPersistor implements ProjectPersistor {
         try (Reader reader = new BufferedReader(new FileReader(fileName))) {
             PersistedProject prj = gson.fromJson(reader, PersistedProject.class);
             MenuTree tree = new MenuTree();
-            prj.getItems().forEach((item) -> tree.addMenuItem(fromParentId(tree, item.getParentId()), item.getItem()));
+            tree.updateInBatch(() -> prj.getItems().forEach((item) -> tree.addMenuItem(fromParentId(tree, item.getParentId()), item.getItem())));
             return new MenuTreeWithCodeOptions(tree, prj.getCodeOptions());
         }
     }
 
     private SubMenuItem fromParentId(MenuTree tree, int parentId) {
-        Set<MenuItem> allSubMenus = tree.getAllSubMenus();
-        for (MenuItem item : allSubMenus) {
-            if (item.getId() == parentId)
-                return asSubMenu(item);
-        }
-        return MenuTree.ROOT;
+        return tree.getSubMenuById(parentId).orElse(MenuTree.ROOT);
     }
 
     @Override
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.editorui.generator;
+
+import com.thecoderscorner.menu.editorui.controller.ConfigurationStorage;
+import com.thecoderscorner.menu.editorui.generator.core.CodeGenerator;
+import com.thecoderscorner.menu.editorui.generator.core.CreatorProperty;
+import com.thecoderscorner.menu.editorui.generator.core.SubSystem;
+import com.thecoderscorner.menu.editorui.generator.plugin.CodePluginItem;
+import com.thecoderscorner.menu.editorui.generator.plugin.DefaultXmlPluginLoader;
+import com.thecoderscorner.menu.editorui.generator.plugin.DefaultXmlPluginLoaderTest;
+import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatforms;
+import com.thecoderscorner.menu.editorui.generator.plugin.PluginEmbeddedPlatformsImpl;
+import com.thecoderscorner.menu.editorui.project.FileBasedProjectPersistor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform.ARDUINO32;
+import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform.ARDUINO_AVR;
+import static com.thecoderscorner.menu.editorui.util.TestUtils.buildSimpleTreeReadOnly;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BatchCodeGeneratorTest {
+    private static final String INPUT_PLUGIN = "20409bb8-b8a1-4d1d-b632-2cf9b57353e3";
+
+    private Path rootDir;
+    private DefaultXmlPluginLoader loader;
+    private EmbeddedPlatforms platforms;
+    private ExecutorService executor;
+    private Map<Path, String> intPropByDirectory = new ConcurrentHashMap<>();
+    private Map<Path, List<String>> previousFilesByDirectory = new ConcurrentHashMap<>();
+    private Map<Path, CodePluginItem> pluginByDirectory = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        rootDir = Files.createTempDirectory("tcmenutest");
+        var pluginsDir = rootDir.resolve("plugins");
+        DefaultXmlPluginLoaderTest.makeStandardPluginInPath(pluginsDir);
+
+        var storage = Mockito.mock(ConfigurationStorage.class);
+        when(storage.getVersion()).thenReturn("1.7.0");
+        var realPlatforms = new PluginEmbeddedPlatformsImpl();
+        loader = Mockito.spy(new DefaultXmlPluginLoader(realPlatforms, storage));
+        loader.loadPlugins(List.of(pluginsDir));
+
+        platforms = Mockito.mock(EmbeddedPlatforms.class);
+        when(platforms.getEmbeddedPlatformFromId(anyString()))
+                .thenAnswer(inv -> realPlatforms.getEmbeddedPlatformFromId(inv.getArgument(0)));
+        when(platforms.getCodeGeneratorFor(any(), any())).thenAnswer(inv -> {
+            var generator = Mockito.mock(CodeGenerator.class);
+            when(generator.startConversion(any(), any(), any(), any(), any(), anyBoolean())).thenAnswer(conv -> {
+                List<CodePluginItem> creators = conv.getArgument(1);
+                intPropByDirectory.put(conv.getArgument(0), creators.get(0).getProperties().stream()
+                        .filter(p -> p.getName().equals("INT_PROP"))
+                        .findFirst().orElseThrow().getLatestValue());
+                previousFilesByDirectory.put(conv.getArgument(0), conv.getArgument(4));
+                pluginByDirectory.put(conv.getArgument(0), creators.get(0));
+                return true;
+            });
+            return generator;
+        });
+
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        Files.walk(rootDir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    void testEachProjectIsGeneratedWithItsOwnProperties() throws IOException {
+        var first = saveProject("first", INPUT_PLUGIN, "20");
+        var second = saveProject("second", INPUT_PLUGIN, "30");
+
+        var generator = new BatchCodeGenerator(platforms, loader, new FileBasedProjectPersistor());
+        var results = generator.generate(List.of(first, second), List.of(), executor);
+
+        assertEquals(2, results.size());
+        assertEquals(first, results.get(0).getProjectFile());
+        assertEquals(second, results.get(1).getProjectFile());
+        assertTrue(results.stream().allMatch(BatchCodeGenerator.BatchResult::isSuccessful));
+        assertEquals(ARDUINO_AVR, results.get(0).getPlatform());
+
+        assertEquals("20", intPropByDirectory.get(first.getParent()));
+        assertEquals("30", intPropByDirectory.get(second.getParent()));
+        assertEquals(List.of("src/source.h", "src/source.cpp"), previousFilesByDirectory.get(first.getParent()));
+
+        // the shared plugin must be unchanged by either project, and looked up once by the batch and once above.
+        var shared = loader.getPluginsThatMatch(ARDUINO_AVR, SubSystem.INPUT).get(0);
+        assertEquals("10", shared.getProperties().get(0).getLatestValue());
+        verify(loader, times(2)).getPluginsThatMatch(ARDUINO_AVR, SubSystem.INPUT);
+    }
+
+    @Test
+    void testProjectCopyOfPluginKeepsItsExpressionTemplates() throws IOException {
+        var project = saveProject("templates", INPUT_PLUGIN, "20");
+
+        var generator = new BatchCodeGenerator(platforms, loader, new FileBasedProjectPersistor());
+        var results = generator.generate(List.of(project), List.of(), executor);
+        assertTrue(results.get(0).isSuccessful());
+
+        var shared = loader.getPluginsThatMatch(ARDUINO_AVR, SubSystem.INPUT).get(0);
+        var copy = pluginByDirectory.get(project.getParent());
+        assertNotSame(shared, copy);
+        assertFalse(shared.getExpressionTemplates().isEmpty());
+        assertSame(shared.getExpressionTemplates(), copy.getExpressionTemplates());
+        assertSame(shared.getConfig(), copy.getConfig());
+    }
+
+    @Test
+    void testEveryPlatformIsGeneratedWhenOverridden() throws IOException {
+        var project = saveProject("multi", INPUT_PLUGIN, "20");
+
+        var generator = new BatchCodeGenerator(platforms, loader, new FileBasedProjectPersistor());
+        var results = generator.generate(List.of(project), List.of(ARDUINO_AVR, ARDUINO32), executor);
+
+        assertEquals(2, results.size());
+        assertEquals(ARDUINO_AVR, results.get(0).getPlatform());
+        assertEquals(ARDUINO32, results.get(1).getPlatform());
+        assertTrue(results.stream().allMatch(BatchCodeGenerator.BatchResult::isSuccessful));
+        verify(platforms).getCodeGeneratorFor(eq(ARDUINO32), any());
+    }
+
+    @Test
+    void testFailuresAreReportedPerProject() throws IOException {
+        var good = saveProject("good", INPUT_PLUGIN, "20");
+        var missingPlugin = saveProject("missing", "not-installed", "20");
+        var notThere = rootDir.resolve("notThere").resolve("notThere.emf");
+
+        var generator = new BatchCodeGenerator(platforms, loader, new FileBasedProjectPersistor());
+        var results = generator.generate(List.of(good, missingPlugin, notThere), List.of(), executor);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertNull(results.get(0).getError());
+
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getError().contains("not-installed"));
+
+        assertFalse(results.get(2).isSuccessful());
+        assertNull(results.get(2).getPlatform());
+        assertFalse(intPropByDirectory.containsKey(missingPlugin.getParent()));
+    }
+
+    private Path saveProject(String name, String inputPlugin, String intProp) throws IOException {
+        var dir = rootDir.resolve(name);
+        Files.createDirectories(dir);
+        var file = dir.resolve(name + ".emf");
+        var options = new CodeGeneratorOptions(ARDUINO_AVR.getBoardId(), null, inputPlugin, null,
+                List.of(new CreatorProperty("INT_PROP", "", intProp, SubSystem.INPUT)),
+                UUID.randomUUID(), name, false, false, false);
+        new FileBasedProjectPersistor().save(file.toString(), buildSimpleTreeReadOnly(), options);
+        return file;
+    }
+}
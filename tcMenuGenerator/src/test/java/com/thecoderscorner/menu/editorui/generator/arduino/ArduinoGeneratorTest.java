@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -35,7 +36,9 @@ import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatfor
 import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform.ARDUINO_AVR;
 import static com.thecoderscorner.menu.editorui.util.TestUtils.assertEqualsIgnoringCRLF;
 import static com.thecoderscorner.menu.editorui.util.TestUtils.buildSimpleTreeReadOnly;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
@@ -91,11 +94,38 @@ public class ArduinoGeneratorTest {
         runConversionWith(ARDUINO32, "/generator/template32", true);
     }
 
-    @SuppressWarnings("unchecked")
-    private void runConversionWith(EmbeddedPlatform platform, String templateToUse, boolean recursiveName) throws IOException {
-        ArduinoSketchFileAdjuster adjuster = Mockito.mock(ArduinoSketchFileAdjuster.class);
-
+    @Test
+    void testUnchangedFilesAreNotWrittenAgain() throws IOException {
         MenuTree tree = buildSimpleTreeReadOnly();
+        var generator = newGenerator(Mockito.mock(ArduinoSketchFileAdjuster.class), ARDUINO_AVR, false);
+        assertTrue(generator.startConversion(projectDir, pluginConfig.getPlugins(), tree,
+                new NameAndKey("uuid1", "tester"), List.of(), false));
+
+        var cppFile = projectDir.resolve(projectDir.getFileName() + "_menu.cpp");
+        var hFile = projectDir.resolve(projectDir.getFileName() + "_menu.h");
+        var pluginFile = projectDir.resolve("source.cpp");
+        var longAgo = FileTime.fromMillis(1000000L);
+        Files.setLastModifiedTime(cppFile, longAgo);
+        Files.setLastModifiedTime(hFile, longAgo);
+        Files.setLastModifiedTime(pluginFile, longAgo);
+        var cppBefore = Files.readAllBytes(cppFile);
+
+        assertTrue(generator.startConversion(projectDir, pluginConfig.getPlugins(), tree,
+                new NameAndKey("uuid1", "tester"), List.of(), false));
+        assertEquals(longAgo, Files.getLastModifiedTime(cppFile));
+        assertEquals(longAgo, Files.getLastModifiedTime(hFile));
+        assertEquals(longAgo, Files.getLastModifiedTime(pluginFile));
+        assertArrayEquals(cppBefore, Files.readAllBytes(cppFile));
+
+        // a different application name changes the source, but not the header.
+        assertTrue(generator.startConversion(projectDir, pluginConfig.getPlugins(), tree,
+                new NameAndKey("uuid1", "renamed"), List.of(), false));
+        assertNotEquals(longAgo, Files.getLastModifiedTime(cppFile));
+        assertEquals(longAgo, Files.getLastModifiedTime(hFile));
+    }
+
+    private ArduinoGenerator newGenerator(ArduinoSketchFileAdjuster adjuster, EmbeddedPlatform platform,
+                                          boolean recursiveName) {
         ArduinoLibraryInstaller installer = Mockito.mock(ArduinoLibraryInstaller.class);
         when(installer.statusOfAllLibraries()).thenReturn(new LibraryStatus(true, true, true, true));
 
@@ -106,7 +136,15 @@ public class ArduinoGeneratorTest {
                 UUID.randomUUID(),
                 "app",
                 recursiveName, false, false);
-        ArduinoGenerator generator = new ArduinoGenerator(adjuster, installer, platform, standardOptions);
+        return new ArduinoGenerator(adjuster, installer, platform, standardOptions);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runConversionWith(EmbeddedPlatform platform, String templateToUse, boolean recursiveName) throws IOException {
+        ArduinoSketchFileAdjuster adjuster = Mockito.mock(ArduinoSketchFileAdjuster.class);
+
+        MenuTree tree = buildSimpleTreeReadOnly();
+        ArduinoGenerator generator = newGenerator(adjuster, platform, recursiveName);
 
         var firstPlugin = pluginConfig.getPlugins().get(0);
         firstPlugin.getProperties().stream()
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.editorui.generator.core;
+
+import com.thecoderscorner.menu.editorui.generator.applicability.CodeApplicability;
+import com.thecoderscorner.menu.editorui.generator.applicability.EqualityApplicability;
+import com.thecoderscorner.menu.editorui.generator.applicability.MatchesApplicability;
+import com.thecoderscorner.menu.editorui.generator.applicability.NestedApplicability;
+import com.thecoderscorner.menu.editorui.generator.parameters.CodeParameter;
+import com.thecoderscorner.menu.editorui.generator.parameters.ExpressionTemplate;
+import com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.thecoderscorner.menu.editorui.generator.applicability.NestedApplicability.NestingMode.AND;
+import static com.thecoderscorner.menu.editorui.generator.applicability.NestedApplicability.NestingMode.OR;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CodeConversionContextTest {
+    private final CodeConversionContext context = new CodeConversionContext(EmbeddedPlatform.ARDUINO_AVR, "root", List.of(
+            new CreatorProperty("PIN", "pin", "2", SubSystem.INPUT),
+            new CreatorProperty("MODE", "mode", "PULLUP", SubSystem.INPUT),
+            new CreatorProperty("PIN", "duplicate", "99", SubSystem.DISPLAY)
+    ));
+
+    @Test
+    public void testPropertyValuesAreIndexedByName() {
+        assertEquals("2", context.getPropertyValue("PIN"));
+        assertEquals("PULLUP", context.getPropertyValue("MODE"));
+        assertEquals("root", context.getPropertyValue("ROOT"));
+        assertEquals(EmbeddedPlatform.ARDUINO_AVR.getBoardId(), context.getPropertyValue("TARGET"));
+        assertEquals("", context.getPropertyValue("UNKNOWN"));
+    }
+
+    @Test
+    public void testApplicabilityIsOnlyEvaluatedOnce() {
+        var applicability = Mockito.mock(CodeApplicability.class);
+        when(applicability.isApplicable(context)).thenReturn(true);
+
+        assertTrue(context.isApplicable(applicability));
+        assertTrue(context.isApplicable(applicability));
+        verify(applicability, times(1)).isApplicable(context);
+    }
+
+    @Test
+    public void testApplicabilityAgainstProperties() {
+        var pinIs2 = new EqualityApplicability("PIN", "2", false);
+        var pinNot2 = new EqualityApplicability("PIN", "2", true);
+        var modeMatches = new MatchesApplicability("MODE", "PULL.*");
+
+        assertTrue(context.isApplicable(pinIs2));
+        assertFalse(context.isApplicable(pinNot2));
+        assertTrue(context.isApplicable(modeMatches));
+        assertFalse(context.isApplicable(new EqualityApplicability("UNKNOWN", "2", false)));
+        assertTrue(context.isApplicable(new NestedApplicability(AND, List.of(pinIs2, modeMatches))));
+        assertFalse(context.isApplicable(new NestedApplicability(AND, List.of(pinNot2, modeMatches))));
+        assertTrue(context.isApplicable(new NestedApplicability(OR, List.of(pinNot2, modeMatches))));
+    }
+
+    @Test
+    public void testExpandingExpressions() {
+        var expando = new CodeParameter(null, true, "");
+        assertEquals("NULL", expando.expandExpression(context, null));
+        assertEquals("noVariables", expando.expandExpression(context, "noVariables"));
+        assertEquals("pin2 PULLUP", expando.expandExpression(context, "pin${PIN} ${MODE}"));
+        assertEquals("root-", expando.expandExpression(context, "${ROOT}-${UNKNOWN}"));
+        assertEquals("${PIN} x", expando.expandExpression(context, "\\${PIN} $x"));
+        assertEquals("end", expando.expandExpression(context, "end$"));
+        assertEquals("open2", expando.expandExpression(context, "open${PIN"));
+    }
+
+    @Test
+    public void testTemplatesFromPluginsAreUsedAndOthersKeptByTheContext() {
+        var pluginTemplate = ExpressionTemplate.parse("pin${PIN}");
+        context.addTemplates(Map.of("pin${PIN}", pluginTemplate));
+        assertSame(pluginTemplate, context.templateFor("pin${PIN}"));
+
+        var adHoc = context.templateFor("menu${ROOT}");
+        assertSame(adHoc, context.templateFor("menu${ROOT}"));
+        assertEquals("menuroot", adHoc.expand(context));
+
+        var otherConversion = new CodeConversionContext(EmbeddedPlatform.ARDUINO_AVR, "root", List.of());
+        assertNotSame(adHoc, otherConversion.templateFor("menu${ROOT}"));
+    }
+}
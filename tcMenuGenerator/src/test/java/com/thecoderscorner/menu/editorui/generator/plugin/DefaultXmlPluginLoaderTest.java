@@ -18,12 +18,16 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Comparator;
+import java.util.List;
 
 import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform.ARDUINO32;
 import static com.thecoderscorner.menu.editorui.generator.plugin.EmbeddedPlatform.ARDUINO_AVR;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -71,6 +75,45 @@ public class DefaultXmlPluginLoaderTest {
         assertEquals(config, config.getPlugins().get(1).getConfig());
     }
 
+    @Test
+    void testLoadingFromSourceDirectoriesOnlyReloadsChangedLibraries() throws Exception {
+        var firstSource = dir.resolve("first");
+        var secondSource = dir.resolve("second");
+        var firstLib = makeStandardPluginInPath(firstSource);
+        makeStandardPluginInPath(secondSource);
+        Files.createDirectories(secondSource.resolve("notAPlugin"));
+
+        loader.loadPlugins(List.of(firstSource, secondSource));
+        var loaded = loader.getLoadedPlugins();
+        assertEquals(2, loaded.size());
+        assertEquals(firstLib, loaded.get(0).getPath());
+        assertEquals(2, loaded.get(0).getPlugins().size());
+        assertEquals(2, loaded.get(1).getPlugins().size());
+        // the directory that is not a plugin, and the plugin needing a newer designer in each library.
+        assertEquals(3, loader.getLoadErrrors().size());
+        var changedProperty = loaded.get(1).getPlugins().get(0).getProperties().get(0);
+        changedProperty.getProperty().set("changed");
+
+        // nothing has changed, so the libraries already loaded are used again, with their errors and fresh properties.
+        loader.reload();
+        var reused = loader.getLoadedPlugins().get(1).getPlugins().get(0);
+        assertSame(loaded.get(1).getPlugins().get(0).getFunctions(), reused.getFunctions());
+        assertSame(loader.getLoadedPlugins().get(1), reused.getConfig());
+        assertNotSame(changedProperty, reused.getProperties().get(0));
+        assertEquals(changedProperty.getInitialValue(), reused.getProperties().get(0).getLatestValue());
+        assertEquals(3, loader.getLoadErrrors().size());
+
+        // a file in the first library changes, so only that library is loaded again.
+        var sourceFile = firstLib.resolve("src/source.cpp");
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(Files.getLastModifiedTime(sourceFile).toMillis() - 10000));
+        loader.reload();
+        assertNotSame(loaded.get(0).getPlugins().get(0).getFunctions(),
+                loader.getLoadedPlugins().get(0).getPlugins().get(0).getFunctions());
+        assertEquals(2, loader.getLoadedPlugins().get(0).getPlugins().size());
+        assertSame(loaded.get(1).getPlugins().get(0).getFunctions(),
+                loader.getLoadedPlugins().get(1).getPlugins().get(0).getFunctions());
+    }
+
     @Test
     void testLoadingASinglePlugin() throws IOException {
         var data = new String(getClass().getResourceAsStream("/plugins/TestPlugin.xml").readAllBytes());
@@ -144,6 +187,10 @@ public class DefaultXmlPluginLoaderTest {
         var nestedApplicability = lambda.getLambda().getFunctionDefinitions().get(0).getApplicability();
         assertThat(nestedApplicability).isInstanceOf(NestedApplicability.class);
         assertEquals(2, lambda.getLambda().getParams().size());
+
+        // every expression is parsed as the plugin is loaded.
+        assertThat(item.getExpressionTemplates()).containsKeys("${INT_PROP}", "${SWITCH_IODEVICE}",
+                "internalDigitalIo()", "JoystickSwitchInput.h", "analogDevice");
     }
 
     private void assertFunction(FunctionDefinition fd, String type, String name, int numParams, boolean ptr) {
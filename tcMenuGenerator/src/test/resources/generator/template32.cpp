@@ -49,9 +49,9 @@ void setupMenu() {
         });
 
     // Read only and local only function calls
-    menuOverrideAnalog2Name.setReadOnly(true);
     menuTest.setReadOnly(true);
-    menuOverrideSubName.setLocalOnly(true);
+    menuOverrideAnalog2Name.setReadOnly(true);
     menuOverrideAnalog2Name.setLocalOnly(true);
+    menuOverrideSubName.setLocalOnly(true);
 }
 
@@ -17,6 +17,15 @@ import static com.thecoderscorner.menu.domain.util.MenuItemHelper.asSubMenu;
 /**
  * Menu tree holds all the menu items for a specific remote connection or session. It holds a hierarchy of
  * items, where some items of type submenu can hold other items.
+ *
+ * Changes to the tree are made under a lock, and each change publishes a new version of the tree. All the
+ * structural read methods are served from an immutable MenuTreeSnapshot of the latest version, so readers such as
+ * a UI thread see a consistent tree while another thread is populating it. Use getSnapshot() when several reads
+ * need to see the same version of the tree, and updateInBatch() to publish many changes as one version.
+ *
+ * Publishing a change is cheap, the snapshot is only built by the first read after the tree has changed, which
+ * briefly takes the lock to copy the ID indexes. Many changes made without reading in between cost a single copy,
+ * so building a tree item by item stays linear in the number of items.
  */
 public class MenuTree {
     /**
@@ -47,11 +56,104 @@ public class MenuTree {
      */
     private final Map<MenuItem, ArrayList<MenuItem>> subMenuItems = new HashMap<>(EXPECTED_MAX_VALUES / 8);
 
+    /**
+     * Indexes of every item in the tree by ID, the parent of each item by ID, and each submenu by ID. These are
+     * maintained alongside subMenuItems, and guarded by the same lock, so that lookups by ID do not need to search
+     * the tree.
+     */
+    private final Map<Integer, MenuItem> itemsById = new HashMap<>(EXPECTED_MAX_VALUES);
+    private final Map<Integer, SubMenuItem> parentsById = new HashMap<>(EXPECTED_MAX_VALUES);
+    private final Map<Integer, SubMenuItem> subMenusById = new HashMap<>(EXPECTED_MAX_VALUES / 8);
+
+    /**
+     * A view over the structures above used by the thread that is changing the tree, and the submenus whose
+     * lists have changed since the last snapshot was built. Both are guarded by the same lock.
+     */
+    private final MenuTreeSnapshot liveView = MenuTreeSnapshot.liveViewOf(subMenuItems, itemsById, parentsById, subMenusById);
+    private final Set<MenuItem> changedLists = new HashSet<>();
+    private int batchDepth = 0;
+    private long version = 0;
+
+    /**
+     * The latest snapshot of the tree, readers take this without locking unless the tree has changed since it was
+     * built, in which case the first reader builds the next one. Both are only written with the lock held.
+     */
+    private volatile MenuTreeSnapshot snapshot;
+    private volatile boolean snapshotStale;
+
     /**
      * Create a basic tree that is initially empty
      */
     public MenuTree() {
         subMenuItems.put(ROOT, new ArrayList<>());
+        itemsById.put(ROOT.getId(), ROOT);
+        subMenusById.put(ROOT.getId(), ROOT);
+        publish();
+    }
+
+    /**
+     * Gets the latest published snapshot of the tree structure. The snapshot is immutable, so all reads from it
+     * are consistent with each other even while other threads are changing the tree.
+     * @return the latest snapshot of the tree
+     */
+    public MenuTreeSnapshot getSnapshot() {
+        if(!snapshotStale) return snapshot;
+        synchronized (subMenuItems) {
+            buildSnapshotIfStale();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Performs all the changes within the runnable as a single update, other threads continue to see the
+     * previous snapshot until all the changes are complete, and then see them all at once. Within the batch the
+     * calling thread sees its own changes. Batches can be nested, publishing happens when the outermost completes.
+     * @param changes the changes to make to the tree
+     */
+    public void updateInBatch(Runnable changes) {
+        synchronized (subMenuItems) {
+            // readers must not wait for the batch to complete, so they need a snapshot of any earlier changes.
+            if(batchDepth == 0) buildSnapshotIfStale();
+            batchDepth++;
+            try {
+                changes.run();
+            }
+            finally {
+                batchDepth--;
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Publishes a new version of the tree unless we are inside a batch, its snapshot is built when it is next read.
+     * Must be called with the lock held.
+     */
+    private void publish() {
+        if(batchDepth > 0) return;
+        version++;
+        snapshotStale = true;
+    }
+
+    /**
+     * Builds the snapshot of the latest version if it has not yet been built. Must be called with the lock held.
+     * The lists of submenus that have not changed are shared with the previous snapshot, but the three ID indexes
+     * are copied in full, so this is O(n) in the number of items.
+     */
+    private void buildSnapshotIfStale() {
+        if(!snapshotStale) return;
+        snapshot = MenuTreeSnapshot.copyOf(version, subMenuItems, itemsById, parentsById, subMenusById,
+                snapshot, changedLists);
+        changedLists.clear();
+        snapshotStale = false;
+    }
+
+    /**
+     * Readers use the latest snapshot, except for the thread that is changing the tree, which must see its
+     * own changes immediately.
+     */
+    private MenuTreeSnapshot readView() {
+        return Thread.holdsLock(subMenuItems) ? liveView : getSnapshot();
     }
 
     /**
@@ -63,12 +165,22 @@ public class MenuTree {
         SubMenuItem subMenu = (parent != null) ? parent : ROOT;
 
         synchronized (subMenuItems) {
-            ArrayList<MenuItem> subMenuChildren = subMenuItems.computeIfAbsent(subMenu, sm -> new ArrayList<>());
+            ArrayList<MenuItem> subMenuChildren = subMenuItems.computeIfAbsent(subMenu, sm -> {
+                itemsById.putIfAbsent(sm.getId(), sm);
+                subMenusById.put(sm.getId(), subMenu);
+                return new ArrayList<>();
+            });
             subMenuChildren.add(item);
+            changedLists.add(subMenu);
+            itemsById.put(item.getId(), item);
+            parentsById.put(item.getId(), subMenu);
 
             if (item.hasChildren()) {
                 subMenuItems.put(item, new ArrayList<>());
+                changedLists.add(item);
+                subMenusById.put(item.getId(), asSubMenu(item));
             }
+            publish();
         }
     }
 
@@ -79,14 +191,16 @@ public class MenuTree {
      */
     public void addOrUpdateItem(int parentId, MenuItem item) {
         synchronized (subMenuItems) {
-            getSubMenuById(parentId).ifPresent(subMenu-> {
-                if(getMenuItems(subMenu).stream().anyMatch(it-> it.getId() == item.getId())) {
-                    replaceMenuById(asSubMenu(subMenu), item);
-                }
-                else {
-                    addMenuItem(asSubMenu(subMenu), item);
-                }
-            });
+            SubMenuItem subMenu = subMenusById.get(parentId);
+            if(subMenu == null) return;
+
+            SubMenuItem existingParent = parentsById.get(item.getId());
+            if(existingParent != null && existingParent.getId() == subMenu.getId()) {
+                replaceMenuById(subMenu, item);
+            }
+            else {
+                addMenuItem(subMenu, item);
+            }
         }
     }
 
@@ -96,27 +210,21 @@ public class MenuTree {
      * @return an optional that will be populated when present with the sub menu.
      */
     public Optional<SubMenuItem> getSubMenuById(int parentId) {
-        return  getAllSubMenus().stream().filter(subMenu->subMenu.getId() == parentId).map(m->(SubMenuItem)m).findFirst();
+        return readView().getSubMenuById(parentId);
     }
 
     /**
-     * Gets the menu item with the specified ID, finding the submenu if needed. In most cases the linkage between
-     * ID and item will be cached and therefore fast, if you don't know the sub menu set it to null and it will be
-     * determined.
+     * Gets the menu item with the specified ID, this is an indexed lookup. Items that are not in the tree but
+     * have state associated are also found.
      * @param id the id of the object to find.
-     * @return
+     * @return an optional that will be populated when present with the item.
      */
     public Optional<MenuItem> getMenuById(int id) {
-        MenuState state = menuStates.get(id);
-        if(state != null) {
-            return Optional.of(state.getItem());
-        }
-
-        // short cut to find the submenu by ID if possible before going through everything.
-        var maybeSubMenuId = getAllSubMenus().stream().filter(item -> item.getId() == id).findFirst();
-        if(maybeSubMenuId.isPresent()) return maybeSubMenuId;
+        Optional<MenuItem> item = readView().getMenuById(id);
+        if(item.isPresent()) return item;
 
-        return getAllMenuItems().stream().filter(item -> item.getId() == id).findFirst();
+        MenuState state = menuStates.get(id);
+        return (state != null) ? Optional.of(state.getItem()) : Optional.empty();
     }
 
     /**
@@ -127,7 +235,7 @@ public class MenuTree {
      */
     public void replaceMenuById(MenuItem toReplace) {
         synchronized (subMenuItems) {
-            replaceMenuById(findParent(toReplace), toReplace);
+            replaceMenuById(parentsById.getOrDefault(toReplace.getId(), ROOT), toReplace);
         }
     }
 
@@ -149,12 +257,24 @@ public class MenuTree {
 
             if (idx != -1) {
                 MenuItem oldItem = list.set(idx, toReplace);
+                changedLists.add(subMenu);
+                itemsById.put(toReplace.getId(), toReplace);
                 if (toReplace.hasChildren()) {
                     ArrayList<MenuItem> items = subMenuItems.remove(oldItem);
                     subMenuItems.put(toReplace, items);
+                    changedLists.add(toReplace);
+
+                    // the children now belong to the replacement submenu
+                    SubMenuItem newParent = asSubMenu(toReplace);
+                    subMenusById.put(toReplace.getId(), newParent);
+                    if(items != null) {
+                        for(MenuItem child : items) {
+                            parentsById.put(child.getId(), newParent);
+                        }
+                    }
                 }
+                publish();
             }
-
         }
     }
 
@@ -181,6 +301,8 @@ public class MenuTree {
             else {
                 items.add(idx, newItem);
             }
+            changedLists.add(parent);
+            publish();
         }
     }
 
@@ -190,27 +312,17 @@ public class MenuTree {
      */
     public void removeMenuItem(MenuItem toRemove) {
         synchronized (subMenuItems) {
-            removeMenuItem(findParent(toRemove), toRemove);
+            removeMenuItem(parentsById.getOrDefault(toRemove.getId(), ROOT), toRemove);
         }
     }
 
     /**
-     * Finds the submenu that the provided object belongs to.
+     * Finds the submenu that the provided object belongs to, this is an indexed lookup by ID.
      * @param toFind the object to find sub menu for.
-     * @return the submenu
+     * @return the submenu, or ROOT if the item is not in the tree
      */
     public SubMenuItem findParent(MenuItem toFind) {
-        synchronized (subMenuItems) {
-            SubMenuItem parent = MenuTree.ROOT;
-            for (Map.Entry<MenuItem, ArrayList<MenuItem>> entry : subMenuItems.entrySet()) {
-                for (MenuItem item : entry.getValue()) {
-                    if (item.getId() == toFind.getId()) {
-                        parent = asSubMenu(entry.getKey());
-                    }
-                }
-            }
-            return parent;
-        }
+        return readView().findParent(toFind);
     }
 
     /**
@@ -227,22 +339,42 @@ public class MenuTree {
                 throw new UnsupportedOperationException("Menu element not found");
             }
 
-            subMenuChildren.remove(item);
+            if(subMenuChildren.remove(item)) {
+                removeFromIndexes(item);
+                changedLists.add(subMenu);
+            }
             if (item.hasChildren()) {
                 subMenuItems.remove(item);
             }
+            publish();
         }
         menuStates.remove(item.getId());
     }
 
+    /**
+     * Removes the item, and if it is a submenu all of its descendants, from the ID indexes. Must be called with
+     * the lock held and before the submenu's children are removed.
+     */
+    private void removeFromIndexes(MenuItem item) {
+        itemsById.remove(item.getId());
+        parentsById.remove(item.getId());
+        if(item.hasChildren()) {
+            subMenusById.remove(item.getId());
+            ArrayList<MenuItem> children = subMenuItems.get(item);
+            if(children != null) {
+                for(MenuItem child : children) {
+                    removeFromIndexes(child);
+                }
+            }
+        }
+    }
+
     /**
      * Returns all the submenus that are currently stored
-     * @return all available sub menus
+     * @return all available sub menus, as an immutable set
      */
     public Set<MenuItem> getAllSubMenus() {
-        synchronized (subMenuItems) {
-            return subMenuItems.keySet();
-        }
+        return readView().getAllSubMenus();
     }
 
     /**
@@ -251,24 +383,15 @@ public class MenuTree {
      * @return a list of submenu items that's immutable
      */
     public List<MenuItem> getMenuItems(MenuItem item) {
-        synchronized (subMenuItems) {
-            ArrayList<MenuItem> menuItems = subMenuItems.get(item);
-            return menuItems == null ? null : Collections.unmodifiableList(menuItems);
-        }
+        return readView().getMenuItems(item);
     }
 
     /**
      * Gets every menu item held in this menu tree, will be unique
-     * @return every menu item in the tree.
+     * @return an immutable collection of every menu item in the tree.
      */
     public Collection<MenuItem> getAllMenuItems() {
-        var toReturn = new HashSet<MenuItem>(128);
-        var subs = getAllSubMenus();
-        for (MenuItem sub : subs) {
-            toReturn.add(sub);
-            toReturn.addAll(getMenuItems(sub));
-        }
-        return toReturn;
+        return readView().getAllMenuItems();
     }
 
     /**
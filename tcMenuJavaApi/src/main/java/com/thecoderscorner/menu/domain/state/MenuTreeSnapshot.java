@@ -0,0 +1,129 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.domain.state;
+
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.SubMenuItem;
+
+import java.util.*;
+
+/**
+ * An immutable and consistent view of the structure of a MenuTree at a point in time. The tree builds a new
+ * snapshot when it is first read after being changed, so any number of threads can read a snapshot without locking,
+ * and without any risk of it changing while being iterated. Obtain the latest one from MenuTree.getSnapshot().
+ */
+public class MenuTreeSnapshot {
+    private final long version;
+    private final Map<MenuItem, ? extends List<MenuItem>> subMenuItems;
+    private final Map<Integer, MenuItem> itemsById;
+    private final Map<Integer, SubMenuItem> parentsById;
+    private final Map<Integer, SubMenuItem> subMenusById;
+
+    private MenuTreeSnapshot(long version, Map<MenuItem, ? extends List<MenuItem>> subMenuItems,
+                             Map<Integer, MenuItem> itemsById, Map<Integer, SubMenuItem> parentsById,
+                             Map<Integer, SubMenuItem> subMenusById) {
+        this.version = version;
+        this.subMenuItems = subMenuItems;
+        this.itemsById = itemsById;
+        this.parentsById = parentsById;
+        this.subMenusById = subMenusById;
+    }
+
+    /**
+     * Creates an immutable copy of the tree structures provided, the children of any submenu not in changedLists
+     * are taken from the previous snapshot instead of being copied again.
+     */
+    static MenuTreeSnapshot copyOf(long version, Map<MenuItem, ArrayList<MenuItem>> subMenuItems,
+                                   Map<Integer, MenuItem> itemsById, Map<Integer, SubMenuItem> parentsById,
+                                   Map<Integer, SubMenuItem> subMenusById,
+                                   MenuTreeSnapshot previous, Set<MenuItem> changedLists) {
+        Map<MenuItem, List<MenuItem>> children = new HashMap<>(subMenuItems.size() * 2);
+        for(var entry : subMenuItems.entrySet()) {
+            List<MenuItem> existing = (previous != null && !changedLists.contains(entry.getKey()))
+                    ? previous.subMenuItems.get(entry.getKey()) : null;
+            children.put(entry.getKey(), existing != null ? existing : List.copyOf(entry.getValue()));
+        }
+        // copied into hash maps rather than with Map.copyOf, whose iteration order changes from one run to the next,
+        // so that getAllMenuItems and getAllSubMenus keep a stable order, which code generation relies upon.
+        return new MenuTreeSnapshot(version, Collections.unmodifiableMap(children),
+                Collections.unmodifiableMap(new HashMap<>(itemsById)),
+                Collections.unmodifiableMap(new HashMap<>(parentsById)),
+                Collections.unmodifiableMap(new HashMap<>(subMenusById)));
+    }
+
+    /**
+     * Creates a view directly over the tree structures provided without copying them. This is only used by the
+     * thread that is currently changing the tree, so that it can read its own changes before they are published.
+     */
+    static MenuTreeSnapshot liveViewOf(Map<MenuItem, ArrayList<MenuItem>> subMenuItems,
+                                       Map<Integer, MenuItem> itemsById, Map<Integer, SubMenuItem> parentsById,
+                                       Map<Integer, SubMenuItem> subMenusById) {
+        return new MenuTreeSnapshot(-1, subMenuItems, itemsById, parentsById, subMenusById);
+    }
+
+    /**
+     * Gets the version of the tree that this snapshot represents, the version increases each time that a change is
+     * published, so versions that were never read are skipped.
+     * @return the version of this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a list of all menu items for a given submenu
+     * @param item the submenu to use
+     * @return an immutable list of the items in the submenu, or null if it is not a submenu in the tree
+     */
+    public List<MenuItem> getMenuItems(MenuItem item) {
+        List<MenuItem> menuItems = subMenuItems.get(item);
+        return menuItems == null ? null : Collections.unmodifiableList(menuItems);
+    }
+
+    /**
+     * Returns all the submenus that were in the tree
+     * @return all available sub menus
+     */
+    public Set<MenuItem> getAllSubMenus() {
+        return Collections.unmodifiableSet(subMenuItems.keySet());
+    }
+
+    /**
+     * Finds the submenu that the provided object belongs to.
+     * @param toFind the object to find sub menu for.
+     * @return the submenu, or ROOT if the item is not in the tree
+     */
+    public SubMenuItem findParent(MenuItem toFind) {
+        return parentsById.getOrDefault(toFind.getId(), MenuTree.ROOT);
+    }
+
+    /**
+     * Gets the menu item with the specified ID.
+     * @param id the id of the object to find.
+     * @return an optional that will be populated when present with the item.
+     */
+    public Optional<MenuItem> getMenuById(int id) {
+        return Optional.ofNullable(itemsById.get(id));
+    }
+
+    /**
+     * gets a submenu by it's ID. Returns an optional that will be empty when not present
+     * @param id the submenu to obtain
+     * @return an optional that will be populated when present with the sub menu.
+     */
+    public Optional<SubMenuItem> getSubMenuById(int id) {
+        return Optional.ofNullable(subMenusById.get(id));
+    }
+
+    /**
+     * Gets every menu item that was in the tree, will be unique
+     * @return every menu item in the tree.
+     */
+    public Collection<MenuItem> getAllMenuItems() {
+        return Collections.unmodifiableCollection(itemsById.values());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the changes that have been sent to a device and are waiting for an acknowledgement. An entry is
+ * removed either when its acknowledgement arrives, at which point the time taken is recorded against the item, or
+ * once the timeout has passed without one, at which point it is returned from expire so the caller can report it.
+ *
+ * Timeouts are held on a timing wheel, a ring of slots that each hold the entries due in one tick, so expiring
+ * only ever looks at the slots that have come due rather than every entry waiting. Each slot is a linked list
+ * through the entries themselves, so an acknowledged entry is unlinked straight away. Waiting changes are held by
+ * the numeric value of their correlation, so an acknowledgement can be matched without allocating.
+ */
+public class AcknowledgementTracker {
+    private static final int WHEEL_SLOTS = 64;
+    private static final int TICKS_PER_TIMEOUT = WHEEL_SLOTS / 2;
+
+    private final LongSupplier nanoClock;
+    private final Duration timeout;
+    private final long tickNanos;
+    private final long timeoutTicks;
+    private final long startNanos;
+    private final LongKeyedMap<PendingAck> pending = new LongKeyedMap<>();
+    private final Map<Integer, LatencyHistogram> latencyByItem = new ConcurrentHashMap<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder unmatched = new LongAdder();
+    private final PendingAck[] wheel = new PendingAck[WHEEL_SLOTS];
+    private long currentTick;
+
+    public AcknowledgementTracker(Duration timeout) {
+        this(timeout, System::nanoTime);
+    }
+
+    /**
+     * Creates a tracker that takes the time from the supplier provided, mainly for testing.
+     * @param timeout how long to wait for an acknowledgement before the change is expired
+     * @param nanoClock supplies the current time in nanoseconds, like System.nanoTime
+     */
+    public AcknowledgementTracker(Duration timeout, LongSupplier nanoClock) {
+        if(timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("Timeout must be positive");
+        this.timeout = timeout;
+        this.nanoClock = nanoClock;
+        this.tickNanos = Math.max(1, (timeout.toNanos() + TICKS_PER_TIMEOUT - 1) / TICKS_PER_TIMEOUT);
+        this.timeoutTicks = (timeout.toNanos() + tickNanos - 1) / tickNanos;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Starts waiting for the acknowledgement of a change that has just been sent.
+     * @param correlation the correlation of the change
+     * @param item the item that was changed
+     */
+    public synchronized void track(CorrelationId correlation, MenuItem item) {
+        long now = nanoClock.getAsLong();
+        var entry = new PendingAck(correlation, item, now);
+        var replaced = pending.put(correlation.getUnderlyingId(), entry);
+        if(replaced != null) unlink(replaced);
+        // one tick more than the timeout, so an entry never expires early because it was added part way into a tick.
+        long dueTick = (now - startNanos) / tickNanos + timeoutTicks + 1;
+        link(entry, (int) (dueTick % WHEEL_SLOTS));
+    }
+
+    /**
+     * Stops waiting for a change as its acknowledgement has arrived, and records how long it took. An acknowledgement
+     * for a correlation that is not being waited on is counted as unmatched, unless it has no correlation at all, as
+     * is the case for the acknowledgement of a join.
+     * @param correlation the correlation in the acknowledgement
+     * @return the item that was changed, or null if the correlation was not being waited on.
+     */
+    public MenuItem acknowledged(CorrelationId correlation) {
+        PendingAck entry;
+        synchronized(this) {
+            entry = pending.remove(correlation.getUnderlyingId());
+            if(entry != null) unlink(entry);
+        }
+        if(entry == null) {
+            if(!CorrelationId.EMPTY_CORRELATION.equals(correlation)) unmatched.increment();
+            return null;
+        }
+        long took = nanoClock.getAsLong() - entry.sentAt;
+        latency.record(took);
+        if(entry.item != null) {
+            latencyByItem.computeIfAbsent(entry.item.getId(), id -> new LatencyHistogram()).record(took);
+        }
+        return entry.item;
+    }
+
+    /**
+     * Stops waiting for a change that will never be acknowledged, because it was never sent. Unlike acknowledged,
+     * no time is recorded.
+     * @param correlation the correlation of the change
+     * @return the item that was changed, or null if the correlation was not being waited on.
+     */
+    public synchronized MenuItem untrack(CorrelationId correlation) {
+        var entry = pending.remove(correlation.getUnderlyingId());
+        if(entry == null) return null;
+        unlink(entry);
+        return entry.item;
+    }
+
+    /**
+     * Removes every change that has been waiting for longer than the timeout.
+     * @return the changes that expired, each with the item it was for.
+     */
+    public synchronized Map<CorrelationId, MenuItem> expire() {
+        Map<CorrelationId, MenuItem> expired = new LinkedHashMap<>();
+        long now = nanoClock.getAsLong();
+        long nowTick = (now - startNanos) / tickNanos;
+        // after a long gap every slot is due, there is no need to visit each one more than once.
+        long firstTick = Math.max(currentTick + 1, nowTick - WHEEL_SLOTS + 1);
+        for(long tick = firstTick; tick <= nowTick; tick++) {
+            var entry = wheel[(int) (tick % WHEEL_SLOTS)];
+            while(entry != null) {
+                var next = entry.next;
+                // entries not yet due were added after the wheel last went past this slot, they stay where they are.
+                if(now - entry.sentAt >= timeout.toNanos()) {
+                    unlink(entry);
+                    pending.remove(entry.correlation.getUnderlyingId());
+                    expired.put(entry.correlation, entry.item);
+                }
+                entry = next;
+            }
+        }
+        if(nowTick > currentTick) currentTick = nowTick;
+        return expired;
+    }
+
+    /**
+     * Stops waiting for every change, used when the connection is lost.
+     * @return the changes that were waiting, each with the item it was for.
+     */
+    public synchronized Map<CorrelationId, MenuItem> clear() {
+        Map<CorrelationId, MenuItem> waiting = new LinkedHashMap<>();
+        pending.forEachValue(entry -> waiting.put(entry.correlation, entry.item));
+        pending.clear();
+        Arrays.fill(wheel, null);
+        return waiting;
+    }
+
+    /**
+     * @return the number of changes waiting for an acknowledgement.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the time waited for an acknowledgement of each change.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the time between sending and acknowledgement for all items.
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    /**
+     * @param item the item to get the latency for
+     * @return the time between sending and acknowledgement for the item, which is empty if nothing was recorded.
+     */
+    public LatencyHistogram.Snapshot getLatency(MenuItem item) {
+        var histogram = latencyByItem.get(item.getId());
+        return histogram != null ? histogram.snapshot() : new LatencyHistogram().snapshot();
+    }
+
+    /**
+     * @return the number of acknowledgements that arrived for a correlation that was not being waited on.
+     */
+    public long getUnmatchedCount() {
+        return unmatched.sum();
+    }
+
+    /**
+     * Clears the latencies and unmatched count recorded so far, changes that are waiting are still tracked.
+     */
+    public void resetStatistics() {
+        latency.reset();
+        latencyByItem.clear();
+        unmatched.reset();
+    }
+
+    private void link(PendingAck entry, int slot) {
+        entry.slot = slot;
+        entry.next = wheel[slot];
+        if(entry.next != null) entry.next.previous = entry;
+        wheel[slot] = entry;
+    }
+
+    private void unlink(PendingAck entry) {
+        if(entry.previous != null) entry.previous.next = entry.next;
+        else wheel[entry.slot] = entry.next;
+        if(entry.next != null) entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    private static class PendingAck {
+        private final CorrelationId correlation;
+        private final MenuItem item;
+        private final long sentAt;
+        private int slot;
+        private PendingAck previous;
+        private PendingAck next;
+
+        PendingAck(CorrelationId correlation, MenuItem item, long sentAt) {
+            this.correlation = correlation;
+            this.item = item;
+            this.sentAt = sentAt;
+        }
+    }
+}
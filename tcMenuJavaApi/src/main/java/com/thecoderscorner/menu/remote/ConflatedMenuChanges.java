@@ -0,0 +1,121 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.state.MenuState;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects menu item changes as they arrive so that a user interface can apply them at its own pace, normally once
+ * per frame. Only the latest state of each item is kept, so however many changes arrive for an item between two
+ * flushes it is rendered once, and the cost of drawing depends on how many items changed rather than on how many
+ * messages the device sent.
+ *
+ * Changes can be recorded from any thread, usually from RemoteControllerListener.menuItemChanged. Flush should
+ * only be called from one thread, usually the UI thread.
+ */
+public class ConflatedMenuChanges {
+    private final MenuTree menuTree;
+    private final Object lock = new Object();
+    private Map<Integer, Change> dirty = new LinkedHashMap<>();
+    private Map<Integer, Change> flushing = new LinkedHashMap<>();
+    private final LongAdder changesRecorded = new LongAdder();
+    private final LongAdder changesFlushed = new LongAdder();
+
+    /**
+     * @param menuTree the tree that the latest state of each changed item is read from
+     */
+    public ConflatedMenuChanges(MenuTree menuTree) {
+        this.menuTree = menuTree;
+    }
+
+    /**
+     * Records that an item has changed, replacing any earlier change to the same item not yet flushed.
+     * @param item the item that changed
+     */
+    public void itemChanged(MenuItem<?> item) {
+        var state = menuTree.getMenuState(item);
+        synchronized(lock) {
+            var change = dirty.get(item.getId());
+            if(change == null) {
+                dirty.put(item.getId(), new Change(item, state));
+            }
+            else {
+                change.item = item;
+                change.state = state;
+            }
+        }
+        changesRecorded.increment();
+    }
+
+    /**
+     * Passes each item that has changed since the last flush to the consumer, along with its latest state, in the
+     * order that the items first changed.
+     * @param consumer called with each changed item and its state, the state may be null if the item has none
+     * @return the number of items passed to the consumer
+     */
+    public int flush(BiConsumer<MenuItem<?>, MenuState<?>> consumer) {
+        Map<Integer, Change> toFlush;
+        synchronized(lock) {
+            if(dirty.isEmpty()) return 0;
+            // swap the maps over, so that changes arriving during the flush go into the other one.
+            toFlush = dirty;
+            dirty = flushing;
+            flushing = toFlush;
+        }
+        int count = toFlush.size();
+        try {
+            for(var change : toFlush.values()) {
+                consumer.accept(change.item, change.state);
+            }
+        }
+        finally {
+            toFlush.clear();
+        }
+        changesFlushed.add(count);
+        return count;
+    }
+
+    /**
+     * @return true if there are changes waiting to be flushed.
+     */
+    public boolean hasChanges() {
+        synchronized(lock) {
+            return !dirty.isEmpty();
+        }
+    }
+
+    /**
+     * @return the number of changes recorded.
+     */
+    public long getChangesRecorded() {
+        return changesRecorded.sum();
+    }
+
+    /**
+     * @return the number of changes passed on by flush, which is less than recorded when changes were merged.
+     */
+    public long getChangesFlushed() {
+        return changesFlushed.sum();
+    }
+
+    private static class Change {
+        private MenuItem<?> item;
+        private MenuState<?> state;
+
+        Change(MenuItem<?> item, MenuState<?> state) {
+            this.item = item;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.remote.commands.*;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Records the traffic on a single connection: messages and bytes in each direction for every command type, messages
+ * that could not be decoded, connections lost, and the timing of heartbeats, bootstraps and acknowledgements. The
+ * connector records into this as it reads and writes, using counters that never block, so recording is cheap enough
+ * to always be on. Use snapshot to read the values, or registerMBean to make them available over JMX.
+ *
+ * Acknowledgements are matched to the changes they are for by the controller's AcknowledgementTracker, which is the
+ * only place their latency is measured. When a controller uses this connection it gives its tracker to these metrics
+ * with useAcknowledgements, and the ack latency and unmatched acks are read from it. Devices do not reply to
+ * heartbeats, they send them on their own interval, so the heartbeat gap is the time from our heartbeat being
+ * written until the device's next heartbeat is read. It is not a round trip, but a gap that keeps growing shows a
+ * device or link that is falling behind.
+ */
+public class ConnectionMetrics implements ConnectionMetricsMXBean {
+    private static final System.Logger logger = System.getLogger(ConnectionMetrics.class.getSimpleName());
+    private static final MenuCommandType[] ALL_TYPES = MenuCommandType.values();
+    private static final long NONE_PENDING = -1;
+
+    private final Supplier<String> connectionName;
+    private final LongSupplier nanoClock;
+    private final LongAdder[] messagesIn = newCounters();
+    private final LongAdder[] messagesOut = newCounters();
+    private final LongAdder[] bytesIn = newCounters();
+    private final LongAdder[] bytesOut = newCounters();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LatencyHistogram heartbeatGap = new LatencyHistogram();
+    private final LatencyHistogram bootstrapTime = new LatencyHistogram();
+    private volatile AcknowledgementTracker acknowledgements;
+    private final AtomicLong heartbeatSentAt = new AtomicLong(NONE_PENDING);
+    private final AtomicLong bootstrapStartedAt = new AtomicLong(NONE_PENDING);
+    private final AtomicLong lastBootstrapNanos = new AtomicLong();
+    private final AtomicReference<ObjectName> registeredName = new AtomicReference<>();
+
+    public ConnectionMetrics(String connectionName) {
+        this(() -> connectionName, System::nanoTime);
+    }
+
+    /**
+     * Creates metrics for a connection whose name may not be known until later, taking the time from the supplier
+     * provided, which is mainly useful for testing.
+     * @param connectionName supplies the name of the connection being recorded
+     * @param nanoClock supplies the current time in nanoseconds, like System.nanoTime
+     */
+    public ConnectionMetrics(Supplier<String> connectionName, LongSupplier nanoClock) {
+        this.connectionName = connectionName;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Reads the acknowledgement latency and unmatched acknowledgements from the tracker given, which is called by the
+     * controller that uses this connection, so that acknowledgements are only matched and timed once.
+     * @param acknowledgements the tracker that matches acknowledgements to the changes sent
+     */
+    public void useAcknowledgements(AcknowledgementTracker acknowledgements) {
+        this.acknowledgements = acknowledgements;
+    }
+
+    private static LongAdder[] newCounters() {
+        var counters = new LongAdder[ALL_TYPES.length];
+        for(int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+        return counters;
+    }
+
+    /**
+     * Called by the connector for each message decoded from the remote.
+     * @param cmd the command that was decoded
+     * @param bytes the size of the message on the wire, including the start of message and protocol bytes
+     */
+    public void messageReceived(MenuCommand cmd, int bytes) {
+        int type = cmd.getCommandType().ordinal();
+        messagesIn[type].increment();
+        bytesIn[type].add(bytes);
+
+        switch(cmd.getCommandType()) {
+            case HEARTBEAT:
+                long hbSentAt = heartbeatSentAt.getAndSet(NONE_PENDING);
+                if(hbSentAt != NONE_PENDING) heartbeatGap.record(nanoClock.getAsLong() - hbSentAt);
+                break;
+            case BOOTSTRAP:
+                var bootType = ((MenuBootstrapCommand) cmd).getBootType();
+                if(bootType == MenuBootstrapCommand.BootType.START) {
+                    bootstrapStartedAt.set(nanoClock.getAsLong());
+                }
+                else {
+                    long startedAt = bootstrapStartedAt.getAndSet(NONE_PENDING);
+                    if(startedAt != NONE_PENDING) {
+                        long took = nanoClock.getAsLong() - startedAt;
+                        bootstrapTime.record(took);
+                        lastBootstrapNanos.set(took);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Called by the connector for each message that has been encoded for writing to the remote.
+     * @param cmd the command that was encoded
+     * @param bytes the size of the message on the wire, including the start of message and protocol bytes
+     */
+    public void messageSent(MenuCommand cmd, int bytes) {
+        int type = cmd.getCommandType().ordinal();
+        messagesOut[type].increment();
+        bytesOut[type].add(bytes);
+
+        if(cmd instanceof MenuHeartbeatCommand
+                && ((MenuHeartbeatCommand) cmd).getMode() == MenuHeartbeatCommand.HeartbeatMode.NORMAL) {
+            heartbeatSentAt.compareAndSet(NONE_PENDING, nanoClock.getAsLong());
+        }
+    }
+
+    /**
+     * Called by the connector when a message could not be decoded.
+     */
+    public void decodeError() {
+        decodeErrors.increment();
+    }
+
+    /**
+     * Called by the connector when a connection that had been established is lost and it goes back to waiting for
+     * a connection. Any heartbeat or bootstrap that was being timed on the old connection is forgotten.
+     */
+    public void connectionLost() {
+        reconnects.increment();
+        heartbeatSentAt.set(NONE_PENDING);
+        bootstrapStartedAt.set(NONE_PENDING);
+    }
+
+    /**
+     * @return a copy of all the values recorded so far, that will not change.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Clears all the values recorded so far, including the acknowledgement statistics of the tracker in use. Changes
+     * waiting for acknowledgement are still tracked.
+     */
+    @Override
+    public void reset() {
+        for(var counters : new LongAdder[][] { messagesIn, messagesOut, bytesIn, bytesOut }) {
+            for(var counter : counters) counter.reset();
+        }
+        decodeErrors.reset();
+        reconnects.reset();
+        heartbeatGap.reset();
+        bootstrapTime.reset();
+        lastBootstrapNanos.set(0);
+        var tracker = acknowledgements;
+        if(tracker != null) tracker.resetStatistics();
+    }
+
+    /**
+     * Makes these metrics available over JMX from the platform MBean server, under the domain
+     * com.thecoderscorner.tcmenu with type RemoteConnector and the connection name. Registering twice has no
+     * further effect.
+     * @return the name the metrics were registered with
+     * @throws JMException if the metrics could not be registered, for example because the name is already in use
+     */
+    public ObjectName registerMBean() throws JMException {
+        var existing = registeredName.get();
+        if(existing != null) return existing;
+        var name = new ObjectName("com.thecoderscorner.tcmenu:type=RemoteConnector,name="
+                + ObjectName.quote(connectionName.get()));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        registeredName.set(name);
+        return name;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server if they were registered.
+     */
+    public void unregisterMBean() {
+        var name = registeredName.getAndSet(null);
+        if(name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch(JMException ex) {
+            logger.log(System.Logger.Level.WARNING, "Could not unregister metrics for " + connectionName.get(), ex);
+        }
+    }
+
+    @Override
+    public String getConnectionName() {
+        return connectionName.get();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return sum(messagesIn);
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return sum(messagesOut);
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return sum(bytesIn);
+    }
+
+    @Override
+    public long getBytesSent() {
+        return sum(bytesOut);
+    }
+
+    @Override
+    public Map<String, Long> getMessagesReceivedByType() {
+        return byTypeName(messagesIn);
+    }
+
+    @Override
+    public Map<String, Long> getMessagesSentByType() {
+        return byTypeName(messagesOut);
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getAcksReceived() {
+        return messagesIn[MenuCommandType.ACKNOWLEDGEMENT.ordinal()].sum();
+    }
+
+    @Override
+    public double getAckLatencyMeanMillis() {
+        return toMillis(ackLatency().getMean());
+    }
+
+    @Override
+    public double getAckLatency99thMillis() {
+        return toMillis(ackLatency().getPercentile(99));
+    }
+
+    @Override
+    public double getHeartbeatGapMeanMillis() {
+        return toMillis(heartbeatGap.snapshot().getMean());
+    }
+
+    @Override
+    public double getLastBootstrapMillis() {
+        return lastBootstrapNanos.get() / 1_000_000.0;
+    }
+
+    private LatencyHistogram.Snapshot ackLatency() {
+        var tracker = acknowledgements;
+        return tracker != null ? tracker.getLatency() : new LatencyHistogram().snapshot();
+    }
+
+    private long acksUnmatched() {
+        var tracker = acknowledgements;
+        return tracker != null ? tracker.getUnmatchedCount() : 0;
+    }
+
+    private static double toMillis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    private static long sum(LongAdder[] counters) {
+        long total = 0;
+        for(var counter : counters) total += counter.sum();
+        return total;
+    }
+
+    private static Map<String, Long> byTypeName(LongAdder[] counters) {
+        var map = new LinkedHashMap<String, Long>();
+        for(var type : ALL_TYPES) {
+            long value = counters[type.ordinal()].sum();
+            if(value != 0) map.put(type.name(), value);
+        }
+        return map;
+    }
+
+    private static Map<MenuCommandType, Long> byType(LongAdder[] counters) {
+        var map = new EnumMap<MenuCommandType, Long>(MenuCommandType.class);
+        for(var type : ALL_TYPES) {
+            long value = counters[type.ordinal()].sum();
+            if(value != 0) map.put(type, value);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * An unchanging copy of a connection's metrics at the time it was taken. Command types that have not been seen
+     * are left out of the maps.
+     */
+    public static class Snapshot {
+        private final String connectionName;
+        private final Map<MenuCommandType, Long> messagesReceived;
+        private final Map<MenuCommandType, Long> messagesSent;
+        private final Map<MenuCommandType, Long> bytesReceived;
+        private final Map<MenuCommandType, Long> bytesSent;
+        private final long decodeErrors;
+        private final long reconnects;
+        private final long acksUnmatched;
+        private final LatencyHistogram.Snapshot ackLatency;
+        private final LatencyHistogram.Snapshot heartbeatGap;
+        private final LatencyHistogram.Snapshot bootstrapTime;
+
+        private Snapshot(ConnectionMetrics metrics) {
+            connectionName = metrics.connectionName.get();
+            messagesReceived = byType(metrics.messagesIn);
+            messagesSent = byType(metrics.messagesOut);
+            bytesReceived = byType(metrics.bytesIn);
+            bytesSent = byType(metrics.bytesOut);
+            decodeErrors = metrics.decodeErrors.sum();
+            reconnects = metrics.reconnects.sum();
+            acksUnmatched = metrics.acksUnmatched();
+            ackLatency = metrics.ackLatency();
+            heartbeatGap = metrics.heartbeatGap.snapshot();
+            bootstrapTime = metrics.bootstrapTime.snapshot();
+        }
+
+        public String getConnectionName() {
+            return connectionName;
+        }
+
+        public Map<MenuCommandType, Long> getMessagesReceived() {
+            return messagesReceived;
+        }
+
+        public Map<MenuCommandType, Long> getMessagesSent() {
+            return messagesSent;
+        }
+
+        public Map<MenuCommandType, Long> getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public Map<MenuCommandType, Long> getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getMessagesReceived(MenuCommandType type) {
+            return messagesReceived.getOrDefault(type, 0L);
+        }
+
+        public long getMessagesSent(MenuCommandType type) {
+            return messagesSent.getOrDefault(type, 0L);
+        }
+
+        public long getDecodeErrors() {
+            return decodeErrors;
+        }
+
+        public long getReconnects() {
+            return reconnects;
+        }
+
+        /**
+         * @return acknowledgements for a correlation that was not being waited on, because it was never sent, had
+         * already expired, or the connection was lost. Acknowledgements without a correlation, such as the one
+         * for a join, are not counted.
+         */
+        public long getAcksUnmatched() {
+            return acksUnmatched;
+        }
+
+        public LatencyHistogram.Snapshot getAckLatency() {
+            return ackLatency;
+        }
+
+        /**
+         * @return the time from our heartbeat being written until the device's next heartbeat was read.
+         */
+        public LatencyHistogram.Snapshot getHeartbeatGap() {
+            return heartbeatGap;
+        }
+
+        public LatencyHistogram.Snapshot getBootstrapTime() {
+            return bootstrapTime;
+        }
+
+        @Override
+        public String toString() {
+            return "ConnectionMetrics{" + connectionName
+                    + ", in=" + messagesReceived
+                    + ", out=" + messagesSent
+                    + ", decodeErrors=" + decodeErrors
+                    + ", reconnects=" + reconnects
+                    + ", ackLatency=[" + ackLatency
+                    + "], heartbeatGap=[" + heartbeatGap
+                    + "], bootstrap=[" + bootstrapTime + "]}";
+        }
+    }
+}
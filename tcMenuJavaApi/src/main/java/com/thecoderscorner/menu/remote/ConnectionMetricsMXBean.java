@@ -0,0 +1,31 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.util.Map;
+
+/**
+ * The view of a connection's metrics that is exposed over JMX, see ConnectionMetrics.registerMBean. Times are
+ * given in milliseconds, as that is what monitoring consoles normally expect.
+ */
+public interface ConnectionMetricsMXBean {
+    String getConnectionName();
+    long getMessagesReceived();
+    long getMessagesSent();
+    long getBytesReceived();
+    long getBytesSent();
+    Map<String, Long> getMessagesReceivedByType();
+    Map<String, Long> getMessagesSentByType();
+    long getDecodeErrors();
+    long getReconnects();
+    long getAcksReceived();
+    double getAckLatencyMeanMillis();
+    double getAckLatency99thMillis();
+    double getHeartbeatGapMeanMillis();
+    double getLastBootstrapMillis();
+    void reset();
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Records how often a connection changes state, and how long it spends in each authentication status. A device
+ * that keeps dropping and reconnecting shows up as a high transition count with little time spent ready. Each
+ * connector keeps its own metrics, see StreamRemoteConnector.getStateMetrics.
+ */
+public class ConnectionStateMetrics {
+    private static final AuthStatus[] ALL_STATUSES = AuthStatus.values();
+
+    private final Clock clock;
+    private final long[] entryCounts = new long[ALL_STATUSES.length];
+    private final long[] millisInStatus = new long[ALL_STATUSES.length];
+    private long transitionCount;
+    private AuthStatus currentStatus;
+    private long enteredAt;
+
+    public ConnectionStateMetrics(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Called by the connector each time a new state is entered, the time since the last transition is added to the
+     * status that is being left.
+     * @param status the status of the state that was entered, states without a status are only counted.
+     */
+    public synchronized void stateEntered(AuthStatus status) {
+        long now = clock.millis();
+        if(currentStatus != null) {
+            millisInStatus[currentStatus.ordinal()] += now - enteredAt;
+        }
+        transitionCount++;
+        if(status != null) entryCounts[status.ordinal()]++;
+        currentStatus = status;
+        enteredAt = now;
+    }
+
+    /**
+     * @return the total number of state transitions on this connection.
+     */
+    public synchronized long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /**
+     * @param status the status to check
+     * @return the number of times a state with the given status has been entered.
+     */
+    public synchronized long getEntryCount(AuthStatus status) {
+        return entryCounts[status.ordinal()];
+    }
+
+    /**
+     * @param status the status to check
+     * @return the total time spent with the given status, including the time so far if it is the current status.
+     */
+    public synchronized Duration getTimeInStatus(AuthStatus status) {
+        long millis = millisInStatus[status.ordinal()];
+        if(status == currentStatus) millis += clock.millis() - enteredAt;
+        return Duration.ofMillis(millis);
+    }
+
+    /**
+     * @return the status of the current state, or null if no state has been entered yet.
+     */
+    public synchronized AuthStatus getCurrentStatus() {
+        return currentStatus;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("ConnectionStateMetrics{transitions=").append(transitionCount);
+        for(var status : ALL_STATUSES) {
+            if(entryCounts[status.ordinal()] == 0) continue;
+            sb.append(", ").append(status).append('=').append(entryCounts[status.ordinal()])
+                    .append('/').append(getTimeInStatus(status).toMillis()).append("ms");
+        }
+        return sb.append('}').toString();
+    }
+}
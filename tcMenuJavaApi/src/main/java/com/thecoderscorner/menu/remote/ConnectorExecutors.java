@@ -0,0 +1,118 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Creates the scheduled executors that remote connectors use for their read loops, connection attempts,
+ * heartbeats and listener dispatch. The builders use these when no executor is provided.
+ *
+ * In the virtual thread mode each task gets a thread of its own, so a blocking read loop costs a virtual thread
+ * rather than a platform thread. Virtual threads need Java 21 or above, this library targets an earlier Java so they
+ * are located at runtime. When they are not available the same thread per task executor is created with daemon
+ * platform threads, which behaves the same but without the memory saving.
+ */
+public final class ConnectorExecutors {
+    private static final System.Logger logger = System.getLogger(ConnectorExecutors.class.getSimpleName());
+    private static final int IDLE_THREAD_KEEP_ALIVE_SECONDS = 2;
+    private static final ThreadFactory VIRTUAL_FACTORY = findVirtualThreadFactory();
+
+    private ConnectorExecutors() { /* static helpers only */ }
+
+    /**
+     * Creates the default executor for a single connection, a small pool of daemon platform threads.
+     * @param name the name given to the threads
+     * @return an executor for a single connection
+     */
+    public static ScheduledExecutorService newPlatformExecutor(String name) {
+        return Executors.newScheduledThreadPool(2, new NamedDaemonThreadFactory(name));
+    }
+
+    /**
+     * Creates an executor that runs every task on a thread of its own, using virtual threads when the runtime
+     * provides them. Threads that are idle for a while are discarded. It can be shared between any number of
+     * connections.
+     * @param name the name given to the threads
+     * @return an executor that starts a thread per task
+     */
+    public static ScheduledExecutorService newVirtualThreadExecutor(String name) {
+        ThreadFactory factory = VIRTUAL_FACTORY;
+        if(factory == null) {
+            logger.log(WARNING, "Virtual threads are not available on this JVM, using platform threads for " + name);
+            factory = new NamedDaemonThreadFactory(name);
+        }
+        else {
+            factory = new NamedVirtualThreadFactory(name, factory);
+        }
+        return new ThreadPerTaskScheduledExecutor(new NamedDaemonThreadFactory(name + "-timer"), factory,
+                IDLE_THREAD_KEEP_ALIVE_SECONDS);
+    }
+
+    /**
+     * Gets the thread per task executor that is shared by every connection built with virtual threads, it is created
+     * on first use. However many connections share it, its timer is the only platform thread it needs. As it is
+     * shared by the whole process, it must never be shut down.
+     * @return the process wide executor that starts a thread per task
+     */
+    public static ScheduledExecutorService sharedVirtualThreadExecutor() {
+        return SharedVirtualThreadExecutor.INSTANCE;
+    }
+
+    /**
+     * @return true if this JVM is able to create virtual threads.
+     */
+    public static boolean isVirtualThreadAvailable() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    private static ThreadFactory findVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            logger.log(INFO, "Virtual threads are available for remote connections");
+            return factory;
+        }
+        catch (Exception e) {
+            // not available on this runtime (or not enabled as a preview feature)
+            return null;
+        }
+    }
+
+    /**
+     * Holds the shared executor, so that it is only created when first asked for.
+     */
+    private static class SharedVirtualThreadExecutor {
+        private static final ScheduledExecutorService INSTANCE = newVirtualThreadExecutor("remote-virtual");
+    }
+
+    /**
+     * Names the threads created by the virtual thread factory, virtual threads are always daemon threads.
+     */
+    private static class NamedVirtualThreadFactory implements ThreadFactory {
+        private final String name;
+        private final ThreadFactory factory;
+
+        NamedVirtualThreadFactory(String name, ThreadFactory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread th = factory.newThread(r);
+            th.setName(name);
+            return th;
+        }
+    }
+}
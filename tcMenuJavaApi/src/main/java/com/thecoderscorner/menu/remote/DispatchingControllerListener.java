@@ -0,0 +1,210 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.DialogMode;
+import com.thecoderscorner.menu.remote.commands.MenuButtonType;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * Wraps a RemoteControllerListener so that it is called on an executor of your choosing instead of the connector's
+ * read thread, so that a slow listener cannot hold up reading from the device and cause a heartbeat timeout. Register
+ * the wrapper with the controller in place of the listener itself:
+ *
+ * <pre>
+ *     controller.addListener(new DispatchingControllerListener(myListener, Platform::runLater));
+ * </pre>
+ *
+ * Events are queued for the listener and delivered in order, one at a time, by a single task given to the executor
+ * whenever the queue becomes non empty. While a change to an item is still waiting to be delivered, further changes
+ * to the same item are merged into it, as the listener reads the latest value from the tree anyway. This keeps the
+ * number of changes waiting no larger than the number of items in the tree however far the listener falls behind.
+ *
+ * Once the queue holds more than its capacity, acknowledgements and dialog updates are dropped rather than queued,
+ * and counted as overflows. Changes, connection state and the tree being populated are never dropped, as the
+ * listener would otherwise be left out of step with the tree.
+ */
+public class DispatchingControllerListener implements RemoteControllerListener {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final System.Logger logger = System.getLogger(getClass().getSimpleName());
+    private final RemoteControllerListener delegate;
+    private final Executor executor;
+    private final int capacity;
+    private final ArrayDeque<Consumer<RemoteControllerListener>> queue = new ArrayDeque<>();
+    private final Map<Integer, ItemChange> queuedChanges = new HashMap<>();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+    private boolean dispatchScheduled;
+
+    public DispatchingControllerListener(RemoteControllerListener delegate, Executor executor) {
+        this(delegate, executor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a listener that passes events on to the delegate using the executor provided.
+     * @param delegate the listener that will receive the events
+     * @param executor the executor on which the delegate is called, for example Platform::runLater for JavaFX
+     * @param capacity the number of events that can be queued before acknowledgements and dialogs are dropped
+     */
+    public DispatchingControllerListener(RemoteControllerListener delegate, Executor executor, int capacity) {
+        if(capacity < 1) throw new IllegalArgumentException("Capacity must be at least one");
+        this.delegate = delegate;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void menuItemChanged(MenuItem item, boolean valueOnly) {
+        synchronized(queue) {
+            var waiting = queuedChanges.get(item.getId());
+            if(waiting != null) {
+                waiting.item = item;
+                waiting.valueOnly = waiting.valueOnly && valueOnly;
+                coalesced.increment();
+                return;
+            }
+            var change = new ItemChange(item, valueOnly);
+            queuedChanges.put(item.getId(), change);
+            enqueue(change);
+        }
+    }
+
+    @Override
+    public void treeFullyPopulated() {
+        synchronized(queue) {
+            enqueue(RemoteControllerListener::treeFullyPopulated);
+        }
+    }
+
+    @Override
+    public void connectionState(RemoteInformation remoteInformation, AuthStatus connected) {
+        synchronized(queue) {
+            enqueue(l -> l.connectionState(remoteInformation, connected));
+        }
+    }
+
+    @Override
+    public void ackReceived(CorrelationId key, MenuItem item, AckStatus status) {
+        enqueueUnlessFull(l -> l.ackReceived(key, item, status));
+    }
+
+    @Override
+    public void ackTimedOut(CorrelationId key, MenuItem item) {
+        enqueueUnlessFull(l -> l.ackTimedOut(key, item));
+    }
+
+    @Override
+    public void dialogUpdate(DialogMode mode, String header, String buffer, MenuButtonType btn1, MenuButtonType btn2) {
+        enqueueUnlessFull(l -> l.dialogUpdate(mode, header, buffer, btn1, btn2));
+    }
+
+    /**
+     * @return the number of events waiting to be delivered to the listener.
+     */
+    public int getQueuedCount() {
+        synchronized(queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return the number of events that have been delivered to the listener.
+     */
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return the number of changes that were merged into a change already waiting for the same item.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of events dropped because the queue was over capacity.
+     */
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    private void enqueueUnlessFull(Consumer<RemoteControllerListener> event) {
+        synchronized(queue) {
+            if(queue.size() >= capacity) {
+                overflowed.increment();
+                return;
+            }
+            enqueue(event);
+        }
+    }
+
+    private void enqueue(Consumer<RemoteControllerListener> event) {
+        queue.add(event);
+        if(!dispatchScheduled) {
+            dispatchScheduled = true;
+            try {
+                executor.execute(this::dispatch);
+            }
+            catch(RejectedExecutionException e) {
+                // most likely the executor is shutting down, try again with the next event.
+                dispatchScheduled = false;
+                logger.log(WARNING, "Executor rejected listener dispatch, events remain queued");
+            }
+        }
+    }
+
+    private void dispatch() {
+        while(true) {
+            Consumer<RemoteControllerListener> event;
+            synchronized(queue) {
+                event = queue.poll();
+                if(event == null) {
+                    dispatchScheduled = false;
+                    return;
+                }
+                if(event instanceof ItemChange) queuedChanges.remove(((ItemChange) event).item.getId());
+            }
+            try {
+                event.accept(delegate);
+            }
+            catch(Exception e) {
+                logger.log(ERROR, "Listener threw an exception while handling an event", e);
+            }
+            delivered.increment();
+        }
+    }
+
+    private static class ItemChange implements Consumer<RemoteControllerListener> {
+        private MenuItem item;
+        private boolean valueOnly;
+
+        ItemChange(MenuItem item, boolean valueOnly) {
+            this.item = item;
+            this.valueOnly = valueOnly;
+        }
+
+        @Override
+        public void accept(RemoteControllerListener listener) {
+            listener.menuItemChanged(item, valueOnly);
+        }
+    }
+}
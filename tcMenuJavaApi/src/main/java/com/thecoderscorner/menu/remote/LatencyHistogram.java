@@ -0,0 +1,138 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size histogram of durations in nanoseconds that can be recorded from any thread without locking. Each
+ * power of two is split into eight buckets, so any value read back is within 12.5% of the value recorded, which is
+ * plenty for latencies. Values above about 18 minutes all go into the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration, negative values are recorded as zero.
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if(nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucketFor(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Takes a copy of the values recorded so far. Values recorded while the copy is taken may or may not be included.
+     * @return a snapshot that will not change.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for(int i = 0; i < BUCKET_COUNT; i++) copy[i] = buckets.get(i);
+        return new Snapshot(copy, count.sum(), total.sum(), max.get());
+    }
+
+    /**
+     * Clears all the values recorded so far.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucketFor(long nanos) {
+        if(nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if(exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int bucket) {
+        if(bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * An unchanging copy of a histogram at the time it was taken.
+     */
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] buckets, long count, long total, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of values recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the mean of the recorded values, or zero if nothing was recorded.
+         */
+        public Duration getMean() {
+            return Duration.ofNanos(count == 0 ? 0 : total / count);
+        }
+
+        /**
+         * @return the largest value recorded, or zero if nothing was recorded.
+         */
+        public Duration getMax() {
+            return Duration.ofNanos(max);
+        }
+
+        /**
+         * Gets the value that the given percentage of recorded values are at or below, to within the precision of
+         * the histogram.
+         * @param percentile the percentile between 0 and 100, for example 99 for the 99th percentile.
+         * @return the value at the percentile, or zero if nothing was recorded.
+         */
+        public Duration getPercentile(double percentile) {
+            if(count == 0) return Duration.ZERO;
+            long wanted = Math.max(1, (long) Math.ceil(count * (percentile / 100.0)));
+            long seen = 0;
+            for(int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if(seen >= wanted) return Duration.ofNanos(Math.min(highestValueIn(i), max));
+            }
+            return Duration.ofNanos(max);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + getMean().toNanos() / 1000 + "us, p50="
+                    + getPercentile(50).toNanos() / 1000 + "us, p99=" + getPercentile(99).toNanos() / 1000
+                    + "us, max=" + max / 1000 + "us";
+        }
+    }
+}
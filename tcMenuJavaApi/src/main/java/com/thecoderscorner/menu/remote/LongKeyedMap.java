@@ -0,0 +1,183 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A map from a primitive long to a value, used for tables keyed by correlation id so that looking up an
+ * acknowledgement neither boxes the key nor allocates an entry. It uses open addressing with linear probing, and
+ * removal shifts the following entries back so no tombstones are left behind. Null values cannot be stored, as a
+ * null value marks an empty slot. It is not thread safe, callers must lock around it.
+ * @param <V> the type of value stored
+ */
+class LongKeyedMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongKeyedMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongKeyedMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while(capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value stored for the key, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int slot = slotFor(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) return (V) values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value against a key, replacing any value already there.
+     * @param key the key to store the value against
+     * @param value the value, which must not be null
+     * @return the value that was replaced, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if(value == null) throw new IllegalArgumentException("Null values cannot be stored");
+        int slot = slotFor(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                var old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size * 2 > values.length) resize(values.length * 2);
+        return null;
+    }
+
+    /**
+     * @param key the key to remove
+     * @return the value that was removed, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int slot = slotFor(key);
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                var old = (V) values[slot];
+                removeAt(slot);
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Removes every value that matches the predicate.
+     * @param predicate returns true for values that should be removed
+     * @return the number of values removed
+     */
+    @SuppressWarnings("unchecked")
+    int removeIf(Predicate<V> predicate) {
+        int removed = 0;
+        int slot = 0;
+        while(slot < values.length) {
+            if(values[slot] != null && predicate.test((V) values[slot])) {
+                removeAt(slot);
+                removed++;
+                // an entry may have been shifted back into this slot, so look at it again. Entries are only ever
+                // shifted into slots already visited when they were visited themselves, so none are missed.
+            }
+            else {
+                slot++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @param consumer called with each value stored, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> consumer) {
+        for(var value : values) {
+            if(value != null) consumer.accept((V) value);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void removeAt(int slot) {
+        values[slot] = null;
+        size--;
+        // shift back any following entries that would no longer be found now that there is a gap.
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while(values[next] != null) {
+            int home = slotFor(keys[next]);
+            if(((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                values[next] = null;
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        allocate(capacity);
+        for(int i = 0; i < oldValues.length; i++) {
+            if(oldValues[i] == null) continue;
+            int slot = slotFor(oldKeys[i]);
+            while(values[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slotFor(long key) {
+        // the same mixing as CorrelationId.hashCode, as sequential keys would otherwise all land next to each other.
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+}
@@ -7,10 +7,12 @@
 package com.thecoderscorner.menu.remote;
 
 import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.TagValFrameScanner;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+
 /**
  * This is a low level part of the API that most people don't need to deal, implementations will translate
  * commands to and from a given protocol.
@@ -35,4 +37,26 @@ public interface MenuCommandProtocol {
      * @return the ID for this protocol
      */
     byte getKeyIdentifier();
+
+    /**
+     * Checks if the buffer contains at least one complete message for this protocol, without moving the buffer's
+     * position. The buffer is positioned at the message type, directly after the protocol identifier. This scans
+     * the whole message each time, connections should use a scanner from createFrameScanner instead.
+     * @param buffer the buffer to check, it is not modified by this call
+     * @return true if a complete message is available, otherwise false.
+     * @throws IOException if the data in the buffer could never form a valid message
+     */
+    default boolean isCompleteMessage(ByteBuffer buffer) throws IOException {
+        return createFrameScanner().isComplete(buffer);
+    }
+
+    /**
+     * Creates a scanner that detects when a message of this protocol has been completely received, each connection
+     * needs its own scanner. The default scanner looks for the field terminator followed by end of message, as used
+     * by the tag value protocol.
+     * @return a new frame scanner for this protocol
+     */
+    default MessageFrameScanner createFrameScanner() {
+        return new TagValFrameScanner();
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Detects when a message that is arriving in pieces has been completely received. A scanner may remember how much
+ * of the message it has already looked at, so that each new piece of data is only examined once. Each connection
+ * needs its own scanner, see MenuCommandProtocol.createFrameScanner.
+ *
+ * The scanner works relative to the start of the message, so the message may be moved within the buffer between
+ * calls, for example by compact(), as long as the buffer is always positioned at the start of the same message.
+ */
+public interface MessageFrameScanner {
+    /**
+     * Checks if the buffer now holds the complete message, without moving the buffer's position. The buffer is
+     * positioned at the message type, directly after the protocol identifier.
+     * @param buffer the buffer holding the start of the message
+     * @return true if the message is complete, otherwise false.
+     * @throws IOException if the data in the buffer could never form a valid message
+     */
+    boolean isComplete(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Must be called before scanning a different message, for example once a message has been read or skipped.
+     */
+    void reset();
+}
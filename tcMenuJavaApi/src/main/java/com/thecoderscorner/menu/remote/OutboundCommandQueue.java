@@ -0,0 +1,186 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.remote.commands.MenuChangeCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static com.thecoderscorner.menu.remote.commands.MenuChangeCommand.ChangeType.DELTA;
+
+/**
+ * A bounded queue of the commands waiting to be written to the remote. Change commands for an item that is already
+ * waiting to be sent are coalesced with the waiting command, so that a burst of changes from a UI control goes out as
+ * a single change: a newer absolute value replaces the waiting change, and a delta is added to a waiting delta. A
+ * delta cannot be combined with a waiting absolute value, so it is queued behind it.
+ *
+ * The replaced command's correlation is never sent, so it will never be acknowledged by the remote, only the latest
+ * correlation is sent. Offering a command returns the correlations that will never be sent, either because they were
+ * replaced or because the queue was full, so that whoever is waiting for them can stop.
+ *
+ * This class is thread safe, all methods synchronize on the queue.
+ */
+class OutboundCommandQueue {
+    /** The outcome of offering a command, only START_WRITER requires the caller to start writing the queue. */
+    enum OfferResult { START_WRITER, QUEUED, DROPPED }
+
+    private final int capacity;
+    private final Queue<PendingCommand> pending = new ArrayDeque<>();
+    private final Map<Integer, PendingCommand> latestChangeById = new HashMap<>();
+    private long droppedCount;
+    private long coalescedCount;
+    private boolean writing;
+
+    OutboundCommandQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a command to the queue, coalescing it with a waiting change for the same item where possible.
+     * @param cmd the command to queue
+     * @return the outcome, along with the correlations of any commands that will now never be sent.
+     */
+    synchronized Offer offer(MenuCommand cmd) {
+        if(cmd instanceof MenuChangeCommand) {
+            var replaced = coalesce((MenuChangeCommand) cmd);
+            if(replaced != null) {
+                coalescedCount++;
+                return new Offer(OfferResult.QUEUED, replaced);
+            }
+        }
+
+        if(pending.size() >= capacity) {
+            droppedCount++;
+            return new Offer(OfferResult.DROPPED, correlationsOf(cmd, null));
+        }
+
+        var entry = new PendingCommand(cmd);
+        pending.add(entry);
+        if(cmd instanceof MenuChangeCommand) {
+            latestChangeById.put(((MenuChangeCommand) cmd).getMenuItemId(), entry);
+        }
+
+        if(writing) return new Offer(OfferResult.QUEUED, List.of());
+        writing = true;
+        return new Offer(OfferResult.START_WRITER, List.of());
+    }
+
+    /**
+     * @return the correlations of the waiting change that was replaced, or null if the change could not be coalesced.
+     */
+    private List<CorrelationId> coalesce(MenuChangeCommand change) {
+        var waiting = latestChangeById.get(change.getMenuItemId());
+        if(waiting == null) return null;
+
+        var waitingChange = (MenuChangeCommand) waiting.command;
+        if(change.getChangeType() != DELTA) {
+            waiting.command = change;
+            return correlationsOf(waitingChange, change.getCorrelationId());
+        }
+
+        if(waitingChange.getChangeType() != DELTA) return null;
+        try {
+            int total = Integer.parseInt(waitingChange.getValue()) + Integer.parseInt(change.getValue());
+            waiting.command = new MenuChangeCommand(change.getCorrelationId(), change.getMenuItemId(), DELTA,
+                    Integer.toString(total));
+            return correlationsOf(waitingChange, change.getCorrelationId());
+        }
+        catch(NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static List<CorrelationId> correlationsOf(MenuCommand cmd, CorrelationId stillSent) {
+        if(!(cmd instanceof MenuChangeCommand)) return List.of();
+        var correlation = ((MenuChangeCommand) cmd).getCorrelationId();
+        if(correlation == null || CorrelationId.EMPTY_CORRELATION.equals(correlation) || correlation.equals(stillSent)) {
+            return List.of();
+        }
+        return List.of(correlation);
+    }
+
+    /**
+     * Takes the next command to be written. When the queue is empty the writer is finished and null is returned,
+     * the next command offered will then start a new writer.
+     * @return the next command or null if there are none.
+     */
+    synchronized MenuCommand poll() {
+        var entry = pending.poll();
+        if(entry == null) {
+            writing = false;
+            return null;
+        }
+        if(entry.command instanceof MenuChangeCommand) {
+            latestChangeById.remove(((MenuChangeCommand) entry.command).getMenuItemId(), entry);
+        }
+        return entry.command;
+    }
+
+    /**
+     * Discards all waiting commands, used when the connection is closed. The next command offered starts a new
+     * writer, should one still be running it stops at its next poll.
+     */
+    synchronized void clear() {
+        pending.clear();
+        latestChangeById.clear();
+        writing = false;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * The outcome of offering a command to the queue.
+     */
+    static class Offer {
+        private final OfferResult result;
+        private final List<CorrelationId> unsent;
+
+        Offer(OfferResult result, List<CorrelationId> unsent) {
+            this.result = result;
+            this.unsent = unsent;
+        }
+
+        /**
+         * @return START_WRITER when a writer must be started, QUEUED if a writer is already running, otherwise DROPPED.
+         */
+        OfferResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return the correlations of commands that will never be sent, the one replaced by a coalesced change, or
+         * the one offered when it was dropped.
+         */
+        List<CorrelationId> getUnsent() {
+            return unsent;
+        }
+    }
+
+    private static class PendingCommand {
+        private MenuCommand command;
+
+        PendingCommand(MenuCommand command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.io.IOException;
+
+/**
+ * An exception that indicates a command was not sent because too many commands were already waiting to be written
+ * to the remote. The connection itself is still usable.
+ */
+public class OutboundQueueFullException extends IOException {
+    public OutboundQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -7,8 +7,11 @@
 package com.thecoderscorner.menu.remote;
 
 import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * This is the base interface implemented by all remote connectors, it provides the means to both send and receive
@@ -34,6 +37,18 @@ public interface RemoteConnector {
      */
     void sendMenuCommand(MenuCommand msg) throws IOException;
 
+    /**
+     * Sends a command in the same way as sendMenuCommand, and also reports the earlier changes that were still
+     * waiting to be sent and have been combined into this one. Those changes are never sent themselves, so their
+     * correlations will never be acknowledged. By default nothing is ever combined.
+     * @param msg the message to send.
+     * @return the correlations of the waiting changes that this command replaced, usually empty.
+     */
+    default List<CorrelationId> sendMenuCommandSuperseding(MenuCommand msg) throws IOException {
+        sendMenuCommand(msg);
+        return List.of();
+    }
+
     /**
      * Gets the name of this connector locally
      */
@@ -72,4 +87,13 @@ public interface RemoteConnector {
      * @return the status of the connection and authentication.
      */
     AuthStatus getAuthenticationStatus();
+
+    /**
+     * Gets the metrics recorded for this connection, such as the messages and bytes sent and received, decode errors
+     * and acknowledgement latency. Connectors that do not record metrics return an empty optional.
+     * @return the metrics for this connection if they are recorded.
+     */
+    default Optional<ConnectionMetrics> getConnectionMetrics() {
+        return Optional.empty();
+    }
 }
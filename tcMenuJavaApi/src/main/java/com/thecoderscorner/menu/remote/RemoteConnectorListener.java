@@ -8,6 +8,8 @@ package com.thecoderscorner.menu.remote;
 
 import com.thecoderscorner.menu.remote.commands.MenuCommand;
 
+import java.util.List;
+
 /**
  * This is the low level, communication listener interface that you implement in order to know when commands have
  * been received from the remote device. Normally, this is used by the RemoteMenuController and not something a
@@ -21,4 +23,17 @@ public interface RemoteConnectorListener {
      * @param command the command it decoded.
      */
     void onCommand(RemoteConnector connector, MenuCommand command);
+
+    /**
+     * Sent by the connector when several messages were decoded from the same read, by default each one is passed to
+     * onCommand in turn. Override this to handle a burst of messages together, for example to update a menu tree
+     * once for the whole batch.
+     * @param connector the connector that sent the messages
+     * @param commands the commands it decoded, in the order they were received.
+     */
+    default void onCommands(RemoteConnector connector, List<MenuCommand> commands) {
+        for(var command : commands) {
+            onCommand(connector, command);
+        }
+    }
 }
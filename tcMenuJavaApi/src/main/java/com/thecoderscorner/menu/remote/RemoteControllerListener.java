@@ -22,7 +22,8 @@ public interface RemoteControllerListener {
 
     /**
      * Called when a menu item has either been added or changed, the valueOnly indicates if the change
-     * is just in the latest value, or also in the MenuItem structure too.
+     * is just in the latest value, or also in the MenuItem structure too. Items received during a bootstrap
+     * are not reported here, instead treeFullyPopulated is called once they have all been added.
      * @param item the item that has changed
      * @param valueOnly true if only the current value has changed, false if the MenuItem has changed too
      */
@@ -30,7 +31,7 @@ public interface RemoteControllerListener {
 
     /**
      * Indicates that the tree is now fully populated, and therefore all menus that exist on the Arduino
-     * also exist locally in the MenuTree.
+     * also exist locally in the MenuTree along with their current values.
      */
     void treeFullyPopulated();
 
@@ -49,6 +50,17 @@ public interface RemoteControllerListener {
      */
     void ackReceived(CorrelationId key, MenuItem item, AckStatus status);
 
+    /**
+     * Indicates that a change was not acknowledged by the embedded device within the controller's acknowledgement
+     * timeout. Should the acknowledgement arrive later, ackReceived is called with a null item. By default nothing
+     * is done.
+     * @param key the correlation ID of the change
+     * @param item the item that was changed
+     */
+    default void ackTimedOut(CorrelationId key, MenuItem item) {
+        // most listeners only need to know about acknowledgements that arrive.
+    }
+
     /**
      * Called when a dialog event occurs on the remote, be it to show or hide a dialog
      * @param mode the mode of the dialog update
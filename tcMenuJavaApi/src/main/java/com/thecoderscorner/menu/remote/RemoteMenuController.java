@@ -13,21 +13,28 @@ import com.thecoderscorner.menu.domain.state.PortableColor;
 import com.thecoderscorner.menu.domain.util.MenuItemVisitor;
 import com.thecoderscorner.menu.remote.commands.*;
 import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.CorrelationIdGenerator;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static com.thecoderscorner.menu.remote.AuthStatus.AWAITING_CONNECTION;
 import static com.thecoderscorner.menu.remote.AuthStatus.CONNECTION_READY;
 import static com.thecoderscorner.menu.remote.RemoteInformation.NOT_CONNECTED;
 import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.ERROR;
 import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
 
 /**
  * This class manages a single remote connection to an Arduino. It is responsible for check
@@ -35,27 +42,77 @@ import static java.lang.System.Logger.Level.INFO;
  * alive too. This class abstracts the connectivity part away from the business logic.
  * The remote connection is then handled by the RemoteConnector. Normally, one creates a
  * whole remote stack using one the builders, such as Rs232ControllerBuilder.
+ *
+ * Boot items that arrive between the start and end of a bootstrap are held back and then applied to the
+ * MenuTree in a single batch when the bootstrap ends, after which listeners are told the tree is fully
+ * populated. This avoids notifying listeners for every item during the bootstrap. Likewise, when the connector
+ * delivers several commands together they are applied to the tree in one update, and listeners are notified
+ * once the update is visible.
+ *
+ * Each change sent with sendDeltaUpdate or sendAbsoluteUpdate is tracked until the device acknowledges it, see
+ * AcknowledgementTracker. Changes that are not acknowledged within the timeout are reported to listeners through
+ * ackTimedOut. Timeouts are checked whenever a change is sent, and also periodically when the controller is given
+ * an executor. A change that the connector combines with a newer change for the same item before sending it is no
+ * longer tracked, as only the newer change will be acknowledged.
  */
 public class RemoteMenuController {
+    public static final Duration DEFAULT_ACK_TIMEOUT = Duration.ofSeconds(10);
 
     private final System.Logger logger = System.getLogger(getClass().getSimpleName());
     private final RemoteConnector connector;
     private final MenuTree managedMenu;
     private final AtomicReference<RemoteInformation> remoteParty = new AtomicReference<>(NOT_CONNECTED);
-    private final ConcurrentMap<CorrelationId, MenuItem> itemsInProgress = new ConcurrentHashMap<>();
+    private final AcknowledgementTracker acknowledgements;
+    private final CorrelationIdGenerator correlations = new CorrelationIdGenerator();
+    private final ScheduledExecutorService executor;
+    private volatile ScheduledFuture<?> timeoutCheck;
     private final List<RemoteControllerListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<BootItemMenuCommand> pendingBootItems = new ArrayList<>();
+    private boolean bootstrapInProgress = false;
+    private volatile boolean bootItemsApplied = false;
+    private final ThreadLocal<List<Runnable>> deferredNotifications = new ThreadLocal<>();
 
     public RemoteMenuController(RemoteConnector connector, MenuTree managedMenu) {
+        this(connector, managedMenu, null, DEFAULT_ACK_TIMEOUT);
+    }
+
+    /**
+     * Creates a controller that checks for changes that have not been acknowledged on the executor provided.
+     * @param connector the connector to the device
+     * @param managedMenu the tree that will hold the device's menu
+     * @param executor the executor to periodically check for timeouts on, or null to only check when sending
+     * @param ackTimeout how long to wait for a change to be acknowledged before reporting that it timed out
+     */
+    public RemoteMenuController(RemoteConnector connector, MenuTree managedMenu, ScheduledExecutorService executor,
+                                Duration ackTimeout) {
         this.connector = connector;
         this.managedMenu = managedMenu;
+        this.executor = executor;
+        this.acknowledgements = new AcknowledgementTracker(ackTimeout);
+        connector.getConnectionMetrics().ifPresent(metrics -> metrics.useAcknowledgements(acknowledgements));
     }
 
     /**
      * starts the remote connection such that it will attempt to establish connectivity
      */
     public void start() {
-        connector.registerConnectorListener(this::onCommandReceived);
+        connector.registerConnectorListener(new RemoteConnectorListener() {
+            @Override
+            public void onCommand(RemoteConnector connector, MenuCommand command) {
+                onCommandReceived(connector, command);
+            }
+
+            @Override
+            public void onCommands(RemoteConnector connector, List<MenuCommand> commands) {
+                onCommandsReceived(connector, commands);
+            }
+        });
         connector.registerConnectionChangeListener(this::onConnectionChange);
+        if(executor != null) {
+            long checkMillis = Math.max(50, acknowledgements.getTimeout().toMillis() / 4);
+            timeoutCheck = executor.scheduleAtFixedRate(this::scheduledAckTimeoutCheck, checkMillis, checkMillis,
+                    TimeUnit.MILLISECONDS);
+        }
         connector.start();
     }
 
@@ -63,10 +120,15 @@ public class RemoteMenuController {
         logger.log(INFO, "Connection state changed to connected = " + status);
 
         if(status == AWAITING_CONNECTION) {
-            itemsInProgress.forEach((key, item) ->
+            acknowledgements.clear().forEach((key, item) ->
                     listeners.forEach(rcl -> rcl.ackReceived(key, item, AckStatus.UNKNOWN_ERROR))
             );
-            itemsInProgress.clear();
+
+            synchronized (pendingBootItems) {
+                bootstrapInProgress = false;
+                bootItemsApplied = false;
+                pendingBootItems.clear();
+            }
         }
 
         listeners.forEach(l-> l.connectionState(remoteParty.get(), status));
@@ -76,6 +138,8 @@ public class RemoteMenuController {
      * attempt to stop the underlying connector
      */
     public void stop() {
+        var check = timeoutCheck;
+        if(check != null) check.cancel(false);
         connector.stop();
     }
 
@@ -86,20 +150,35 @@ public class RemoteMenuController {
      */
     protected void sendCommand(MenuCommand command) {
         try {
-            connector.sendMenuCommand(command);
+            // changes that were combined into this one are never sent, so they will never be acknowledged.
+            connector.sendMenuCommandSuperseding(command).forEach(acknowledgements::untrack);
+        } catch (OutboundQueueFullException e) {
+            logger.log(WARNING, e.getMessage());
+            reportNotSent(command);
         } catch (IOException e) {
             logger.log(ERROR, "Error while writing out command", e);
             connector.close();
         }
     }
 
+    /**
+     * A change that could not be queued is reported to listeners straight away as an error, rather than waiting for
+     * it to time out.
+     */
+    private void reportNotSent(MenuCommand command) {
+        if(!(command instanceof MenuChangeCommand)) return;
+        var correlation = ((MenuChangeCommand) command).getCorrelationId();
+        var item = acknowledgements.untrack(correlation);
+        if(item != null) notifyListeners(l -> l.ackReceived(correlation, item, AckStatus.UNKNOWN_ERROR));
+    }
+
 
     /**
      * Send a dialog update
      * @param buttonType the type of button press to activate on the remote.
      */
     public CorrelationId sendDialogAction(MenuButtonType buttonType) {
-        CorrelationId correlationId = new CorrelationId();
+        CorrelationId correlationId = correlations.newCorrelation();
         sendCommand(newDialogCommand(DialogMode.ACTION, "", "", buttonType, buttonType, correlationId));
         return correlationId;
     }
@@ -110,8 +189,9 @@ public class RemoteMenuController {
      * @param deltaChange the amount to change by
      */
     public CorrelationId sendDeltaUpdate(MenuItem item, int deltaChange) {
-        CorrelationId correlationId = new CorrelationId();
-        itemsInProgress.put(correlationId, item);
+        CorrelationId correlationId = correlations.newCorrelation();
+        checkForAckTimeouts();
+        acknowledgements.track(correlationId, item);
         sendCommand(newDeltaChangeCommand(correlationId, item, deltaChange));
         return correlationId;
     }
@@ -122,12 +202,42 @@ public class RemoteMenuController {
      * @param newValue the absolute change
      */
     public CorrelationId sendAbsoluteUpdate(MenuItem item, Object newValue) {
-        CorrelationId correlationId = new CorrelationId();
-        itemsInProgress.put(correlationId, item);
+        CorrelationId correlationId = correlations.newCorrelation();
+        checkForAckTimeouts();
+        acknowledgements.track(correlationId, item);
         sendCommand(newAbsoluteMenuChangeCommand(correlationId, item, newValue));
         return correlationId;
     }
 
+    /**
+     * Reports every change that has waited longer than the acknowledgement timeout to the listeners through
+     * ackTimedOut, after which the change is no longer tracked. This is called automatically, but may also be
+     * called directly at any time.
+     */
+    public void checkForAckTimeouts() {
+        var expired = acknowledgements.expire();
+        if(expired.isEmpty()) return;
+        logger.log(WARNING, expired.size() + " changes were not acknowledged by " + connector.getConnectionName());
+        expired.forEach((key, item) -> notifyListeners(l -> l.ackTimedOut(key, item)));
+    }
+
+    private void scheduledAckTimeoutCheck() {
+        // an exception would stop any further checks being scheduled.
+        try {
+            checkForAckTimeouts();
+        }
+        catch(Exception ex) {
+            logger.log(ERROR, "Acknowledgement timeout check failed for " + connector.getConnectionName(), ex);
+        }
+    }
+
+    /**
+     * @return the changes waiting for acknowledgement, along with the time taken to acknowledge them by item.
+     */
+    public AcknowledgementTracker getAcknowledgements() {
+        return acknowledgements;
+    }
+
     /**
      * get the underlying connectivity, rarely needed
      * @return underlying connector
@@ -137,22 +247,59 @@ public class RemoteMenuController {
     }
 
     /**
-     * Check if all the menu items from the remote device are available locally yet.
+     * Check if all the menu items from the remote device are available locally yet. The connector is ready as soon as
+     * it reads the end of the bootstrap, which can be before the items that came with it are in the tree, so both are
+     * needed.
      * @return true if the populated, otherwise false.
      */
     public boolean isTreeFullyPopulated() {
-        return connector.getAuthenticationStatus() == CONNECTION_READY;
+        return bootItemsApplied && connector.getAuthenticationStatus() == CONNECTION_READY;
     }
 
     /**
      * register for events when the tree becomes fully populated, a menu item changes
-     * or there's a change in connectivity.
+     * or there's a change in connectivity. Listeners are called on the connector's read thread, a listener that
+     * may take a while should be wrapped in a DispatchingControllerListener so that it does not hold up reading.
      * @param listener your listener to register for events
      */
     public void addListener(RemoteControllerListener listener) {
         listeners.add(listener);
     }
 
+    /**
+     * Applies a batch of commands to the tree as a single update, listeners are then notified of each change once
+     * the whole batch is visible in the tree.
+     */
+    private void onCommandsReceived(RemoteConnector remoteConnector, List<MenuCommand> commands) {
+        var notifications = new ArrayList<Runnable>();
+        deferredNotifications.set(notifications);
+        try {
+            managedMenu.updateInBatch(() -> commands.forEach(cmd -> onCommandReceived(remoteConnector, cmd)));
+        }
+        finally {
+            deferredNotifications.remove();
+        }
+        notifications.forEach(Runnable::run);
+    }
+
+    private void notifyListeners(Consumer<RemoteControllerListener> notification) {
+        afterTreeUpdated(() -> listeners.forEach(notification));
+    }
+
+    /**
+     * Runs the action once the tree holds the changes made so far, which is straight away unless a batch of
+     * commands is being applied, in which case it is once the whole batch is visible.
+     */
+    private void afterTreeUpdated(Runnable action) {
+        var deferred = deferredNotifications.get();
+        if(deferred != null) {
+            deferred.add(action);
+        }
+        else {
+            action.run();
+        }
+    }
+
     private void onCommandReceived(RemoteConnector remoteConnector, MenuCommand menuCommand) {
         switch(menuCommand.getCommandType()) {
             case ACKNOWLEDGEMENT:
@@ -184,55 +331,83 @@ public class RemoteMenuController {
     }
 
     private void onBootstrap(MenuBootstrapCommand menuCommand) {
-        if(menuCommand.getBootType() == MenuBootstrapCommand.BootType.END) {
-            listeners.forEach(RemoteControllerListener::treeFullyPopulated);
+        if(menuCommand.getBootType() == MenuBootstrapCommand.BootType.START) {
+            synchronized (pendingBootItems) {
+                bootstrapInProgress = true;
+                bootItemsApplied = false;
+                pendingBootItems.clear();
+            }
+        }
+        else if(menuCommand.getBootType() == MenuBootstrapCommand.BootType.END) {
+            List<BootItemMenuCommand> bootItems;
+            synchronized (pendingBootItems) {
+                bootstrapInProgress = false;
+                bootItems = new ArrayList<>(pendingBootItems);
+                pendingBootItems.clear();
+            }
+
+            managedMenu.updateInBatch(() -> bootItems.forEach(this::applyBootItem));
+            afterTreeUpdated(() -> bootItemsApplied = true);
+            logger.log(DEBUG, "Bootstrap complete, " + bootItems.size() + " items added to the tree");
+            notifyListeners(RemoteControllerListener::treeFullyPopulated);
         }
     }
 
     private void onDialogChange(MenuDialogCommand menuCommand) {
-        listeners.forEach(l -> l.dialogUpdate(
+        notifyListeners(l -> l.dialogUpdate(
                 menuCommand.getDialogMode(),
                 menuCommand.getHeader(), menuCommand.getBuffer(),
                 menuCommand.getButton1(), menuCommand.getButton2()));
     }
 
     private void onAcknowledgementCommand(MenuAcknowledgementCommand menuCommand) {
-        var item = itemsInProgress.get(menuCommand.getCorrelationId());
-        listeners.forEach(rcl->
+        var item = acknowledgements.acknowledged(menuCommand.getCorrelationId());
+        notifyListeners(rcl->
                 rcl.ackReceived(menuCommand.getCorrelationId(), item, menuCommand.getAckStatus())
         );
     }
 
-    @SuppressWarnings("unchecked")
     private void onMenuItemBoot(BootItemMenuCommand menuCommand) {
+        synchronized (pendingBootItems) {
+            if(bootstrapInProgress) {
+                pendingBootItems.add(menuCommand);
+                return;
+            }
+        }
+
+        applyBootItem(menuCommand);
+        notifyListeners(l-> l.menuItemChanged(menuCommand.getMenuItem(), false));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyBootItem(BootItemMenuCommand menuCommand) {
         managedMenu.addOrUpdateItem(menuCommand.getSubMenuId(), menuCommand.getMenuItem());
         managedMenu.changeItem(menuCommand.getMenuItem(), menuCommand.newMenuState(
                 managedMenu.getMenuState(menuCommand.getMenuItem())));
-        listeners.forEach(l-> l.menuItemChanged(menuCommand.getMenuItem(), false));
     }
 
     private void onChangeField(MenuChangeCommand menuCommand) {
-        // we cannot process until the tree is populated
-        if(!isTreeFullyPopulated()) return;
+        // we cannot process until the bootstrap has finished, changes after it in the same batch are applied in order.
+        if(connector.getAuthenticationStatus() != CONNECTION_READY) return;
 
         managedMenu.getMenuById(menuCommand.getMenuItemId()).ifPresent((item) -> {
             item.accept(new MenuItemVisitor() {
                 @Override
                 public void visit(AnalogMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(Integer.valueOf(menuCommand.getValue()), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
                 public void visit(BooleanMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(Integer.valueOf(menuCommand.getValue()) != 0, true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
                 public void visit(EnumMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(Integer.valueOf(menuCommand.getValue()), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
@@ -241,7 +416,7 @@ public class RemoteMenuController {
                 @Override
                 public void visit(EditableTextMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(menuCommand.getValue(), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
@@ -254,25 +429,25 @@ public class RemoteMenuController {
 
                     BigDecimal dec = new BigDecimal(val);
                     managedMenu.changeItem(item, item.newMenuState(dec, true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
                 public void visit(FloatMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(Float.valueOf(menuCommand.getValue()), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
                 public void visit(Rgb32MenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(new PortableColor(menuCommand.getValue()), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
                 public void visit(ScrollChoiceMenuItem item) {
                     managedMenu.changeItem(item, item.newMenuState(new CurrentScrollPosition(menuCommand.getValue()), true, false));
-                    listeners.forEach(l-> l.menuItemChanged(item, true));
+                    notifyListeners(l-> l.menuItemChanged(item, true));
                 }
 
                 @Override
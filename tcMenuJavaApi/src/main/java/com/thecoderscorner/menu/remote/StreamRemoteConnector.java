@@ -10,7 +10,9 @@ import com.thecoderscorner.menu.remote.commands.AckStatus;
 import com.thecoderscorner.menu.remote.commands.CommandFactory;
 import com.thecoderscorner.menu.remote.commands.MenuCommand;
 import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand;
+import com.thecoderscorner.menu.remote.commands.MenuJoinCommand;
 import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValFrameScanner;
 import com.thecoderscorner.menu.remote.protocol.TcProtocolException;
 import com.thecoderscorner.menu.remote.states.*;
 
@@ -18,12 +20,18 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.time.Clock;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import static com.thecoderscorner.menu.remote.RemoteInformation.NOT_CONNECTED;
 import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.*;
@@ -37,29 +45,46 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
     public enum ReadMode { ONLY_WHEN_EMPTY, READ_MORE }
 
     private static final int MAX_MSG_EXPECTED = 1024;
+    private static final int MAX_INPUT_BUFFER_SIZE = MAX_MSG_EXPECTED * 16;
+    private static final int OUTBOUND_QUEUE_SIZE = 256;
+    private static final int OUTBOUND_MSGS_PER_WRITE = 8;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     protected final System.Logger logger = System.getLogger(getClass().getSimpleName());
 
     protected final ScheduledExecutorService executor;
     protected final Clock clock;
-    protected final Map<AuthStatus, Class<? extends RemoteConnectorState>> stateMachineMappings = new HashMap<>();
+    protected final Map<AuthStatus, Function<RemoteConnectorContext, RemoteConnectorState>> stateMachineMappings = new EnumMap<>(AuthStatus.class);
 
-    private final MenuCommandProtocol protocol;
+    private final MenuCommandProtocol initialProtocol;
+    private final List<MenuCommandProtocol> supportedProtocols = new CopyOnWriteArrayList<>();
+    private final AtomicReference<MenuCommandProtocol> outboundProtocol = new AtomicReference<>();
     private final List<RemoteConnectorListener> connectorListeners = new CopyOnWriteArrayList<>();
     private final List<ConnectionChangeListener> connectionListeners = new CopyOnWriteArrayList<>();
-    private final ByteBuffer inputBuffer = ByteBuffer.allocate(MAX_MSG_EXPECTED).order(ByteOrder.BIG_ENDIAN);
-    private final ByteBuffer outputBuffer = ByteBuffer.allocate(MAX_MSG_EXPECTED).order(ByteOrder.BIG_ENDIAN);
-    private final ByteBuffer cmdBuffer = ByteBuffer.allocate(MAX_MSG_EXPECTED).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer inputBuffer = ByteBuffer.allocate(MAX_MSG_EXPECTED).order(ByteOrder.BIG_ENDIAN);
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(MAX_MSG_EXPECTED * OUTBOUND_MSGS_PER_WRITE).order(ByteOrder.BIG_ENDIAN);
+    // a lock rather than synchronized, so that a virtual thread blocked in sendInternal does not pin its carrier.
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private final OutboundCommandQueue outboundQueue = new OutboundCommandQueue(OUTBOUND_QUEUE_SIZE);
+    private final Map<Byte, MessageFrameScanner> frameScanners = new ConcurrentHashMap<>();
+    private boolean resumingFrame;
+    private boolean scannedAhead;
+    private final ThreadLocal<List<MenuCommand>> listenerBatch = new ThreadLocal<>();
     private final LocalIdentifier ourLocalId;
     private final AtomicReference<RemoteConnectorState> connectorState= new AtomicReference<>();
     private final AtomicReference<RemoteInformation> remoteParty = new AtomicReference<>(NOT_CONNECTED);
+    private final ConnectionStateMetrics stateMetrics;
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics(this::getConnectionName, System::nanoTime);
 
     protected StreamRemoteConnector(LocalIdentifier ourLocalId, MenuCommandProtocol protocol,
                                     ScheduledExecutorService executor, Clock clock) {
         this.ourLocalId = ourLocalId;
-        this.protocol = protocol;
+        this.initialProtocol = protocol;
+        this.supportedProtocols.add(protocol);
+        this.outboundProtocol.set(protocol);
         this.executor = executor;
         this.clock = clock;
+        this.stateMetrics = new ConnectionStateMetrics(clock);
         changeState(new NoOperationInitialState(this));
     }
 
@@ -73,70 +98,383 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
                 byStart = nextByte(inputBuffer);
             }
 
-            // and then make sure there are enough bytes and read the protocol
-            readCompleteMessage(inputBuffer);
+            // then find the protocol, which is then used to make sure there are enough bytes for the message
+            getAtLeastBytes(inputBuffer, 1, ReadMode.ONLY_WHEN_EMPTY);
+            byte protoId = inputBuffer.get(inputBuffer.position());
+            MenuCommandProtocol protocol = protocolFor(protoId);
+            if(protocol == null) throw new TcProtocolException("Bad protocol " + protoId);
+            inputBuffer = readCompleteMessage(inputBuffer, protocol);
 
             logByteBuffer("Line read from stream", inputBuffer);
-
-            byte protoId = inputBuffer.get();
-            if(protoId != protocol.getKeyIdentifier()) throw new TcProtocolException("Bad protocol " + protoId);
+            int protocolPosition = inputBuffer.position();
+            inputBuffer.get();
 
             // now we take a shallow buffer copy and process the message
             MenuCommand mc = protocol.fromChannel(inputBuffer);
             if(logger.isLoggable(DEBUG)) logger.log(DEBUG, "Menu command read: " + mc);
+            connectionMetrics.messageReceived(mc, inputBuffer.position() - protocolPosition + 1);
             return mc;
         }
         catch(TcProtocolException ex) {
             // a protocol problem shouldn't drop the connection
+            connectionMetrics.decodeError();
             logger.log(WARNING, "Protocol error: " + ex.getMessage() + ", remote=" + getConnectionName());
             return null;
         }
     }
 
+    /**
+     * Checks if the input buffer already holds another complete message, in which case readCommandFromStream will
+     * return it without reading from the transport. This allows a read loop to decode every message that arrived
+     * in a single read before going back to the transport.
+     * @return true if a complete message, or at least a message that could never be valid, is already buffered.
+     */
+    @Override
+    public boolean isCommandBuffered() {
+        var buffer = inputBuffer;
+        int start = buffer.position();
+        while(start < buffer.limit() && buffer.get(start) != START_OF_MSG) start++;
+        if(buffer.limit() - start < 2) return false;
+
+        MenuCommandProtocol protocol = protocolFor(buffer.get(start + 1));
+        if(protocol == null) return true;
+        var message = buffer.duplicate();
+        message.position(start + 1);
+        try {
+            var scanner = frameScannerFor(protocol);
+            scanner.reset();
+            // readCommandFromStream will find the same message, so it need not scan it a second time.
+            scannedAhead = isCompleteMessage(message, scanner);
+            return scannedAhead;
+        }
+        catch(IOException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * By default the current state reads from the stream using readCommandFromStream, connectors that are given
+     * data by their transport instead override this to return true and call processBufferedMessages.
+     * @return true if the connector passes messages to the current state, otherwise false.
+     */
+    @Override
+    public boolean isReadDrivenExternally() {
+        return false;
+    }
+
+    /**
+     * By default performConnection blocks until the device is connected or the attempt fails.
+     * @return true if the connector only starts the connection in performConnection, otherwise false.
+     */
+    @Override
+    public boolean isConnectionNonBlocking() {
+        return false;
+    }
+
+    /**
+     * For connectors that read on behalf of the state machine, this decodes each complete message in the buffer and
+     * passes it to the current state. Any partial message is left in the buffer so that it can be completed by the
+     * next read, where scanning for its end carries on from where it stopped. When a partial message fills the whole
+     * buffer, the connector should replace the buffer using growInputBuffer before reading again. Messages are also
+     * left in the buffer when the current state does not process messages, in which case they are processed from
+     * stateReadyForMessages once such a state is entered. Listeners are given all the messages decoded from the
+     * buffer together, see RemoteConnectorListener.onCommands. The buffer must be ready for reading (flipped) and is
+     * left that way.
+     * @param buffer the buffer containing data read from the remote.
+     */
+    protected void processBufferedMessages(ByteBuffer buffer) {
+        startListenerBatch();
+        try {
+            processMessagesInBuffer(buffer);
+        }
+        finally {
+            endListenerBatch();
+        }
+    }
+
+    private void processMessagesInBuffer(ByteBuffer buffer) {
+        while(buffer.hasRemaining()) {
+            int start = buffer.position();
+            if(buffer.get(start) != START_OF_MSG) {
+                buffer.get();
+                resumingFrame = false;
+                continue;
+            }
+            if(buffer.remaining() < 2) return;
+
+            try {
+                buffer.position(start + 1);
+                MenuCommandProtocol protocol = protocolFor(buffer.get(start + 1));
+                if(protocol == null) throw new TcProtocolException("Bad protocol " + buffer.get(start + 1));
+                var scanner = frameScannerFor(protocol);
+                if(!resumingFrame) scanner.reset();
+                resumingFrame = true;
+                if(!isCompleteMessage(buffer, scanner)) {
+                    if(start == 0 && buffer.limit() == buffer.capacity() && buffer.capacity() >= MAX_INPUT_BUFFER_SIZE) {
+                        throw new TcProtocolException("Message corrupt, no EOM");
+                    }
+                    buffer.position(start);
+                    return;
+                }
+
+                // between states, leave the message for when a state that processes messages is entered.
+                var state = connectorState.get();
+                if(!(state instanceof BaseMessageProcessingState)) {
+                    buffer.position(start);
+                    return;
+                }
+
+                resumingFrame = false;
+                logByteBuffer("Message received from transport", buffer);
+                buffer.get();
+                MenuCommand mc = protocol.fromChannel(buffer);
+                if(logger.isLoggable(DEBUG)) logger.log(DEBUG, "Menu command read: " + mc);
+                connectionMetrics.messageReceived(mc, buffer.position() - start);
+                ((BaseMessageProcessingState) state).messageReceived(mc);
+            }
+            catch(IOException ex) {
+                // a protocol problem shouldn't drop the connection, we resume from after the broken start of message.
+                connectionMetrics.decodeError();
+                logger.log(WARNING, "Protocol error: " + ex.getMessage() + ", remote=" + getConnectionName());
+                resumingFrame = false;
+                buffer.position(start + 1);
+            }
+        }
+    }
+
+    /**
+     * For connectors that read on behalf of the state machine, this is called after a state that processes messages
+     * has been entered, so that any messages that arrived before the state change can be processed. By default it
+     * does nothing.
+     */
+    protected void stateReadyForMessages() {
+        // by default there is nothing buffered outside of the state.
+    }
+
+    /**
+     * For connectors that read on behalf of the state machine, this should be called periodically so that the
+     * current state can detect when the remote has gone quiet.
+     */
+    protected void checkStateForTimeout() {
+        var state = connectorState.get();
+        if(state instanceof BaseMessageProcessingState) {
+            ((BaseMessageProcessingState) state).checkForTimeout();
+        }
+    }
+
+    /**
+     * Should be called by connectors that connect without blocking once the connection has completed, so that the
+     * state waiting for the connection can move on straight away.
+     */
+    protected void stateConnectionEstablished() {
+        var state = connectorState.get();
+        if(state instanceof StreamNotConnectedState) {
+            ((StreamNotConnectedState) state).connectionEstablished();
+        }
+    }
+
+    /**
+     * Should be called when reading from or writing to the transport fails, so that the current state can reset the
+     * connection.
+     * @param ex the exception that caused the failure
+     */
+    protected void stateConnectionFailed(Exception ex) {
+        var state = connectorState.get();
+        if(state instanceof BaseMessageProcessingState) {
+            ((BaseMessageProcessingState) state).readFailed(ex);
+        }
+    }
+
+    private MenuCommandProtocol protocolFor(byte protoId) {
+        for(int i=0; i<supportedProtocols.size(); i++) {
+            var protocol = supportedProtocols.get(i);
+            if(protocol.getKeyIdentifier() == protoId) return protocol;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a protocol that is preferred over the one this connector was created with, protocols added later are
+     * preferred over those added earlier. Preferred protocols are advertised in our join message, and once the remote
+     * advertises that it can read one of them, all further messages are sent using it. Messages we receive are always
+     * decoded using the protocol identified in each message. This should be called before the connection is started.
+     * @param protocol the protocol to prefer when the remote supports it.
+     */
+    public void registerPreferredProtocol(MenuCommandProtocol protocol) {
+        if(protocolFor(protocol.getKeyIdentifier()) != null) {
+            throw new IllegalArgumentException("Protocol " + protocol.getKeyIdentifier() + " already registered");
+        }
+        supportedProtocols.add(0, protocol);
+    }
+
+    /**
+     * Chooses the protocol for all outgoing messages, as the most preferred protocol that both sides support. If the
+     * remote supports none of our preferred protocols, the protocol this connector was created with is used.
+     * @param remoteJoin the join message that was received from the remote.
+     */
+    @Override
+    public void negotiateProtocol(MenuJoinCommand remoteJoin) {
+        var chosen = initialProtocol;
+        for(int i=0; i<supportedProtocols.size(); i++) {
+            var protocol = supportedProtocols.get(i);
+            if(remoteJoin.getSupportedProtocols().contains(protocol.getKeyIdentifier())) {
+                chosen = protocol;
+                break;
+            }
+        }
+
+        if(outboundProtocol.getAndSet(chosen) != chosen) {
+            logger.log(INFO, "Protocol " + chosen.getKeyIdentifier() + " negotiated with " + getConnectionName());
+        }
+    }
+
     @Override
     public void close() {
+        // any new connection starts with the initial protocol until a join is received.
+        outboundProtocol.set(initialProtocol);
+        // anything waiting to be sent was intended for the connection that is closing.
+        outboundQueue.clear();
+        resumingFrame = false;
         notifyConnection();
     }
 
     /**
-     * Sends a command to the remote with the protocol and usual headers.
+     * Queues a command to be sent to the remote with the protocol and usual headers, the command is written by a
+     * task on the executor so the caller never waits for the transport. A change for an item that is still waiting
+     * to be sent is coalesced with the waiting change, see OutboundCommandQueue.
      * @param msg the message to send.
-     * @throws IOException if there are issues with the transport
+     * @throws OutboundQueueFullException if the queue is full, in which case the command is dropped and counted.
+     * @throws IOException if the current state does not allow sending.
      */
     @Override
     public void sendMenuCommand(MenuCommand msg) throws IOException {
-        if (connectorState.get().canSendCommandToRemote(msg)) {
-            synchronized (outputBuffer) {
-                cmdBuffer.clear();
-                protocol.toChannel(cmdBuffer, msg);
-                cmdBuffer.flip();
-                outputBuffer.clear();
-                outputBuffer.put(START_OF_MSG);
-                outputBuffer.put(protocol.getKeyIdentifier());
-                outputBuffer.put((byte) msg.getCommandType().getHigh());
-                outputBuffer.put((byte) msg.getCommandType().getLow());
-                outputBuffer.put(cmdBuffer);
-                outputBuffer.flip();
-                logByteBuffer("Sending message on " + getConnectionName(), outputBuffer);
-                sendInternal(outputBuffer);
-                outputBuffer.clear();
-            }
-        } else {
+        sendMenuCommandSuperseding(msg);
+    }
+
+    /**
+     * Queues a command in the same way as sendMenuCommand.
+     * @param msg the message to send.
+     * @return the correlations of the waiting changes that were coalesced into this one, and so will never be sent.
+     * @throws OutboundQueueFullException if the queue is full, in which case the command is dropped and counted.
+     * @throws IOException if the current state does not allow sending.
+     */
+    @Override
+    public List<CorrelationId> sendMenuCommandSuperseding(MenuCommand msg) throws IOException {
+        if (!connectorState.get().canSendCommandToRemote(msg)) {
             throw new IOException("Not connected to port");
         }
+
+        var offer = outboundQueue.offer(msg);
+        if(offer.getResult() == OutboundCommandQueue.OfferResult.DROPPED) {
+            throw new OutboundQueueFullException("Outbound queue full, dropped " + msg.getCommandType()
+                    + " for " + getConnectionName());
+        }
+        else if(offer.getResult() == OutboundCommandQueue.OfferResult.START_WRITER) {
+            try {
+                executor.execute(this::writeOutboundCommands);
+            }
+            catch(RejectedExecutionException ex) {
+                outboundQueue.clear();
+                throw new IOException("Connector executor has been shut down", ex);
+            }
+        }
+        return offer.getUnsent();
+    }
+
+    /**
+     * Writes the queued commands until the queue is empty. As many messages as will fit into the output buffer are
+     * written together, so a burst of commands needs far fewer writes to the transport. Should the transport fail,
+     * the connection is closed, which discards the remaining commands, and the current state is told so that it
+     * resets the connection.
+     */
+    private void writeOutboundCommands() {
+        IOException failure = null;
+        outputLock.lock();
+        try {
+            outputBuffer.clear();
+            MenuCommand msg;
+            while((msg = outboundQueue.poll()) != null) {
+                if(outputBuffer.remaining() < MAX_MSG_EXPECTED) {
+                    flushOutputBuffer();
+                }
+                encodeCommand(msg);
+            }
+            flushOutputBuffer();
+        }
+        catch(IOException ex) {
+            failure = ex;
+        }
+        finally {
+            outputBuffer.clear();
+            outputLock.unlock();
+        }
+
+        if(failure != null) {
+            logger.log(ERROR, "Error while writing out commands to " + getConnectionName(), failure);
+            close();
+            stateConnectionFailed(failure);
+        }
+    }
+
+    private void encodeCommand(MenuCommand msg) {
+        int start = outputBuffer.position();
+        try {
+            var protocol = outboundProtocol.get();
+            outputBuffer.put(START_OF_MSG);
+            outputBuffer.put(protocol.getKeyIdentifier());
+            outputBuffer.put((byte) msg.getCommandType().getHigh());
+            outputBuffer.put((byte) msg.getCommandType().getLow());
+            protocol.toChannel(outputBuffer, msg);
+            connectionMetrics.messageSent(msg, outputBuffer.position() - start);
+        }
+        catch(Exception ex) {
+            // a message that can't be encoded must not stop the others being sent.
+            logger.log(ERROR, "Unable to encode " + msg + " for " + getConnectionName(), ex);
+            outputBuffer.position(start);
+        }
+    }
+
+    private void flushOutputBuffer() throws IOException {
+        outputBuffer.flip();
+        if(outputBuffer.hasRemaining()) {
+            logByteBuffer("Sending messages on " + getConnectionName(), outputBuffer);
+            sendInternal(outputBuffer);
+        }
+        outputBuffer.clear();
+    }
+
+    /**
+     * @return the number of commands waiting to be written to the remote.
+     */
+    public int getOutboundQueueDepth() {
+        return outboundQueue.size();
+    }
+
+    /**
+     * @return the number of commands that were dropped because the outbound queue was full.
+     */
+    public long getOutboundDroppedCount() {
+        return outboundQueue.getDroppedCount();
+    }
+
+    /**
+     * @return the number of change commands that were merged into a change that was waiting to be sent.
+     */
+    public long getOutboundCoalescedCount() {
+        return outboundQueue.getCoalescedCount();
     }
 
     protected void handleCoreConnectionStates(ConnectMode connectMode) {
         if(connectMode == ConnectMode.PAIRING_CONNECTION) {
-            stateMachineMappings.put(AuthStatus.SEND_AUTH, SendPairingMessageState.class);
-            stateMachineMappings.put(AuthStatus.AUTHENTICATED, PairingAuthSuccessState.class);
-            stateMachineMappings.put(AuthStatus.FAILED_AUTH, PairingAuthFailedState.class);
+            stateMachineMappings.put(AuthStatus.SEND_AUTH, SendPairingMessageState::new);
+            stateMachineMappings.put(AuthStatus.AUTHENTICATED, PairingAuthSuccessState::new);
+            stateMachineMappings.put(AuthStatus.FAILED_AUTH, PairingAuthFailedState::new);
         }
         else {
-            stateMachineMappings.put(AuthStatus.SEND_AUTH, JoinMessageArrivedState.class);
-            stateMachineMappings.put(AuthStatus.AUTHENTICATED, AwaitingBootstrapState.class);
-            stateMachineMappings.put(AuthStatus.BOOTSTRAPPING, BootstrapInProgressState.class);
-            stateMachineMappings.put(AuthStatus.CONNECTION_READY, ConnectionReadyState.class);
+            stateMachineMappings.put(AuthStatus.SEND_AUTH, JoinMessageArrivedState::new);
+            stateMachineMappings.put(AuthStatus.AUTHENTICATED, AwaitingBootstrapState::new);
+            stateMachineMappings.put(AuthStatus.BOOTSTRAPPING, BootstrapInProgressState::new);
+            stateMachineMappings.put(AuthStatus.CONNECTION_READY, ConnectionReadyState::new);
         }
 
     }
@@ -168,11 +506,59 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
      */
     protected abstract void getAtLeastBytes(ByteBuffer inputBuffer, int len, ReadMode mode) throws IOException;
 
-    protected void readCompleteMessage(ByteBuffer inputBuffer) throws IOException {
-        while(!doesBufferHaveEOM(inputBuffer)) {
-            if(inputBuffer.remaining() > MAX_MSG_EXPECTED) throw new TcProtocolException("Message corrupt, no EOM");
+    /**
+     * Reads from the stream until the buffer holds a complete message for the protocol. The buffer must be positioned
+     * on the protocol identifier, and is left in the same position. Should the message fill the buffer, it is moved
+     * into a larger buffer, so large boot messages such as long enum or list items can be read.
+     * @param inputBuffer the buffer to read into
+     * @param protocol the protocol of the message being read
+     * @return the buffer now holding the message, either the one provided or a larger one.
+     * @throws IOException if there are problems reading or the message is corrupt
+     */
+    protected ByteBuffer readCompleteMessage(ByteBuffer inputBuffer, MenuCommandProtocol protocol) throws IOException {
+        // each read only scans the data that is new since the last check.
+        var scanner = frameScannerFor(protocol);
+        if(!scannedAhead) scanner.reset();
+        scannedAhead = false;
+        while(!isCompleteMessage(inputBuffer, scanner)) {
+            if(inputBuffer.remaining() == inputBuffer.capacity()) inputBuffer = growInputBuffer(inputBuffer);
             getAtLeastBytes(inputBuffer, 1, ReadMode.READ_MORE);
         }
+        return inputBuffer;
+    }
+
+    /**
+     * Moves the data in an input buffer into a buffer twice the size, used when a partial message has filled the
+     * buffer. The buffer must be ready for reading (flipped), the new buffer is also ready for reading and holds the
+     * same data from position zero.
+     * @param buffer the buffer that is full
+     * @return a larger buffer holding the same data
+     * @throws TcProtocolException if the buffer is already as large as any valid message could need.
+     */
+    protected ByteBuffer growInputBuffer(ByteBuffer buffer) throws TcProtocolException {
+        if(buffer.capacity() >= MAX_INPUT_BUFFER_SIZE) throw new TcProtocolException("Message corrupt, no EOM");
+        int newSize = Math.min(buffer.capacity() * 2, MAX_INPUT_BUFFER_SIZE);
+        logger.log(DEBUG, "Input buffer for " + getConnectionName() + " grown to " + newSize);
+        var bigger = ByteBuffer.allocate(newSize).order(buffer.order());
+        bigger.put(buffer).flip();
+        return bigger;
+    }
+
+    private boolean isCompleteMessage(ByteBuffer inputBuffer, MessageFrameScanner scanner) throws IOException {
+        // step over the protocol identifier, as the scanner expects to be positioned at the message type.
+        int position = inputBuffer.position();
+        if(!inputBuffer.hasRemaining()) return false;
+        inputBuffer.position(position + 1);
+        try {
+            return scanner.isComplete(inputBuffer);
+        }
+        finally {
+            inputBuffer.position(position);
+        }
+    }
+
+    private MessageFrameScanner frameScannerFor(MenuCommandProtocol protocol) {
+        return frameScanners.computeIfAbsent(protocol.getKeyIdentifier(), id -> protocol.createFrameScanner());
     }
 
     /**
@@ -197,17 +583,54 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
     }
 
     /**
-     * Helper method that notifies all listeners of a new command message
+     * Helper method that notifies all listeners of a new command message, if a listener batch is in progress on this
+     * thread the message is held until the batch ends.
      * @param mc the message to notify
      */
     public void notifyListeners(MenuCommand mc) {
-        connectorListeners.forEach(listener-> listener.onCommand(this, mc));
+        var batch = listenerBatch.get();
+        if(batch != null) {
+            batch.add(mc);
+        }
+        else {
+            connectorListeners.forEach(listener-> listener.onCommand(this, mc));
+        }
     }
 
     /**
-     * Helper method that notifies all connection listeners of a change in connectivity
+     * Starts holding back listener notifications on this thread, so that all the messages processed before
+     * endListenerBatch are given to listeners together. Batches on the same thread do not nest, a batch that is
+     * already in progress is simply continued.
+     */
+    @Override
+    public void startListenerBatch() {
+        if(listenerBatch.get() == null) listenerBatch.set(new ArrayList<>());
+    }
+
+    /**
+     * Gives all the messages held back since startListenerBatch to the listeners, and stops holding back
+     * notifications on this thread.
+     */
+    @Override
+    public void endListenerBatch() {
+        var batch = listenerBatch.get();
+        listenerBatch.remove();
+        deliverBatch(batch);
+    }
+
+    private void deliverBatch(List<MenuCommand> batch) {
+        if(batch == null || batch.isEmpty()) return;
+        var commands = List.copyOf(batch);
+        batch.clear();
+        connectorListeners.forEach(listener-> listener.onCommands(this, commands));
+    }
+
+    /**
+     * Helper method that notifies all connection listeners of a change in connectivity. Any messages held in a
+     * listener batch are delivered first, so that listeners see messages and connection changes in order.
      */
     protected void notifyConnection() {
+        deliverBatch(listenerBatch.get());
         connectionListeners.forEach(listener-> listener.connectionChange(this, getAuthenticationStatus()));
     }
 
@@ -232,7 +655,7 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
                 sb.append((char)dataByte);
             }
             else {
-                sb.append(String.format("<0x%02x>", dataByte));
+                sb.append("<0x").append(HEX_DIGITS[(dataByte >> 4) & 0x0f]).append(HEX_DIGITS[dataByte & 0x0f]).append('>');
             }
             pos++;
         }
@@ -240,34 +663,66 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
         logger.log(DEBUG, sb.toString());
     }
 
+    /**
+     * Checks if the buffer contains the end of a tag value message, scanning all the data each time it is called.
+     * @param inputBuffer the buffer to check, positioned at the message.
+     * @return true if the end of message is in the buffer
+     * @deprecated use a MessageFrameScanner from MenuCommandProtocol.createFrameScanner, which only scans new data.
+     */
+    @Deprecated
     public static boolean doesBufferHaveEOM(ByteBuffer inputBuffer) {
-        ByteBuffer bbCopy = inputBuffer.slice();
-        boolean foundMsg = false;
-        while(!foundMsg && bbCopy.hasRemaining()) {
-            foundMsg = (bbCopy.get() == FIELD_TERMINATOR && bbCopy.hasRemaining() && bbCopy.get() == END_OF_MSG);
-        }
-        return foundMsg;
+        return new TagValFrameScanner().isComplete(inputBuffer);
     }
 
     @Override
     public void changeState(AuthStatus desiredState) {
-        Class<? extends RemoteConnectorState> state = stateMachineMappings.get(desiredState);
-        if(state == null) throw new IllegalArgumentException(desiredState + " not available in mappings");
+        var stateFactory = stateMachineMappings.get(desiredState);
+        if(stateFactory == null) throw new IllegalArgumentException(desiredState + " not available in mappings");
+        RemoteConnectorState state;
         try {
-            changeState(state.getConstructor(RemoteConnectorContext.class).newInstance(this));
+            state = stateFactory.apply(this);
         } catch (Exception e) {
             throw new IllegalArgumentException(desiredState + " caused an exception", e);
         }
+        changeState(state);
     }
 
     @Override
     public void changeState(RemoteConnectorState newState) {
         var oldState = connectorState.get();
-        logger.log(INFO, "Transition " + stateName(oldState) + "->" + stateName(newState) + " for " + getConnectionName());
+        if(logger.isLoggable(INFO)) {
+            logger.log(INFO, "Transition " + stateName(oldState) + "->" + stateName(newState) + " for " + getConnectionName());
+        }
         if(oldState != null)  oldState.exitState(newState);
         connectorState.set(newState);
+        stateMetrics.stateEntered(newState.getAuthenticationStatus());
+        if(wasConnectionLost(oldState, newState)) connectionMetrics.connectionLost();
         newState.enterState();
         notifyConnection();
+        if(newState instanceof BaseMessageProcessingState && isReadDrivenExternally()) {
+            stateReadyForMessages();
+        }
+    }
+
+    /**
+     * @return the number of transitions and the time spent in each authentication status by this connection.
+     */
+    public ConnectionStateMetrics getStateMetrics() {
+        return stateMetrics;
+    }
+
+    /**
+     * @return the messages, bytes, errors and timings recorded for this connection.
+     */
+    @Override
+    public Optional<ConnectionMetrics> getConnectionMetrics() {
+        return Optional.of(connectionMetrics);
+    }
+
+    private boolean wasConnectionLost(RemoteConnectorState oldState, RemoteConnectorState newState) {
+        if(oldState == null || oldState.getAuthenticationStatus() == null) return false;
+        return newState.getAuthenticationStatus() == AuthStatus.AWAITING_CONNECTION
+                && oldState.getAuthenticationStatus().ordinal() > AuthStatus.AWAITING_CONNECTION.ordinal();
     }
 
     private String stateName(RemoteConnectorState state) {
@@ -301,7 +756,11 @@ public abstract class StreamRemoteConnector implements RemoteConnector, RemoteCo
 
     @Override
     public void sendJoin() throws IOException {
-        sendMenuCommand(CommandFactory.newJoinCommand(ourLocalId.getName(), ourLocalId.getUuid()));
+        List<Byte> protocolIds = new ArrayList<>(supportedProtocols.size());
+        for(var protocol : supportedProtocols) {
+            protocolIds.add(protocol.getKeyIdentifier());
+        }
+        sendMenuCommand(CommandFactory.newJoinCommand(ourLocalId.getName(), ourLocalId.getUuid(), protocolIds));
     }
 
     @Override
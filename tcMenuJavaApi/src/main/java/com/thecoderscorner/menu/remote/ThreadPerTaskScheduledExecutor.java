@@ -0,0 +1,152 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * A scheduled executor that runs every task on a thread from the thread factory, rather than on a fixed pool. A
+ * single timer thread keeps track of the scheduled tasks, and when each one is due it is handed over to a thread
+ * of its own. Threads are reused when they are free, and discarded after a short idle period. This suits connectors,
+ * where each read loop blocks its thread for the lifetime of a state, and works best with virtual threads.
+ *
+ * Periodic tasks never overlap, the next run of a periodic task is only scheduled once the current run completes.
+ */
+class ThreadPerTaskScheduledExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor workers;
+
+    ThreadPerTaskScheduledExecutor(ThreadFactory timerFactory, ThreadFactory workerFactory, long keepAliveSeconds) {
+        timer = new ScheduledThreadPoolExecutor(1, timerFactory);
+        timer.setRemoveOnCancelPolicy(true);
+        timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, keepAliveSeconds, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), workerFactory);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        workers.execute(command);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(Executors.callable(command, null), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        var task = new TimedTask<>(callable, System.nanoTime() + unit.toNanos(delay), 0);
+        task.scheduleNext();
+        return task;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if(period <= 0) throw new IllegalArgumentException("Period must be positive");
+        var task = new TimedTask<>(Executors.callable(command, null), System.nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period));
+        task.scheduleNext();
+        return task;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if(delay <= 0) throw new IllegalArgumentException("Delay must be positive");
+        var task = new TimedTask<>(Executors.callable(command, null), System.nanoTime() + unit.toNanos(initialDelay), -unit.toNanos(delay));
+        task.scheduleNext();
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        timer.shutdown();
+        workers.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        timer.shutdownNow();
+        return workers.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return workers.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return timer.isTerminated() && workers.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        return timer.awaitTermination(timeout, unit) && workers.awaitTermination(end - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A task that waits on the timer until it is due, and then runs on a worker thread. The period is zero for
+     * a one shot task, positive for a fixed rate and negative for a fixed delay.
+     */
+    private class TimedTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private final long period;
+        private volatile long nextRunNanos;
+        private volatile Future<?> pending;
+
+        TimedTask(Callable<V> callable, long firstRunNanos, long period) {
+            super(callable);
+            this.nextRunNanos = firstRunNanos;
+            this.period = period;
+        }
+
+        void scheduleNext() {
+            try {
+                pending = timer.schedule(() -> workers.execute(this), nextRunNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            catch(RejectedExecutionException ex) {
+                // the executor has been shut down, so this task will never run again.
+                super.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if(!isPeriodic()) {
+                super.run();
+            }
+            else if(super.runAndReset()) {
+                nextRunNanos = (period > 0) ? nextRunNanos + period : System.nanoTime() - period;
+                scheduleNext();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            var p = pending;
+            if(p != null) p.cancel(false);
+            return cancelled;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextRunNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -42,6 +42,18 @@ public class CommandFactory {
         return new MenuJoinCommand(uuid, name, ApiPlatform.JAVA_API, ProtocolUtil.getVersionFromProperties());
     }
 
+    /**
+     * Create a new join command that has a fixed UUID that you provide, and advertises the protocols that
+     * this side is able to read, in order of preference.
+     * @param name the name that the remote will show for the connection
+     * @param uuid the UUID that will the remote will see for this.
+     * @param supportedProtocols the protocol identifiers that can be read, most preferred first.
+     * @return join command
+     */
+    public static MenuJoinCommand newJoinCommand(String name, UUID uuid, List<Byte> supportedProtocols) {
+        return new MenuJoinCommand(uuid, name, ApiPlatform.JAVA_API, ProtocolUtil.getVersionFromProperties(), supportedProtocols);
+    }
+
     /**
      * Create a new heartbeat message with the frequency specified
      * @param frequency the frequency
@@ -8,27 +8,33 @@ package com.thecoderscorner.menu.remote.commands;
 
 import com.thecoderscorner.menu.remote.protocol.ApiPlatform;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.PROTOCOL_TAG_VAL;
+
 public class MenuJoinCommand implements MenuCommand {
     private final String myName;
     private final int apiVer;
     private final ApiPlatform platform;
     private final UUID appUuid;
+    private final List<Byte> supportedProtocols;
 
-    public MenuJoinCommand(UUID uuid, String myName, ApiPlatform platform, int apiVer) {
+    public MenuJoinCommand(UUID uuid, String myName, ApiPlatform platform, int apiVer, List<Byte> supportedProtocols) {
         this.myName = myName;
         this.appUuid = uuid;
         this.apiVer = apiVer;
         this.platform = platform;
+        this.supportedProtocols = List.copyOf(supportedProtocols);
+    }
+
+    public MenuJoinCommand(UUID uuid, String myName, ApiPlatform platform, int apiVer) {
+        this(uuid, myName, platform, apiVer, List.of(PROTOCOL_TAG_VAL));
     }
 
     public MenuJoinCommand(String myName, ApiPlatform platform, int apiVer) {
-        this.myName = myName;
-        this.appUuid = UUID.randomUUID();
-        this.apiVer = apiVer;
-        this.platform = platform;
+        this(UUID.randomUUID(), myName, platform, apiVer);
     }
 
     public String getMyName() {
@@ -47,6 +53,15 @@ public class MenuJoinCommand implements MenuCommand {
         return platform;
     }
 
+    /**
+     * The protocols that the sender of this join is able to read, in order of preference. Remotes that do not
+     * send this information only understand the tag value protocol.
+     * @return the list of protocol identifiers supported by the sender.
+     */
+    public List<Byte> getSupportedProtocols() {
+        return supportedProtocols;
+    }
+
     @Override
     public MenuCommandType getCommandType() {
         return MenuCommandType.JOIN;
@@ -59,6 +74,7 @@ public class MenuJoinCommand implements MenuCommand {
                 ", apiVer=" + apiVer +
                 ", platform=" + platform + '\'' +
                 ", uuid=" + appUuid +
+                ", protocols=" + supportedProtocols +
                 '}';
     }
 
@@ -69,11 +85,12 @@ public class MenuJoinCommand implements MenuCommand {
         MenuJoinCommand that = (MenuJoinCommand) o;
         return apiVer == that.apiVer &&
                 Objects.equals(getMyName(), that.getMyName()) &&
-                getPlatform() == that.getPlatform();
+                getPlatform() == that.getPlatform() &&
+                Objects.equals(getSupportedProtocols(), that.getSupportedProtocols());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getMyName(), apiVer, getPlatform());
+        return Objects.hash(getMyName(), apiVer, getPlatform(), getSupportedProtocols());
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.*;
+import com.thecoderscorner.menu.remote.protocol.PairingHelper;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Creates a controller that is connected to a device running within the same JVM, such as a SimulatedMenuDevice,
+ * instead of a real device. This is mainly useful for testing, and for load testing many connections at once.
+ * An example of use would be along the lines of:
+ *
+ * <pre>
+ *     RemoteMenuController controller = new LoopbackControllerBuilder()
+ *       .withDevice(new SimulatedMenuDevice("device", deviceTree))
+ *       .withMenuTree(myMenuTree)
+ *       .withLocalName("My App")
+ *       .withUUID(myUUID)
+ *       .build();
+ *     controller.start();
+ * </pre>
+ */
+public class LoopbackControllerBuilder implements ConnectorFactory {
+    private ScheduledExecutorService executorService;
+    private MenuTree menuTree;
+    private MenuCommandProtocol protocol;
+    private final List<MenuCommandProtocol> preferredProtocols = new ArrayList<>();
+    private Clock clock = Clock.systemDefaultZone();
+    private Duration ackTimeout = RemoteMenuController.DEFAULT_ACK_TIMEOUT;
+    private String name = "NoName";
+    private UUID uuid;
+    private boolean virtualThreads;
+    private LoopbackDevice device;
+
+    /**
+     * Optional, defaults to system clock but can be overriden
+     * @param clock the clock to use
+     * @return itself, can be chained
+     */
+    public LoopbackControllerBuilder withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Optional, defaults to RemoteMenuController.DEFAULT_ACK_TIMEOUT. Changes that the device has not acknowledged
+     * within this time are reported to listeners through ackTimedOut.
+     * @param ackTimeout how long to wait for each change to be acknowledged
+     * @return itself, can be chained
+     */
+    public LoopbackControllerBuilder withAckTimeout(Duration ackTimeout) {
+        this.ackTimeout = ackTimeout;
+        return this;
+    }
+
+    /**
+     * Optional, defaults to creating a suitable executor for single connectivity
+     * @param executor the executor which must implement ScheduledExecutorService
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withExecutor(ScheduledExecutorService executor) {
+        this.executorService = executor;
+        return this;
+    }
+
+    /**
+     * Optional, when no executor is provided, uses the process wide executor that runs each read loop on a thread of
+     * its own, using virtual threads on Java 21 or above. Defaults to false.
+     * @param virtualThreads true to use virtual threads where available
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Mandatory, the device that this controller connects to.
+     * @param device the device, for example a SimulatedMenuDevice
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withDevice(LoopbackDevice device) {
+        this.device = device;
+        return this;
+    }
+
+    /**
+     * Mandatory, the menuTree instance to store the menu items retrieved from the device.
+     * this menuTree must only be used with one remote.
+     * @param tree the menu tree to be populated (only use a menu tree with one remote)
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withMenuTree(MenuTree tree) {
+        this.menuTree = tree;
+        return this;
+    }
+
+    /**
+     * Optional, defaults to the standard protocol.
+     * @param protocol a protocol object.
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withProtocol(MenuCommandProtocol protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    /**
+     * Optional, adds a protocol that will be used in preference to the standard protocol when the device supports
+     * it, see SocketControllerBuilder.withPreferredProtocol.
+     * @param protocol a protocol object.
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withPreferredProtocol(MenuCommandProtocol protocol) {
+        preferredProtocols.add(protocol);
+        return this;
+    }
+
+    /**
+     * Mandatory, Set the name of this connection
+     * @param name the name the device will see.
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withLocalName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Mandatory, Set the UUID of this instance of the client
+     * @param uuid the UUID for this instance of the App
+     * @return itself, suitable for chaining.
+     */
+    public LoopbackControllerBuilder withUUID(UUID uuid) {
+        this.uuid = uuid;
+        return this;
+    }
+
+    /**
+     * Once the above methods have been called to fill in the blanks, then call build to get
+     * the actual instance.
+     * @return the actual instance.
+     */
+    public RemoteMenuController build() {
+        var connector = createConnector(ConnectMode.FULLY_AUTHENTICATED);
+        return new RemoteMenuController(connector, menuTree, executorService, ackTimeout);
+    }
+
+    public boolean attemptPairing(Optional<Consumer<AuthStatus>> maybePairingListener) {
+        var connector = createConnector(ConnectMode.PAIRING_CONNECTION);
+        PairingHelper helper = new PairingHelper(connector, executorService, maybePairingListener);
+        return helper.attemptPairing();
+    }
+
+    private LoopbackRemoteConnector createConnector(ConnectMode mode) {
+        if(uuid == null || name == null) {
+            throw new IllegalArgumentException("Name / UUID cannot be null (Call UUID.randomUUID() to get one)");
+        }
+        if(device == null) {
+            throw new IllegalArgumentException("A device must be provided for a loopback connection");
+        }
+
+        if(protocol == null) {
+            protocol = new TagValMenuCommandProtocol();
+        }
+        if(executorService == null) {
+            executorService = virtualThreads ? ConnectorExecutors.sharedVirtualThreadExecutor()
+                                             : ConnectorExecutors.newPlatformExecutor("remote-loopback");
+        }
+
+        var connector = new LoopbackRemoteConnector(new LocalIdentifier(uuid, name), protocol, executorService,
+                clock, device, mode);
+        preferredProtocols.forEach(connector::registerPreferredProtocol);
+        return connector;
+    }
+}
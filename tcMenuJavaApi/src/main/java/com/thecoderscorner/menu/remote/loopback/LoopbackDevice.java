@@ -0,0 +1,40 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The device end of a loopback connection, implemented by anything that wants to act as the remote side of a
+ * LoopbackRemoteConnector, such as SimulatedMenuDevice. Data written by the connector is handed straight to the
+ * device, and the device replies by writing into the pipe it is given on connection.
+ */
+public interface LoopbackDevice {
+    /**
+     * Called when the connector connects, the device should start as a real device would, normally by sending a join.
+     * @param toConnector the pipe that the connector reads from.
+     */
+    void connected(LoopbackPipe toConnector);
+
+    /**
+     * Called on the connector's writing thread with data the connector has sent, all of it must be consumed.
+     * @param data the data that was sent
+     * @throws IOException if the device can no longer accept data
+     */
+    void dataReceived(ByteBuffer data) throws IOException;
+
+    /**
+     * Called when the connector closes the connection.
+     */
+    void disconnected();
+
+    /**
+     * @return a name for the device, used in the connection name.
+     */
+    String getName();
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in memory, one way stream of bytes held in a fixed size ring buffer. Writers wait while the pipe is full and
+ * readers wait, up to a timeout, while it is empty, in the same way as a socket or serial port. Once closed, any
+ * data still in the pipe can be read, after which reads return -1 until the pipe is opened again.
+ */
+public class LoopbackPipe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final byte[] ring;
+    private int readPosition;
+    private int count;
+    private boolean open;
+
+    public LoopbackPipe(int capacity) {
+        this.ring = new byte[capacity];
+    }
+
+    /**
+     * Clears out anything left from a previous connection and allows data to be written again.
+     */
+    public void open() {
+        lock.lock();
+        try {
+            readPosition = 0;
+            count = 0;
+            open = true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the pipe, any readers or writers that are waiting are woken up.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            open = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return open;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all the remaining bytes in the buffer, waiting for the reader whenever the pipe is full.
+     * @param data the data to write, its position is moved to its limit.
+     * @throws IOException if the pipe is closed, or the writer is interrupted.
+     */
+    public void write(ByteBuffer data) throws IOException {
+        lock.lock();
+        try {
+            while(data.hasRemaining()) {
+                if(!open) throw new IOException("Loopback pipe closed");
+                if(count == ring.length) {
+                    notFull.await();
+                    continue;
+                }
+                int writePosition = (readPosition + count) % ring.length;
+                int len = Math.min(data.remaining(), Math.min(ring.length - count, ring.length - writePosition));
+                data.get(ring, writePosition, len);
+                count += len;
+                notEmpty.signal();
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted writing to loopback pipe", e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads as many bytes as are available and will fit into the buffer, waiting up to the timeout if the pipe is
+     * empty.
+     * @param buffer the buffer to read into
+     * @param timeout the longest time to wait for data
+     * @param unit the unit of the timeout
+     * @return the number of bytes read, 0 if the timeout passed, or -1 if the pipe is closed and empty.
+     * @throws IOException if the reader is interrupted.
+     */
+    public int read(ByteBuffer buffer, long timeout, TimeUnit unit) throws IOException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while(count == 0) {
+                if(!open) return -1;
+                if(nanos <= 0) return 0;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+
+            int total = 0;
+            while(count > 0 && buffer.hasRemaining()) {
+                int len = Math.min(buffer.remaining(), Math.min(count, ring.length - readPosition));
+                buffer.put(ring, readPosition, len);
+                readPosition = (readPosition + len) % ring.length;
+                count -= len;
+                total += len;
+            }
+            notFull.signal();
+            return total;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading from loopback pipe", e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes waiting to be read.
+     */
+    public int available() {
+        lock.lock();
+        try {
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
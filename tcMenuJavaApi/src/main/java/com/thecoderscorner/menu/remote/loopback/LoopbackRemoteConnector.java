@@ -0,0 +1,113 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import com.thecoderscorner.menu.remote.*;
+import com.thecoderscorner.menu.remote.states.NoOperationInitialState;
+import com.thecoderscorner.menu.remote.states.SocketAwaitJoinState;
+import com.thecoderscorner.menu.remote.states.StreamNotConnectedState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * A connector that talks to a LoopbackDevice within the same JVM rather than over a socket or serial port. It goes
+ * through exactly the same states, framing and protocol handling as the other stream connectors, so it is useful
+ * for testing and for load testing many connections without any network or hardware. Data sent to the device is
+ * handed to it directly, data from the device is read from an in memory LoopbackPipe.
+ *
+ * @see LoopbackControllerBuilder
+ */
+public class LoopbackRemoteConnector extends StreamRemoteConnector {
+    private static final int PIPE_SIZE = 16384;
+    private static final long READ_TIMEOUT_MS = 500;
+
+    private final LoopbackDevice device;
+    private final LoopbackPipe fromDevice = new LoopbackPipe(PIPE_SIZE);
+    private volatile boolean connected;
+
+    public LoopbackRemoteConnector(LocalIdentifier localId, MenuCommandProtocol protocol,
+                                   ScheduledExecutorService executor, Clock clock,
+                                   LoopbackDevice device, ConnectMode mode) {
+        super(localId, protocol, executor, clock);
+        this.device = device;
+
+        stateMachineMappings.put(AuthStatus.NOT_STARTED, NoOperationInitialState::new);
+        stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, StreamNotConnectedState::new);
+        stateMachineMappings.put(AuthStatus.ESTABLISHED_CONNECTION, SocketAwaitJoinState::new);
+        stateMachineMappings.put(AuthStatus.FAILED_AUTH, StreamNotConnectedState::new);
+        handleCoreConnectionStates(mode);
+    }
+
+    @Override
+    public void start() {
+        logger.log(INFO, "Starting loopback connector {0}", device.getName());
+        changeState(AuthStatus.AWAITING_CONNECTION);
+    }
+
+    @Override
+    public void stop() {
+        changeState(AuthStatus.NOT_STARTED);
+    }
+
+    @Override
+    public void performConnection() {
+        if(isDeviceConnected()) return;
+        fromDevice.open();
+        connected = true;
+        device.connected(fromDevice);
+    }
+
+    @Override
+    public boolean isDeviceConnected() {
+        // the device can drop the connection by closing the pipe.
+        return connected && fromDevice.isOpen();
+    }
+
+    @Override
+    public String getConnectionName() {
+        // called during construction by the initial state change, before the device is set.
+        return "Loopback " + ((device != null) ? device.getName() : "");
+    }
+
+    @Override
+    protected void sendInternal(ByteBuffer outputBuffer) throws IOException {
+        if(!connected) throw new IOException("Loopback device not connected");
+        device.dataReceived(outputBuffer);
+        outputBuffer.position(outputBuffer.limit());
+    }
+
+    @Override
+    protected void getAtLeastBytes(ByteBuffer inputBuffer, int len, ReadMode mode) throws IOException {
+        if(mode == ReadMode.ONLY_WHEN_EMPTY && inputBuffer.remaining() >= len) return;
+        do {
+            if(!connected) throw new IOException("Loopback device disconnected during read");
+            if(Thread.currentThread().isInterrupted()) throw new IOException("Loopback read thread interrupted");
+
+            inputBuffer.compact();
+            int actual = fromDevice.read(inputBuffer, READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            inputBuffer.flip();
+            if(actual < 0) throw new IOException("Loopback device closed the connection");
+        } while(inputBuffer.remaining() < len);
+    }
+
+    @Override
+    public void close() {
+        if(connected) {
+            logger.log(INFO, "Closing " + getConnectionName());
+            connected = false;
+            fromDevice.close();
+            device.disconnected();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import com.thecoderscorner.menu.domain.*;
+import com.thecoderscorner.menu.domain.state.MenuState;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.domain.util.AbstractMenuItemVisitor;
+import com.thecoderscorner.menu.domain.util.MenuItemHelper;
+import com.thecoderscorner.menu.remote.MenuCommandProtocol;
+import com.thecoderscorner.menu.remote.MessageFrameScanner;
+import com.thecoderscorner.menu.remote.NamedDaemonThreadFactory;
+import com.thecoderscorner.menu.remote.commands.*;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.START_OF_MSG;
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * A device written in Java that behaves like an embedded tcMenu device, serving the items in a MenuTree. It sends a
+ * join on connection, acknowledges the join by bootstrapping every item in the tree, answers heartbeats, and applies
+ * and acknowledges changes, echoing the new value back as a real device does. Used with a LoopbackRemoteConnector
+ * it allows a RemoteMenuController to be tested, or load tested, without any hardware.
+ *
+ * Data from the connector arrives on the connector's writing thread, which must not wait for the connector to read
+ * the device's replies. So the device only frames and decodes commands on that thread, and handles them on the
+ * executor it was given, one at a time and in the order they arrived. By default the devices share a pool of daemon
+ * threads, which only has a thread for each device that is busy.
+ */
+public class SimulatedMenuDevice implements LoopbackDevice {
+    private static final int MAX_MSG_SIZE = 16384;
+    private static final ExecutorService SHARED_RESPONDER = Executors.newCachedThreadPool(
+            new NamedDaemonThreadFactory("simulated-device"));
+
+    private final System.Logger logger = System.getLogger(getClass().getSimpleName());
+    private final String name;
+    private final UUID uuid = UUID.randomUUID();
+    private final MenuTree menuTree;
+    private final MenuCommandProtocol protocol;
+    private final MessageFrameScanner frameScanner;
+    private final ByteBuffer outputBuffer = ByteBuffer.allocate(MAX_MSG_SIZE);
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong changesApplied = new AtomicLong();
+    private final Executor responder;
+    private final ArrayDeque<Runnable> responses = new ArrayDeque<>();
+    private boolean responding;
+    private ByteBuffer inputBuffer = ByteBuffer.allocate(1024);
+    private volatile LoopbackPipe toConnector;
+
+    public SimulatedMenuDevice(String name, MenuTree menuTree) {
+        this(name, menuTree, new TagValMenuCommandProtocol());
+    }
+
+    public SimulatedMenuDevice(String name, MenuTree menuTree, MenuCommandProtocol protocol) {
+        this(name, menuTree, protocol, SHARED_RESPONDER);
+    }
+
+    /**
+     * Creates a device that handles the commands it receives on the executor provided.
+     * @param name the name of the device, sent in its join
+     * @param menuTree the tree holding the items that the device serves
+     * @param protocol the protocol to talk to the connector in
+     * @param responder the executor that commands are handled and replied to on
+     */
+    public SimulatedMenuDevice(String name, MenuTree menuTree, MenuCommandProtocol protocol, Executor responder) {
+        this.name = name;
+        this.menuTree = menuTree;
+        this.protocol = protocol;
+        this.responder = responder;
+        this.frameScanner = protocol.createFrameScanner();
+        inputBuffer.flip();
+    }
+
+    @Override
+    public synchronized void connected(LoopbackPipe toConnector) {
+        this.toConnector = toConnector;
+        inputBuffer.clear().flip();
+        frameScanner.reset();
+        respond(() -> sendCommand(newJoinCommand(name, uuid, List.of(protocol.getKeyIdentifier()))));
+    }
+
+    @Override
+    public synchronized void disconnected() {
+        toConnector = null;
+        synchronized(responses) {
+            responses.clear();
+        }
+    }
+
+    /**
+     * Drops the connection from the device end, as happens when a real device is reset.
+     */
+    public void disconnect() {
+        var pipe = toConnector;
+        if(pipe != null) pipe.close();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void dataReceived(ByteBuffer data) throws IOException {
+        while(data.hasRemaining()) {
+            inputBuffer.compact();
+            if(!inputBuffer.hasRemaining()) {
+                // a partial message fills the buffer, so move it into a larger one.
+                if(inputBuffer.capacity() >= MAX_MSG_SIZE) throw new IOException("Message too large for " + name);
+                var bigger = ByteBuffer.allocate(inputBuffer.capacity() * 2);
+                inputBuffer.flip();
+                bigger.put(inputBuffer);
+                inputBuffer = bigger;
+            }
+            int len = Math.min(data.remaining(), inputBuffer.remaining());
+            var chunk = data.duplicate();
+            chunk.limit(chunk.position() + len);
+            inputBuffer.put(chunk);
+            data.position(data.position() + len);
+            inputBuffer.flip();
+            processBufferedCommands();
+        }
+    }
+
+    private void processBufferedCommands() throws IOException {
+        while(inputBuffer.hasRemaining()) {
+            int start = inputBuffer.position();
+            if(inputBuffer.get(start) != START_OF_MSG) {
+                inputBuffer.get();
+                frameScanner.reset();
+                continue;
+            }
+            if(inputBuffer.remaining() < 2) return;
+            if(inputBuffer.get(start + 1) != protocol.getKeyIdentifier()) {
+                logger.log(WARNING, name + " received unknown protocol " + inputBuffer.get(start + 1));
+                inputBuffer.get();
+                continue;
+            }
+
+            inputBuffer.position(start + 2);
+            boolean complete = frameScanner.isComplete(inputBuffer);
+            if(!complete) {
+                inputBuffer.position(start);
+                return;
+            }
+            frameScanner.reset();
+            var cmd = protocol.fromChannel(inputBuffer);
+            messagesReceived.incrementAndGet();
+            respond(() -> commandReceived(cmd));
+        }
+    }
+
+    private void respond(Runnable response) {
+        synchronized(responses) {
+            responses.add(response);
+            if(responding) return;
+            responding = true;
+        }
+        try {
+            responder.execute(this::sendResponses);
+        }
+        catch(RejectedExecutionException e) {
+            // most likely the executor is shutting down, try again with the next command.
+            synchronized(responses) {
+                responding = false;
+            }
+            logger.log(WARNING, name + " executor rejected the response, it remains queued");
+        }
+    }
+
+    private void sendResponses() {
+        while(true) {
+            Runnable response;
+            synchronized(responses) {
+                response = responses.poll();
+                if(response == null) {
+                    responding = false;
+                    return;
+                }
+            }
+            try {
+                response.run();
+            }
+            catch(Exception e) {
+                logger.log(ERROR, name + " failed to handle a command", e);
+            }
+        }
+    }
+
+    private void commandReceived(MenuCommand cmd) {
+        if(logger.isLoggable(DEBUG)) logger.log(DEBUG, name + " received " + cmd);
+        switch(cmd.getCommandType()) {
+            case JOIN:
+                sendCommand(newAcknowledgementCommand(CorrelationId.EMPTY_CORRELATION, AckStatus.SUCCESS));
+                sendBootstrap();
+                break;
+            case PAIRING_REQUEST:
+                sendCommand(newAcknowledgementCommand(CorrelationId.EMPTY_CORRELATION, AckStatus.SUCCESS));
+                break;
+            case HEARTBEAT:
+                var hb = (MenuHeartbeatCommand) cmd;
+                if(hb.getMode() == MenuHeartbeatCommand.HeartbeatMode.NORMAL) {
+                    sendCommand(newHeartbeatCommand(hb.getHearbeatInterval(), MenuHeartbeatCommand.HeartbeatMode.NORMAL));
+                }
+                break;
+            case CHANGE_INT_FIELD:
+                applyChange((MenuChangeCommand) cmd);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Sends every item in the tree to the connector, between a bootstrap start and end.
+     */
+    private void sendBootstrap() {
+        sendCommand(newBootstrapCommand(MenuBootstrapCommand.BootType.START));
+        bootstrapSubMenu(MenuTree.ROOT);
+        sendCommand(newBootstrapCommand(MenuBootstrapCommand.BootType.END));
+    }
+
+    private void bootstrapSubMenu(SubMenuItem subMenu) {
+        for(var item : menuTree.getMenuItems(subMenu)) {
+            MenuItemHelper.visitWithResult(item, new BootCommandVisitor(subMenu.getId())).ifPresent(this::sendCommand);
+            if(item.hasChildren()) bootstrapSubMenu(MenuItemHelper.asSubMenu(item));
+        }
+    }
+
+    /**
+     * Applies a change to the tree where the item holds a simple value, then acknowledges it and sends the item's
+     * value back, as an embedded device does. Changes for other types are acknowledged and echoed as received. A
+     * value that is not a number for an item that needs one is acknowledged with a range warning and not applied.
+     */
+    @SuppressWarnings("unchecked")
+    private void applyChange(MenuChangeCommand change) {
+        var maybeItem = menuTree.getMenuById(change.getMenuItemId());
+        if(maybeItem.isEmpty()) {
+            sendCommand(newAcknowledgementCommand(change.getCorrelationId(), AckStatus.ID_NOT_FOUND));
+            return;
+        }
+
+        MenuItem item = maybeItem.get();
+        Object newValue = change.getValue();
+        MenuState<?> state = menuTree.getMenuState(item);
+        if(item instanceof AnalogMenuItem || item instanceof EnumMenuItem) {
+            int current = (state != null && state.getValue() instanceof Integer) ? (Integer) state.getValue() : 0;
+            int value;
+            try {
+                value = (change.getChangeType() == MenuChangeCommand.ChangeType.DELTA)
+                        ? current + Integer.parseInt(change.getValue()) : Integer.parseInt(change.getValue());
+            }
+            catch(NumberFormatException e) {
+                logger.log(WARNING, name + " received a change that is not a number for " + item.getId());
+                sendCommand(newAcknowledgementCommand(change.getCorrelationId(), AckStatus.VALUE_RANGE_WARNING));
+                return;
+            }
+            menuTree.changeItem(item, item.newMenuState(value, true, false));
+            newValue = value;
+        }
+        else if(item instanceof BooleanMenuItem) {
+            boolean value = change.getValue().equals("1") || change.getValue().equalsIgnoreCase("true");
+            menuTree.changeItem(item, item.newMenuState(value, true, false));
+            newValue = value ? 1 : 0;
+        }
+        else if(item instanceof EditableTextMenuItem) {
+            menuTree.changeItem(item, item.newMenuState(change.getValue(), true, false));
+        }
+
+        changesApplied.incrementAndGet();
+        sendCommand(newAcknowledgementCommand(change.getCorrelationId(), AckStatus.SUCCESS));
+        sendCommand(newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, item, newValue));
+    }
+
+    /**
+     * Sends a command to the connector, used internally and by tests that need the device to send something else,
+     * such as a change that originates on the device. Nothing is sent while disconnected. The caller waits while
+     * the connector has not yet read the device's earlier output.
+     * @param cmd the command to send.
+     */
+    public void sendCommand(MenuCommand cmd) {
+        var pipe = toConnector;
+        if(pipe == null) return;
+        outputLock.lock();
+        try {
+            outputBuffer.clear();
+            outputBuffer.put(START_OF_MSG);
+            outputBuffer.put(protocol.getKeyIdentifier());
+            outputBuffer.put((byte) cmd.getCommandType().getHigh());
+            outputBuffer.put((byte) cmd.getCommandType().getLow());
+            protocol.toChannel(outputBuffer, cmd);
+            outputBuffer.flip();
+            pipe.write(outputBuffer);
+        }
+        catch(IOException e) {
+            logger.log(DEBUG, name + " could not send " + cmd.getCommandType() + ", " + e.getMessage());
+        }
+        finally {
+            outputLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of commands the device has received since it was created.
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    /**
+     * @return the number of changes the device has applied since it was created.
+     */
+    public long getChangesApplied() {
+        return changesApplied.get();
+    }
+
+    private class BootCommandVisitor extends AbstractMenuItemVisitor<BootItemMenuCommand> {
+        private final int parentId;
+
+        BootCommandVisitor(int parentId) {
+            this.parentId = parentId;
+        }
+
+        @Override
+        public void visit(AnalogMenuItem item) {
+            setResult(newAnalogBootCommand(parentId, item, valueOf(item, 0)));
+        }
+
+        @Override
+        public void visit(EnumMenuItem item) {
+            setResult(newMenuEnumBootCommand(parentId, item, valueOf(item, 0)));
+        }
+
+        @Override
+        public void visit(BooleanMenuItem item) {
+            setResult(newMenuBooleanBootCommand(parentId, item, valueOf(item, false)));
+        }
+
+        @Override
+        public void visit(SubMenuItem item) {
+            setResult(newMenuSubBootCommand(parentId, item));
+        }
+
+        @Override
+        public void visit(EditableTextMenuItem item) {
+            setResult(newMenuTextBootCommand(parentId, item, valueOf(item, "")));
+        }
+
+        @Override
+        public void visit(ActionMenuItem item) {
+            setResult(newMenuActionBootCommand(parentId, item));
+        }
+
+        @Override
+        public void visit(FloatMenuItem item) {
+            setResult(newMenuFloatBootCommand(parentId, item, valueOf(item, 0.0F)));
+        }
+
+        @Override
+        public void visit(RuntimeListMenuItem listItem) {
+            setResult(newRuntimeListBootCommand(parentId, listItem, valueOf(listItem, List.of())));
+        }
+
+        @Override
+        public void visit(EditableLargeNumberMenuItem numItem) {
+            setResult(newLargeNumberBootItem(parentId, numItem, valueOf(numItem, BigDecimal.ZERO)));
+        }
+
+        @Override
+        public void anyItem(MenuItem item) {
+            logger.log(WARNING, name + " cannot bootstrap " + item.getClass().getSimpleName() + " " + item.getId());
+        }
+
+        private <T> T valueOf(MenuItem<T> item, T defaultValue) {
+            MenuState<T> state = menuTree.getMenuState(item);
+            return (state != null && state.getValue() != null) ? state.getValue() : defaultValue;
+        }
+    }
+}
@@ -0,0 +1,653 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import com.thecoderscorner.menu.domain.*;
+import com.thecoderscorner.menu.domain.state.CurrentScrollPosition;
+import com.thecoderscorner.menu.domain.state.PortableColor;
+import com.thecoderscorner.menu.remote.MenuCommandProtocol;
+import com.thecoderscorner.menu.remote.MessageFrameScanner;
+import com.thecoderscorner.menu.remote.commands.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.thecoderscorner.menu.domain.AnalogMenuItemBuilder.anAnalogMenuItemBuilder;
+import static com.thecoderscorner.menu.domain.SubMenuItemBuilder.aSubMenuItemBuilder;
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.commands.MenuChangeCommand.ChangeType;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.PROTOCOL_CHARSET;
+
+/**
+ * A compact binary protocol that is an alternative to the tag value protocol, mainly intended for slow serial
+ * links where the text keys of the tag value protocol take up most of the bytes sent. It uses the same frame
+ * header as the tag value protocol (start of message, protocol identifier and the two character message type),
+ * followed by the length of the message body as a varint and then the body itself. There is no end of message
+ * marker, the length is used instead. Within the body, fields are in a fixed order for each message type:
+ *
+ * <ul>
+ *     <li>Ids, lengths and counts are unsigned varints, 7 bits per byte with the top bit set when more follow.</li>
+ *     <li>Values that can be negative but are usually small, such as EEPROM addresses, are zig-zag varints.</li>
+ *     <li>Current values are fixed width, big endian: int32 for integers, float32 for floats.</li>
+ *     <li>Strings are a varint length in bytes followed by the UTF-8 encoded text.</li>
+ *     <li>Flags and small enumerations are a single byte.</li>
+ * </ul>
+ *
+ * Any bytes in the body after the fields that are understood are skipped, so that new fields can be added to the
+ * end of a message without breaking older readers. This protocol holds no state, so unlike the tag value protocol
+ * an instance can be shared between connections. It is negotiated during join, see MenuJoinCommand.
+ */
+public class BinaryMenuCommandProtocol implements MenuCommandProtocol {
+    public static final byte PROTOCOL_BINARY = 2;
+
+    /**
+     * The largest message body that will be accepted, anything larger is treated as corrupt.
+     */
+    public static final int MAX_BODY_LENGTH = 1024;
+
+    private static final MenuCommandType[] commandTypes = MenuCommandType.values();
+    private static final MenuButtonType[] buttonTypes = MenuButtonType.values();
+    private static final AckStatus[] ackStatuses = AckStatus.values();
+    private static final DialogMode[] dialogModes = DialogMode.values();
+    private static final MenuHeartbeatCommand.HeartbeatMode[] heartbeatModes = MenuHeartbeatCommand.HeartbeatMode.values();
+    private static final MenuBootstrapCommand.BootType[] bootTypes = MenuBootstrapCommand.BootType.values();
+    private static final BooleanMenuItem.BooleanNaming[] booleanNamings = BooleanMenuItem.BooleanNaming.values();
+
+    private static final int FLAG_READ_ONLY = 0x01;
+    private static final int FLAG_VISIBLE = 0x02;
+
+    @Override
+    public byte getKeyIdentifier() {
+        return PROTOCOL_BINARY;
+    }
+
+    /**
+     * The length is at the start of each message, so there is nothing to remember between checks.
+     */
+    @Override
+    public MessageFrameScanner createFrameScanner() {
+        return new MessageFrameScanner() {
+            @Override
+            public boolean isComplete(ByteBuffer buffer) throws IOException {
+                return isCompleteMessage(buffer);
+            }
+
+            @Override
+            public void reset() {
+                // no state is held
+            }
+        };
+    }
+
+    @Override
+    public boolean isCompleteMessage(ByteBuffer buffer) throws IOException {
+        // skip over the message type, then decode the body length without moving the position.
+        int pos = buffer.position() + 2;
+        int length = 0;
+        int shift = 0;
+        while(true) {
+            if(pos >= buffer.limit()) return false;
+            byte by = buffer.get(pos++);
+            length |= (by & 0x7f) << shift;
+            if((by & 0x80) == 0) break;
+            shift += 7;
+            if(shift > 14) throw new TcProtocolException("Binary message length is corrupt");
+        }
+        if(length > MAX_BODY_LENGTH) throw new TcProtocolException("Binary message too long " + length);
+        return buffer.limit() - pos >= length;
+    }
+
+    @Override
+    public MenuCommand fromChannel(ByteBuffer buffer) throws IOException {
+        char high = (char) buffer.get();
+        char low = (char) buffer.get();
+        int bodyLength = readVarInt(buffer);
+        if(bodyLength > buffer.remaining() || bodyLength > MAX_BODY_LENGTH) {
+            throw new TcProtocolException("Binary message length " + bodyLength + " is not valid");
+        }
+
+        // limit the buffer to the body, so that reading past the end is detected as underflow.
+        int oldLimit = buffer.limit();
+        int bodyEnd = buffer.position() + bodyLength;
+        buffer.limit(bodyEnd);
+        try {
+            return fromBody(msgTypeFrom(high, low), buffer);
+        }
+        catch(BufferUnderflowException ex) {
+            throw new TcProtocolException("Binary message " + high + low + " was shorter than expected");
+        }
+        finally {
+            buffer.limit(oldLimit);
+            buffer.position(bodyEnd);
+        }
+    }
+
+    private MenuCommandType msgTypeFrom(char high, char low) throws TcProtocolException {
+        for (MenuCommandType ty : commandTypes) {
+            if (ty.getHigh() == high && ty.getLow() == low) return ty;
+        }
+        throw new TcProtocolException("Protocol received unexpected message: " + high + low);
+    }
+
+    private MenuCommand fromBody(MenuCommandType cmdType, ByteBuffer buffer) throws IOException {
+        switch (cmdType) {
+            case JOIN:
+                return readJoin(buffer);
+            case PAIRING_REQUEST:
+                return newPairingCommand(readString(buffer), readUuid(buffer));
+            case HEARTBEAT:
+                return newHeartbeatCommand(buffer.getInt(), fromOrdinal(heartbeatModes, buffer.get()));
+            case BOOTSTRAP:
+                return new MenuBootstrapCommand(fromOrdinal(bootTypes, buffer.get()));
+            case ACKNOWLEDGEMENT:
+                return readAcknowledgement(buffer);
+            case CHANGE_INT_FIELD:
+                return readChange(buffer);
+            case DIALOG_UPDATE:
+                return readDialogUpdate(buffer);
+            case ANALOG_BOOT_ITEM:
+                return readAnalogBootItem(buffer);
+            case SUBMENU_BOOT_ITEM:
+                return readSubMenuBootItem(buffer);
+            case ACTION_BOOT_ITEM:
+                return readActionBootItem(buffer);
+            case ENUM_BOOT_ITEM:
+                return readEnumBootItem(buffer);
+            case BOOLEAN_BOOT_ITEM:
+                return readBooleanBootItem(buffer);
+            case TEXT_BOOT_ITEM:
+                return readTextBootItem(buffer);
+            case RUNTIME_LIST_BOOT:
+                return readRuntimeListBootItem(buffer);
+            case LARGE_NUM_BOOT_ITEM:
+                return readLargeNumBootItem(buffer);
+            case FLOAT_BOOT_ITEM:
+                return readFloatBootItem(buffer);
+            case BOOT_RGB_COLOR:
+                return readRgbBootItem(buffer);
+            case BOOT_SCROLL_CHOICE:
+                return readScrollBootItem(buffer);
+            default:
+                throw new TcProtocolException("Unknown message type " + cmdType);
+        }
+    }
+
+    private MenuCommand readJoin(ByteBuffer buffer) throws IOException {
+        String name = readString(buffer);
+        UUID uuid = readUuid(buffer);
+        int apiVersion = readVarInt(buffer);
+        ApiPlatform platform = ProtocolUtil.fromKeyToApiPlatform(readVarInt(buffer));
+        int count = readVarInt(buffer);
+        List<Byte> protocols = new ArrayList<>(count);
+        for(int i=0; i<count; i++) {
+            protocols.add(buffer.get());
+        }
+        return new MenuJoinCommand(uuid, name, platform, apiVersion, protocols);
+    }
+
+    private MenuCommand readAcknowledgement(ByteBuffer buffer) throws IOException {
+        CorrelationId correlation = readCorrelation(buffer);
+        int code = readSignedVarInt(buffer);
+        for(AckStatus status : ackStatuses) {
+            if(status.getStatusCode() == code) return newAcknowledgementCommand(correlation, status);
+        }
+        return newAcknowledgementCommand(correlation, AckStatus.UNKNOWN_ERROR);
+    }
+
+    private MenuCommand readChange(ByteBuffer buffer) throws IOException {
+        CorrelationId correlation = readCorrelation(buffer);
+        int id = readVarInt(buffer);
+        ChangeType type = MenuChangeCommand.changeTypeFromInt(buffer.get());
+        if(type == ChangeType.DELTA) {
+            return newDeltaChangeCommand(correlation, id, buffer.getInt());
+        }
+        else if(type == ChangeType.ABSOLUTE) {
+            return newAbsoluteMenuChangeCommand(correlation, id, readString(buffer));
+        }
+        else {
+            return newAbsoluteListChangeCommand(correlation, id, readStringList(buffer));
+        }
+    }
+
+    private MenuCommand readDialogUpdate(ByteBuffer buffer) throws IOException {
+        DialogMode mode = fromOrdinal(dialogModes, buffer.get());
+        String header = readString(buffer);
+        String text = readString(buffer);
+        MenuButtonType button1 = asButton(buffer.get());
+        MenuButtonType button2 = asButton(buffer.get());
+        return newDialogCommand(mode, header, text, button1, button2, readCorrelation(buffer));
+    }
+
+    private MenuButtonType asButton(int req) {
+        for (MenuButtonType b : buttonTypes) {
+            if (b.getTypeVal() == req) return b;
+        }
+        return MenuButtonType.NONE;
+    }
+
+    private MenuCommand readAnalogBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        AnalogMenuItem item = readItemFields(buffer, anAnalogMenuItemBuilder())
+                .withOffset(buffer.getInt())
+                .withDivisor(readVarInt(buffer))
+                .withMaxValue(readVarInt(buffer))
+                .withUnit(readString(buffer))
+                .menuItem();
+        return newAnalogBootCommand(parentId, item, buffer.getInt());
+    }
+
+    private MenuCommand readSubMenuBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        SubMenuItem item = readItemFields(buffer, aSubMenuItemBuilder()).menuItem();
+        return newMenuSubBootCommand(parentId, item);
+    }
+
+    private MenuCommand readActionBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        ActionMenuItem item = readItemFields(buffer, ActionMenuItemBuilder.anActionMenuItemBuilder()).menuItem();
+        return new MenuActionBootCommand(parentId, item, Boolean.FALSE);
+    }
+
+    private MenuCommand readEnumBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        var builder = readItemFields(buffer, EnumMenuItemBuilder.anEnumMenuItemBuilder());
+        int currentVal = buffer.getInt();
+        EnumMenuItem item = builder.withEnumList(readStringList(buffer)).menuItem();
+        return newMenuEnumBootCommand(parentId, item, currentVal);
+    }
+
+    private MenuCommand readBooleanBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        BooleanMenuItem item = readItemFields(buffer, BooleanMenuItemBuilder.aBooleanMenuItemBuilder())
+                .withNaming(fromOrdinal(booleanNamings, buffer.get()))
+                .menuItem();
+        return newMenuBooleanBootCommand(parentId, item, buffer.get() != 0);
+    }
+
+    private MenuCommand readTextBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        EditableTextMenuItem item = readItemFields(buffer, EditableTextMenuItemBuilder.aTextMenuItemBuilder())
+                .withLength(readVarInt(buffer))
+                .withEditItemType(EditItemType.fromId(buffer.get()))
+                .menuItem();
+        return newMenuTextBootCommand(parentId, item, readString(buffer));
+    }
+
+    private MenuCommand readRuntimeListBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        var builder = readItemFields(buffer, RuntimeListMenuItemBuilder.aRuntimeListMenuItemBuilder());
+        List<String> choices = readStringList(buffer);
+        RuntimeListMenuItem item = builder.withInitialRows(choices.size()).menuItem();
+        return newRuntimeListBootCommand(parentId, item, choices);
+    }
+
+    private MenuCommand readLargeNumBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        int decimalPlaces = buffer.get();
+        EditableLargeNumberMenuItem item = readItemFields(buffer, EditableLargeNumberMenuItemBuilder.aLargeNumberItemBuilder())
+                .withDecimalPlaces(decimalPlaces)
+                .withNegativeAllowed(buffer.get() != 0)
+                .withTotalDigits(readVarInt(buffer))
+                .menuItem();
+        return newLargeNumberBootItem(parentId, item, BigDecimal.valueOf(buffer.getLong(), decimalPlaces));
+    }
+
+    private MenuCommand readFloatBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        FloatMenuItem item = readItemFields(buffer, FloatMenuItemBuilder.aFloatMenuItemBuilder())
+                .withDecimalPlaces(buffer.get())
+                .menuItem();
+        return newMenuFloatBootCommand(parentId, item, buffer.getFloat());
+    }
+
+    private MenuCommand readRgbBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        Rgb32MenuItem item = readItemFields(buffer, new Rgb32MenuItemBuilder())
+                .withAlpha(buffer.get() != 0)
+                .menuItem();
+        var color = new PortableColor(buffer.get() & 0xff, buffer.get() & 0xff, buffer.get() & 0xff, buffer.get() & 0xff);
+        return new MenuRgb32BootCommand(parentId, item, color);
+    }
+
+    private MenuCommand readScrollBootItem(ByteBuffer buffer) throws IOException {
+        int parentId = readVarInt(buffer);
+        ScrollChoiceMenuItem item = readItemFields(buffer, new ScrollChoiceMenuItemBuilder())
+                .withItemWidth(readVarInt(buffer))
+                .withNumEntries(readVarInt(buffer))
+                .menuItem();
+        int position = readVarInt(buffer);
+        return new MenuScrollChoiceBootCommand(parentId, item, new CurrentScrollPosition(position, readString(buffer)));
+    }
+
+    private <T extends MenuItemBuilder<T>> T readItemFields(ByteBuffer buffer, T builder) throws IOException {
+        builder.withId(readVarInt(buffer))
+                .withEepromAddr(readSignedVarInt(buffer))
+                .withName(readString(buffer));
+        int flags = buffer.get();
+        return builder.withReadOnly((flags & FLAG_READ_ONLY) != 0)
+                .withVisible((flags & FLAG_VISIBLE) != 0);
+    }
+
+    private <E extends Enum<E>> E fromOrdinal(E[] values, int ordinal) throws TcProtocolException {
+        if(ordinal < 0 || ordinal >= values.length) {
+            throw new TcProtocolException("Value " + ordinal + " out of range for " + values[0].getDeclaringClass().getSimpleName());
+        }
+        return values[ordinal];
+    }
+
+    private CorrelationId readCorrelation(ByteBuffer buffer) throws TcProtocolException {
+        long correlation = readVarLong(buffer);
+        return (correlation == 0) ? CorrelationId.EMPTY_CORRELATION : new CorrelationId(correlation);
+    }
+
+    private UUID readUuid(ByteBuffer buffer) {
+        long msb = buffer.getLong();
+        long lsb = buffer.getLong();
+        return new UUID(msb, lsb);
+    }
+
+    private List<String> readStringList(ByteBuffer buffer) throws TcProtocolException {
+        int count = readVarInt(buffer);
+        if(count > buffer.remaining()) throw new TcProtocolException("List count " + count + " is larger than message");
+        List<String> list = new ArrayList<>(count);
+        for(int i=0; i<count; i++) {
+            list.add(readString(buffer));
+        }
+        return list;
+    }
+
+    private String readString(ByteBuffer buffer) throws TcProtocolException {
+        int len = readVarInt(buffer);
+        if(len > buffer.remaining()) throw new TcProtocolException("String length " + len + " is larger than message");
+
+        String text;
+        if(buffer.hasArray()) {
+            text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), len, PROTOCOL_CHARSET);
+            buffer.position(buffer.position() + len);
+        }
+        else {
+            byte[] data = new byte[len];
+            buffer.get(data);
+            text = new String(data, PROTOCOL_CHARSET);
+        }
+        return text;
+    }
+
+    private int readSignedVarInt(ByteBuffer buffer) throws TcProtocolException {
+        int zigZag = readVarInt(buffer);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private int readVarInt(ByteBuffer buffer) throws TcProtocolException {
+        long value = readVarLong(buffer);
+        if(value > 0xffffffffL) throw new TcProtocolException("Varint too large for an integer field");
+        return (int) value;
+    }
+
+    private long readVarLong(ByteBuffer buffer) throws TcProtocolException {
+        long value = 0;
+        int shift = 0;
+        byte by;
+        do {
+            if(shift > 63) throw new TcProtocolException("Varint is too long");
+            by = buffer.get();
+            value |= (long)(by & 0x7f) << shift;
+            shift += 7;
+        } while((by & 0x80) != 0);
+        return value;
+    }
+
+    @Override
+    public void toChannel(ByteBuffer buffer, MenuCommand cmd) {
+        // the body length is not known until it has been written, so leave one byte for it, which is enough
+        // for the majority of messages, and move the body along afterwards if more room is needed.
+        int lengthPosition = buffer.position();
+        buffer.position(lengthPosition + 1);
+
+        switch(cmd.getCommandType()) {
+            case JOIN:
+                writeJoin(buffer, (MenuJoinCommand) cmd);
+                break;
+            case PAIRING_REQUEST:
+                writePairingRequest(buffer, (MenuPairingCommand) cmd);
+                break;
+            case HEARTBEAT:
+                writeHeartbeat(buffer, (MenuHeartbeatCommand) cmd);
+                break;
+            case BOOTSTRAP:
+                buffer.put((byte) ((MenuBootstrapCommand) cmd).getBootType().ordinal());
+                break;
+            case ACKNOWLEDGEMENT:
+                writeAcknowledgement(buffer, (MenuAcknowledgementCommand) cmd);
+                break;
+            case CHANGE_INT_FIELD:
+                writeChange(buffer, (MenuChangeCommand) cmd);
+                break;
+            case DIALOG_UPDATE:
+                writeDialogUpdate(buffer, (MenuDialogCommand) cmd);
+                break;
+            case ANALOG_BOOT_ITEM:
+                writeAnalogBootItem(buffer, (MenuAnalogBootCommand) cmd);
+                break;
+            case SUBMENU_BOOT_ITEM:
+            case ACTION_BOOT_ITEM:
+                writeCommonBootFields(buffer, (BootItemMenuCommand<?, ?>) cmd);
+                break;
+            case ENUM_BOOT_ITEM:
+                writeEnumBootItem(buffer, (MenuEnumBootCommand) cmd);
+                break;
+            case BOOLEAN_BOOT_ITEM:
+                writeBooleanBootItem(buffer, (MenuBooleanBootCommand) cmd);
+                break;
+            case TEXT_BOOT_ITEM:
+                writeTextBootItem(buffer, (MenuTextBootCommand) cmd);
+                break;
+            case RUNTIME_LIST_BOOT:
+                writeCommonBootFields(buffer, (MenuRuntimeListBootCommand) cmd);
+                writeStringList(buffer, ((MenuRuntimeListBootCommand) cmd).getCurrentValue());
+                break;
+            case LARGE_NUM_BOOT_ITEM:
+                writeLargeNumBootItem(buffer, (MenuLargeNumBootCommand) cmd);
+                break;
+            case FLOAT_BOOT_ITEM:
+                writeFloatBootItem(buffer, (MenuFloatBootCommand) cmd);
+                break;
+            case BOOT_RGB_COLOR:
+                writeRgbBootItem(buffer, (MenuRgb32BootCommand) cmd);
+                break;
+            case BOOT_SCROLL_CHOICE:
+                writeScrollBootItem(buffer, (MenuScrollChoiceBootCommand) cmd);
+                break;
+        }
+
+        int end = buffer.position();
+        int bodyLength = end - lengthPosition - 1;
+        int extra = varIntSize(bodyLength) - 1;
+        for(int i = end - 1; extra != 0 && i > lengthPosition; i--) {
+            buffer.put(i + extra, buffer.get(i));
+        }
+        buffer.position(lengthPosition);
+        writeVarInt(buffer, bodyLength);
+        buffer.position(end + extra);
+    }
+
+    private void writeJoin(ByteBuffer buffer, MenuJoinCommand cmd) {
+        writeString(buffer, cmd.getMyName());
+        writeUuid(buffer, cmd.getAppUuid());
+        writeVarInt(buffer, cmd.getApiVersion());
+        writeVarInt(buffer, cmd.getPlatform().getKey());
+        var protocols = cmd.getSupportedProtocols();
+        writeVarInt(buffer, protocols.size());
+        for(int i=0; i<protocols.size(); i++) {
+            buffer.put(protocols.get(i));
+        }
+    }
+
+    private void writePairingRequest(ByteBuffer buffer, MenuPairingCommand cmd) {
+        writeString(buffer, cmd.getName());
+        writeUuid(buffer, cmd.getUuid());
+    }
+
+    private void writeHeartbeat(ByteBuffer buffer, MenuHeartbeatCommand cmd) {
+        buffer.putInt(cmd.getHearbeatInterval());
+        buffer.put((byte) cmd.getMode().ordinal());
+    }
+
+    private void writeAcknowledgement(ByteBuffer buffer, MenuAcknowledgementCommand cmd) {
+        writeVarLong(buffer, cmd.getCorrelationId().getUnderlyingId());
+        writeSignedVarInt(buffer, cmd.getAckStatus().getStatusCode());
+    }
+
+    private void writeChange(ByteBuffer buffer, MenuChangeCommand cmd) {
+        writeVarLong(buffer, cmd.getCorrelationId().getUnderlyingId());
+        writeVarInt(buffer, cmd.getMenuItemId());
+        buffer.put((byte) MenuChangeCommand.changeTypeToInt(cmd.getChangeType()));
+        if(cmd.getChangeType() == ChangeType.DELTA) {
+            buffer.putInt(Integer.parseInt(cmd.getValue()));
+        }
+        else if(cmd.getChangeType() == ChangeType.ABSOLUTE) {
+            writeString(buffer, cmd.getValue());
+        }
+        else {
+            writeStringList(buffer, cmd.getValues());
+        }
+    }
+
+    private void writeDialogUpdate(ByteBuffer buffer, MenuDialogCommand cmd) {
+        buffer.put((byte) cmd.getDialogMode().ordinal());
+        writeString(buffer, cmd.getHeader() != null ? cmd.getHeader() : "");
+        writeString(buffer, cmd.getBuffer() != null ? cmd.getBuffer() : "");
+        buffer.put((byte) cmd.getButton1().getTypeVal());
+        buffer.put((byte) cmd.getButton2().getTypeVal());
+        writeVarLong(buffer, cmd.getCorrelationId().getUnderlyingId());
+    }
+
+    private void writeCommonBootFields(ByteBuffer buffer, BootItemMenuCommand<?, ?> cmd) {
+        writeVarInt(buffer, cmd.getSubMenuId());
+        writeItemFields(buffer, cmd.getMenuItem());
+    }
+
+    private void writeItemFields(ByteBuffer buffer, MenuItem item) {
+        writeVarInt(buffer, item.getId());
+        writeSignedVarInt(buffer, item.getEepromAddress());
+        writeString(buffer, item.getName());
+        int flags = (item.isReadOnly() ? FLAG_READ_ONLY : 0) | (item.isVisible() ? FLAG_VISIBLE : 0);
+        buffer.put((byte) flags);
+    }
+
+    private void writeAnalogBootItem(ByteBuffer buffer, MenuAnalogBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        AnalogMenuItem item = cmd.getMenuItem();
+        buffer.putInt(item.getOffset());
+        writeVarInt(buffer, item.getDivisor());
+        writeVarInt(buffer, item.getMaxValue());
+        writeString(buffer, item.getUnitName());
+        buffer.putInt(cmd.getCurrentValue());
+    }
+
+    private void writeEnumBootItem(ByteBuffer buffer, MenuEnumBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        buffer.putInt(cmd.getCurrentValue());
+        writeStringList(buffer, cmd.getMenuItem().getEnumEntries());
+    }
+
+    private void writeBooleanBootItem(ByteBuffer buffer, MenuBooleanBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        buffer.put((byte) cmd.getMenuItem().getNaming().ordinal());
+        buffer.put((byte) (cmd.getCurrentValue() ? 1 : 0));
+    }
+
+    private void writeTextBootItem(ByteBuffer buffer, MenuTextBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        writeVarInt(buffer, cmd.getMenuItem().getTextLength());
+        buffer.put((byte) cmd.getMenuItem().getItemType().getMsgId());
+        writeString(buffer, cmd.getCurrentValue());
+    }
+
+    private void writeLargeNumBootItem(ByteBuffer buffer, MenuLargeNumBootCommand cmd) {
+        // decimal places come before the item fields, the reader needs them to construct the value.
+        EditableLargeNumberMenuItem item = cmd.getMenuItem();
+        writeVarInt(buffer, cmd.getSubMenuId());
+        buffer.put((byte) item.getDecimalPlaces());
+        writeItemFields(buffer, item);
+        buffer.put((byte) (item.isNegativeAllowed() ? 1 : 0));
+        writeVarInt(buffer, item.getDigitsAllowed());
+        buffer.putLong(cmd.getCurrentValue().setScale(item.getDecimalPlaces(), RoundingMode.HALF_EVEN).unscaledValue().longValue());
+    }
+
+    private void writeFloatBootItem(ByteBuffer buffer, MenuFloatBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        buffer.put((byte) cmd.getMenuItem().getNumDecimalPlaces());
+        buffer.putFloat(cmd.getCurrentValue());
+    }
+
+    private void writeRgbBootItem(ByteBuffer buffer, MenuRgb32BootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        buffer.put((byte) (cmd.getMenuItem().isIncludeAlphaChannel() ? 1 : 0));
+        PortableColor color = cmd.getCurrentValue();
+        buffer.put((byte) color.getRed());
+        buffer.put((byte) color.getGreen());
+        buffer.put((byte) color.getBlue());
+        buffer.put((byte) color.getAlpha());
+    }
+
+    private void writeScrollBootItem(ByteBuffer buffer, MenuScrollChoiceBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        writeVarInt(buffer, cmd.getMenuItem().getItemWidth());
+        writeVarInt(buffer, cmd.getMenuItem().getNumEntries());
+        writeVarInt(buffer, cmd.getCurrentValue().getPosition());
+        writeString(buffer, cmd.getCurrentValue().getValue());
+    }
+
+    private void writeUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private void writeStringList(ByteBuffer buffer, List<String> list) {
+        writeVarInt(buffer, list.size());
+        for(int i=0; i<list.size(); i++) {
+            writeString(buffer, list.get(i));
+        }
+    }
+
+    private void writeString(ByteBuffer buffer, String text) {
+        writeVarInt(buffer, Utf8Text.encodedLength(text));
+        Utf8Text.write(buffer, text);
+    }
+
+    private void writeSignedVarInt(ByteBuffer buffer, int value) {
+        writeVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    private void writeVarInt(ByteBuffer buffer, int value) {
+        writeVarLong(buffer, value & 0xffffffffL);
+    }
+
+    private void writeVarLong(ByteBuffer buffer, long value) {
+        while((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
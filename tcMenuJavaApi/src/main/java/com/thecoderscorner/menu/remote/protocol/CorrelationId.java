@@ -6,19 +6,18 @@
 
 package com.thecoderscorner.menu.remote.protocol;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * A correlation ID that allows events sent from the client or server to be linked via
- * this ID. Calling the constructor with no parameters creates a new correlation. These
- * are only unique for a time frame of hours to days. They should not be used for any
- * purpose requiring persistence that could extend beyond that.
+ * this ID. Calling the constructor with no parameters creates a new correlation from a
+ * generator shared by the whole JVM, connections should normally have their own
+ * CorrelationIdGenerator instead. These are 32 bit values that will eventually repeat,
+ * they should not be used for any purpose requiring persistence.
  */
 public class CorrelationId {
     public final static CorrelationId EMPTY_CORRELATION = new CorrelationId("0");
-    private static final int COUNTER_MODULO = 1000000;
+    private static final CorrelationIdGenerator SHARED_GENERATOR = new CorrelationIdGenerator();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     private final long correlation;
-    private static final AtomicInteger counter = new AtomicInteger(0);
 
     /**
      * Creates a correlation id with the specified value, for existing correlation ids
@@ -29,12 +28,19 @@ public class CorrelationId {
     }
 
     /**
-     * Creates a new correlation ID that is relatively unique
+     * Creates a correlation id with the specified value, for existing correlation ids that have
+     * already been decoded into their numeric form.
+     * @param correlation the id to be represented
+     */
+    public CorrelationId(long correlation) {
+        this.correlation = correlation;
+    }
+
+    /**
+     * Creates a new correlation ID from the generator shared by the whole JVM.
      */
     public CorrelationId() {
-        int counterModulo = counter.incrementAndGet() % COUNTER_MODULO;
-        int timePart = (int) (System.currentTimeMillis() % (Integer.MAX_VALUE - COUNTER_MODULO));
-        this.correlation = timePart + counterModulo;
+        this.correlation = SHARED_GENERATOR.newCorrelation().correlation;
     }
 
     /**
@@ -43,7 +49,13 @@ public class CorrelationId {
      */
     @Override
     public String toString() {
-        return String.format("%08x", correlation);
+        // same as the %08x format, at least eight digits, more if needed.
+        int nibbles = Math.max(8, (Long.SIZE - Long.numberOfLeadingZeros(correlation) + 3) / 4);
+        char[] text = new char[nibbles];
+        for(int i = 0; i < nibbles; i++) {
+            text[nibbles - 1 - i] = HEX_DIGITS[(int) ((correlation >>> (i * 4)) & 0x0f)];
+        }
+        return new String(text);
     }
 
     /**
@@ -64,6 +76,7 @@ public class CorrelationId {
 
     @Override
     public int hashCode() {
-        return (int) (correlation * 31);
+        // ids are sequential, so spread them over the whole int range before they are used in a hash table.
+        return Long.hashCode(correlation * 0x9E3779B97F4A7C15L);
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out correlation ids for one connection. Ids are 32 bits wide, as that is what the embedded side stores,
+ * and count upwards from a random starting point, so they never repeat until all four billion have been used and
+ * two JVMs talking to the same device are very unlikely to overlap. Zero is never handed out as it is the empty
+ * correlation.
+ */
+public class CorrelationIdGenerator {
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+    private final AtomicInteger counter;
+
+    /**
+     * Creates a generator that starts from a random point.
+     */
+    public CorrelationIdGenerator() {
+        this(SEED_SOURCE.nextInt());
+    }
+
+    /**
+     * Creates a generator whose first id will be one after the starting point, mainly for testing.
+     * @param startingPoint the value to count up from
+     */
+    public CorrelationIdGenerator(int startingPoint) {
+        counter = new AtomicInteger(startingPoint);
+    }
+
+    /**
+     * @return the next correlation id, which is never the empty correlation.
+     */
+    public CorrelationId newCorrelation() {
+        int next = counter.incrementAndGet();
+        while(next == 0) next = counter.incrementAndGet();
+        return new CorrelationId(Integer.toUnsignedLong(next));
+    }
+}
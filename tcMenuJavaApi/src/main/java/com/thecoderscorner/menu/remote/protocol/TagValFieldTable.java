@@ -0,0 +1,326 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable, streaming alternative to TagValTextParser that decodes tag value messages straight out of the
+ * ByteBuffer. Keys are stored as two byte codes and values are kept as raw bytes in an internal array that
+ * is reused between messages, integer values are parsed directly from those bytes, and a String is only
+ * created when a field is requested as text. One instance should be used per connection, it is not thread
+ * safe and each call to parse invalidates the fields of the previous message.
+ */
+public class TagValFieldTable {
+    private static final int INITIAL_FIELDS = 32;
+    private static final int INITIAL_DATA_SIZE = 256;
+    private static final int NO_FIELD = -1;
+
+    private int[] keys = new int[INITIAL_FIELDS];
+    private int[] valueStarts = new int[INITIAL_FIELDS];
+    private int[] valueLengths = new int[INITIAL_FIELDS];
+    private int[] hashSlots = new int[INITIAL_FIELDS * 2];
+    private int fieldCount;
+    private byte[] data = new byte[INITIAL_DATA_SIZE];
+    private int dataLength;
+
+    /**
+     * Converts a two character key such as "ID" into the code used for lookups in this table.
+     * @param hi the first character of the key
+     * @param lo the second character of the key
+     * @return the key code
+     */
+    public static int keyOf(char hi, char lo) {
+        return ((hi & 0xff) << 8) | (lo & 0xff);
+    }
+
+    /**
+     * Converts a key string into the code used for lookups in this table, keys must be one or two
+     * characters in length.
+     * @param key the key to convert
+     * @return the key code
+     */
+    public static int keyOf(String key) {
+        if(key.length() == 2) return keyOf(key.charAt(0), key.charAt(1));
+        else if(key.length() == 1) return key.charAt(0) & 0xff;
+        throw new IllegalArgumentException("Keys must be one or two characters: " + key);
+    }
+
+    /**
+     * Clears down any previous message and reads all the tags and values from the buffer, stopping
+     * once the end of message is found or the buffer has no more data.
+     * @param buffer a buffer positioned at the first key of a message.
+     * @throws TcProtocolException if the buffer is invalid
+     */
+    public void parse(ByteBuffer buffer) throws TcProtocolException {
+        fieldCount = 0;
+        dataLength = 0;
+        Arrays.fill(hashSlots, NO_FIELD);
+
+        boolean foundEnd = false;
+        while(buffer.hasRemaining() && !foundEnd) {
+            int keyStart = dataLength;
+            int keyLen = readToken(buffer);
+            if(keyLen == 0) {
+                throw new TcProtocolException("Key is empty in protocol");
+            }
+            else if(isEndToken(keyStart, keyLen)) {
+                foundEnd = true;
+            }
+            else {
+                int key = (keyLen == 2) ? keyOf((char)data[keyStart], (char)data[keyStart + 1]) : data[keyStart] & 0xff;
+
+                // the key bytes are no longer needed, so the value can be stored over them.
+                dataLength = keyStart;
+                int valueLen = readToken(buffer);
+                if (isEndToken(keyStart, valueLen)) {
+                    foundEnd = true;
+                }
+
+                // keys that are not one or two characters can never be looked up, so are dropped.
+                if(keyLen <= 2) addField(key, keyStart, valueLen);
+            }
+        }
+    }
+
+    private boolean isEndToken(int start, int len) {
+        return len == 1 && data[start] == TagValMenuCommandProtocol.END_OF_MSG;
+    }
+
+    /**
+     * Reads the next key or value into the data array, returning the length of the token. Upon finding the end
+     * of message, the token is replaced with the end of message byte as per TagValTextParser.
+     */
+    private int readToken(ByteBuffer buffer) {
+        int start = dataLength;
+        while(buffer.hasRemaining()) {
+            byte by = buffer.get();
+            if(by == TagValMenuCommandProtocol.END_OF_MSG) {
+                dataLength = start;
+                appendByte(by);
+                return 1;
+            }
+            else if(by == '\\') {
+                // special escape case allows anything to be sent
+                if(!buffer.hasRemaining()) break;
+                appendByte(buffer.get());
+            }
+            else if(by == '=' || by == TagValMenuCommandProtocol.FIELD_TERMINATOR) {
+                // end of current token
+                break;
+            }
+            else {
+                appendByte(by);
+            }
+        }
+        return dataLength - start;
+    }
+
+    private void appendByte(byte by) {
+        if(dataLength == data.length) data = Arrays.copyOf(data, data.length * 2);
+        data[dataLength++] = by;
+    }
+
+    private void addField(int key, int start, int len) {
+        int existing = indexOf(key);
+        if(existing != NO_FIELD) {
+            // same behaviour as a map, the latest value wins.
+            valueStarts[existing] = start;
+            valueLengths[existing] = len;
+            return;
+        }
+
+        if(fieldCount == keys.length) growFields();
+        keys[fieldCount] = key;
+        valueStarts[fieldCount] = start;
+        valueLengths[fieldCount] = len;
+        insertSlot(key, fieldCount);
+        fieldCount++;
+    }
+
+    private void growFields() {
+        int newSize = keys.length * 2;
+        keys = Arrays.copyOf(keys, newSize);
+        valueStarts = Arrays.copyOf(valueStarts, newSize);
+        valueLengths = Arrays.copyOf(valueLengths, newSize);
+        hashSlots = new int[newSize * 2];
+        Arrays.fill(hashSlots, NO_FIELD);
+        for(int i=0; i<fieldCount; i++) {
+            insertSlot(keys[i], i);
+        }
+    }
+
+    private void insertSlot(int key, int fieldIdx) {
+        int mask = hashSlots.length - 1;
+        int slot = mix(key) & mask;
+        while(hashSlots[slot] != NO_FIELD) {
+            slot = (slot + 1) & mask;
+        }
+        hashSlots[slot] = fieldIdx;
+    }
+
+    private int indexOf(int key) {
+        int mask = hashSlots.length - 1;
+        int slot = mix(key) & mask;
+        int fieldIdx;
+        while((fieldIdx = hashSlots[slot]) != NO_FIELD) {
+            if(keys[fieldIdx] == key) return fieldIdx;
+            slot = (slot + 1) & mask;
+        }
+        return NO_FIELD;
+    }
+
+    private static int mix(int key) {
+        return (key * 0x9E3779B9) >>> 16;
+    }
+
+    /**
+     * @return the number of fields in the current message.
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Checks if the key is present in the current message
+     * @param key the key to check
+     * @return true if present, otherwise false
+     */
+    public boolean hasKey(String key) {
+        return indexOf(keyOf(key)) != NO_FIELD;
+    }
+
+    /**
+     * Gets the value associated with the key from the message. This version throws an exception
+     * if the key is not available and should be used for mandatory fields
+     * @param key the key to obtain
+     * @return the associated value
+     * @throws TcProtocolException if the key is not present
+     */
+    public String getValue(String key) throws TcProtocolException {
+        return asString(mandatoryIndex(key));
+    }
+
+    /**
+     * Gets the value associated with the key from the message if it exists. This version returns the default
+     * value if it does not exist.
+     * @param key the key to obtain
+     * @param defaultVal the value to return when the key is not present
+     * @return the associated value or the default
+     */
+    public String getValueWithDefault(String key, String defaultVal) {
+        return getValueWithDefault(keyOf(key), defaultVal);
+    }
+
+    /**
+     * Gets the value associated with the key code (see keyOf) if it exists, otherwise the default.
+     * @param keyCode the key code to obtain
+     * @param defaultVal the value to return when the key is not present
+     * @return the associated value or the default
+     */
+    public String getValueWithDefault(int keyCode, String defaultVal) {
+        int idx = indexOf(keyCode);
+        return (idx == NO_FIELD) ? defaultVal : asString(idx);
+    }
+
+    /**
+     * Gets the value for a mandatory key as an integer, parsed directly from the message bytes.
+     * @param key the key to obtain
+     * @return the integer value associated
+     * @throws TcProtocolException if the key is not present or not an integer
+     */
+    public int getValueAsInt(String key) throws TcProtocolException {
+        return asInt(mandatoryIndex(key));
+    }
+
+    /**
+     * Gets the value for a key as an integer, parsed directly from the message bytes, or the default
+     * if the key is not present.
+     * @param key the key to obtain
+     * @param defaultVal the value to return when the key is not present
+     * @return the integer value associated or the default
+     * @throws TcProtocolException if the value is not an integer
+     */
+    public int getValueAsIntWithDefault(String key, int defaultVal) throws TcProtocolException {
+        int idx = indexOf(keyOf(key));
+        return (idx == NO_FIELD) ? defaultVal : asInt(idx);
+    }
+
+    /**
+     * Gets the value for a key as a hexadecimal long, such as a correlation ID, parsed directly from the
+     * message bytes, or the default if the key is not present or empty.
+     * @param key the key to obtain
+     * @param defaultVal the value to return when the key is not present
+     * @return the value associated or the default
+     * @throws TcProtocolException if the value is not valid hexadecimal
+     */
+    public long getValueAsHexWithDefault(String key, long defaultVal) throws TcProtocolException {
+        int idx = indexOf(keyOf(key));
+        if(idx == NO_FIELD || valueLengths[idx] == 0) return defaultVal;
+
+        int pos = valueStarts[idx];
+        int end = pos + valueLengths[idx];
+        if(end - pos > 16) throw new TcProtocolException("Hex value too long for key " + key);
+        long result = 0;
+        for(; pos < end; pos++) {
+            int digit = Character.digit(data[pos], 16);
+            if(digit < 0) throw new TcProtocolException("Value is not hex: " + asString(idx));
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    private int mandatoryIndex(String key) throws TcProtocolException {
+        int idx = indexOf(keyOf(key));
+        if(idx == NO_FIELD) {
+            throw new TcProtocolException("Key " + key + " doesn't exist in " + this);
+        }
+        return idx;
+    }
+
+    private String asString(int idx) {
+        return new String(data, valueStarts[idx], valueLengths[idx], TagValMenuCommandProtocol.PROTOCOL_CHARSET);
+    }
+
+    private int asInt(int idx) throws TcProtocolException {
+        int pos = valueStarts[idx];
+        int end = pos + valueLengths[idx];
+        if(pos == end) throw new TcProtocolException("Empty value where integer expected");
+
+        boolean negative = false;
+        if(data[pos] == '-' || data[pos] == '+') {
+            negative = data[pos] == '-';
+            pos++;
+            if(pos == end) throw new TcProtocolException("Sign without digits where integer expected");
+        }
+
+        long result = 0;
+        for(; pos < end; pos++) {
+            int digit = data[pos] - '0';
+            if(digit < 0 || digit > 9) throw new TcProtocolException("Value is not an integer: " + asString(idx));
+            result = (result * 10) + digit;
+            if(result > (long)Integer.MAX_VALUE + 1) throw new TcProtocolException("Integer overflow: " + asString(idx));
+        }
+
+        if(negative) result = -result;
+        if(result > Integer.MAX_VALUE) throw new TcProtocolException("Integer overflow: " + asString(idx));
+        return (int) result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(255);
+        for(int i=0; i<fieldCount; i++) {
+            sb.append("[Key='");
+            if(keys[i] > 0xff) sb.append((char)(keys[i] >>> 8));
+            sb.append((char)(keys[i] & 0xff));
+            sb.append("', val='").append(asString(i)).append("'] ");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import com.thecoderscorner.menu.remote.MessageFrameScanner;
+
+import java.nio.ByteBuffer;
+
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.END_OF_MSG;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.FIELD_TERMINATOR;
+
+/**
+ * Finds the end of a tag value message, which is a field terminator followed by the end of message byte. Any byte
+ * that follows a backslash is escaped, in the same way as TagValFieldTable, so an escaped field terminator never
+ * ends the message. Scanning carries on from where the last call stopped, so a message that arrives in many small
+ * pieces is only scanned once in total.
+ */
+public class TagValFrameScanner implements MessageFrameScanner {
+    private int scanned;
+    private boolean escapeNext;
+    private boolean afterTerminator;
+    private boolean complete;
+
+    @Override
+    public boolean isComplete(ByteBuffer buffer) {
+        if(complete) return true;
+        int start = buffer.position();
+        int limit = buffer.limit();
+        for(int i = start + scanned; i < limit; i++) {
+            byte by = buffer.get(i);
+            scanned++;
+            if(escapeNext) {
+                escapeNext = false;
+                afterTerminator = false;
+            }
+            else if(afterTerminator && by == END_OF_MSG) {
+                complete = true;
+                return true;
+            }
+            else {
+                afterTerminator = (by == FIELD_TERMINATOR);
+                escapeNext = (by == '\\');
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        scanned = 0;
+        escapeNext = false;
+        afterTerminator = false;
+        complete = false;
+    }
+
+    /**
+     * @return the number of bytes from the start of the message that have been scanned so far.
+     */
+    public int getScannedLength() {
+        return scanned;
+    }
+}
@@ -14,8 +14,10 @@ import com.thecoderscorner.menu.remote.commands.*;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.ByteBuffer;
-import java.text.NumberFormat;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static com.thecoderscorner.menu.domain.AnalogMenuItemBuilder.anAnalogMenuItemBuilder;
@@ -40,24 +42,35 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
     public static final byte FIELD_TERMINATOR = '|';
     private static final boolean DEBUG_ALL_MESSAGES = false;
 
+    /**
+     * All text in the protocol is sent and received in this character set.
+     */
+    public static final Charset PROTOCOL_CHARSET = StandardCharsets.UTF_8;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final MenuCommandType[] commandTypes = MenuCommandType.values();
+    private static final MenuButtonType[] buttonTypes = MenuButtonType.values();
+    private static final AckStatus[] ackStatuses = AckStatus.values();
+
     private final System.Logger logger = System.getLogger(getClass().getSimpleName());
-    private final Map<String, MenuCommandType> codeToCmdType;
 
-    public TagValMenuCommandProtocol() {
-        codeToCmdType = new HashMap<>();
-        for (MenuCommandType ty : MenuCommandType.values()) {
-            codeToCmdType.put(ty.getCode(), ty);
-        }
-    }
+    /**
+     * The field table is reused for every inbound message to avoid allocation, so an instance of this
+     * protocol should be used for one connection only. Decoding is synchronized on it for safety.
+     */
+    private final TagValFieldTable fieldTable = new TagValFieldTable();
 
     @Override
     public MenuCommand fromChannel(ByteBuffer buffer) throws IOException {
-        String ty = getMsgTypeFromBuffer(buffer);
-        TagValTextParser parser = new TagValTextParser(buffer);
-        if(DEBUG_ALL_MESSAGES) logger.log(DEBUG, "Protocol convert in: {0}", parser);
-        MenuCommandType cmdType = codeToCmdType.get(ty);
-        if(cmdType == null) throw new TcProtocolException("Protocol received unexpected message: " + ty);
+        MenuCommandType cmdType = getMsgTypeFromBuffer(buffer);
+        synchronized (fieldTable) {
+            fieldTable.parse(buffer);
+            if(DEBUG_ALL_MESSAGES) logger.log(DEBUG, "Protocol convert in: {0}", fieldTable);
+            return fromFieldTable(cmdType, fieldTable);
+        }
+    }
 
+    private MenuCommand fromFieldTable(MenuCommandType cmdType, TagValFieldTable parser) throws IOException {
         switch (cmdType) {
             case JOIN:
                 return processJoin(parser);
@@ -100,16 +113,17 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         }
     }
 
-    private String getMsgTypeFromBuffer(ByteBuffer buffer) {
-        StringBuilder sb = new StringBuilder();
-        return sb.append((char)buffer.get())
-                .append((char)buffer.get())
-                .toString();
+    private MenuCommandType getMsgTypeFromBuffer(ByteBuffer buffer) throws TcProtocolException {
+        char high = (char) buffer.get();
+        char low = (char) buffer.get();
+        for (MenuCommandType ty : commandTypes) {
+            if (ty.getHigh() == high && ty.getLow() == low) return ty;
+        }
+        throw new TcProtocolException("Protocol received unexpected message: " + high + low);
     }
 
-    private MenuCommand processDialogUpdate(TagValTextParser parser) throws IOException {
-        var cor = parser.getValueWithDefault(KEY_CORRELATION_FIELD, "");
-        var correlationId = (cor.isEmpty()) ? CorrelationId.EMPTY_CORRELATION : new CorrelationId(cor);
+    private MenuCommand processDialogUpdate(TagValFieldTable parser) throws IOException {
+        var correlationId = correlationFromMsg(parser);
 
         return newDialogCommand(
                 asDialogMode(parser.getValue(KEY_MODE_FIELD)),
@@ -132,34 +146,35 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
     }
 
     private MenuButtonType asButton(int req) {
-        return Arrays.stream(MenuButtonType.values())
-                .filter(b -> b.getTypeVal() == req)
-                .findFirst().orElse(MenuButtonType.NONE);
+        for (MenuButtonType b : buttonTypes) {
+            if (b.getTypeVal() == req) return b;
+        }
+        return MenuButtonType.NONE;
     }
 
-    private MenuCommand processPairingRequest(TagValTextParser parser) throws IOException {
+    private MenuCommand processPairingRequest(TagValFieldTable parser) throws IOException {
         return newPairingCommand(
                 parser.getValue(KEY_NAME_FIELD),
                 UUID.fromString(parser.getValue(KEY_UUID_FIELD))
         );
     }
 
-    private MenuCommand processAcknowledgement(TagValTextParser parser) throws IOException {
-        CorrelationId id = new CorrelationId(parser.getValueWithDefault(KEY_CORRELATION_FIELD, "0"));
+    private MenuCommand processAcknowledgement(TagValFieldTable parser) throws IOException {
+        CorrelationId id = correlationFromMsg(parser);
         return newAcknowledgementCommand(id, fromCode(parser.getValueAsInt(KEY_ACK_STATUS)));
     }
 
     private AckStatus fromCode(int codeIn) {
-        return Arrays.stream(AckStatus.values())
-                .filter(s-> s.getStatusCode() == codeIn)
-                .findFirst().orElse(AckStatus.UNKNOWN_ERROR);
+        for (AckStatus s : ackStatuses) {
+            if (s.getStatusCode() == codeIn) return s;
+        }
+        return AckStatus.UNKNOWN_ERROR;
     }
 
-    private MenuCommand processItemChange(TagValTextParser parser) throws IOException {
+    private MenuCommand processItemChange(TagValFieldTable parser) throws IOException {
         ChangeType type = MenuChangeCommand.changeTypeFromInt(parser.getValueAsInt(KEY_CHANGE_TYPE));
 
-        var corStr = parser.getValueWithDefault( KEY_CORRELATION_FIELD, "");
-        var correlation = corStr.isEmpty() ? CorrelationId.EMPTY_CORRELATION : new CorrelationId(corStr);
+        var correlation = correlationFromMsg(parser);
         if(type == ChangeType.DELTA) {
             return newDeltaChangeCommand(
                     correlation,
@@ -184,7 +199,12 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         }
     }
 
-    private MenuCommand processRuntimeListBoot(TagValTextParser parser) throws IOException {
+    private CorrelationId correlationFromMsg(TagValFieldTable parser) throws TcProtocolException {
+        long correlation = parser.getValueAsHexWithDefault(KEY_CORRELATION_FIELD, 0);
+        return (correlation == 0) ? CorrelationId.EMPTY_CORRELATION : new CorrelationId(correlation);
+    }
+
+    private MenuCommand processRuntimeListBoot(TagValFieldTable parser) throws IOException {
         RuntimeListMenuItem item = RuntimeListMenuItemBuilder.aRuntimeListMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -203,7 +223,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         );
     }
 
-    private MenuCommand processBoolBootItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processBoolBootItem(TagValFieldTable parser) throws IOException {
         BooleanMenuItem item = BooleanMenuItemBuilder.aBooleanMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -218,7 +238,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newMenuBooleanBootCommand(parentId, item, currentVal != 0);
     }
 
-    private MenuCommand processRuntimeRgbColor(TagValTextParser parser) throws IOException {
+    private MenuCommand processRuntimeRgbColor(TagValFieldTable parser) throws IOException {
         Rgb32MenuItem item = new Rgb32MenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -233,7 +253,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return new MenuRgb32BootCommand(parentId, item, new PortableColor(currentVal));
     }
 
-    private MenuCommand processRuntimeScrollChoice(TagValTextParser parser) throws IOException {
+    private MenuCommand processRuntimeScrollChoice(TagValFieldTable parser) throws IOException {
         ScrollChoiceMenuItem item = new ScrollChoiceMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -248,7 +268,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         var currentVal = parser.getValue(KEY_CURRENT_VAL);
         return new MenuScrollChoiceBootCommand(parentId, item, new CurrentScrollPosition(currentVal));
     }
-    private MenuCommand processLargeNumBootItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processLargeNumBootItem(TagValFieldTable parser) throws IOException {
         EditableLargeNumberMenuItem item = EditableLargeNumberMenuItemBuilder.aLargeNumberItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -265,7 +285,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newLargeNumberBootItem(parentId, item, new BigDecimal(text));
     }
 
-    private MenuCommand processTextItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processTextItem(TagValFieldTable parser) throws IOException {
         EditableTextMenuItem item = EditableTextMenuItemBuilder.aTextMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -281,7 +301,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newMenuTextBootCommand(parentId, item, currentVal);
     }
 
-    private MenuCommand processFloatItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processFloatItem(TagValFieldTable parser) throws IOException {
         FloatMenuItem item = FloatMenuItemBuilder.aFloatMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -308,7 +328,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         }
     }
 
-    private MenuCommand processEnumBootItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processEnumBootItem(TagValFieldTable parser) throws IOException {
 
         List<String> choices = choicesFromMsg(parser);
 
@@ -326,12 +346,12 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newMenuEnumBootCommand(parentId, item, currentVal);
     }
 
-    private List<String> choicesFromMsg(TagValTextParser parser) throws IOException {
-        List<String> choices = new ArrayList<>();
+    private List<String> choicesFromMsg(TagValFieldTable parser) throws IOException {
         int noOfItems = parser.getValueAsInt(KEY_NO_OF_CHOICES);
+        List<String> choices = new ArrayList<>(noOfItems);
         for(int i=0;i<noOfItems;i++) {
-            String keyVal = KEY_PREPEND_CHOICE + (char)(i + 'A');
-            String keyName = KEY_PREPEND_NAMECHOICE + (char)(i + 'A');
+            int keyVal = TagValFieldTable.keyOf(KEY_PREPEND_CHOICE.charAt(0), (char)(i + 'A'));
+            int keyName = TagValFieldTable.keyOf(KEY_PREPEND_NAMECHOICE.charAt(0), (char)(i + 'A'));
             String keyText = parser.getValueWithDefault(keyName, "");
             String valText = parser.getValueWithDefault(keyVal, "");
             if(keyText.isEmpty()) {
@@ -344,7 +364,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return choices;
     }
 
-    private MenuCommand processSubMenuBootItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processSubMenuBootItem(TagValFieldTable parser) throws IOException {
         SubMenuItem item = aSubMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -354,7 +374,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newMenuSubBootCommand(parentId, item);
     }
 
-    private MenuCommand processActionItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processActionItem(TagValFieldTable parser) throws IOException {
         ActionMenuItem item = ActionMenuItemBuilder.anActionMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withEepromAddr(parser.getValueAsIntWithDefault(KEY_EEPROM_FIELD, 0))
@@ -364,7 +384,7 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return new MenuActionBootCommand(parentId, item, Boolean.FALSE);
     }
 
-    private MenuCommand processAnalogBootItem(TagValTextParser parser) throws IOException {
+    private MenuCommand processAnalogBootItem(TagValFieldTable parser) throws IOException {
         AnalogMenuItem item = anAnalogMenuItemBuilder()
                 .withId(parser.getValueAsInt(KEY_ID_FIELD))
                 .withDivisor(parser.getValueAsInt(KEY_ANALOG_DIVISOR_FIELD))
@@ -381,22 +401,40 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return newAnalogBootCommand(parentId, item, currentVal);
     }
 
-    private MenuCommand processBootstrap(TagValTextParser parser) throws IOException {
+    private MenuCommand processBootstrap(TagValFieldTable parser) throws IOException {
         BootType bt= BootType.valueOf(parser.getValue(KEY_BOOT_TYPE_FIELD));
         return new MenuBootstrapCommand(bt);
     }
 
-    private MenuCommand processJoin(TagValTextParser parser) throws IOException {
+    private MenuCommand processJoin(TagValFieldTable parser) throws IOException {
         var uuidStr = parser.getValueWithDefault(KEY_UUID_FIELD, "");
         var uuid = uuidStr.isEmpty() ? UUID.randomUUID() : UUID.fromString(uuidStr);
         return new MenuJoinCommand(
                 uuid,
                 parser.getValue(KEY_NAME_FIELD),
                 ProtocolUtil.fromKeyToApiPlatform(parser.getValueAsInt(KEY_PLATFORM_ID)),
-                parser.getValueAsInt(KEY_VER_FIELD));
+                parser.getValueAsInt(KEY_VER_FIELD),
+                protocolsFromMsg(parser));
     }
 
-    private MenuCommand processHeartbeat(TagValTextParser parser) throws IOException {
+    private List<Byte> protocolsFromMsg(TagValFieldTable parser) throws TcProtocolException {
+        // older remotes do not send their supported protocols, they can only read this protocol.
+        var protocols = parser.getValueWithDefault(KEY_SUPPORTED_PROTOCOLS, "");
+        if(protocols.isEmpty()) return List.of(PROTOCOL_TAG_VAL);
+
+        List<Byte> supported = new ArrayList<>();
+        for(String protocol : protocols.split(",")) {
+            try {
+                supported.add(Byte.parseByte(protocol.trim()));
+            }
+            catch(NumberFormatException ex) {
+                throw new TcProtocolException("Bad supported protocol list " + protocols);
+            }
+        }
+        return supported;
+    }
+
+    private MenuCommand processHeartbeat(TagValFieldTable parser) throws IOException {
         return newHeartbeatCommand(
                 parser.getValueAsIntWithDefault(HB_FREQUENCY_FIELD, 10000),
                 toHbMode(parser.getValueAsIntWithDefault(HB_MODE_FIELD, 0))
@@ -417,78 +455,79 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
 
     @Override
     public void toChannel(ByteBuffer buffer, MenuCommand cmd) {
-        StringBuilder sb = new StringBuilder(128);
+        int startPosition = buffer.position();
 
         switch(cmd.getCommandType()) {
             case HEARTBEAT:
-                writeHeartbeat(sb, (MenuHeartbeatCommand)cmd);
+                writeHeartbeat(buffer, (MenuHeartbeatCommand)cmd);
                 break;
             case JOIN:
-                writeJoin(sb, (MenuJoinCommand)cmd);
+                writeJoin(buffer, (MenuJoinCommand)cmd);
                 break;
             case BOOTSTRAP:
-                writeBootstrap(sb, (MenuBootstrapCommand)cmd);
+                writeBootstrap(buffer, (MenuBootstrapCommand)cmd);
                 break;
             case ANALOG_BOOT_ITEM:
-                writeAnalogItem(sb, (MenuAnalogBootCommand)cmd);
+                writeAnalogItem(buffer, (MenuAnalogBootCommand)cmd);
                 break;
             case SUBMENU_BOOT_ITEM:
-                writeSubMenuItem(sb, (MenuSubBootCommand)cmd);
+                writeSubMenuItem(buffer, (MenuSubBootCommand)cmd);
                 break;
             case ENUM_BOOT_ITEM:
-                writeEnumMenuItem(sb, (MenuEnumBootCommand) cmd);
+                writeEnumMenuItem(buffer, (MenuEnumBootCommand) cmd);
                 break;
             case ACTION_BOOT_ITEM:
-                writeActionBootItem(sb, (MenuActionBootCommand) cmd);
+                writeActionBootItem(buffer, (MenuActionBootCommand) cmd);
                 break;
             case FLOAT_BOOT_ITEM:
-                writeFloatBootItem(sb, (MenuFloatBootCommand) cmd);
+                writeFloatBootItem(buffer, (MenuFloatBootCommand) cmd);
                 break;
             case BOOLEAN_BOOT_ITEM:
-                writeBoolMenuItem(sb, (MenuBooleanBootCommand) cmd);
+                writeBoolMenuItem(buffer, (MenuBooleanBootCommand) cmd);
                 break;
             case RUNTIME_LIST_BOOT:
-                writeRuntimeListBootItem(sb, (MenuRuntimeListBootCommand) cmd);
+                writeRuntimeListBootItem(buffer, (MenuRuntimeListBootCommand) cmd);
                 break;
             case LARGE_NUM_BOOT_ITEM:
-                writeLargeNumberBootItem(sb, (MenuLargeNumBootCommand) cmd);
+                writeLargeNumberBootItem(buffer, (MenuLargeNumBootCommand) cmd);
                 break;
             case CHANGE_INT_FIELD:
-                writeChangeInt(sb, (MenuChangeCommand)cmd);
+                writeChangeInt(buffer, (MenuChangeCommand)cmd);
                 break;
             case TEXT_BOOT_ITEM:
-                writeTextMenuItem(sb, (MenuTextBootCommand) cmd);
+                writeTextMenuItem(buffer, (MenuTextBootCommand) cmd);
                 break;
             case ACKNOWLEDGEMENT:
-                writeAcknowledgement(sb, (MenuAcknowledgementCommand)cmd);
+                writeAcknowledgement(buffer, (MenuAcknowledgementCommand)cmd);
                 break;
             case PAIRING_REQUEST:
-                writePairingRequest(sb, (MenuPairingCommand)cmd);
+                writePairingRequest(buffer, (MenuPairingCommand)cmd);
                 break;
             case DIALOG_UPDATE:
-                writeDialogUpdate(sb, (MenuDialogCommand)cmd);
+                writeDialogUpdate(buffer, (MenuDialogCommand)cmd);
                 break;
             case BOOT_RGB_COLOR:
-                writeRgbBoot(sb, (MenuRgb32BootCommand)cmd);
+                writeRgbBoot(buffer, (MenuRgb32BootCommand)cmd);
                 break;
             case BOOT_SCROLL_CHOICE:
-                writeScrollBoot(sb, (MenuScrollChoiceBootCommand)cmd);
+                writeScrollBoot(buffer, (MenuScrollChoiceBootCommand)cmd);
                 break;
         }
-        sb.append((char)0x02);
+        buffer.put(END_OF_MSG);
 
-        String msgStr = sb.toString();
-        if(DEBUG_ALL_MESSAGES) logger.log(DEBUG, "Protocol convert out: {0}", msgStr);
-        buffer.put(msgStr.getBytes());
+        if(DEBUG_ALL_MESSAGES) {
+            var written = buffer.duplicate().flip().position(startPosition);
+            logger.log(DEBUG, "Protocol convert out: {0}", PROTOCOL_CHARSET.decode(written));
+        }
     }
 
-    private void writeDialogUpdate(StringBuilder sb, MenuDialogCommand cmd) {
-        appendField(sb, KEY_MODE_FIELD, asWireMode(cmd.getDialogMode()));
-        if(cmd.getHeader() != null) appendField(sb, KEY_HEADER_FIELD, cmd.getHeader());
-        if(cmd.getBuffer() != null) appendField(sb, KEY_BUFFER_FIELD, cmd.getBuffer());
-        appendField(sb, KEY_BUTTON1_FIELD, cmd.getButton1().getTypeVal());
-        appendField(sb, KEY_BUTTON2_FIELD, cmd.getButton2().getTypeVal());
-        appendField(sb, KEY_CORRELATION_FIELD, cmd.getCorrelationId());
+    private void writeDialogUpdate(ByteBuffer buffer, MenuDialogCommand cmd) {
+        appendField(buffer, KEY_MODE_FIELD, asWireMode(cmd.getDialogMode()));
+        if(cmd.getHeader() != null) appendField(buffer, KEY_HEADER_FIELD, cmd.getHeader());
+        if(cmd.getBuffer() != null) appendField(buffer, KEY_BUFFER_FIELD, cmd.getBuffer());
+        appendField(buffer, KEY_BUTTON1_FIELD, cmd.getButton1().getTypeVal());
+        appendField(buffer, KEY_BUTTON2_FIELD, cmd.getButton2().getTypeVal());
+        appendField(buffer, KEY_CORRELATION_FIELD, cmd.getCorrelationId());
     }
 
     private String asWireMode(DialogMode dialogMode) {
@@ -497,17 +536,17 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         else return "A";
     }
 
-    private void writePairingRequest(StringBuilder sb, MenuPairingCommand cmd) {
-        appendField(sb, KEY_NAME_FIELD, cmd.getName());
-        appendField(sb, KEY_UUID_FIELD, cmd.getUuid());
+    private void writePairingRequest(ByteBuffer buffer, MenuPairingCommand cmd) {
+        appendField(buffer, KEY_NAME_FIELD, cmd.getName());
+        appendField(buffer, KEY_UUID_FIELD, cmd.getUuid());
     }
 
-    private void writeAcknowledgement(StringBuilder sb, MenuAcknowledgementCommand cmd) {
-        appendField(sb, KEY_CORRELATION_FIELD, cmd.getCorrelationId().toString());
-        appendField(sb, KEY_ACK_STATUS, cmd.getAckStatus().getStatusCode());
+    private void writeAcknowledgement(ByteBuffer buffer, MenuAcknowledgementCommand cmd) {
+        appendField(buffer, KEY_CORRELATION_FIELD, cmd.getCorrelationId());
+        appendField(buffer, KEY_ACK_STATUS, cmd.getAckStatus().getStatusCode());
     }
 
-    private void writeHeartbeat(StringBuilder sb, MenuHeartbeatCommand cmd) {
+    private void writeHeartbeat(ByteBuffer buffer, MenuHeartbeatCommand cmd) {
         int hbMode;
         switch(cmd.getMode()) {
             case START:
@@ -521,8 +560,8 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
                 hbMode = 0;
                 break;
         }
-        appendField(sb, HB_FREQUENCY_FIELD, cmd.getHearbeatInterval());
-        appendField(sb, HB_MODE_FIELD, hbMode);
+        appendField(buffer, HB_FREQUENCY_FIELD, cmd.getHearbeatInterval());
+        appendField(buffer, HB_MODE_FIELD, hbMode);
     }
 
     @Override
@@ -530,94 +569,90 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         return PROTOCOL_TAG_VAL;
     }
 
-    private void writeChangeInt(StringBuilder sb, MenuChangeCommand cmd) {
-        appendField(sb, KEY_CORRELATION_FIELD, cmd.getCorrelationId());
-        appendField(sb, KEY_ID_FIELD, cmd.getMenuItemId());
-        appendField(sb, KEY_CHANGE_TYPE, MenuChangeCommand.changeTypeToInt(cmd.getChangeType()));
+    private void writeChangeInt(ByteBuffer buffer, MenuChangeCommand cmd) {
+        appendField(buffer, KEY_CORRELATION_FIELD, cmd.getCorrelationId());
+        appendField(buffer, KEY_ID_FIELD, cmd.getMenuItemId());
+        appendField(buffer, KEY_CHANGE_TYPE, MenuChangeCommand.changeTypeToInt(cmd.getChangeType()));
         if(cmd.getValues() != null) {
-            appendChoices(sb, cmd.getValues());
+            appendChoices(buffer, cmd.getValues());
         }
-        else appendField(sb, KEY_CURRENT_VAL, cmd.getValue());
+        else appendField(buffer, KEY_CURRENT_VAL, cmd.getValue());
     }
 
-    private void writeLargeNumberBootItem(StringBuilder sb, MenuLargeNumBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
+    private void writeLargeNumberBootItem(ByteBuffer buffer, MenuLargeNumBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
         int decimalPlaces = cmd.getMenuItem().getDecimalPlaces();
         boolean isNegativeAllowed = cmd.getMenuItem().isNegativeAllowed();
-        appendField(sb, KEY_FLOAT_DECIMAL_PLACES, decimalPlaces);
-        appendField(sb, KEY_NEGATIVE_ALLOWED, isNegativeAllowed ? 1 : 0);
-        appendField(sb, KEY_MAX_LENGTH, cmd.getMenuItem().getDigitsAllowed());
-        NumberFormat fmt = NumberFormat.getInstance();
-        fmt.setGroupingUsed(false);
-        fmt.setMinimumFractionDigits(decimalPlaces);
-        fmt.setMaximumFractionDigits(decimalPlaces);
-        appendField(sb, KEY_CURRENT_VAL, fmt.format(cmd.getCurrentValue()));
+        appendField(buffer, KEY_FLOAT_DECIMAL_PLACES, decimalPlaces);
+        appendField(buffer, KEY_NEGATIVE_ALLOWED, isNegativeAllowed ? 1 : 0);
+        appendField(buffer, KEY_MAX_LENGTH, cmd.getMenuItem().getDigitsAllowed());
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue().setScale(decimalPlaces, RoundingMode.HALF_EVEN).toPlainString());
     }
 
-    private void writeScrollBoot(StringBuilder sb, MenuScrollChoiceBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_WIDTH_FIELD, cmd.getMenuItem().getItemWidth());
-        appendField(sb, KEY_NO_OF_CHOICES, cmd.getMenuItem().getNumEntries());
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue().toString());
+    private void writeScrollBoot(ByteBuffer buffer, MenuScrollChoiceBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_WIDTH_FIELD, cmd.getMenuItem().getItemWidth());
+        appendField(buffer, KEY_NO_OF_CHOICES, cmd.getMenuItem().getNumEntries());
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue().toString());
     }
 
-    private void writeRgbBoot(StringBuilder sb, MenuRgb32BootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_ALPHA_FIELD, cmd.getMenuItem().isIncludeAlphaChannel() ? 1 : 0);
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue().toString());
+    private void writeRgbBoot(ByteBuffer buffer, MenuRgb32BootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_ALPHA_FIELD, cmd.getMenuItem().isIncludeAlphaChannel() ? 1 : 0);
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue().toString());
     }
 
-    private void writeAnalogItem(StringBuilder sb, MenuAnalogBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_ANALOG_OFFSET_FIELD, cmd.getMenuItem().getOffset());
-        appendField(sb, KEY_ANALOG_DIVISOR_FIELD, cmd.getMenuItem().getDivisor());
-        appendField(sb, KEY_ANALOG_MAX_FIELD, cmd.getMenuItem().getMaxValue());
-        appendField(sb, KEY_ANALOG_UNIT_FIELD, cmd.getMenuItem().getUnitName());
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue());
+    private void writeAnalogItem(ByteBuffer buffer, MenuAnalogBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_ANALOG_OFFSET_FIELD, cmd.getMenuItem().getOffset());
+        appendField(buffer, KEY_ANALOG_DIVISOR_FIELD, cmd.getMenuItem().getDivisor());
+        appendField(buffer, KEY_ANALOG_MAX_FIELD, cmd.getMenuItem().getMaxValue());
+        appendField(buffer, KEY_ANALOG_UNIT_FIELD, cmd.getMenuItem().getUnitName());
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue());
     }
 
-    private void writeSubMenuItem(StringBuilder sb, MenuSubBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_CURRENT_VAL, "0");
+    private void writeSubMenuItem(ByteBuffer buffer, MenuSubBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_CURRENT_VAL, 0);
     }
 
-    private void writeActionBootItem(StringBuilder sb, MenuActionBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_CURRENT_VAL, "");
+    private void writeActionBootItem(ByteBuffer buffer, MenuActionBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_CURRENT_VAL, "");
     }
 
-    private void writeBoolMenuItem(StringBuilder sb, MenuBooleanBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_BOOLEAN_NAMING, fromNaming(cmd.getMenuItem().getNaming()));
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue() ? 1  : 0);
+    private void writeBoolMenuItem(ByteBuffer buffer, MenuBooleanBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_BOOLEAN_NAMING, fromNaming(cmd.getMenuItem().getNaming()));
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue() ? 1  : 0);
     }
 
-    private void writeCommonBootFields(StringBuilder sb, BootItemMenuCommand cmd) {
-        appendField(sb, KEY_PARENT_ID_FIELD, cmd.getSubMenuId());
-        appendField(sb, KEY_ID_FIELD, cmd.getMenuItem().getId());
-        appendField(sb, KEY_EEPROM_FIELD, cmd.getMenuItem().getEepromAddress());
-        appendField(sb, KEY_NAME_FIELD, cmd.getMenuItem().getName());
-        appendField(sb, KEY_READONLY_FIELD, cmd.getMenuItem().isReadOnly() ? 1 : 0);
-        appendField(sb, KEY_VISIBLE_FIELD, cmd.getMenuItem().isVisible() ? 1 : 0);
+    private void writeCommonBootFields(ByteBuffer buffer, BootItemMenuCommand cmd) {
+        appendField(buffer, KEY_PARENT_ID_FIELD, cmd.getSubMenuId());
+        appendField(buffer, KEY_ID_FIELD, cmd.getMenuItem().getId());
+        appendField(buffer, KEY_EEPROM_FIELD, cmd.getMenuItem().getEepromAddress());
+        appendField(buffer, KEY_NAME_FIELD, cmd.getMenuItem().getName());
+        appendField(buffer, KEY_READONLY_FIELD, cmd.getMenuItem().isReadOnly() ? 1 : 0);
+        appendField(buffer, KEY_VISIBLE_FIELD, cmd.getMenuItem().isVisible() ? 1 : 0);
     }
 
-    private void writeRuntimeListBootItem(StringBuilder sb, MenuRuntimeListBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendChoices(sb, cmd.getCurrentValue());
+    private void writeRuntimeListBootItem(ByteBuffer buffer, MenuRuntimeListBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendChoices(buffer, cmd.getCurrentValue());
 
     }
 
-    private void writeFloatBootItem(StringBuilder sb, MenuFloatBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_FLOAT_DECIMAL_PLACES, cmd.getMenuItem().getNumDecimalPlaces());
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue());
+    private void writeFloatBootItem(ByteBuffer buffer, MenuFloatBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_FLOAT_DECIMAL_PLACES, cmd.getMenuItem().getNumDecimalPlaces());
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue());
     }
 
-    private void writeTextMenuItem(StringBuilder sb, MenuTextBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_MAX_LENGTH, cmd.getMenuItem().getTextLength());
-        appendField(sb, KEY_EDIT_TYPE, cmd.getMenuItem().getItemType().getMsgId());
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue());
+    private void writeTextMenuItem(ByteBuffer buffer, MenuTextBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_MAX_LENGTH, cmd.getMenuItem().getTextLength());
+        appendField(buffer, KEY_EDIT_TYPE, cmd.getMenuItem().getItemType().getMsgId());
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue());
     }
 
     private int fromNaming(BooleanMenuItem.BooleanNaming naming) {
@@ -633,46 +668,104 @@ public class TagValMenuCommandProtocol implements MenuCommandProtocol {
         }
     }
 
-    private void writeEnumMenuItem(StringBuilder sb, MenuEnumBootCommand cmd) {
-        writeCommonBootFields(sb, cmd);
-        appendField(sb, KEY_CURRENT_VAL, cmd.getCurrentValue());
+    private void writeEnumMenuItem(ByteBuffer buffer, MenuEnumBootCommand cmd) {
+        writeCommonBootFields(buffer, cmd);
+        appendField(buffer, KEY_CURRENT_VAL, cmd.getCurrentValue());
         List<String> entries = cmd.getMenuItem().getEnumEntries();
-        appendChoices(sb, entries);
+        appendChoices(buffer, entries);
     }
 
-    private void appendChoices(StringBuilder sb, List<String> entries) {
-        appendField(sb, KEY_NO_OF_CHOICES, entries.size());
+    private void appendChoices(ByteBuffer buffer, List<String> entries) {
+        appendField(buffer, KEY_NO_OF_CHOICES, entries.size());
         for(int i=0;i<entries.size();++i) {
-            appendField(sb, KEY_PREPEND_CHOICE + (char)('A' + i), entries.get(i));
+            appendKey(buffer, KEY_PREPEND_CHOICE.charAt(0), (char)('A' + i));
+            appendEscapedText(buffer, entries.get(i));
+            buffer.put(FIELD_TERMINATOR);
         }
     }
 
-    private void writeBootstrap(StringBuilder sb, MenuBootstrapCommand cmd) {
-        appendField(sb, KEY_BOOT_TYPE_FIELD, cmd.getBootType());
+    private void writeBootstrap(ByteBuffer buffer, MenuBootstrapCommand cmd) {
+        appendField(buffer, KEY_BOOT_TYPE_FIELD, cmd.getBootType());
     }
 
-    private void writeJoin(StringBuilder sb, MenuJoinCommand cmd) {
-        appendField(sb, KEY_NAME_FIELD, cmd.getMyName());
-        appendField(sb, KEY_UUID_FIELD, cmd.getAppUuid());
-        appendField(sb, KEY_VER_FIELD, cmd.getApiVersion());
-        appendField(sb, KEY_PLATFORM_ID, cmd.getPlatform().getKey());
+    private void writeJoin(ByteBuffer buffer, MenuJoinCommand cmd) {
+        appendField(buffer, KEY_NAME_FIELD, cmd.getMyName());
+        appendField(buffer, KEY_UUID_FIELD, cmd.getAppUuid());
+        appendField(buffer, KEY_VER_FIELD, cmd.getApiVersion());
+        appendField(buffer, KEY_PLATFORM_ID, cmd.getPlatform().getKey());
+
+        // only advertise when there is a choice, so that joins to older remotes are unchanged.
+        var protocols = cmd.getSupportedProtocols();
+        if(!protocols.equals(List.of(PROTOCOL_TAG_VAL))) {
+            appendKey(buffer, KEY_SUPPORTED_PROTOCOLS.charAt(0), KEY_SUPPORTED_PROTOCOLS.charAt(1));
+            for(int i=0; i<protocols.size(); i++) {
+                if(i != 0) buffer.put((byte) ',');
+                appendInt(buffer, protocols.get(i));
+            }
+            buffer.put(FIELD_TERMINATOR);
+        }
     }
 
-    private void appendField(StringBuilder sb, String key, Object value) {
+    private void appendField(ByteBuffer buffer, String key, Object value) {
+        appendKey(buffer, key.charAt(0), key.charAt(1));
         if(value instanceof String) {
-            String val = (String) value;
-            if(val.indexOf('|') != -1) {
-                val = val.replace("|", "\\|");
-            }
-            if(val.indexOf('=') != -1) {
-                val = val.replace("=", "\\=");
-            }
-            value = val;
+            appendEscapedText(buffer, (String) value);
+        }
+        else if(value instanceof Integer) {
+            appendInt(buffer, (Integer) value);
+        }
+        else if(value instanceof CorrelationId) {
+            appendHex(buffer, ((CorrelationId) value).getUnderlyingId());
+        }
+        else {
+            Utf8Text.write(buffer, String.valueOf(value));
+        }
+        buffer.put(FIELD_TERMINATOR);
+    }
+
+    private void appendField(ByteBuffer buffer, String key, int value) {
+        appendKey(buffer, key.charAt(0), key.charAt(1));
+        appendInt(buffer, value);
+        buffer.put(FIELD_TERMINATOR);
+    }
+
+    private void appendKey(ByteBuffer buffer, char high, char low) {
+        buffer.put((byte) high);
+        buffer.put((byte) low);
+        buffer.put((byte) '=');
+    }
+
+    private void appendInt(ByteBuffer buffer, int value) {
+        long val = value;
+        if(val < 0) {
+            buffer.put((byte) '-');
+            val = -val;
+        }
+
+        // find the highest power of ten, then write each digit from the most significant.
+        long divisor = 1;
+        while(divisor * 10 <= val) divisor *= 10;
+        while(divisor > 0) {
+            buffer.put((byte) ('0' + (val / divisor)));
+            val %= divisor;
+            divisor /= 10;
         }
-        sb.append(key);
-        sb.append('=');
-        sb.append(value);
-        sb.append('|');
     }
 
+    private void appendHex(ByteBuffer buffer, long value) {
+        // same as the %08x format, at least eight digits, more if needed.
+        int nibbles = Math.max(8, (Long.SIZE - Long.numberOfLeadingZeros(value) + 3) / 4);
+        for(int i = nibbles - 1; i >= 0; i--) {
+            buffer.put(HEX_DIGITS[(int)((value >>> (i * 4)) & 0x0f)]);
+        }
+    }
+
+    private void appendEscapedText(ByteBuffer buffer, String text) {
+        for(int i=0; i<text.length(); i++) {
+            char ch = text.charAt(i);
+            // the backslash is escaped too, otherwise text ending in a backslash would escape the terminator.
+            if(ch == '|' || ch == '=' || ch == '\\') buffer.put((byte) '\\');
+            i = Utf8Text.writeChar(buffer, text, i);
+        }
+    }
 }
@@ -18,6 +18,7 @@ public interface TagValMenuFields {
     String HB_FREQUENCY_FIELD = "HI";
     String HB_MODE_FIELD = "HR";
     String KEY_PLATFORM_ID = "PF";
+    String KEY_SUPPORTED_PROTOCOLS = "SP";
     String KEY_BOOT_TYPE_FIELD = "BT";
     String KEY_ID_FIELD = "ID";
     String KEY_CORRELATION_FIELD = "IC";
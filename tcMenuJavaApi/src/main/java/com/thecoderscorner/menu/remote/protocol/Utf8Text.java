@@ -0,0 +1,94 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes text into a ByteBuffer as UTF-8 one character at a time, without needing an intermediate byte array
+ * or encoder. This is shared by the protocol implementations in this package.
+ */
+final class Utf8Text {
+    private Utf8Text() { /* static helpers only */ }
+
+    /**
+     * Calculates the number of bytes that the text will occupy once written by writeChar.
+     * @param text the text to measure
+     * @return the UTF-8 length in bytes
+     */
+    static int encodedLength(String text) {
+        int len = 0;
+        for(int i=0; i<text.length(); i++) {
+            char ch = text.charAt(i);
+            if(ch < 0x80) {
+                len++;
+            }
+            else if(ch < 0x800) {
+                len += 2;
+            }
+            else if(Character.isHighSurrogate(ch) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                len += 4;
+                i++;
+            }
+            else if(Character.isSurrogate(ch)) {
+                len++;
+            }
+            else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Writes the character at index as UTF-8 into the buffer, returning the index of the last character consumed,
+     * which is only different to the index provided for surrogate pairs.
+     * @param buffer the buffer to write into
+     * @param text the text being written
+     * @param idx the index of the character to write
+     * @return the index of the last character consumed
+     */
+    static int writeChar(ByteBuffer buffer, String text, int idx) {
+        char ch = text.charAt(idx);
+        if(ch < 0x80) {
+            buffer.put((byte) ch);
+        }
+        else if(ch < 0x800) {
+            buffer.put((byte) (0xc0 | (ch >> 6)));
+            buffer.put((byte) (0x80 | (ch & 0x3f)));
+        }
+        else if(Character.isHighSurrogate(ch) && idx + 1 < text.length() && Character.isLowSurrogate(text.charAt(idx + 1))) {
+            int codePoint = Character.toCodePoint(ch, text.charAt(idx + 1));
+            buffer.put((byte) (0xf0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            return idx + 1;
+        }
+        else if(Character.isSurrogate(ch)) {
+            // unpaired surrogate, cannot be represented so replace it as the JDK encoder would.
+            buffer.put((byte) '?');
+        }
+        else {
+            buffer.put((byte) (0xe0 | (ch >> 12)));
+            buffer.put((byte) (0x80 | ((ch >> 6) & 0x3f)));
+            buffer.put((byte) (0x80 | (ch & 0x3f)));
+        }
+        return idx;
+    }
+
+    /**
+     * Writes all the text into the buffer as UTF-8.
+     * @param buffer the buffer to write into
+     * @param text the text to write
+     */
+    static void write(ByteBuffer buffer, String text) {
+        for(int i=0; i<text.length(); i++) {
+            i = writeChar(buffer, text, i);
+        }
+    }
+}
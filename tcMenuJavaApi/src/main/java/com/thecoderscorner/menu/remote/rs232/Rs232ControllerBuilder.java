@@ -12,9 +12,11 @@ import com.thecoderscorner.menu.remote.protocol.PairingHelper;
 import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
 
 import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
@@ -38,9 +40,12 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
     private ScheduledExecutorService executorService;
     private MenuTree menuTree;
     private MenuCommandProtocol protocol;
+    private final List<MenuCommandProtocol> preferredProtocols = new ArrayList<>();
     private Clock clock = Clock.systemDefaultZone();
+    private Duration ackTimeout = RemoteMenuController.DEFAULT_ACK_TIMEOUT;
     private String name;
     private UUID uuid;
+    private boolean virtualThreads;
 
     /**
      * Mandatory, specifies the port name and baud rate for rs232.
@@ -64,6 +69,17 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, defaults to RemoteMenuController.DEFAULT_ACK_TIMEOUT. Changes that the device has not acknowledged
+     * within this time are reported to listeners through ackTimedOut.
+     * @param ackTimeout how long to wait for each change to be acknowledged
+     * @return itself, can be chained
+     */
+    public Rs232ControllerBuilder withAckTimeout(Duration ackTimeout) {
+        this.ackTimeout = ackTimeout;
+        return this;
+    }
+
     /**
      * Mandatory, the UUID for this instance of the  application
      * @param uuid the uuid of this app.
@@ -84,6 +100,19 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, when no executor is provided, uses the process wide executor that runs each read loop, connection
+     * attempt and listener dispatch on a thread of its own, using virtual threads on Java 21 or above. This makes
+     * each connection far cheaper when there are very many of them. On earlier Java versions daemon platform threads
+     * are used instead. Defaults to false.
+     * @param virtualThreads true to use virtual threads where available
+     * @return itself, suitable for chaining.
+     */
+    public Rs232ControllerBuilder withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
     /**
      * Mandatory, the menuTree instance to store the menu items retrieved from the remote side.
      * this menuTree must only be used with one remote.
@@ -106,6 +135,17 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, adds a protocol that will be used in preference to the standard protocol when the remote supports it,
+     * for example BinaryMenuCommandProtocol. Support is negotiated during join, so older remotes are unaffected.
+     * @param protocol a protocol object.
+     * @return itself, suitable for chaining.
+     */
+    public Rs232ControllerBuilder withPreferredProtocol(MenuCommandProtocol protocol) {
+        preferredProtocols.add(protocol);
+        return this;
+    }
+
     /**
      * Optional, Set the name of this connection, defaults to NoName
      * @param name the name the remote will see.
@@ -127,7 +167,8 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
                 new LocalIdentifier(uuid, name),  portName, baud,
                 protocol, executorService, clock, ConnectMode.FULLY_AUTHENTICATED
         );
-        return new RemoteMenuController(connector, menuTree);
+        preferredProtocols.forEach(connector::registerPreferredProtocol);
+        return new RemoteMenuController(connector, menuTree, executorService, ackTimeout);
     }
 
     private void initialiseBasics() {
@@ -140,8 +181,8 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
         }
 
         if(executorService == null) {
-            executorService = Executors.newScheduledThreadPool(2,
-                    new NamedDaemonThreadFactory("rs232-remote"));
+            executorService = virtualThreads ? ConnectorExecutors.sharedVirtualThreadExecutor()
+                                             : ConnectorExecutors.newPlatformExecutor("rs232-remote");
         }
     }
 
@@ -158,6 +199,7 @@ public class Rs232ControllerBuilder implements ConnectorFactory {
                 new LocalIdentifier(uuid, name), portName, baud,
                 protocol, executorService, clock, ConnectMode.PAIRING_CONNECTION
         );
+        preferredProtocols.forEach(connector::registerPreferredProtocol);
         PairingHelper helper = new PairingHelper(connector, executorService, maybePairingListener);
         return helper.attemptPairing();
     }
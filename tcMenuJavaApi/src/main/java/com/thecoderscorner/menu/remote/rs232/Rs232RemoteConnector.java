@@ -25,16 +25,24 @@ import static java.lang.System.Logger.Level.INFO;
  * the whole remote stack instead of creating this directly.
  */
 public class Rs232RemoteConnector extends StreamRemoteConnector {
+    /** how long a read waits for data before checking that the port is still open and the thread is not stopping */
+    private static final int READ_TIMEOUT_MS = 500;
+    private static final int WRITE_TIMEOUT_MS = 5000;
 
     private final String portName;
     private final SerialPort serialPort;
     private final int baud;
+    private byte[] writeArray = new byte[0];
 
     public Rs232RemoteConnector(LocalIdentifier localId, String portName, int baud, MenuCommandProtocol protocol,
                                 ScheduledExecutorService executor, Clock clock, ConnectMode connectMode) {
         super(localId, protocol, executor, clock);
         serialPort = SerialPort.getCommPort(portName);
         serialPort.setBaudRate(baud);
+        // reads wait until at least one byte is available rather than returning straight away, so that the read
+        // loop sleeps in the driver while the line is idle.
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING | SerialPort.TIMEOUT_WRITE_BLOCKING,
+                READ_TIMEOUT_MS, WRITE_TIMEOUT_MS);
         this.portName = portName;
         this.baud = baud;
 
@@ -44,10 +52,10 @@ public class Rs232RemoteConnector extends StreamRemoteConnector {
     }
 
     private void applyStates(ConnectMode connectMode) {
-        stateMachineMappings.put(AuthStatus.NOT_STARTED, NoOperationInitialState.class);
-        stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, StreamNotConnectedState.class);
-        stateMachineMappings.put(AuthStatus.ESTABLISHED_CONNECTION, SerialAwaitFirstMsgState.class);
-        stateMachineMappings.put(AuthStatus.FAILED_AUTH, SerialAwaitFirstMsgState.class);
+        stateMachineMappings.put(AuthStatus.NOT_STARTED, NoOperationInitialState::new);
+        stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, StreamNotConnectedState::new);
+        stateMachineMappings.put(AuthStatus.ESTABLISHED_CONNECTION, SerialAwaitFirstMsgState::new);
+        stateMachineMappings.put(AuthStatus.FAILED_AUTH, SerialAwaitFirstMsgState::new);
         handleCoreConnectionStates(connectMode);
     }
 
@@ -82,24 +90,38 @@ public class Rs232RemoteConnector extends StreamRemoteConnector {
 
     @Override
     protected void sendInternal(ByteBuffer outputBuffer) throws IOException {
-        byte[] data = new byte[outputBuffer.remaining()];
-        outputBuffer.get(data, 0, data.length);
-        serialPort.getOutputStream().write(data, 0, data.length);
-        serialPort.getOutputStream().flush();
+        while(outputBuffer.hasRemaining()) {
+            int written;
+            if(outputBuffer.hasArray()) {
+                written = serialPort.writeBytes(outputBuffer.array(), outputBuffer.remaining(),
+                        outputBuffer.arrayOffset() + outputBuffer.position());
+            }
+            else {
+                int len = outputBuffer.remaining();
+                if(writeArray.length < len) writeArray = new byte[len];
+                outputBuffer.duplicate().get(writeArray, 0, len);
+                written = serialPort.writeBytes(writeArray, len);
+            }
+            if(written <= 0) throw new IOException("Serial port write failed on " + portName);
+            outputBuffer.position(outputBuffer.position() + written);
+        }
     }
 
     @Override
     protected void getAtLeastBytes(ByteBuffer inputBuffer, int len, ReadMode mode) throws IOException {
         if(mode == ReadMode.ONLY_WHEN_EMPTY && inputBuffer.remaining() >= len) return;
         do {
-            inputBuffer.compact();
-
-            while(serialPort.bytesAvailable() > 0) {
-                inputBuffer.put((byte)serialPort.getInputStream().read());
-            }
+            if(!serialPort.isOpen()) throw new IOException("Serial port closed during read");
+            if(Thread.currentThread().isInterrupted()) throw new IOException("Serial read thread interrupted");
 
+            // read whatever is available straight into the buffer, waiting up to the read timeout for some data.
+            inputBuffer.compact();
+            int actual = serialPort.readBytes(inputBuffer.array(), inputBuffer.remaining(),
+                    inputBuffer.arrayOffset() + inputBuffer.position());
+            if(actual > 0) inputBuffer.position(inputBuffer.position() + actual);
             inputBuffer.flip();
 
+            if(actual < 0) throw new IOException("Serial port read failed on " + portName);
         } while(inputBuffer.remaining()<len);
     }
 }
@@ -14,9 +14,12 @@ import com.thecoderscorner.menu.remote.states.StreamNotConnectedState;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.time.Clock;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static java.lang.System.Logger.Level.ERROR;
@@ -24,29 +27,53 @@ import static java.lang.System.Logger.Level.INFO;
 
 /**
  * A remote connector that will communicate using a client socket. Normally configured with a host and port. Create
- * using the builder below.
+ * using the builder below. When created with a SocketConnectorHub, the channel is non blocking and the hub reads
+ * from it on behalf of the state machine, instead of each state running its own read loop. Output that the channel
+ * cannot take straight away is held by the connector and written by the hub once the channel becomes writable.
  *
  * @see SocketControllerBuilder
  */
 public class SocketBasedConnector extends StreamRemoteConnector {
+    private static final int HUB_BUFFER_SIZE = 2048;
+    private static final int HUB_MAX_PENDING_OUTPUT = 64 * 1024;
+    private static final long HUB_WRITE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long HUB_CONNECT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private final String remoteHost;
     private final int remotePort;
     private final AtomicReference<SocketChannel> socketChannel = new AtomicReference<>();
+    private final SocketConnectorHub hub;
+    private final Object hubReadLock = new Object();
+    private ByteBuffer hubInputBuffer;
+    private final Object hubWriteLock = new Object();
+    private ByteBuffer hubPendingOutput;
+    private long hubPendingSince;
+    private SelectionKey hubKey;
+    private volatile long hubConnectStarted;
 
     public SocketBasedConnector(LocalIdentifier localId, ScheduledExecutorService executor, Clock clock,
                                 MenuCommandProtocol protocol, String remoteHost, int remotePort, ConnectMode mode) {
+        this(localId, executor, clock, protocol, remoteHost, remotePort, mode, null);
+    }
+
+    public SocketBasedConnector(LocalIdentifier localId, ScheduledExecutorService executor, Clock clock,
+                                MenuCommandProtocol protocol, String remoteHost, int remotePort, ConnectMode mode,
+                                SocketConnectorHub hub) {
         super(localId, protocol, executor, clock);
         this.remoteHost = remoteHost;
         this.remotePort = remotePort;
+        this.hub = hub;
+        this.hubInputBuffer = (hub != null) ? ByteBuffer.allocate(HUB_BUFFER_SIZE) : null;
+        this.hubPendingOutput = (hub != null) ? ByteBuffer.allocate(HUB_BUFFER_SIZE).flip() : null;
 
         applyStates(mode);
     }
 
     private void applyStates(ConnectMode mode) {
-        stateMachineMappings.put(AuthStatus.NOT_STARTED, NoOperationInitialState.class);
-        stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, StreamNotConnectedState.class);
-        stateMachineMappings.put(AuthStatus.ESTABLISHED_CONNECTION, SocketAwaitJoinState.class);
-        stateMachineMappings.put(AuthStatus.FAILED_AUTH, StreamNotConnectedState.class);
+        stateMachineMappings.put(AuthStatus.NOT_STARTED, NoOperationInitialState::new);
+        stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, StreamNotConnectedState::new);
+        stateMachineMappings.put(AuthStatus.ESTABLISHED_CONNECTION, SocketAwaitJoinState::new);
+        stateMachineMappings.put(AuthStatus.FAILED_AUTH, StreamNotConnectedState::new);
         handleCoreConnectionStates(mode);
     }
 
@@ -64,6 +91,11 @@ public class SocketBasedConnector extends StreamRemoteConnector {
 
     @Override
     public void performConnection() throws IOException {
+        if(hub != null) {
+            startConnectionThroughHub();
+            return;
+        }
+
         if(socketChannel.get() == null || !socketChannel.get().isConnected()) {
             SocketChannel ch = SocketChannel.open();
             ch.socket().connect(new InetSocketAddress(remoteHost, remotePort), 10000);
@@ -71,6 +103,190 @@ public class SocketBasedConnector extends StreamRemoteConnector {
         }
     }
 
+    /**
+     * With a hub the connection is only started here, so that an unreachable device never holds one of the shared
+     * executor threads. The channel is registered with the hub straight away, and should the connection still be
+     * pending, the hub's selector thread completes it in finishConnectFromHub.
+     */
+    private void startConnectionThroughHub() throws IOException {
+        SocketChannel existing = socketChannel.get();
+        if(existing != null && (existing.isConnected() || existing.isConnectionPending())) return;
+
+        SocketChannel ch = SocketChannel.open();
+        try {
+            ch.configureBlocking(false);
+            synchronized (hubReadLock) {
+                hubInputBuffer.clear().flip();
+            }
+            synchronized (hubWriteLock) {
+                hubPendingOutput.clear().flip();
+                hubKey = null;
+            }
+            hubConnectStarted = System.nanoTime();
+            ch.connect(new InetSocketAddress(remoteHost, remotePort));
+        }
+        catch(IOException ex) {
+            ch.close();
+            throw ex;
+        }
+        socketChannel.set(ch);
+        hub.register(this, ch);
+    }
+
+    /**
+     * Called by the hub's selector thread when a pending connection can be completed. Once connected the hub reads
+     * from the channel, and the state waiting for the connection is told on the connector's executor. Should the
+     * connection fail, the channel is closed and the next connection attempt starts again.
+     */
+    void finishConnectFromHub() {
+        SocketChannel sc = socketChannel.get();
+        if(sc == null) return;
+        try {
+            if(!sc.finishConnect()) return;
+            synchronized (hubWriteLock) {
+                if(hubKey != null && hubKey.isValid()) hubKey.interestOps(SelectionKey.OP_READ);
+            }
+            getScheduledExecutor().execute(this::stateConnectionEstablished);
+        }
+        catch(Exception ex) {
+            logger.log(INFO, "Connection to " + getConnectionName() + " failed: " + ex.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public boolean isConnectionNonBlocking() {
+        return hub != null;
+    }
+
+    @Override
+    public boolean isReadDrivenExternally() {
+        return hub != null;
+    }
+
+    /**
+     * Called by the hub's selector thread when the channel has data available, reads all that is available and
+     * passes any complete messages to the current state. Should a partial message fill the buffer, the buffer is
+     * grown before reading.
+     */
+    void readFromHub() {
+        SocketChannel sc = socketChannel.get();
+        if(sc == null) return;
+        try {
+            synchronized (hubReadLock) {
+                if(hubInputBuffer.remaining() == hubInputBuffer.capacity()) {
+                    hubInputBuffer = growInputBuffer(hubInputBuffer);
+                }
+                hubInputBuffer.compact();
+                int actual = sc.read(hubInputBuffer);
+                hubInputBuffer.flip();
+                if (actual < 0) throw new IOException("Socket closed by remote");
+                processBufferedMessages(hubInputBuffer);
+            }
+        }
+        catch(Exception ex) {
+            close();
+            stateConnectionFailed(ex);
+        }
+    }
+
+    /**
+     * Data may arrive from the hub before the connector has moved into a state that processes messages, that data is
+     * kept in the buffer and processed here. When called on the selector thread during processing there is nothing
+     * to do, as it carries on processing the buffer itself.
+     */
+    @Override
+    protected void stateReadyForMessages() {
+        if(Thread.holdsLock(hubReadLock)) return;
+        synchronized (hubReadLock) {
+            processBufferedMessages(hubInputBuffer);
+        }
+    }
+
+    /**
+     * Called periodically by the hub's selector thread so that connection attempts, pending writes and the state can
+     * check for timeouts.
+     */
+    void tickFromHub() {
+        SocketChannel sc = socketChannel.get();
+        if(sc != null && sc.isConnectionPending()) {
+            if((System.nanoTime() - hubConnectStarted) > HUB_CONNECT_TIMEOUT_NANOS) {
+                logger.log(INFO, "Connection to " + getConnectionName() + " timed out");
+                close();
+            }
+            return;
+        }
+
+        boolean writeTimedOut;
+        synchronized (hubWriteLock) {
+            writeTimedOut = hubPendingOutput.hasRemaining()
+                    && (System.nanoTime() - hubPendingSince) > HUB_WRITE_TIMEOUT_NANOS;
+        }
+        if(writeTimedOut) {
+            close();
+            stateConnectionFailed(new IOException("Socket write timed out"));
+            return;
+        }
+        checkStateForTimeout();
+    }
+
+    /**
+     * @return the number of bytes waiting for the hub to write them to the channel.
+     */
+    int getPendingOutputSize() {
+        synchronized (hubWriteLock) {
+            return hubPendingOutput.remaining();
+        }
+    }
+
+    /**
+     * Called by the hub's selector thread once the channel has been registered. Should output already be waiting,
+     * the hub is asked to tell us when the channel can be written.
+     * @param key the key that the channel was registered with
+     */
+    void registeredWithHub(SelectionKey key) {
+        synchronized (hubWriteLock) {
+            hubKey = key;
+            if(hubPendingOutput.hasRemaining()) requestWriteFromHub();
+        }
+    }
+
+    /**
+     * Called by the hub's selector thread when the channel can be written, writes as much of the pending output as
+     * the channel will take, and stops asking to be told about writes once it has all been sent.
+     */
+    void writeFromHub() {
+        SocketChannel sc = socketChannel.get();
+        if(sc == null) return;
+        try {
+            synchronized (hubWriteLock) {
+                // the timeout only applies while no progress is being made.
+                if(sc.write(hubPendingOutput) > 0) hubPendingSince = System.nanoTime();
+                if(!hubPendingOutput.hasRemaining() && hubKey != null && hubKey.isValid()) {
+                    hubKey.interestOpsAnd(~SelectionKey.OP_WRITE);
+                }
+            }
+        }
+        catch(Exception ex) {
+            close();
+            stateConnectionFailed(ex);
+        }
+    }
+
+    /**
+     * Must be called with the write lock held.
+     */
+    private void requestWriteFromHub() {
+        if(hubKey == null || !hubKey.isValid()) return;
+        try {
+            hubKey.interestOpsOr(SelectionKey.OP_WRITE);
+            hubKey.selector().wakeup();
+        }
+        catch(CancelledKeyException ex) {
+            // the channel is being closed, the pending output is discarded along with it.
+        }
+    }
+
 
     @Override
     protected void getAtLeastBytes(ByteBuffer inputBuffer, int len, ReadMode mode) throws IOException {
@@ -89,6 +305,10 @@ public class SocketBasedConnector extends StreamRemoteConnector {
     @Override
     protected void sendInternal(ByteBuffer outputBuffer) throws IOException {
         SocketChannel sc = socketChannel.get();
+        if(hub != null) {
+            sendThroughHub(sc, outputBuffer);
+            return;
+        }
         while(isDeviceConnected() && sc != null && outputBuffer.hasRemaining()) {
             int len = sc.write(outputBuffer);
             if(len <= 0) {
@@ -97,6 +317,35 @@ public class SocketBasedConnector extends StreamRemoteConnector {
         }
     }
 
+    /**
+     * A non blocking channel only takes what fits in its send buffer, so anything left over is added to the pending
+     * output and written by the hub's selector thread when the channel is writable, instead of this thread waiting
+     * for the buffer to drain. Once output is pending, later output is added after it to keep the order.
+     */
+    private void sendThroughHub(SocketChannel sc, ByteBuffer outputBuffer) throws IOException {
+        if(sc == null || !isDeviceConnected()) throw new IOException("Socket closed during write");
+        synchronized (hubWriteLock) {
+            if(!hubPendingOutput.hasRemaining()) {
+                sc.write(outputBuffer);
+                if(!outputBuffer.hasRemaining()) return;
+                hubPendingSince = System.nanoTime();
+            }
+
+            int needed = hubPendingOutput.remaining() + outputBuffer.remaining();
+            if(needed > HUB_MAX_PENDING_OUTPUT) throw new IOException("Socket write backlog full");
+            if(needed > hubPendingOutput.capacity()) {
+                var bigger = ByteBuffer.allocate(Math.min(Math.max(needed, hubPendingOutput.capacity() * 2),
+                        HUB_MAX_PENDING_OUTPUT));
+                bigger.put(hubPendingOutput).flip();
+                hubPendingOutput = bigger;
+            }
+            hubPendingOutput.compact();
+            hubPendingOutput.put(outputBuffer);
+            hubPendingOutput.flip();
+            requestWriteFromHub();
+        }
+    }
+
     @Override
     public boolean isDeviceConnected() {
         SocketChannel sc = socketChannel.get();
@@ -119,6 +368,12 @@ public class SocketBasedConnector extends StreamRemoteConnector {
                 logger.log(ERROR, "Unexpected error closing socket", e);
             }
         }
+        if(hub != null) {
+            synchronized (hubWriteLock) {
+                hubPendingOutput.clear().flip();
+                hubKey = null;
+            }
+        }
         super.close();
         socketChannel.set(null);
     }
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.socket;
+
+import com.thecoderscorner.menu.remote.NamedDaemonThreadFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.INFO;
+
+/**
+ * A hub that allows many socket connections to share a small, fixed number of threads. Instead of each connection
+ * running a blocking read loop on its own thread, every connection that is created with the hub registers its channel
+ * with one of the hub's selectors. The selector threads read whatever data is available, and pass each complete
+ * message to the connector's current state. When a connection has more to send than its socket will take, the
+ * selector thread also writes the rest once the socket is writable, so no thread waits on a slow connection. The hub
+ * also provides a shared scheduled executor that is used for connection attempts and heartbeats by all the connectors
+ * attached to it. Connections are made without blocking, the selector thread completes them, so that devices which
+ * cannot be reached do not hold the shared executor's threads.
+ *
+ * To use it, create one hub for the application and give it to each SocketControllerBuilder:
+ * <pre>
+ *     SocketConnectorHub hub = new SocketConnectorHub(2, 4);
+ *     RemoteMenuController controller = new SocketControllerBuilder()
+ *       .withAddress(hostName)
+ *       .withPort(3333)
+ *       .withConnectorHub(hub)
+ *       ...
+ *       .build();
+ * </pre>
+ */
+public class SocketConnectorHub implements AutoCloseable {
+    private static final long TICK_INTERVAL_MS = 1000;
+
+    private final System.Logger logger = System.getLogger(getClass().getSimpleName());
+    private final ScheduledExecutorService executor;
+    private final List<SelectorLoop> selectorLoops = new ArrayList<>();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * Create a hub with the given number of selector threads, and a scheduled executor of the given size that
+     * is shared by the connectors for connection attempts and heartbeats.
+     * @param selectorThreads the number of threads that read from the connections
+     * @param executorThreads the number of threads in the shared scheduled executor
+     * @throws IOException if the selectors could not be opened
+     */
+    public SocketConnectorHub(int selectorThreads, int executorThreads) throws IOException {
+        this(selectorThreads, Executors.newScheduledThreadPool(executorThreads, new NamedDaemonThreadFactory("hub-executor")));
+    }
+
+    /**
+     * Create a hub with the given number of selector threads, that shares the executor provided with all the
+     * connectors that use the hub.
+     * @param selectorThreads the number of threads that read from the connections
+     * @param executor the executor to be shared by all connectors
+     * @throws IOException if the selectors could not be opened
+     */
+    public SocketConnectorHub(int selectorThreads, ScheduledExecutorService executor) throws IOException {
+        if(selectorThreads < 1) throw new IllegalArgumentException("At least one selector thread is needed");
+        this.executor = executor;
+        ThreadFactory threadFactory = new NamedDaemonThreadFactory("hub-selector");
+        for(int i=0; i<selectorThreads; i++) {
+            var loop = new SelectorLoop(Selector.open());
+            selectorLoops.add(loop);
+            threadFactory.newThread(loop).start();
+        }
+    }
+
+    /**
+     * @return the executor that is shared by all connectors using this hub
+     */
+    public ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the number of connections that are currently registered with the hub
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for(var loop : selectorLoops) {
+            count += loop.selector.keys().size();
+        }
+        return count;
+    }
+
+    /**
+     * Registers a non blocking channel with one of the selectors, the connections are spread evenly across the
+     * selector threads. A channel that is still connecting is completed by the selector thread before it is read.
+     * @param connector the connector that owns the channel
+     * @param channel the channel to connect and read from
+     */
+    void register(SocketBasedConnector connector, SocketChannel channel) {
+        if(!running) throw new IllegalStateException("Hub has been closed");
+        var loop = selectorLoops.get(Math.floorMod(nextLoop.getAndIncrement(), selectorLoops.size()));
+        loop.pendingRegistrations.add(new Registration(connector, channel));
+        loop.selector.wakeup();
+    }
+
+    /**
+     * Stops all the selector threads and the shared executor, connectors using the hub will no longer receive data.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for(var loop : selectorLoops) {
+            loop.selector.wakeup();
+        }
+        executor.shutdownNow();
+    }
+
+    private static class Registration {
+        private final SocketBasedConnector connector;
+        private final SocketChannel channel;
+
+        Registration(SocketBasedConnector connector, SocketChannel channel) {
+            this.connector = connector;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Each selector loop runs on its own thread, handling the reads and pending writes for all the channels registered
+     * with its selector, and periodically giving each connector's state the chance to check for a timeout.
+     */
+    private class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Registration> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private long lastTick = System.currentTimeMillis();
+
+        SelectorLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            logger.log(INFO, "Starting selector loop " + Thread.currentThread().getName());
+            while(running) {
+                try {
+                    selector.select(TICK_INTERVAL_MS);
+                    registerPending();
+
+                    var selectedKeys = selector.selectedKeys();
+                    for(var key : selectedKeys) {
+                        var connector = (SocketBasedConnector) key.attachment();
+                        if(key.isValid() && key.isConnectable()) {
+                            connector.finishConnectFromHub();
+                        }
+                        if(key.isValid() && key.isWritable()) {
+                            connector.writeFromHub();
+                        }
+                        if(key.isValid() && key.isReadable()) {
+                            connector.readFromHub();
+                        }
+                    }
+                    selectedKeys.clear();
+
+                    tickIfNeeded();
+                }
+                catch(Exception ex) {
+                    logger.log(ERROR, "Unexpected exception in selector loop", ex);
+                }
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(ERROR, "Unable to close selector", e);
+            }
+            logger.log(INFO, "Exiting selector loop " + Thread.currentThread().getName());
+        }
+
+        private void registerPending() {
+            Registration reg;
+            while((reg = pendingRegistrations.poll()) != null) {
+                try {
+                    int ops = reg.channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+                    var key = reg.channel.register(selector, ops, reg.connector);
+                    reg.connector.registeredWithHub(key);
+                } catch (ClosedChannelException e) {
+                    logger.log(INFO, "Channel closed before it was registered " + reg.connector.getConnectionName());
+                }
+            }
+        }
+
+        private void tickIfNeeded() {
+            long now = System.currentTimeMillis();
+            if((now - lastTick) < TICK_INTERVAL_MS) return;
+            lastTick = now;
+            for(var key : selector.keys()) {
+                if(key.isValid()) {
+                    ((SocketBasedConnector) key.attachment()).tickFromHub();
+                }
+            }
+        }
+    }
+}
@@ -12,9 +12,11 @@ import com.thecoderscorner.menu.remote.protocol.PairingHelper;
 import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
 
 import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
@@ -37,11 +39,15 @@ public class SocketControllerBuilder implements ConnectorFactory {
     private ScheduledExecutorService executorService;
     private MenuTree menuTree;
     private MenuCommandProtocol protocol;
+    private final List<MenuCommandProtocol> preferredProtocols = new ArrayList<>();
     private Clock clock = Clock.systemDefaultZone();
+    private Duration ackTimeout = RemoteMenuController.DEFAULT_ACK_TIMEOUT;
     private String name = "NoName";
     private String address;
     private int port;
     private UUID uuid;
+    private boolean virtualThreads;
+    private SocketConnectorHub connectorHub;
 
     /**
      * Optional, defaults to system clock but can be overriden
@@ -53,6 +59,17 @@ public class SocketControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, defaults to RemoteMenuController.DEFAULT_ACK_TIMEOUT. Changes that the device has not acknowledged
+     * within this time are reported to listeners through ackTimedOut.
+     * @param ackTimeout how long to wait for each change to be acknowledged
+     * @return itself, can be chained
+     */
+    public SocketControllerBuilder withAckTimeout(Duration ackTimeout) {
+        this.ackTimeout = ackTimeout;
+        return this;
+    }
+
     /**
      * Optional, defaults to creating a suitable executor for single connectivity
      * @param executor the executor which must implement ScheduledExecutorService
@@ -63,6 +80,31 @@ public class SocketControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, share a hub between many connections so that they are all read by the hub's small number of
+     * threads, rather than each connection having a read thread of its own. Unless an executor is also provided,
+     * the hub's executor is used.
+     * @param hub the hub that will read from this connection
+     * @return itself, suitable for chaining.
+     */
+    public SocketControllerBuilder withConnectorHub(SocketConnectorHub hub) {
+        this.connectorHub = hub;
+        return this;
+    }
+
+    /**
+     * Optional, when no executor is provided, uses the process wide executor that runs each read loop, connection
+     * attempt and listener dispatch on a thread of its own, using virtual threads on Java 21 or above. This makes
+     * each connection far cheaper when there are very many of them. On earlier Java versions daemon platform threads
+     * are used instead. Defaults to false.
+     * @param virtualThreads true to use virtual threads where available
+     * @return itself, suitable for chaining.
+     */
+    public SocketControllerBuilder withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
     /**
      * Mandatory, the menuTree instance to store the menu items retrieved from the remote side.
      * this menuTree must only be used with one remote.
@@ -85,6 +127,17 @@ public class SocketControllerBuilder implements ConnectorFactory {
         return this;
     }
 
+    /**
+     * Optional, adds a protocol that will be used in preference to the standard protocol when the remote supports it,
+     * for example BinaryMenuCommandProtocol. Support is negotiated during join, so older remotes are unaffected.
+     * @param protocol a protocol object.
+     * @return itself, suitable for chaining.
+     */
+    public SocketControllerBuilder withPreferredProtocol(MenuCommandProtocol protocol) {
+        preferredProtocols.add(protocol);
+        return this;
+    }
+
     /**
      * Mandatory, Set the name of this connection
      * @param name the name the remote will see.
@@ -134,9 +187,10 @@ public class SocketControllerBuilder implements ConnectorFactory {
         initialiseBasics();
         SocketBasedConnector connector = new SocketBasedConnector(
                 new LocalIdentifier(uuid, name), executorService, clock,
-                protocol, address, port, ConnectMode.FULLY_AUTHENTICATED
+                protocol, address, port, ConnectMode.FULLY_AUTHENTICATED, connectorHub
         );
-        return new RemoteMenuController(connector, menuTree);
+        preferredProtocols.forEach(connector::registerPreferredProtocol);
+        return new RemoteMenuController(connector, menuTree, executorService, ackTimeout);
     }
 
     private void initialiseBasics() {
@@ -147,9 +201,12 @@ public class SocketControllerBuilder implements ConnectorFactory {
         if(protocol == null) {
             protocol = new TagValMenuCommandProtocol();
         }
+        if(executorService == null && connectorHub != null) {
+            executorService = connectorHub.getExecutor();
+        }
         if(executorService == null) {
-            executorService = Executors.newScheduledThreadPool(2,
-                    new NamedDaemonThreadFactory("remote-socket"));
+            executorService = virtualThreads ? ConnectorExecutors.sharedVirtualThreadExecutor()
+                                             : ConnectorExecutors.newPlatformExecutor("remote-socket");
         }
     }
 
@@ -157,8 +214,9 @@ public class SocketControllerBuilder implements ConnectorFactory {
         initialiseBasics();
         SocketBasedConnector connector = new SocketBasedConnector(
                 new LocalIdentifier(uuid, name), executorService, clock,
-                protocol, address, port, ConnectMode.PAIRING_CONNECTION
+                protocol, address, port, ConnectMode.PAIRING_CONNECTION, connectorHub
         );
+        preferredProtocols.forEach(connector::registerPreferredProtocol);
         PairingHelper helper = new PairingHelper(connector, executorService, maybePairingListener);
         return helper.attemptPairing();
     }
@@ -46,6 +46,7 @@ public class AwaitingBootstrapState extends BaseMessageProcessingState {
             if( bs.getBootType() == MenuBootstrapCommand.BootType.START) {
                 markDone();
                 context.changeState(AuthStatus.BOOTSTRAPPING);
+                context.notifyListeners(cmd);
                 return true;
             }
             else {
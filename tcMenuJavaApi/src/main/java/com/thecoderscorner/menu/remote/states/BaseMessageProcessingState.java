@@ -34,29 +34,31 @@ public abstract class BaseMessageProcessingState implements RemoteConnectorState
     @Override
     public void enterState() {
         lastReception.set(context.getClock().millis());
-        readThread = context.getScheduledExecutor().submit(this::threadReadLoop);
+        if(!context.isReadDrivenExternally()) {
+            readThread = context.getScheduledExecutor().submit(this::threadReadLoop);
+        }
     }
 
     private void threadReadLoop() {
         while (context.isDeviceConnected() && !taskDone.get() && !Thread.currentThread().isInterrupted()) {
-            if((context.getClock().millis() - lastReception.get()) > disconnectInterval.get()) {
-                logger.log(INFO, "Connection timeout recorded " + context.getConnectionName());
-                processTimeout();
-            }
+            checkForTimeout();
             try {
                 MenuCommand cmd = context.readCommandFromStream();
-                if(cmd != null) {
-                    lastReception.set(context.getClock().millis());
-                    if(!processMessage(cmd)) {
-                        logger.log(WARNING, "Unexpected msg, resetting with HB close for " + context.getConnectionName());
-                        context.sendHeartbeat(5000, MenuHeartbeatCommand.HeartbeatMode.END);
-                        context.changeState(AuthStatus.AWAITING_CONNECTION);
+                // decode everything that arrived with this message before going back to the stream, and give the
+                // listeners all the messages together.
+                context.startListenerBatch();
+                try {
+                    while(true) {
+                        if(cmd != null) messageReceived(cmd);
+                        if(taskDone.get() || !context.isCommandBuffered()) break;
+                        cmd = context.readCommandFromStream();
                     }
                 }
+                finally {
+                    context.endListenerBatch();
+                }
             } catch (Exception e) {
-                markDone();
-                logger.log(ERROR, "Exception while processing connection start on " + context.getConnectionName(), e);
-                context.changeState(AuthStatus.AWAITING_CONNECTION);
+                readFailed(e);
                 return;
             }
         }
@@ -64,6 +66,44 @@ public abstract class BaseMessageProcessingState implements RemoteConnectorState
         taskDone.set(true);
     }
 
+    /**
+     * Processes a message that has been read from the remote. Normally called by this state's read loop, but when
+     * the connector reads on our behalf (see RemoteConnectorContext.isReadDrivenExternally) it calls this directly.
+     * @param cmd the command that was received
+     */
+    public void messageReceived(MenuCommand cmd) {
+        lastReception.set(context.getClock().millis());
+        if(!processMessage(cmd)) {
+            logger.log(WARNING, "Unexpected msg, resetting with HB close for " + context.getConnectionName());
+            context.sendHeartbeat(5000, MenuHeartbeatCommand.HeartbeatMode.END);
+            context.changeState(AuthStatus.AWAITING_CONNECTION);
+        }
+    }
+
+    /**
+     * Checks if the remote has been silent for longer than the disconnect interval, and if so processes a timeout.
+     * Called by this state's read loop, or periodically by the connector when it reads on our behalf.
+     */
+    public void checkForTimeout() {
+        if(taskDone.get()) return;
+        if((context.getClock().millis() - lastReception.get()) > disconnectInterval.get()) {
+            logger.log(INFO, "Connection timeout recorded " + context.getConnectionName());
+            processTimeout();
+        }
+    }
+
+    /**
+     * Called when reading from or writing to the remote fails, the state is finished and the connection is reset.
+     * Once the state has finished, because reading and writing both failed or the state has already been left,
+     * further failures are ignored.
+     * @param e the exception that caused the failure
+     */
+    public void readFailed(Exception e) {
+        if(taskDone.getAndSet(true)) return;
+        logger.log(ERROR, "Exception while processing connection start on " + context.getConnectionName(), e);
+        context.changeState(AuthStatus.AWAITING_CONNECTION);
+    }
+
     protected abstract void processTimeout();
 
     protected abstract boolean processMessage(MenuCommand cmd);
@@ -77,7 +117,7 @@ public abstract class BaseMessageProcessingState implements RemoteConnectorState
         if (!taskDone.get()) {
             taskDone.set(true);
             logger.log(INFO, "Force closing connection " + context.getConnectionName());
-            readThread.cancel(false);
+            if(readThread != null) readThread.cancel(false);
         }
     }
 
@@ -11,6 +11,7 @@ import com.thecoderscorner.menu.remote.RemoteInformation;
 import com.thecoderscorner.menu.remote.commands.AckStatus;
 import com.thecoderscorner.menu.remote.commands.MenuCommand;
 import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand;
+import com.thecoderscorner.menu.remote.commands.MenuJoinCommand;
 
 import java.io.IOException;
 import java.time.Clock;
@@ -28,8 +29,26 @@ public interface RemoteConnectorContext {
 
     MenuCommand readCommandFromStream() throws IOException;
 
+    /**
+     * @return true if another complete message has already been read from the remote, so that calling
+     * readCommandFromStream will not wait.
+     */
+    boolean isCommandBuffered();
+
+    /**
+     * @return true if the connector reads from the remote itself and passes each message to the current state,
+     * in which case states must not start their own read loop.
+     */
+    boolean isReadDrivenExternally();
+
     boolean isDeviceConnected();
 
+    /**
+     * @return true if performConnection only starts the connection, in which case the connector tells the state once
+     * it completes, and the caller must not wait between attempts.
+     */
+    boolean isConnectionNonBlocking();
+
     void performConnection() throws IOException;
 
     void changeState(AuthStatus desiredState);
@@ -43,7 +62,20 @@ public interface RemoteConnectorContext {
 
     void setRemoteParty(RemoteInformation remote);
 
+    void negotiateProtocol(MenuJoinCommand remoteJoin);
+
     void notifyListeners(MenuCommand mc);
 
+    /**
+     * Hold back listener notifications made on this thread until endListenerBatch is called, then deliver them
+     * together.
+     */
+    void startListenerBatch();
+
+    /**
+     * Deliver any listener notifications held back since startListenerBatch.
+     */
+    void endListenerBatch();
+
     void close();
 }
@@ -33,6 +33,7 @@ public class SerialAwaitFirstMsgState extends BaseMessageProcessingState {
                     join.getPlatform()
             );
             context.setRemoteParty(remote);
+            context.negotiateProtocol(join);
             markDone();
             context.changeState(AuthStatus.SEND_AUTH);
             return true;
@@ -40,6 +40,7 @@ public class SocketAwaitJoinState extends BaseMessageProcessingState {
             );
             markDone();
             context.setRemoteParty(remote);
+            context.negotiateProtocol(join);
             context.changeState(AuthStatus.SEND_AUTH);
             return true;
         }
@@ -11,6 +11,7 @@ import com.thecoderscorner.menu.remote.commands.MenuCommand;
 
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.System.Logger.Level.ERROR;
@@ -22,6 +23,7 @@ public class StreamNotConnectedState implements RemoteConnectorState {
     private volatile Future connectionTask;
     private AtomicInteger connectionDelay = new AtomicInteger(2000);
     private final Object connectionWaiter = new Object();
+    private final AtomicBoolean established = new AtomicBoolean();
 
     public StreamNotConnectedState(RemoteConnectorContext context) {
         this.context = context;
@@ -34,15 +36,12 @@ public class StreamNotConnectedState implements RemoteConnectorState {
                 context.performConnection();
             }
 
-            if(context.isDeviceConnected()) {
-                logger.log(INFO, "Connection established to " + context.getConnectionName());
-                context.changeState(AuthStatus.ESTABLISHED_CONNECTION);
-            }
+            connectionEstablished();
         } catch (Exception e) {
             logger.log(ERROR, "Exception while trying to connect to " + context.getConnectionName(), e);
         }
         finally {
-            if(!context.isDeviceConnected()) {
+            if(!context.isDeviceConnected() && !context.isConnectionNonBlocking()) {
                 synchronized (connectionWaiter) {
                     try {
                         connectionWaiter.wait(connectionDelay.get());
@@ -58,6 +57,18 @@ public class StreamNotConnectedState implements RemoteConnectorState {
 
     }
 
+    /**
+     * Moves on to the established state if the device is now connected, this is called after each connection attempt
+     * and by connectors that connect without blocking once their connection completes. Only the first call that finds
+     * the device connected changes state.
+     */
+    public void connectionEstablished() {
+        if(context.isDeviceConnected() && established.compareAndSet(false, true)) {
+            logger.log(INFO, "Connection established to " + context.getConnectionName());
+            context.changeState(AuthStatus.ESTABLISHED_CONNECTION);
+        }
+    }
+
     @Override
     public void enterState() {
         connectionTask = context.getScheduledExecutor().scheduleAtFixedRate(this::tryConnect, 1, 5, TimeUnit.SECONDS);
@@ -8,8 +8,10 @@ module com.thecoderscorner.tcmenu.javaapi {
     exports com.thecoderscorner.menu.remote.protocol;
     exports com.thecoderscorner.menu.remote.rs232;
     exports com.thecoderscorner.menu.remote.socket;
+    exports com.thecoderscorner.menu.remote.loopback;
 
     requires com.fazecast.jSerialComm;
+    requires java.management;
 
     opens com.thecoderscorner.menu.domain to com.google.gson;
 }
\ No newline at end of file
@@ -9,10 +9,13 @@ package com.thecoderscorner.menu.domain.state;
 import com.thecoderscorner.menu.domain.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
@@ -179,4 +182,107 @@ public class MenuTreeTest {
         item = menuTree.getMenuById(item3.getId()).get();
         assertEquals(item, item3);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIndexesFollowReplaceAndRemove() {
+        menuTree.addMenuItem(MenuTree.ROOT, subMenu);
+        menuTree.addMenuItem(subMenu, item1);
+        menuTree.addMenuItem(subMenu, item2);
+
+        assertEquals(subMenu, menuTree.findParent(item1));
+        assertEquals(subMenu, menuTree.getSubMenuById(subMenu.getId()).orElseThrow());
+        assertEquals(MenuTree.ROOT, menuTree.getSubMenuById(MenuTree.ROOT.getId()).orElseThrow());
+        assertEquals(MenuTree.ROOT, menuTree.findParent(subMenu));
+        assertEquals(MenuTree.ROOT, menuTree.findParent(item3));
+
+        // replacing a submenu moves its children to the replacement
+        SubMenuItem renamedSub = SubMenuItemBuilder.aSubMenuItemBuilder().withExisting(subMenu).withName("Renamed").menuItem();
+        menuTree.replaceMenuById(renamedSub);
+        assertEquals(renamedSub, menuTree.findParent(item2));
+        assertEquals(renamedSub, menuTree.getSubMenuById(subMenu.getId()).orElseThrow());
+        assertEquals(renamedSub, menuTree.getMenuById(subMenu.getId()).orElseThrow());
+        assertThat(menuTree.getMenuItems(renamedSub), is(Arrays.asList(item1, item2)));
+
+        // removing a submenu removes all of its children from the indexes
+        menuTree.removeMenuItem(MenuTree.ROOT, renamedSub);
+        assertTrue(menuTree.getMenuById(item1.getId()).isEmpty());
+        assertTrue(menuTree.getSubMenuById(subMenu.getId()).isEmpty());
+        assertEquals(MenuTree.ROOT, menuTree.findParent(item2));
+        assertThat(menuTree.getAllMenuItems(), containsInAnyOrder(MenuTree.ROOT));
+    }
+
+    @Test
+    public void testSnapshotIsNotAffectedByLaterChanges() {
+        menuTree.addMenuItem(MenuTree.ROOT, subMenu);
+        menuTree.addMenuItem(subMenu, item1);
+        MenuTreeSnapshot before = menuTree.getSnapshot();
+
+        menuTree.addMenuItem(subMenu, item2);
+        menuTree.moveItem(subMenu, item2, MenuTree.MoveType.MOVE_UP);
+        menuTree.removeMenuItem(MenuTree.ROOT, subMenu);
+
+        assertThat(before.getMenuItems(subMenu), is(Collections.singletonList(item1)));
+        assertEquals(subMenu, before.findParent(item1));
+        assertTrue(before.getMenuById(item2.getId()).isEmpty());
+        assertThat(before.getAllSubMenus(), containsInAnyOrder(MenuTree.ROOT, subMenu));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> before.getMenuItems(subMenu).add(item3));
+
+        MenuTreeSnapshot after = menuTree.getSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertNull(after.getMenuItems(subMenu));
+        assertThat(after.getAllMenuItems(), containsInAnyOrder(MenuTree.ROOT));
+    }
+
+    @Test
+    public void testBatchIsPublishedOnceAndSeesItsOwnChanges() {
+        MenuTreeSnapshot before = menuTree.getSnapshot();
+
+        menuTree.updateInBatch(() -> {
+            menuTree.addMenuItem(MenuTree.ROOT, subMenu);
+            menuTree.addOrUpdateItem(subMenu.getId(), item1);
+            menuTree.addOrUpdateItem(subMenu.getId(), item2);
+
+            // the batching thread sees its changes, everyone else sees the last published snapshot
+            assertThat(menuTree.getMenuItems(subMenu), is(Arrays.asList(item1, item2)));
+            assertSame(before, menuTree.getSnapshot());
+        });
+
+        MenuTreeSnapshot after = menuTree.getSnapshot();
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertThat(after.getMenuItems(subMenu), is(Arrays.asList(item1, item2)));
+        assertEquals(subMenu, after.findParent(item2));
+    }
+
+    @Test
+    public void testSnapshotIsOnlyBuiltWhenReadAfterAChange() {
+        MenuTreeSnapshot before = menuTree.getSnapshot();
+        assertSame(before, menuTree.getSnapshot());
+
+        menuTree.addOrUpdateItem(MenuTree.ROOT.getId(), item1);
+        menuTree.addOrUpdateItem(MenuTree.ROOT.getId(), item2);
+        menuTree.addOrUpdateItem(MenuTree.ROOT.getId(), item3);
+
+        MenuTreeSnapshot after = menuTree.getSnapshot();
+        assertEquals(before.getVersion() + 3, after.getVersion());
+        assertThat(after.getMenuItems(MenuTree.ROOT), is(Arrays.asList(item1, item2, item3)));
+        assertSame(after, menuTree.getSnapshot());
+        assertTrue(before.getMenuItems(MenuTree.ROOT).isEmpty());
+    }
+
+    @Test
+    public void testReadersDuringABatchSeeEarlierChangesWithoutWaiting() throws Exception {
+        menuTree.addMenuItem(MenuTree.ROOT, item1);
+
+        menuTree.updateInBatch(() -> {
+            menuTree.addMenuItem(MenuTree.ROOT, item2);
+            try {
+                var seen = CompletableFuture.supplyAsync(menuTree::getSnapshot).get(5, TimeUnit.SECONDS);
+                assertThat(seen.getMenuItems(MenuTree.ROOT), is(Collections.singletonList(item1)));
+            } catch (Exception e) {
+                throw new AssertionError("Reader was held up by the batch", e);
+            }
+        });
+
+        assertThat(menuTree.getSnapshot().getMenuItems(MenuTree.ROOT), is(Arrays.asList(item1, item2)));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AcknowledgementTrackerTest {
+    private final AtomicLong nanos = new AtomicLong(5_000_000_000L);
+    private final AcknowledgementTracker tracker = new AcknowledgementTracker(Duration.ofSeconds(1), nanos::get);
+    private final MenuItem analog = DomainFixtures.anAnalogItem("Analog", 2);
+    private final MenuItem bool = DomainFixtures.anActionMenu("Action", 3);
+
+    @Test
+    public void testAcknowledgementRemovesAndRecordsLatencyForTheItem() {
+        var first = new CorrelationId(1);
+        var second = new CorrelationId(2);
+        tracker.track(first, analog);
+        tracker.track(second, bool);
+        nanos.addAndGet(Duration.ofMillis(30).toNanos());
+
+        assertSame(analog, tracker.acknowledged(first));
+        assertNull(tracker.acknowledged(first));
+        assertEquals(1, tracker.getPendingCount());
+        assertEquals(1, tracker.getLatency(analog).getCount());
+        assertEquals(30, tracker.getLatency(analog).getMax().toMillis());
+        assertEquals(0, tracker.getLatency(bool).getCount());
+        assertEquals(1, tracker.getLatency().getCount());
+        assertEquals(1, tracker.getUnmatchedCount());
+    }
+
+    @Test
+    public void testAcknowledgementWithoutCorrelationIsNotUnmatched() {
+        assertNull(tracker.acknowledged(CorrelationId.EMPTY_CORRELATION));
+        assertNull(tracker.acknowledged(new CorrelationId(99)));
+        assertEquals(1, tracker.getUnmatchedCount());
+
+        tracker.resetStatistics();
+        assertEquals(0, tracker.getUnmatchedCount());
+    }
+
+    @Test
+    public void testChangesExpireOnlyOnceTheTimeoutHasPassed() {
+        var early = new CorrelationId(1);
+        var late = new CorrelationId(2);
+        var acked = new CorrelationId(3);
+        tracker.track(early, analog);
+        tracker.track(acked, analog);
+        nanos.addAndGet(Duration.ofMillis(500).toNanos());
+        tracker.track(late, bool);
+        tracker.acknowledged(acked);
+
+        nanos.addAndGet(Duration.ofMillis(499).toNanos());
+        assertTrue(tracker.expire().isEmpty());
+
+        nanos.addAndGet(Duration.ofMillis(100).toNanos());
+        assertEquals(Map.of(early, analog), tracker.expire());
+        assertEquals(1, tracker.getPendingCount());
+
+        nanos.addAndGet(Duration.ofMillis(500).toNanos());
+        assertEquals(Map.of(late, bool), tracker.expire());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void testEverythingExpiresAfterALongGapWithoutChecking() {
+        for(int i = 0; i < 1000; i++) {
+            tracker.track(new CorrelationId(i), analog);
+            nanos.addAndGet(Duration.ofMillis(7).toNanos());
+        }
+        nanos.addAndGet(Duration.ofMinutes(10).toNanos());
+
+        assertEquals(1000, tracker.expire().size());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void testTrackingACorrelationAgainReplacesTheEarlierChange() {
+        var correlation = new CorrelationId(1);
+        tracker.track(correlation, analog);
+        nanos.addAndGet(Duration.ofMillis(600).toNanos());
+        tracker.track(correlation, bool);
+        assertEquals(1, tracker.getPendingCount());
+
+        nanos.addAndGet(Duration.ofMillis(600).toNanos());
+        assertTrue(tracker.expire().isEmpty());
+        nanos.addAndGet(Duration.ofMillis(500).toNanos());
+        assertEquals(Map.of(correlation, bool), tracker.expire());
+    }
+
+    @Test
+    public void testClearReturnsEverythingWaiting() {
+        tracker.track(new CorrelationId(1), analog);
+        tracker.track(new CorrelationId(2), bool);
+
+        assertEquals(Map.of(new CorrelationId(1), analog, new CorrelationId(2), bool), tracker.clear());
+        assertEquals(0, tracker.getPendingCount());
+        nanos.addAndGet(Duration.ofSeconds(5).toNanos());
+        assertTrue(tracker.expire().isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AcknowledgementTracker(Duration.ZERO));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.state.MenuState;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConflatedMenuChangesTest {
+    private final MenuTree tree = new MenuTree();
+    private final ConflatedMenuChanges changes = new ConflatedMenuChanges(tree);
+
+    @Test
+    public void testOnlyTheLatestStateOfEachItemIsFlushed() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 1);
+        var other = DomainFixtures.anAnalogItem("Other", 2);
+        tree.addMenuItem(MenuTree.ROOT, analog);
+        tree.addMenuItem(MenuTree.ROOT, other);
+
+        for(int i = 0; i < 10; i++) {
+            tree.changeItem(analog, analog.newMenuState(i, true, false));
+            changes.itemChanged(analog);
+        }
+        tree.changeItem(other, other.newMenuState(99, true, false));
+        changes.itemChanged(other);
+        assertTrue(changes.hasChanges());
+
+        List<MenuItem<?>> items = new ArrayList<>();
+        List<MenuState<?>> states = new ArrayList<>();
+        assertEquals(2, changes.flush((item, state) -> {
+            items.add(item);
+            states.add(state);
+        }));
+        assertEquals(List.of(analog, other), items);
+        assertEquals(9, states.get(0).getValue());
+        assertEquals(99, states.get(1).getValue());
+        assertEquals(11, changes.getChangesRecorded());
+        assertEquals(2, changes.getChangesFlushed());
+
+        assertFalse(changes.hasChanges());
+        assertEquals(0, changes.flush((item, state) -> fail("nothing should be flushed")));
+    }
+
+    @Test
+    public void testChangesDuringAFlushAreKeptForTheNextOne() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 1);
+        tree.addMenuItem(MenuTree.ROOT, analog);
+        changes.itemChanged(analog);
+
+        changes.flush((item, state) -> changes.itemChanged(item));
+        assertTrue(changes.hasChanges());
+        assertEquals(1, changes.flush((item, state) -> assertSame(analog, item)));
+    }
+}
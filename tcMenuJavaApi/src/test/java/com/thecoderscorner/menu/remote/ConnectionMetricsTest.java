@@ -0,0 +1,133 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommandType;
+import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static org.junit.Assert.*;
+
+public class ConnectionMetricsTest {
+    private final AtomicLong nanos = new AtomicLong(1_000_000);
+    private final ConnectionMetrics metrics = new ConnectionMetrics(() -> "test connection", nanos::get);
+
+    @Test
+    public void testMessagesAndBytesAreCountedByType() {
+        metrics.messageSent(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+        metrics.messageSent(newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 1), 30);
+        metrics.messageSent(newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 1), 30);
+        metrics.messageReceived(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 22);
+        metrics.decodeError();
+
+        var snapshot = metrics.snapshot();
+        assertEquals("test connection", snapshot.getConnectionName());
+        assertEquals(2, snapshot.getMessagesSent(MenuCommandType.CHANGE_INT_FIELD));
+        assertEquals(60L, (long) snapshot.getBytesSent().get(MenuCommandType.CHANGE_INT_FIELD));
+        assertEquals(1, snapshot.getMessagesReceived(MenuCommandType.HEARTBEAT));
+        assertEquals(0, snapshot.getMessagesReceived(MenuCommandType.JOIN));
+        assertFalse(snapshot.getMessagesReceived().containsKey(MenuCommandType.JOIN));
+        assertEquals(1, snapshot.getDecodeErrors());
+        assertEquals(3, metrics.getMessagesSent());
+        assertEquals(80, metrics.getBytesSent());
+        assertEquals(Map.of("CHANGE_INT_FIELD", 2L, "HEARTBEAT", 1L), metrics.getMessagesSentByType());
+
+        metrics.reset();
+        assertEquals(0, metrics.getMessagesSent());
+        assertEquals(3, snapshot.getMessagesSent().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testAckLatencyIsReadFromTheTracker() {
+        var tracker = new AcknowledgementTracker(Duration.ofSeconds(10), nanos::get);
+        var first = new CorrelationId("1000");
+        var second = new CorrelationId("2000");
+        tracker.track(first, DomainFixtures.anAnalogItem("first", 1));
+        nanos.addAndGet(1_000_000);
+        tracker.track(second, DomainFixtures.anAnalogItem("second", 2));
+        nanos.addAndGet(2_000_000);
+        assertEquals(0, metrics.snapshot().getAckLatency().getCount());
+        metrics.useAcknowledgements(tracker);
+
+        for(var correlation : new CorrelationId[] { second, first, first, CorrelationId.EMPTY_CORRELATION }) {
+            metrics.messageReceived(newAcknowledgementCommand(correlation, AckStatus.SUCCESS), 20);
+            tracker.acknowledged(correlation);
+        }
+
+        var ackLatency = metrics.snapshot().getAckLatency();
+        assertEquals(2, ackLatency.getCount());
+        assertEquals(Duration.ofMillis(3), ackLatency.getMax());
+        assertEquals(2.5, metrics.getAckLatencyMeanMillis(), 0.001);
+        // the repeated acknowledgement is unmatched, the one without a correlation is not.
+        assertEquals(1, metrics.snapshot().getAcksUnmatched());
+        assertEquals(4, metrics.getAcksReceived());
+
+        metrics.reset();
+        assertEquals(0, tracker.getLatency().getCount());
+        assertEquals(0, metrics.snapshot().getAcksUnmatched());
+    }
+
+    @Test
+    public void testHeartbeatAndBootstrapTimes() {
+        metrics.messageSent(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+        nanos.addAndGet(4_000_000);
+        metrics.messageReceived(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+        // a heartbeat with none of ours outstanding is not timed.
+        metrics.messageReceived(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+
+        metrics.messageReceived(newBootstrapCommand(MenuBootstrapCommand.BootType.START), 10);
+        nanos.addAndGet(250_000_000);
+        metrics.messageReceived(newBootstrapCommand(MenuBootstrapCommand.BootType.END), 10);
+
+        var snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getHeartbeatGap().getCount());
+        assertEquals(4.0, metrics.getHeartbeatGapMeanMillis(), 0.001);
+        assertEquals(1, snapshot.getBootstrapTime().getCount());
+        assertEquals(250.0, metrics.getLastBootstrapMillis(), 0.001);
+    }
+
+    @Test
+    public void testLostConnectionForgetsOutstandingTimings() {
+        metrics.messageSent(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+        metrics.messageReceived(newBootstrapCommand(MenuBootstrapCommand.BootType.START), 10);
+        metrics.connectionLost();
+
+        metrics.messageReceived(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL), 20);
+        metrics.messageReceived(newBootstrapCommand(MenuBootstrapCommand.BootType.END), 10);
+
+        var snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getReconnects());
+        assertEquals(0, snapshot.getHeartbeatGap().getCount());
+        assertEquals(0, snapshot.getBootstrapTime().getCount());
+    }
+
+    @Test
+    public void testRegisteredOverJmx() throws Exception {
+        var name = metrics.registerMBean();
+        try {
+            assertSame(name, metrics.registerMBean());
+            metrics.messageSent(newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 1), 30);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "MessagesSent"));
+            assertEquals("test connection", server.getAttribute(name, "ConnectionName"));
+        }
+        finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConnectionStateMetricsTest {
+    @Test
+    public void testTransitionsAndTimeInEachStatusAreRecorded() {
+        var clock = mock(Clock.class);
+        var metrics = new ConnectionStateMetrics(clock);
+        assertNull(metrics.getCurrentStatus());
+
+        when(clock.millis()).thenReturn(1000L);
+        metrics.stateEntered(AuthStatus.AWAITING_CONNECTION);
+        when(clock.millis()).thenReturn(1500L);
+        metrics.stateEntered(AuthStatus.CONNECTION_READY);
+        when(clock.millis()).thenReturn(4500L);
+        metrics.stateEntered(AuthStatus.AWAITING_CONNECTION);
+        when(clock.millis()).thenReturn(4700L);
+
+        assertEquals(3, metrics.getTransitionCount());
+        assertEquals(2, metrics.getEntryCount(AuthStatus.AWAITING_CONNECTION));
+        assertEquals(1, metrics.getEntryCount(AuthStatus.CONNECTION_READY));
+        assertEquals(0, metrics.getEntryCount(AuthStatus.BOOTSTRAPPING));
+        assertEquals(AuthStatus.AWAITING_CONNECTION, metrics.getCurrentStatus());
+
+        // the current status includes the time spent in it so far.
+        assertEquals(Duration.ofMillis(700), metrics.getTimeInStatus(AuthStatus.AWAITING_CONNECTION));
+        assertEquals(Duration.ofMillis(3000), metrics.getTimeInStatus(AuthStatus.CONNECTION_READY));
+        assertEquals(Duration.ZERO, metrics.getTimeInStatus(AuthStatus.BOOTSTRAPPING));
+    }
+}
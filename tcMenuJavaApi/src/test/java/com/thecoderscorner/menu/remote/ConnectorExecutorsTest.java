@@ -0,0 +1,101 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.loopback.LoopbackControllerBuilder;
+import com.thecoderscorner.menu.remote.loopback.SimulatedMenuDevice;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConnectorExecutorsTest {
+    private static final int BLOCKING_TASKS = 50;
+
+    @Test
+    public void testEveryBlockingTaskGetsAThreadOfItsOwn() throws InterruptedException {
+        var executor = ConnectorExecutors.newVirtualThreadExecutor("exec-test");
+        try {
+            var started = new CountDownLatch(BLOCKING_TASKS);
+            var release = new CountDownLatch(1);
+            for(int i=0; i<BLOCKING_TASKS; i++) {
+                // like a read loop, each task blocks until the connection ends.
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            release.countDown();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testScheduledTasksRunOnNamedDaemonThreads() throws Exception {
+        var executor = ConnectorExecutors.newVirtualThreadExecutor("exec-test");
+        try {
+            var thread = executor.schedule(Thread::currentThread, 10, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+            assertEquals("exec-test", thread.getName());
+            assertTrue(thread.isDaemon());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPeriodicTaskRepeatsUntilCancelled() throws Exception {
+        var executor = ConnectorExecutors.newVirtualThreadExecutor("exec-test");
+        try {
+            var runs = new AtomicInteger();
+            var threeRuns = new CountDownLatch(3);
+            var future = executor.scheduleAtFixedRate(() -> {
+                runs.incrementAndGet();
+                threeRuns.countDown();
+            }, 0, 10, TimeUnit.MILLISECONDS);
+
+            assertTrue(threeRuns.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(false));
+            int runsWhenCancelled = runs.get();
+            Thread.sleep(100);
+            assertTrue(runs.get() <= runsWhenCancelled + 1);
+            assertTrue(future.isCancelled());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadConnectionsShareOneExecutor() {
+        var first = (StreamRemoteConnector) virtualThreadController().getConnector();
+        var second = (StreamRemoteConnector) virtualThreadController().getConnector();
+        assertSame(ConnectorExecutors.sharedVirtualThreadExecutor(), first.getScheduledExecutor());
+        assertSame(first.getScheduledExecutor(), second.getScheduledExecutor());
+    }
+
+    private RemoteMenuController virtualThreadController() {
+        return new LoopbackControllerBuilder()
+                .withDevice(new SimulatedMenuDevice("simulated", new MenuTree()))
+                .withMenuTree(new MenuTree())
+                .withLocalName("execTest").withUUID(UUID.randomUUID())
+                .withVirtualThreads(true)
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class DispatchingControllerListenerTest {
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private RemoteControllerListener delegate;
+    private DispatchingControllerListener dispatcher;
+
+    @Before
+    public void setUp() {
+        delegate = mock(RemoteControllerListener.class);
+        dispatcher = new DispatchingControllerListener(delegate, tasks::add, 3);
+    }
+
+    @Test
+    public void testEventsAreDeliveredInOrderOnTheExecutor() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 1);
+        dispatcher.connectionState(RemoteInformation.NOT_CONNECTED, AuthStatus.CONNECTION_READY);
+        dispatcher.treeFullyPopulated();
+        dispatcher.menuItemChanged(analog, true);
+        verifyZeroInteractions(delegate);
+        assertEquals(1, tasks.size());
+        assertEquals(3, dispatcher.getQueuedCount());
+
+        tasks.poll().run();
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).connectionState(RemoteInformation.NOT_CONNECTED, AuthStatus.CONNECTION_READY);
+        order.verify(delegate).treeFullyPopulated();
+        order.verify(delegate).menuItemChanged(analog, true);
+        assertEquals(3, dispatcher.getDeliveredCount());
+        assertEquals(0, dispatcher.getQueuedCount());
+
+        // once the queue has emptied the next event schedules another dispatch.
+        dispatcher.treeFullyPopulated();
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void testChangesToAnItemStillWaitingAreMerged() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 1);
+        var other = DomainFixtures.anAnalogItem("Other", 2);
+        var analogChanged = DomainFixtures.anAnalogItem("Analog Renamed", 1);
+        dispatcher.menuItemChanged(analog, true);
+        dispatcher.menuItemChanged(other, true);
+        dispatcher.menuItemChanged(analog, true);
+        dispatcher.menuItemChanged(analogChanged, false);
+        assertEquals(2, dispatcher.getCoalescedCount());
+
+        tasks.poll().run();
+        verify(delegate).menuItemChanged(analogChanged, false);
+        verify(delegate).menuItemChanged(other, true);
+        verify(delegate, times(2)).menuItemChanged(any(), anyBoolean());
+
+        // after delivery, a new change to the item is queued again rather than merged.
+        dispatcher.menuItemChanged(analog, true);
+        tasks.poll().run();
+        verify(delegate).menuItemChanged(analog, true);
+        assertEquals(2, dispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void testAcknowledgementsAreDroppedWhenOverCapacity() {
+        for(int i = 0; i < 5; i++) {
+            dispatcher.ackReceived(new CorrelationId(i + 1), null, AckStatus.SUCCESS);
+        }
+        dispatcher.connectionState(RemoteInformation.NOT_CONNECTED, AuthStatus.AWAITING_CONNECTION);
+        dispatcher.menuItemChanged(DomainFixtures.anAnalogItem("Analog", 1), true);
+        assertEquals(2, dispatcher.getOverflowCount());
+        assertEquals(5, dispatcher.getQueuedCount());
+
+        tasks.poll().run();
+        verify(delegate, times(3)).ackReceived(any(), any(), any());
+        verify(delegate).connectionState(RemoteInformation.NOT_CONNECTED, AuthStatus.AWAITING_CONNECTION);
+        verify(delegate).menuItemChanged(any(), anyBoolean());
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopDelivery() {
+        doThrow(new IllegalStateException("boom")).when(delegate).treeFullyPopulated();
+        dispatcher.treeFullyPopulated();
+        dispatcher.ackTimedOut(new CorrelationId(1), null);
+
+        tasks.poll().run();
+        verify(delegate).ackTimedOut(new CorrelationId(1), null);
+        assertEquals(2, dispatcher.getDeliveredCount());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new DispatchingControllerListener(delegate, Runnable::run, 0));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testEveryValueIsReadBackWithinTheBucketPrecision() {
+        for(long value = 0; value < 5_000_000; value = value * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketFor(value);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertTrue(value + " in bucket ending " + highest, highest >= value);
+            assertTrue(value + " in bucket ending " + highest, highest - value <= value / 8);
+            if(bucket > 0) assertTrue(LatencyHistogram.highestValueIn(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    public void testPercentilesMeanAndMax() {
+        var histogram = new LatencyHistogram();
+        assertEquals(Duration.ZERO, histogram.snapshot().getPercentile(99));
+
+        for(int i = 1; i <= 100; i++) histogram.record(i * 1000L);
+        var snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(Duration.ofNanos(50500), snapshot.getMean());
+        assertEquals(Duration.ofNanos(100000), snapshot.getMax());
+        assertEquals(50000, snapshot.getPercentile(50).toNanos(), 50000 / 8.0);
+        assertEquals(99000, snapshot.getPercentile(99).toNanos(), 99000 / 8.0);
+        assertEquals(100000, snapshot.getPercentile(100).toNanos());
+
+        // a snapshot does not change when more values are recorded, or when the histogram is reset.
+        histogram.record(Long.MAX_VALUE);
+        histogram.reset();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+}
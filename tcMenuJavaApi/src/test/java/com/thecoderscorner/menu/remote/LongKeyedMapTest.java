@@ -0,0 +1,75 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongKeyedMapTest {
+    @Test
+    public void testPutGetAndRemove() {
+        var map = new LongKeyedMap<String>();
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-1, "minus one"));
+        assertEquals("zero", map.put(0, "nothing"));
+
+        assertEquals("nothing", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertNull(map.get(1));
+        assertEquals(2, map.size());
+
+        assertEquals("minus one", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    public void testBehavesLikeAHashMapUnderRandomChanges() {
+        var map = new LongKeyedMap<Long>();
+        var expected = new HashMap<Long, Long>();
+        var random = new Random(1234);
+        for(int i = 0; i < 100000; i++) {
+            // a small key range so that there are plenty of collisions, removals and replacements.
+            long key = random.nextInt(2000) - 1000;
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for(var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testRemoveIfLeavesOnlyTheValuesNotMatched() {
+        var map = new LongKeyedMap<Long>();
+        for(long i = 0; i < 1000; i++) map.put(i * 7, i);
+
+        assertEquals(500, map.removeIf(v -> v % 2 == 0));
+        assertEquals(500, map.size());
+        var remaining = new HashSet<Long>();
+        map.forEachValue(remaining::add);
+        for(long i = 0; i < 1000; i++) {
+            assertEquals(i % 2 != 0, remaining.contains(i));
+            assertEquals(i % 2 != 0 ? Long.valueOf(i) : null, map.get(i * 7));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.BooleanMenuItem;
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RemoteMenuControllerTest {
+    private MenuTree tree;
+    private RemoteConnector connector;
+    private RemoteControllerListener listener;
+    private RemoteConnectorListener commandListener;
+    private ConnectionChangeListener connectionListener;
+    private RemoteMenuController controller;
+
+    @Before
+    public void setUp() {
+        tree = new MenuTree();
+        connector = mock(RemoteConnector.class);
+        listener = mock(RemoteControllerListener.class);
+
+        controller = new RemoteMenuController(connector, tree);
+        controller.addListener(listener);
+        controller.start();
+
+        var commandCaptor = ArgumentCaptor.forClass(RemoteConnectorListener.class);
+        verify(connector).registerConnectorListener(commandCaptor.capture());
+        commandListener = commandCaptor.getValue();
+        var connectionCaptor = ArgumentCaptor.forClass(ConnectionChangeListener.class);
+        verify(connector).registerConnectionChangeListener(connectionCaptor.capture());
+        connectionListener = connectionCaptor.getValue();
+    }
+
+    @Test
+    public void testBootstrapIsAppliedInOneBatch() {
+        var sub = DomainFixtures.aSubMenu("Sub", 1);
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var bool = DomainFixtures.aBooleanMenu("Bool", 3, BooleanMenuItem.BooleanNaming.ON_OFF);
+        long versionBefore = tree.getSnapshot().getVersion();
+
+        commandListener.onCommand(connector, new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START));
+        commandListener.onCommand(connector, newMenuSubBootCommand(0, sub));
+        commandListener.onCommand(connector, newAnalogBootCommand(1, analog, 42));
+        commandListener.onCommand(connector, newMenuBooleanBootCommand(1, bool, true));
+
+        // nothing is visible until the bootstrap ends
+        assertTrue(tree.getMenuById(2).isEmpty());
+        verifyZeroInteractions(listener);
+
+        commandListener.onCommand(connector, new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END));
+
+        assertEquals(versionBefore + 1, tree.getSnapshot().getVersion());
+        assertThat(tree.getMenuItems(sub), is(List.<MenuItem>of(analog, bool)));
+        assertEquals(42, (int) tree.getMenuState(analog).getValue());
+        assertTrue(tree.getMenuState(bool).getValue());
+        verify(listener).treeFullyPopulated();
+        verify(listener, never()).menuItemChanged(any(), anyBoolean());
+    }
+
+    @Test
+    public void testBootItemOutsideOfBootstrapIsAppliedImmediately() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        commandListener.onCommand(connector, newAnalogBootCommand(0, analog, 10));
+
+        assertEquals(analog, tree.getMenuById(2).orElseThrow());
+        verify(listener).menuItemChanged(analog, false);
+    }
+
+    @Test
+    public void testBatchIsAppliedToTheTreeBeforeListenersAreNotified() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var bool = DomainFixtures.aBooleanMenu("Bool", 3, BooleanMenuItem.BooleanNaming.ON_OFF);
+        var seenInSnapshot = new ArrayList<MenuItem>();
+        doAnswer(inv -> {
+            seenInSnapshot.addAll(tree.getSnapshot().getMenuItems(MenuTree.ROOT));
+            return null;
+        }).when(listener).menuItemChanged(any(), anyBoolean());
+
+        commandListener.onCommands(connector, List.of(newAnalogBootCommand(0, analog, 10),
+                newMenuBooleanBootCommand(0, bool, true)));
+
+        // both items were already published when the first listener call was made.
+        assertEquals(List.of(analog, bool, analog, bool), seenInSnapshot);
+        var inOrder = inOrder(listener);
+        inOrder.verify(listener).menuItemChanged(analog, false);
+        inOrder.verify(listener).menuItemChanged(bool, false);
+    }
+
+    @Test
+    public void testDisconnectDuringBootstrapDiscardsItems() {
+        commandListener.onCommand(connector, new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START));
+        commandListener.onCommand(connector, newAnalogBootCommand(0, DomainFixtures.anAnalogItem("Analog", 2), 10));
+        connectionListener.connectionChange(connector, AuthStatus.AWAITING_CONNECTION);
+
+        commandListener.onCommand(connector, new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START));
+        commandListener.onCommand(connector, new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END));
+
+        assertTrue(tree.getMenuById(2).isEmpty());
+        verify(listener).treeFullyPopulated();
+    }
+
+    @Test
+    public void testAcknowledgedChangeIsNoLongerTracked() {
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var correlation = controller.sendDeltaUpdate(analog, 1);
+        assertEquals(1, controller.getAcknowledgements().getPendingCount());
+
+        commandListener.onCommand(connector, newAcknowledgementCommand(correlation, AckStatus.SUCCESS));
+        verify(listener).ackReceived(correlation, analog, AckStatus.SUCCESS);
+        assertEquals(0, controller.getAcknowledgements().getPendingCount());
+        assertEquals(1, controller.getAcknowledgements().getLatency(analog).getCount());
+
+        // a second acknowledgement for the same change no longer has an item.
+        commandListener.onCommand(connector, newAcknowledgementCommand(correlation, AckStatus.SUCCESS));
+        verify(listener).ackReceived(correlation, null, AckStatus.SUCCESS);
+    }
+
+    @Test
+    public void testChangeReplacedBeforeItWasSentIsNoLongerTracked() throws IOException {
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var first = controller.sendAbsoluteUpdate(analog, 10);
+        when(connector.sendMenuCommandSuperseding(any())).thenReturn(List.of(first));
+        var second = controller.sendAbsoluteUpdate(analog, 11);
+        assertEquals(1, controller.getAcknowledgements().getPendingCount());
+
+        // only the change that was still waiting is reported when the connection is lost.
+        connectionListener.connectionChange(connector, AuthStatus.AWAITING_CONNECTION);
+        verify(listener).ackReceived(second, analog, AckStatus.UNKNOWN_ERROR);
+        verify(listener, never()).ackReceived(eq(first), any(), any());
+    }
+
+    @Test
+    public void testChangeDroppedByAFullQueueIsReportedStraightAway() throws IOException {
+        when(connector.sendMenuCommandSuperseding(any())).thenThrow(new OutboundQueueFullException("full"));
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var correlation = controller.sendDeltaUpdate(analog, 1);
+
+        verify(listener).ackReceived(correlation, analog, AckStatus.UNKNOWN_ERROR);
+        assertEquals(0, controller.getAcknowledgements().getPendingCount());
+        verify(connector, never()).close();
+    }
+
+    @Test
+    public void testChangeNotAcknowledgedInTimeIsReported() throws InterruptedException {
+        var timingOut = new RemoteMenuController(connector, tree, null, Duration.ofMillis(1));
+        timingOut.addListener(listener);
+        var analog = DomainFixtures.anAnalogItem("Analog", 2);
+        var correlation = timingOut.sendAbsoluteUpdate(analog, 10);
+
+        Thread.sleep(20);
+        timingOut.checkForAckTimeouts();
+        verify(listener).ackTimedOut(correlation, analog);
+        assertEquals(0, timingOut.getAcknowledgements().getPendingCount());
+
+        timingOut.checkForAckTimeouts();
+        verify(listener, times(1)).ackTimedOut(any(), any());
+    }
+
+    @Test
+    public void testTimeoutsAreCheckedOnTheExecutorUntilStopped() {
+        var executor = mock(ScheduledExecutorService.class);
+        var future = mock(ScheduledFuture.class);
+        doReturn(future).when(executor).scheduleAtFixedRate(any(), anyLong(), anyLong(), any());
+        var scheduled = new RemoteMenuController(connector, tree, executor, Duration.ofSeconds(2));
+        scheduled.start();
+        verify(executor).scheduleAtFixedRate(any(), eq(500L), eq(500L), eq(TimeUnit.MILLISECONDS));
+
+        scheduled.stop();
+        verify(future).cancel(false);
+    }
+}
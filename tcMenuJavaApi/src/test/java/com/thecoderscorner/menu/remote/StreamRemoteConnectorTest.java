@@ -0,0 +1,461 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote;
+
+import com.thecoderscorner.menu.domain.EnumMenuItemBuilder;
+import com.thecoderscorner.menu.remote.commands.MenuChangeCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommandType;
+import com.thecoderscorner.menu.remote.commands.MenuEnumBootCommand;
+import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand;
+import com.thecoderscorner.menu.remote.protocol.BinaryMenuCommandProtocol;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import com.thecoderscorner.menu.remote.states.BaseMessageProcessingState;
+import com.thecoderscorner.menu.remote.states.RemoteConnectorState;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.START_OF_MSG;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class StreamRemoteConnectorTest {
+    private ScheduledExecutorService executor;
+    private CapturingConnector connector;
+
+    @Before
+    public void setUp() {
+        executor = mock(ScheduledExecutorService.class);
+        connector = new CapturingConnector(executor);
+        var state = mock(RemoteConnectorState.class);
+        when(state.canSendCommandToRemote(any())).thenReturn(true);
+        connector.changeState(state);
+    }
+
+    @Test
+    public void testChangesForTheSameItemAreCoalesced() throws IOException {
+        var first = CorrelationId.EMPTY_CORRELATION;
+        var last = new CorrelationId("12345678");
+        connector.sendMenuCommand(newDeltaChangeCommand(first, 1, 2));
+        connector.sendMenuCommand(newAbsoluteMenuChangeCommand(first, 2, 10));
+        connector.sendMenuCommand(newDeltaChangeCommand(first, 1, 3));
+        connector.sendMenuCommand(newAbsoluteMenuChangeCommand(first, 2, 11));
+        connector.sendMenuCommand(newDeltaChangeCommand(last, 1, -1));
+
+        assertEquals(2, connector.getOutboundQueueDepth());
+        assertEquals(3, connector.getOutboundCoalescedCount());
+        runWriter();
+
+        assertEquals(1, connector.writes.size());
+        var sent = decodeAll(connector.writes.get(0));
+        assertEquals(2, sent.size());
+        var delta = (MenuChangeCommand) sent.get(0);
+        assertEquals(1, delta.getMenuItemId());
+        assertEquals(MenuChangeCommand.ChangeType.DELTA, delta.getChangeType());
+        assertEquals("4", delta.getValue());
+        assertEquals(last, delta.getCorrelationId());
+        var absolute = (MenuChangeCommand) sent.get(1);
+        assertEquals(2, absolute.getMenuItemId());
+        assertEquals("11", absolute.getValue());
+        assertEquals(0, connector.getOutboundQueueDepth());
+    }
+
+    @Test
+    public void testCorrelationsOfReplacedChangesAreReturned() throws IOException {
+        var first = new CorrelationId("00000001");
+        var second = new CorrelationId("00000002");
+        var third = new CorrelationId("00000003");
+        assertEquals(List.of(), connector.sendMenuCommandSuperseding(newAbsoluteMenuChangeCommand(first, 1, 10)));
+        assertEquals(List.of(first), connector.sendMenuCommandSuperseding(newAbsoluteMenuChangeCommand(second, 1, 11)));
+        assertEquals(List.of(), connector.sendMenuCommandSuperseding(newDeltaChangeCommand(third, 2, 1)));
+        assertEquals(List.of(third), connector.sendMenuCommandSuperseding(newDeltaChangeCommand(first, 2, 1)));
+        // changes without a correlation are never waited for, so there is nothing to report.
+        assertEquals(List.of(), connector.sendMenuCommandSuperseding(newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 3, 1)));
+        assertEquals(List.of(), connector.sendMenuCommandSuperseding(newAbsoluteMenuChangeCommand(second, 3, 2)));
+    }
+
+    @Test
+    public void testDeltaIsNotMergedIntoWaitingAbsolute() throws IOException {
+        connector.sendMenuCommand(newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 10));
+        connector.sendMenuCommand(newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 1));
+        connector.sendMenuCommand(newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, 1));
+        runWriter();
+
+        var sent = decodeAll(connector.writes.get(0));
+        assertEquals(2, sent.size());
+        assertEquals("10", ((MenuChangeCommand) sent.get(0)).getValue());
+        assertEquals("2", ((MenuChangeCommand) sent.get(1)).getValue());
+    }
+
+    @Test
+    public void testFullQueueDropsAndLaterCommandsStartANewWriter() throws IOException {
+        for(int i=0; i<256; i++) {
+            connector.sendMenuCommand(newHeartbeatCommand(i, MenuHeartbeatCommand.HeartbeatMode.NORMAL));
+        }
+        for(int i=0; i<44; i++) {
+            Assertions.assertThrows(OutboundQueueFullException.class,
+                    () -> connector.sendMenuCommand(newHeartbeatCommand(1, MenuHeartbeatCommand.HeartbeatMode.NORMAL)));
+        }
+        assertEquals(256, connector.getOutboundQueueDepth());
+        assertEquals(44, connector.getOutboundDroppedCount());
+
+        // many messages are written in a few large writes, rather than one write per message.
+        runWriter();
+        assertEquals(256, connector.writes.stream().mapToInt(bb -> decodeAll(bb).size()).sum());
+        assertTrue(connector.writes.size() < 256 / 4);
+
+        connector.sendMenuCommand(newHeartbeatCommand(1, MenuHeartbeatCommand.HeartbeatMode.NORMAL));
+        verify(executor, times(2)).execute(any());
+    }
+
+    @Test
+    public void testWriteFailureClosesAndResetsTheConnection() throws IOException {
+        var state = mock(BaseMessageProcessingState.class);
+        when(state.canSendCommandToRemote(any())).thenReturn(true);
+        connector.changeState(state);
+        connector.failWrites = true;
+        connector.sendMenuCommand(newHeartbeatCommand(1, MenuHeartbeatCommand.HeartbeatMode.NORMAL));
+        runWriter();
+
+        assertTrue(connector.closed);
+        assertEquals(0, connector.getOutboundQueueDepth());
+        verify(state).readFailed(any(IOException.class));
+    }
+
+    @Test
+    public void testCommandRejectedWhenStateDoesNotAllowSending() {
+        var state = mock(RemoteConnectorState.class);
+        connector.changeState(state);
+        Assertions.assertThrows(IOException.class, () -> connector.sendMenuCommand(newHeartbeatCommand(1, MenuHeartbeatCommand.HeartbeatMode.NORMAL)));
+        verifyZeroInteractions(executor);
+    }
+
+    @Test
+    public void testStateIsCreatedFromItsFactoryAndTransitionsAreCounted() {
+        var state = mock(RemoteConnectorState.class);
+        when(state.getAuthenticationStatus()).thenReturn(AuthStatus.AWAITING_CONNECTION);
+        connector.stateMachineMappings.put(AuthStatus.AWAITING_CONNECTION, context -> state);
+
+        connector.changeState(AuthStatus.AWAITING_CONNECTION);
+
+        verify(state).enterState();
+        assertEquals(AuthStatus.AWAITING_CONNECTION, connector.getAuthenticationStatus());
+        // the initial state, the state from setUp and then the state from the factory.
+        assertEquals(3, connector.getStateMetrics().getTransitionCount());
+        assertEquals(1, connector.getStateMetrics().getEntryCount(AuthStatus.AWAITING_CONNECTION));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> connector.changeState(AuthStatus.BOOTSTRAPPING));
+    }
+
+    @Test
+    public void testPushedMessagesSplitAtEveryBoundaryAreAllReceived() {
+        var commands = framingTestCommands();
+        byte[] stream = encodeStream(commands);
+        for(int split = 1; split < stream.length; split++) {
+            assertEquals(describe(commands), describe(pushInChunks(stream, List.of(split, stream.length - split))));
+        }
+    }
+
+    @Test
+    public void testPushedMessagesInRandomChunksAreAllReceived() {
+        var commands = framingTestCommands();
+        byte[] stream = encodeStream(commands);
+        var random = new Random(42);
+        for(int i = 0; i < 200; i++) {
+            assertEquals(describe(commands), describe(pushInChunks(stream, randomChunks(random, stream.length))));
+        }
+    }
+
+    @Test
+    public void testStreamReadMessagesSplitAtEveryBoundaryAreAllReceived() throws IOException {
+        var commands = framingTestCommands();
+        byte[] stream = encodeStream(commands);
+        for(int split = 1; split < stream.length; split++) {
+            assertEquals(describe(commands), describe(readInChunks(stream, List.of(split, stream.length - split), commands.size())));
+        }
+
+        var random = new Random(42);
+        for(int i = 0; i < 200; i++) {
+            assertEquals(describe(commands), describe(readInChunks(stream, randomChunks(random, stream.length), commands.size())));
+        }
+    }
+
+    @Test
+    public void testEveryMessageFromOneReadIsBufferedAndDecodedWithoutReadingAgain() throws IOException {
+        var commands = framingTestCommands();
+        var readConnector = new CapturingConnector(executor);
+        readConnector.registerPreferredProtocol(new BinaryMenuCommandProtocol());
+        readConnector.chunksToRead.add(encodeStream(commands));
+
+        var received = new ArrayList<MenuCommand>();
+        received.add(readConnector.readCommandFromStream());
+        while(readConnector.isCommandBuffered()) {
+            received.add(readConnector.readCommandFromStream());
+        }
+        assertEquals(describe(commands), describe(received));
+    }
+
+    @Test
+    public void testMessageLargerThanTheInputBufferIsRead() throws IOException {
+        var choices = new ArrayList<String>();
+        for(int i = 0; i < 26; i++) choices.add("Choice number " + i + " with a much longer description than usual");
+        var item = EnumMenuItemBuilder.anEnumMenuItemBuilder().withId(1).withName("Large enum")
+                .withEnumList(choices).menuItem();
+        byte[] stream = encodeStream(List.of(newMenuEnumBootCommand(0, item, 0)));
+        assertTrue(stream.length > 1024);
+
+        var readConnector = new CapturingConnector(executor);
+        for(int offset = 0; offset < stream.length; offset += 256) {
+            readConnector.chunksToRead.add(Arrays.copyOfRange(stream, offset, Math.min(stream.length, offset + 256)));
+        }
+
+        var boot = (MenuEnumBootCommand) readConnector.readCommandFromStream();
+        assertEquals(choices, boot.getMenuItem().getEnumEntries());
+    }
+
+    @Test
+    public void testPushedMessagesAreGivenToListenersAsOneBatch() {
+        var commands = framingTestCommands();
+        var pushConnector = new CapturingConnector(executor);
+        pushConnector.registerPreferredProtocol(new BinaryMenuCommandProtocol());
+        var listener = mock(RemoteConnectorListener.class);
+        pushConnector.registerConnectorListener(listener);
+        var state = mock(BaseMessageProcessingState.class);
+        doAnswer(inv -> {
+            pushConnector.notifyListeners(inv.getArgument(0));
+            return null;
+        }).when(state).messageReceived(any());
+        pushConnector.changeState(state);
+
+        pushConnector.processBufferedMessages(ByteBuffer.wrap(encodeStream(commands)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<MenuCommand>> captor = ArgumentCaptor.forClass(List.class);
+        verify(listener).onCommands(eq(pushConnector), captor.capture());
+        verify(listener, never()).onCommand(any(), any());
+        assertEquals(describe(commands), describe(captor.getValue()));
+    }
+
+    @Test
+    public void testTrafficErrorsAndLostConnectionsAreRecordedInMetrics() throws IOException {
+        var commands = framingTestCommands();
+        byte[] stream = encodeStream(commands);
+        var readConnector = new CapturingConnector(executor);
+        readConnector.registerPreferredProtocol(new BinaryMenuCommandProtocol());
+        // a message with an unknown protocol is skipped and counted, the messages after it are still read.
+        readConnector.chunksToRead.add(new byte[] { START_OF_MSG, 99 });
+        readConnector.chunksToRead.add(stream);
+
+        assertNull(readConnector.readCommandFromStream());
+        for(int i = 0; i < commands.size(); i++) readConnector.readCommandFromStream();
+
+        var metrics = readConnector.getConnectionMetrics().orElseThrow().snapshot();
+        assertEquals(3, metrics.getMessagesReceived(MenuCommandType.CHANGE_INT_FIELD));
+        assertEquals(1, metrics.getMessagesReceived(MenuCommandType.HEARTBEAT));
+        assertEquals(stream.length, metrics.getBytesReceived().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(1, metrics.getDecodeErrors());
+
+        connector.sendMenuCommand(newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL));
+        runWriter();
+        var sent = connector.getConnectionMetrics().orElseThrow();
+        assertEquals(1, sent.getMessagesSent());
+        assertEquals(connector.writes.get(0).remaining(), sent.getBytesSent());
+
+        // only going back to waiting from a connection that was established counts as a lost connection.
+        var awaiting = mock(RemoteConnectorState.class);
+        when(awaiting.getAuthenticationStatus()).thenReturn(AuthStatus.AWAITING_CONNECTION);
+        var ready = mock(RemoteConnectorState.class);
+        when(ready.getAuthenticationStatus()).thenReturn(AuthStatus.CONNECTION_READY);
+        connector.changeState(awaiting);
+        connector.changeState(ready);
+        connector.changeState(awaiting);
+        assertEquals(1, sent.getReconnects());
+    }
+
+    private List<MenuCommand> framingTestCommands() {
+        return List.of(
+                newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, "a|b=c\\|"),
+                newHeartbeatCommand(1500, MenuHeartbeatCommand.HeartbeatMode.NORMAL),
+                newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 3, "=|\\||"),
+                newDeltaChangeCommand(CorrelationId.EMPTY_CORRELATION, 2, -3)
+        );
+    }
+
+    /**
+     * Encodes the commands alternately in the tag value and binary protocols, so both kinds of framing are tested.
+     */
+    private byte[] encodeStream(List<MenuCommand> commands) {
+        MenuCommandProtocol[] protocols = { new TagValMenuCommandProtocol(), new BinaryMenuCommandProtocol() };
+        var bb = ByteBuffer.allocate(4096);
+        for(int i = 0; i < commands.size(); i++) {
+            var protocol = protocols[i % protocols.length];
+            var cmd = commands.get(i);
+            bb.put(START_OF_MSG);
+            bb.put(protocol.getKeyIdentifier());
+            bb.put((byte) cmd.getCommandType().getHigh());
+            bb.put((byte) cmd.getCommandType().getLow());
+            protocol.toChannel(bb, cmd);
+        }
+        bb.flip();
+        byte[] stream = new byte[bb.remaining()];
+        bb.get(stream);
+        return stream;
+    }
+
+    private List<Integer> randomChunks(Random random, int length) {
+        var chunks = new ArrayList<Integer>();
+        int remaining = length;
+        while(remaining > 0) {
+            int chunk = Math.min(remaining, 1 + random.nextInt(17));
+            chunks.add(chunk);
+            remaining -= chunk;
+        }
+        return chunks;
+    }
+
+    private List<MenuCommand> pushInChunks(byte[] stream, List<Integer> chunks) {
+        var pushConnector = new CapturingConnector(executor);
+        pushConnector.registerPreferredProtocol(new BinaryMenuCommandProtocol());
+        var state = mock(BaseMessageProcessingState.class);
+        pushConnector.changeState(state);
+
+        // a small buffer that is compacted before each read, as the hub does.
+        var buffer = ByteBuffer.allocate(256);
+        buffer.flip();
+        int offset = 0;
+        for(int chunk : chunks) {
+            buffer.compact();
+            buffer.put(stream, offset, chunk);
+            buffer.flip();
+            offset += chunk;
+            pushConnector.processBufferedMessages(buffer);
+        }
+
+        var captor = ArgumentCaptor.forClass(MenuCommand.class);
+        verify(state, atLeast(0)).messageReceived(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private List<MenuCommand> readInChunks(byte[] stream, List<Integer> chunks, int expected) throws IOException {
+        var readConnector = new CapturingConnector(executor);
+        readConnector.registerPreferredProtocol(new BinaryMenuCommandProtocol());
+        int offset = 0;
+        for(int chunk : chunks) {
+            readConnector.chunksToRead.add(Arrays.copyOfRange(stream, offset, offset + chunk));
+            offset += chunk;
+        }
+
+        var received = new ArrayList<MenuCommand>();
+        for(int i = 0; i < expected; i++) {
+            received.add(readConnector.readCommandFromStream());
+        }
+        assertTrue(readConnector.chunksToRead.isEmpty());
+        return received;
+    }
+
+    private List<String> describe(List<MenuCommand> commands) {
+        var descriptions = new ArrayList<String>();
+        for(var cmd : commands) descriptions.add(String.valueOf(cmd));
+        return descriptions;
+    }
+
+    private void runWriter() {
+        var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(captor.capture());
+        captor.getValue().run();
+    }
+
+    private List<MenuCommand> decodeAll(ByteBuffer bb) {
+        var protocol = new TagValMenuCommandProtocol();
+        var commands = new ArrayList<MenuCommand>();
+        bb = bb.duplicate();
+        try {
+            while(bb.hasRemaining()) {
+                assertEquals(START_OF_MSG, bb.get());
+                assertEquals(protocol.getKeyIdentifier(), bb.get());
+                commands.add(protocol.fromChannel(bb));
+            }
+        }
+        catch(IOException e) {
+            fail("Could not decode " + e);
+        }
+        return commands;
+    }
+
+    private static class CapturingConnector extends StreamRemoteConnector {
+        private final List<ByteBuffer> writes = new ArrayList<>();
+        private final Deque<byte[]> chunksToRead = new ArrayDeque<>();
+        private boolean failWrites;
+        private boolean closed;
+
+        CapturingConnector(ScheduledExecutorService executor) {
+            super(new LocalIdentifier(UUID.randomUUID(), "test"), new TagValMenuCommandProtocol(), executor, Clock.systemUTC());
+        }
+
+        @Override
+        protected void sendInternal(ByteBuffer outputBuffer) throws IOException {
+            if(failWrites) throw new IOException("write failed");
+            var copy = ByteBuffer.allocate(outputBuffer.remaining());
+            copy.put(outputBuffer).flip();
+            writes.add(copy);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+
+        @Override
+        protected void getAtLeastBytes(ByteBuffer inputBuffer, int len, ReadMode mode) throws IOException {
+            if(mode == ReadMode.ONLY_WHEN_EMPTY && inputBuffer.remaining() >= len) return;
+            do {
+                var chunk = chunksToRead.poll();
+                if(chunk == null) throw new IOException("No more data");
+                // like a real transport, only read as much as the buffer has room for.
+                inputBuffer.compact();
+                int fits = Math.min(chunk.length, inputBuffer.remaining());
+                inputBuffer.put(chunk, 0, fits);
+                inputBuffer.flip();
+                if(fits < chunk.length) chunksToRead.addFirst(Arrays.copyOfRange(chunk, fits, chunk.length));
+            } while(inputBuffer.remaining() < len);
+        }
+
+        @Override
+        public boolean isDeviceConnected() {
+            return true;
+        }
+
+        @Override
+        public void performConnection() {
+        }
+
+        @Override
+        public String getConnectionName() {
+            return "test";
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoopbackPipeTest {
+    private final LoopbackPipe pipe = new LoopbackPipe(8);
+
+    @Test
+    public void testDataWrapsAroundTheRing() throws IOException {
+        pipe.open();
+        var read = ByteBuffer.allocate(16);
+        for(int i = 0; i < 5; i++) {
+            pipe.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+            read.clear();
+            assertEquals(5, pipe.read(read, 1, TimeUnit.SECONDS));
+            read.flip();
+            assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, bytesOf(read));
+        }
+        assertEquals(0, pipe.available());
+    }
+
+    @Test
+    public void testReadTimesOutWhenEmptyAndEndsOnceClosedAndDrained() throws IOException {
+        pipe.open();
+        var read = ByteBuffer.allocate(16);
+        assertEquals(0, pipe.read(read, 10, TimeUnit.MILLISECONDS));
+
+        pipe.write(ByteBuffer.wrap(new byte[] { 9, 8 }));
+        pipe.close();
+        assertEquals(2, pipe.read(read, 10, TimeUnit.MILLISECONDS));
+        assertEquals(-1, pipe.read(read, 10, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(IOException.class, () -> pipe.write(ByteBuffer.wrap(new byte[] { 1 })));
+    }
+
+    @Test
+    public void testWriterWaitsForTheReaderWhenFull() throws Exception {
+        pipe.open();
+        var data = new byte[100];
+        for(int i = 0; i < data.length; i++) data[i] = (byte) i;
+        var writer = new Thread(() -> {
+            try {
+                pipe.write(ByteBuffer.wrap(data));
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        writer.start();
+
+        var received = ByteBuffer.allocate(100);
+        while(received.hasRemaining()) {
+            pipe.read(received, 1, TimeUnit.SECONDS);
+        }
+        writer.join(1000);
+        received.flip();
+        assertArrayEquals(data, bytesOf(received));
+    }
+
+    private byte[] bytesOf(ByteBuffer bb) {
+        var bytes = new byte[bb.remaining()];
+        bb.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.loopback;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItem;
+import com.thecoderscorner.menu.domain.BooleanMenuItem;
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.AuthStatus;
+import com.thecoderscorner.menu.remote.RemoteControllerListener;
+import com.thecoderscorner.menu.remote.RemoteMenuController;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.newJoinCommand;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.START_OF_MSG;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class LoopbackRemoteConnectorTest {
+    private static final long WAIT_MS = 10000;
+
+    private MenuTree deviceTree;
+    private MenuTree controllerTree;
+    private SimulatedMenuDevice device;
+    private RemoteControllerListener listener;
+    private RemoteMenuController controller;
+    private AnalogMenuItem analog;
+    private BooleanMenuItem bool;
+
+    @Before
+    public void setUp() {
+        deviceTree = new MenuTree();
+        analog = DomainFixtures.anAnalogItem("Analog", 1);
+        var sub = DomainFixtures.aSubMenu("Sub", 2);
+        bool = DomainFixtures.aBooleanMenu("Bool", 3, BooleanMenuItem.BooleanNaming.ON_OFF);
+        deviceTree.addMenuItem(MenuTree.ROOT, analog);
+        deviceTree.addMenuItem(MenuTree.ROOT, sub);
+        deviceTree.addMenuItem(sub, bool);
+        deviceTree.changeItem(analog, analog.newMenuState(25, false, false));
+
+        device = new SimulatedMenuDevice("simulated", deviceTree);
+        controllerTree = new MenuTree();
+        listener = mock(RemoteControllerListener.class);
+        controller = new LoopbackControllerBuilder()
+                .withDevice(device)
+                .withMenuTree(controllerTree)
+                .withLocalName("loopbackTest").withUUID(UUID.randomUUID())
+                .build();
+        controller.addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        controller.stop();
+    }
+
+    @Test
+    public void testSimulatedDeviceBootstrapsAndAppliesChanges() {
+        controller.start();
+        verify(listener, timeout(WAIT_MS)).treeFullyPopulated();
+
+        assertTrue(controller.isTreeFullyPopulated());
+        assertEquals(analog, controllerTree.getMenuById(1).orElseThrow());
+        assertEquals(bool, controllerTree.getMenuItems(controllerTree.getSubMenuById(2).orElseThrow()).get(0));
+        assertEquals(25, controllerTree.getMenuState(analog).getValue().intValue());
+
+        var correlation = controller.sendDeltaUpdate(analog, 5);
+        verify(listener, timeout(WAIT_MS)).ackReceived(eq(correlation), eq(analog), eq(AckStatus.SUCCESS));
+        verify(listener, timeout(WAIT_MS)).menuItemChanged(analog, true);
+        assertEquals(30, controllerTree.getMenuState(analog).getValue().intValue());
+        assertEquals(30, deviceTree.getMenuState(analog).getValue().intValue());
+        assertEquals(1, device.getChangesApplied());
+    }
+
+    @Test
+    public void testChangeThatIsNotANumberIsRejected() {
+        controller.start();
+        verify(listener, timeout(WAIT_MS)).treeFullyPopulated();
+
+        var correlation = controller.sendAbsoluteUpdate(analog, "notANumber");
+        verify(listener, timeout(WAIT_MS)).ackReceived(eq(correlation), eq(analog), eq(AckStatus.VALUE_RANGE_WARNING));
+        assertEquals(25, deviceTree.getMenuState(analog).getValue().intValue());
+        assertEquals(0, device.getChangesApplied());
+    }
+
+    @Test(timeout = WAIT_MS)
+    public void testDeviceDoesNotHoldTheConnectorWhileItsRepliesAreUnread() throws Exception {
+        // nothing reads this pipe, so once it is full the device cannot send any more of its bootstrap.
+        var unread = new LoopbackPipe(16);
+        unread.open();
+        device.connected(unread);
+
+        var protocol = new TagValMenuCommandProtocol();
+        var data = ByteBuffer.allocate(1024);
+        for(var cmd : List.of(newJoinCommand("controller"), newJoinCommand("again"))) {
+            data.put(START_OF_MSG);
+            data.put(protocol.getKeyIdentifier());
+            data.put((byte) cmd.getCommandType().getHigh());
+            data.put((byte) cmd.getCommandType().getLow());
+            protocol.toChannel(data, cmd);
+        }
+        device.dataReceived(data.flip());
+
+        assertFalse(data.hasRemaining());
+        assertEquals(2, device.getMessagesReceived());
+        unread.close();
+        device.disconnected();
+    }
+
+    @Test
+    public void testControllerReconnectsWhenTheDeviceDropsTheConnection() {
+        controller.start();
+        verify(listener, timeout(WAIT_MS)).treeFullyPopulated();
+
+        device.disconnect();
+        verify(listener, timeout(WAIT_MS).atLeast(2)).connectionState(any(), eq(AuthStatus.AWAITING_CONNECTION));
+        verify(listener, timeout(WAIT_MS).times(2)).treeFullyPopulated();
+        assertTrue(controller.isTreeFullyPopulated());
+    }
+}
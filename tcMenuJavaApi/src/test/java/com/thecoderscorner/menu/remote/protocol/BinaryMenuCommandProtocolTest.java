@@ -0,0 +1,208 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import com.thecoderscorner.menu.domain.*;
+import com.thecoderscorner.menu.domain.state.CurrentScrollPosition;
+import com.thecoderscorner.menu.domain.state.PortableColor;
+import com.thecoderscorner.menu.remote.MenuCommandProtocol;
+import com.thecoderscorner.menu.remote.commands.*;
+import com.thecoderscorner.menu.remote.commands.MenuChangeCommand.ChangeType;
+import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand.HeartbeatMode;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.protocol.BinaryMenuCommandProtocol.PROTOCOL_BINARY;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.PROTOCOL_TAG_VAL;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.*;
+
+public class BinaryMenuCommandProtocolTest {
+    private BinaryMenuCommandProtocol protocol = new BinaryMenuCommandProtocol();
+
+    @Test
+    public void testRoundTripOfEveryBootItem() throws IOException {
+        var rgbItem = new Rgb32MenuItemBuilder().withId(20).withName("Color").withEepromAddr(-1).withAlpha(true).menuItem();
+        var scrollItem = new ScrollChoiceMenuItemBuilder().withId(21).withName("Scroll").withEepromAddr(300)
+                .withItemWidth(10).withNumEntries(5).menuItem();
+        var readOnlyAnalog = AnalogMenuItemBuilder.anAnalogMenuItemBuilder()
+                .withExisting(DomainFixtures.anAnalogItem("Volume", 22)).withOffset(-180).withReadOnly(true)
+                .withVisible(false).menuItem();
+
+        List<MenuCommand> commands = List.of(
+                newAnalogBootCommand(321, DomainFixtures.anAnalogItem("Test", 123), 25),
+                newAnalogBootCommand(0, readOnlyAnalog, -20),
+                newMenuSubBootCommand(0, DomainFixtures.aSubMenu("Sub", 2)),
+                new MenuActionBootCommand(2, DomainFixtures.anActionMenu("Action", 3), Boolean.FALSE),
+                newMenuEnumBootCommand(4, DomainFixtures.anEnumItem("Enum", 5), 1),
+                newMenuBooleanBootCommand(4, DomainFixtures.aBooleanMenu("Bool", 6, BooleanMenuItem.BooleanNaming.YES_NO), true),
+                newMenuTextBootCommand(4, DomainFixtures.anIpAddressMenu("Ip", 7), "192.168.0.1"),
+                newRuntimeListBootCommand(4, DomainFixtures.aRuntimeListMenu("List", 8, 2), List.of("abc", "def")),
+                newLargeNumberBootItem(4, DomainFixtures.aLargeNumber("Large", 9, 4, true), new BigDecimal("-12345.6789")),
+                newMenuFloatBootCommand(4, DomainFixtures.aFloatMenu("Float", 10), 12.5F),
+                new MenuRgb32BootCommand(4, rgbItem, new PortableColor(1, 2, 3, 4)),
+                new MenuScrollChoiceBootCommand(4, scrollItem, new CurrentScrollPosition(3, "Line 3"))
+        );
+
+        for(var cmd : commands) {
+            assertEquals(cmd, roundTrip(cmd));
+        }
+    }
+
+    @Test
+    public void testRoundTripOfJoinPairingAndHeartbeat() throws IOException {
+        var uuid = UUID.fromString("07cd8bc6-734d-43da-84e7-6084990becfc");
+        var join = (MenuJoinCommand) roundTrip(new MenuJoinCommand(uuid, "dave", ApiPlatform.ARDUINO, 101,
+                List.of(PROTOCOL_BINARY, PROTOCOL_TAG_VAL)));
+        assertEquals("dave", join.getMyName());
+        assertEquals(uuid, join.getAppUuid());
+        assertEquals(101, join.getApiVersion());
+        assertEquals(ApiPlatform.ARDUINO, join.getPlatform());
+        assertEquals(List.of(PROTOCOL_BINARY, PROTOCOL_TAG_VAL), join.getSupportedProtocols());
+
+        var pairing = newPairingCommand("pairingtest", uuid);
+        assertEquals(pairing, roundTrip(pairing));
+
+        var heartbeat = (MenuHeartbeatCommand) roundTrip(newHeartbeatCommand(1500, HeartbeatMode.END));
+        assertEquals(1500, heartbeat.getHearbeatInterval());
+        assertEquals(HeartbeatMode.END, heartbeat.getMode());
+
+        var bootstrap = new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END);
+        assertEquals(bootstrap, roundTrip(bootstrap));
+    }
+
+    @Test
+    public void testRoundTripOfChangesAcksAndDialogs() throws IOException {
+        var delta = (MenuChangeCommand) roundTrip(newDeltaChangeCommand(new CorrelationId(0x1ffffffffL), 2, Integer.MIN_VALUE));
+        assertEquals(ChangeType.DELTA, delta.getChangeType());
+        assertEquals(new CorrelationId(0x1ffffffffL), delta.getCorrelationId());
+        assertEquals(2, delta.getMenuItemId());
+        assertEquals(Integer.toString(Integer.MIN_VALUE), delta.getValue());
+
+        var absolute = (MenuChangeCommand) roundTrip(newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 1000, "Temp°C"));
+        assertEquals(ChangeType.ABSOLUTE, absolute.getChangeType());
+        assertEquals(CorrelationId.EMPTY_CORRELATION, absolute.getCorrelationId());
+        assertEquals(1000, absolute.getMenuItemId());
+        assertEquals("Temp°C", absolute.getValue());
+
+        var list = (MenuChangeCommand) roundTrip(newAbsoluteListChangeCommand(new CorrelationId("C04239"), 2, List.of("123", "456")));
+        assertEquals(ChangeType.ABSOLUTE_LIST, list.getChangeType());
+        assertEquals(List.of("123", "456"), list.getValues());
+
+        var ack = (MenuAcknowledgementCommand) roundTrip(newAcknowledgementCommand(new CorrelationId("1234567a"), AckStatus.VALUE_RANGE_WARNING));
+        assertEquals(new CorrelationId("1234567a"), ack.getCorrelationId());
+        assertEquals(AckStatus.VALUE_RANGE_WARNING, ack.getAckStatus());
+
+        var dialog = (MenuDialogCommand) roundTrip(newDialogCommand(DialogMode.SHOW, "Hello", null,
+                MenuButtonType.NONE, MenuButtonType.CLOSE, CorrelationId.EMPTY_CORRELATION));
+        assertEquals(DialogMode.SHOW, dialog.getDialogMode());
+        assertEquals("Hello", dialog.getHeader());
+        assertEquals("", dialog.getBuffer());
+        assertEquals(MenuButtonType.NONE, dialog.getButton1());
+        assertEquals(MenuButtonType.CLOSE, dialog.getButton2());
+    }
+
+    @Test
+    public void testBinaryIsMuchSmallerThanTagVal() {
+        var tagVal = new TagValMenuCommandProtocol();
+        List<MenuCommand> commands = List.of(
+                newAnalogBootCommand(321, DomainFixtures.anAnalogItem("Test", 123), 25),
+                newDeltaChangeCommand(new CorrelationId("3f2a1c"), 12, -5)
+        );
+
+        for(var cmd : commands) {
+            int binarySize = encode(protocol, cmd).remaining();
+            int tagValSize = encode(tagVal, cmd).remaining();
+            assertThat(binarySize * 2, lessThan(tagValSize));
+        }
+    }
+
+    @Test
+    public void testLargeBodyUsesLongerLengthPrefix() throws IOException {
+        List<String> entries = new ArrayList<>();
+        for(int i=0; i<20; i++) entries.add("Entry number " + i);
+        var cmd = newMenuEnumBootCommand(4, DomainFixtures.anEnumItem("Enum", 5, entries), 19);
+
+        var bb = encode(protocol, cmd);
+        assertTrue(bb.remaining() > 200);
+        assertTrue(protocol.isCompleteMessage(bb));
+        assertEquals(cmd, protocol.fromChannel(bb));
+        assertFalse(bb.hasRemaining());
+    }
+
+    @Test
+    public void testIsCompleteMessageNeedsTheWholeBody() throws IOException {
+        var full = encode(protocol, newAnalogBootCommand(321, DomainFixtures.anAnalogItem("Test", 123), 25));
+        for(int len = 0; len < full.remaining(); len++) {
+            var partial = full.duplicate().limit(len);
+            assertFalse(protocol.isCompleteMessage(partial));
+            assertEquals(0, partial.position());
+        }
+        assertTrue(protocol.isCompleteMessage(full));
+        assertEquals(0, full.position());
+    }
+
+    @Test
+    public void testUnknownTrailingFieldsAreSkipped() throws IOException {
+        var encoded = encode(protocol, newHeartbeatCommand(1500, HeartbeatMode.START));
+        var bb = ByteBuffer.allocate(100);
+        bb.put(encoded.get()).put(encoded.get());
+        int bodyLength = encoded.get();
+        bb.put((byte) (bodyLength + 3));
+        bb.put(encoded);
+        bb.put(new byte[] { 9, 9, 9 });
+        bb.put((byte) 'X');
+        bb.flip();
+
+        var hb = (MenuHeartbeatCommand) protocol.fromChannel(bb);
+        assertEquals(HeartbeatMode.START, hb.getMode());
+        assertEquals(1, bb.remaining());
+    }
+
+    @Test
+    public void testTruncatedBodyIsProtocolError() {
+        var encoded = encode(protocol, newHeartbeatCommand(1500, HeartbeatMode.START));
+        var bb = ByteBuffer.allocate(100);
+        bb.put(encoded.get()).put(encoded.get());
+        encoded.get();
+        bb.put((byte) 2);
+        bb.put(encoded.get()).put(encoded.get());
+        bb.flip();
+
+        Assertions.assertThrows(TcProtocolException.class, () -> protocol.fromChannel(bb));
+        assertFalse(bb.hasRemaining());
+    }
+
+    @Test(expected = TcProtocolException.class)
+    public void testOversizedLengthIsProtocolError() throws IOException {
+        protocol.isCompleteMessage(ByteBuffer.wrap(new byte[] { 'H', 'B', (byte) 0xff, 0x7f }));
+    }
+
+    private MenuCommand roundTrip(MenuCommand cmd) throws IOException {
+        var bb = encode(protocol, cmd);
+        assertTrue(protocol.isCompleteMessage(bb));
+        var result = protocol.fromChannel(bb);
+        assertFalse(bb.hasRemaining());
+        return result;
+    }
+
+    private ByteBuffer encode(MenuCommandProtocol proto, MenuCommand cmd) {
+        var bb = ByteBuffer.allocate(2048);
+        bb.put((byte) cmd.getCommandType().getHigh());
+        bb.put((byte) cmd.getCommandType().getLow());
+        proto.toChannel(bb, cmd);
+        return bb.flip();
+    }
+}
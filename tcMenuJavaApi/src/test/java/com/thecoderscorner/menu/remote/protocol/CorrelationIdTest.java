@@ -8,8 +8,11 @@ package com.thecoderscorner.menu.remote.protocol;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashSet;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CorrelationIdTest {
     @Test
@@ -23,4 +26,27 @@ class CorrelationIdTest {
 
         assertEquals(id, idCopy);
     }
+
+    @Test
+    void testGeneratorCountsUpAndSkipsTheEmptyCorrelation() {
+        var generator = new CorrelationIdGenerator(-2);
+        assertEquals(0xffffffffL, generator.newCorrelation().getUnderlyingId());
+        assertEquals(1L, generator.newCorrelation().getUnderlyingId());
+        assertEquals(2L, generator.newCorrelation().getUnderlyingId());
+    }
+
+    @Test
+    void testTextIsZeroPaddedHex() {
+        assertEquals("00000000", CorrelationId.EMPTY_CORRELATION.toString());
+        assertEquals("003f2a1c", new CorrelationId("3f2a1c").toString());
+        assertEquals("ffffffff", new CorrelationId(0xffffffffL).toString());
+        assertEquals("123456789a", new CorrelationId(0x123456789aL).toString());
+    }
+
+    @Test
+    void testSequentialIdsHaveWellSpreadHashes() {
+        var buckets = new HashSet<Integer>();
+        for(int i = 0; i < 64; i++) buckets.add(new CorrelationId(i).hashCode() >>> 26);
+        assertTrue(buckets.size() > 32);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TagValFieldTableTest {
+    private TagValFieldTable table = new TagValFieldTable();
+
+    @Test
+    public void testParseSimpleMessage() throws IOException {
+        parse("MT=NJ");
+        assertEquals("NJ", table.getValue("MT"));
+        Assertions.assertThrows(IOException.class, ()-> table.getValue("SL"));
+        Assertions.assertThrows(IOException.class, ()-> table.getValueAsInt("IN"));
+    }
+
+    @Test
+    public void testParseExampleJoin() throws IOException {
+        parse("MT=NJ|CV=ard8_1.0|NM=someone|\u0002");
+        assertEquals("NJ", table.getValue("MT"));
+        assertEquals("ard8_1.0", table.getValue("CV"));
+        assertEquals("someone", table.getValue("NM"));
+        assertEquals(3, table.getFieldCount());
+    }
+
+    @Test(expected = TcProtocolException.class)
+    public void testEmptyKeyThrowsException() throws IOException {
+        parse("MT=NJ|=");
+    }
+
+    @Test
+    public void testIntegersParsedInPlace() throws IOException {
+        parse("AB=123|NG=-180|PO=+42|BD=12a|EM=|MX=2147483647|MN=-2147483648|OV=2147483648|\u0002");
+        assertEquals(123, table.getValueAsInt("AB"));
+        assertEquals(-180, table.getValueAsInt("NG"));
+        assertEquals(42, table.getValueAsInt("PO"));
+        assertEquals(Integer.MAX_VALUE, table.getValueAsInt("MX"));
+        assertEquals(Integer.MIN_VALUE, table.getValueAsInt("MN"));
+        assertEquals(1000, table.getValueAsIntWithDefault("HI", 1000));
+        Assertions.assertThrows(TcProtocolException.class, ()-> table.getValueAsInt("BD"));
+        Assertions.assertThrows(TcProtocolException.class, ()-> table.getValueAsInt("EM"));
+        Assertions.assertThrows(TcProtocolException.class, ()-> table.getValueAsInt("OV"));
+    }
+
+    @Test
+    public void testHexValues() throws IOException {
+        parse("IC=0012abFF|EM=|BD=zz|\u0002");
+        assertEquals(0x12abffL, table.getValueAsHexWithDefault("IC", 0));
+        assertEquals(99, table.getValueAsHexWithDefault("EM", 99));
+        assertEquals(99, table.getValueAsHexWithDefault("NO", 99));
+        Assertions.assertThrows(TcProtocolException.class, ()-> table.getValueAsHexWithDefault("BD", 0));
+    }
+
+    @Test
+    public void testThatPipeCanBeEscaped() throws IOException {
+        parse("MT=HB|DE=ABCDEF\\|GH|AB=123|\u0002");
+        assertEquals("ABCDEF|GH", table.getValue("DE"));
+        assertEquals(123, table.getValueAsIntWithDefault("AB", 42));
+    }
+
+    @Test
+    public void testTableIsReusedBetweenMessages() throws IOException {
+        parse("AB=1|CD=two|\u0002");
+        assertEquals("two", table.getValue("CD"));
+
+        parse("EF=3|\u0002");
+        assertEquals(3, table.getValueAsInt("EF"));
+        assertFalse(table.hasKey("AB"));
+        assertFalse(table.hasKey("CD"));
+        assertEquals(1, table.getFieldCount());
+    }
+
+    @Test
+    public void testManyFieldsAndLongValuesGrowTheTable() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String longValue = "x".repeat(1000);
+        for(int i=0; i<26; i++) {
+            sb.append('C').append((char)('A' + i)).append('=').append(longValue).append(i).append('|');
+            sb.append('c').append((char)('A' + i)).append("=name").append(i).append('|');
+        }
+        sb.append('\u0002');
+        parse(sb.toString());
+
+        assertEquals(52, table.getFieldCount());
+        for(int i=0; i<26; i++) {
+            assertEquals(longValue + i, table.getValueWithDefault(TagValFieldTable.keyOf('C', (char)('A' + i)), ""));
+            assertEquals("name" + i, table.getValueWithDefault(TagValFieldTable.keyOf('c', (char)('A' + i)), ""));
+        }
+    }
+
+    @Test
+    public void testStopsAtEndOfMessage() throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap("AB=1|\u0002CD=2|".getBytes());
+        table.parse(bb);
+        assertEquals(1, table.getFieldCount());
+        assertEquals(5, bb.remaining());
+    }
+
+    private void parse(String s) throws IOException {
+        table.parse(ByteBuffer.wrap(s.getBytes()));
+    }
+}
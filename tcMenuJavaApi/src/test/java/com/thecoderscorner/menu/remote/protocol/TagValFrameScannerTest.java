@@ -0,0 +1,80 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.protocol;
+
+import com.thecoderscorner.menu.remote.commands.CommandFactory;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.END_OF_MSG;
+import static org.junit.Assert.*;
+
+public class TagValFrameScannerTest {
+    private final TagValFrameScanner scanner = new TagValFrameScanner();
+
+    @Test
+    public void testFindsTerminatorFollowedByEndOfMessage() {
+        assertFalse(scanner.isComplete(bufferOf("MTID=1|")));
+        scanner.reset();
+        assertTrue(scanner.isComplete(bufferOf("MTID=1|\u0002")));
+        scanner.reset();
+        assertFalse(scanner.isComplete(bufferOf("MTID=1\u0002")));
+    }
+
+    @Test
+    public void testEscapedBytesNeverEndTheMessage() {
+        assertFalse(scanner.isComplete(bufferOf("MTVC=a\\|\u0002")));
+        scanner.reset();
+        assertFalse(scanner.isComplete(bufferOf("MTVC=a|\\\u0002")));
+        scanner.reset();
+        // an escaped backslash does not escape the terminator that follows it.
+        assertTrue(scanner.isComplete(bufferOf("MTVC=a\\\\|\u0002")));
+    }
+
+    @Test
+    public void testEveryByteIsScannedOnceWhenSplitAtEveryBoundary() {
+        var protocol = new TagValMenuCommandProtocol();
+        var bb = ByteBuffer.allocate(512);
+        protocol.toChannel(bb, CommandFactory.newAbsoluteMenuChangeCommand(CorrelationId.EMPTY_CORRELATION, 1, "a|b=c\\|"));
+        bb.flip();
+        int length = bb.remaining();
+
+        for(int split = 0; split < length; split++) {
+            scanner.reset();
+            var partial = bb.duplicate();
+            partial.limit(split);
+            assertFalse(scanner.isComplete(partial));
+            assertEquals(split, scanner.getScannedLength());
+
+            assertTrue(scanner.isComplete(bb.duplicate()));
+            assertEquals(length, scanner.getScannedLength());
+            assertEquals(END_OF_MSG, bb.get(length - 1));
+        }
+    }
+
+    @Test
+    public void testScanningContinuesAfterTheMessageIsMovedByCompact() {
+        var bb = ByteBuffer.allocate(64);
+        bb.put("xxxxMTID=".getBytes(StandardCharsets.UTF_8));
+        bb.flip();
+        bb.position(4);
+        assertFalse(scanner.isComplete(bb));
+
+        bb.compact();
+        bb.put("1|\u0002".getBytes(StandardCharsets.UTF_8));
+        bb.flip();
+        assertTrue(scanner.isComplete(bb));
+        assertEquals(0, bb.position());
+        assertEquals(bb.limit(), scanner.getScannedLength());
+    }
+
+    private ByteBuffer bufferOf(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
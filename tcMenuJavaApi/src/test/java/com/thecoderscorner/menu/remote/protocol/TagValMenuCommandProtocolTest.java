@@ -373,6 +373,20 @@ public class TagValMenuCommandProtocolTest {
         testBufferAgainstExpected(JOIN, "NM=dave|UU=07cd8bc6-734d-43da-84e7-6084990becfc|VE=101|PF=0|\u0002");
     }
 
+    @Test
+    public void testWritingAndReceivingJoinWithSupportedProtocols() throws IOException {
+        var uuid = UUID.fromString("07cd8bc6-734d-43da-84e7-6084990becfc");
+        protocol.toChannel(bb, new MenuJoinCommand(uuid,"dave", ApiPlatform.ARDUINO, 101,
+                List.of(BinaryMenuCommandProtocol.PROTOCOL_BINARY, TagValMenuCommandProtocol.PROTOCOL_TAG_VAL)));
+        testBufferAgainstExpected(JOIN, "NM=dave|UU=07cd8bc6-734d-43da-84e7-6084990becfc|VE=101|PF=0|SP=2,1|\u0002");
+
+        var join = (MenuJoinCommand) protocol.fromChannel(toBuffer(JOIN, "NM=dave|UU=07cd8bc6-734d-43da-84e7-6084990becfc|VE=101|PF=0|SP=2,1|\u0002"));
+        assertEquals(List.of((byte)2, (byte)1), join.getSupportedProtocols());
+
+        join = (MenuJoinCommand) protocol.fromChannel(toBuffer(JOIN, "NM=dave|UU=07cd8bc6-734d-43da-84e7-6084990becfc|VE=101|PF=0|\u0002"));
+        assertEquals(List.of(TagValMenuCommandProtocol.PROTOCOL_TAG_VAL), join.getSupportedProtocols());
+    }
+
     @Test
     public void testWritingLargeIntegerBoot() {
         protocol.toChannel(bb, new MenuLargeNumBootCommand(10,DomainFixtures.aLargeNumber("largeNum", 111, 4, true), BigDecimal.ONE));
@@ -503,6 +517,25 @@ public class TagValMenuCommandProtocolTest {
         testBufferAgainstExpected(DIALOG_UPDATE, "MO=S|HF=Hello|BU=Buffer|B1=0|B2=4|IC=00000000|\u0002");
     }
 
+    @Test
+    public void testWritingEscapedAndNonAsciiText() throws IOException {
+        protocol.toChannel(bb, new MenuTextBootCommand(22,
+                DomainFixtures.aTextMenu("Temp°C", 1), "a|b=c 😀"));
+        bb.flip();
+        assertEquals("PI=22|ID=1|IE=101|NM=Temp°C|RO=0|VI=1|ML=10|EM=0|VC=a\\|b\\=c 😀|\u0002",
+                TagValMenuCommandProtocol.PROTOCOL_CHARSET.decode(bb.duplicate()).toString());
+
+        var cmd = (MenuTextBootCommand) protocol.fromChannel(toBuffer(TEXT_BOOT_ITEM, bb));
+        assertEquals("Temp°C", cmd.getMenuItem().getName());
+        assertEquals("a|b=c 😀", cmd.getCurrentValue());
+    }
+
+    @Test
+    public void testWritingNegativeAndLargeNumbers() {
+        protocol.toChannel(bb, newDeltaChangeCommand(new CorrelationId(0x1ffffffffL), 2, Integer.MIN_VALUE));
+        testBufferAgainstExpected(CHANGE_INT_FIELD, "IC=1ffffffff|ID=2|TC=0|VC=-2147483648|\u0002");
+    }
+
 
     private void testBufferAgainstExpected(MenuCommandType expectedMsg, String expectedData) {
         bb.flip();
@@ -520,4 +553,12 @@ public class TagValMenuCommandProtocolTest {
                 .put(s.getBytes())
                 .flip();
     }
-}
\ No newline at end of file
+
+    private ByteBuffer toBuffer(MenuCommandType type, ByteBuffer data) {
+        ByteBuffer bb = ByteBuffer.allocate(data.remaining() + 10);
+        return bb.put((byte) type.getHigh())
+                .put((byte) type.getLow())
+                .put(data)
+                .flip();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.remote.socket;
+
+import com.thecoderscorner.menu.domain.DomainFixtures;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.ConnectMode;
+import com.thecoderscorner.menu.remote.LocalIdentifier;
+import com.thecoderscorner.menu.remote.RemoteMenuController;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.START_OF_MSG;
+import static org.junit.Assert.*;
+
+public class SocketConnectorHubTest {
+    private static final int DEVICE_COUNT = 4;
+
+    private ServerSocketChannel server;
+    private SocketConnectorHub hub;
+    private final List<SocketChannel> deviceSides = new ArrayList<>();
+    private final List<RemoteMenuController> controllers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", 0));
+        hub = new SocketConnectorHub(1, 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        controllers.forEach(RemoteMenuController::stop);
+        hub.close();
+        for(var ch : deviceSides) ch.close();
+        server.close();
+    }
+
+    @Test
+    public void testManyDevicesBootstrapThroughOneSelectorThread() throws Exception {
+        int port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+        for(int i=0; i<DEVICE_COUNT; i++) {
+            var controller = new SocketControllerBuilder()
+                    .withAddress("localhost").withPort(port)
+                    .withMenuTree(new MenuTree())
+                    .withLocalName("hubTest").withUUID(UUID.randomUUID())
+                    .withConnectorHub(hub)
+                    .build();
+            controllers.add(controller);
+            controller.start();
+        }
+
+        // each device sends its whole conversation at once, the connector must frame and process it in order.
+        for(int i=0; i<DEVICE_COUNT; i++) {
+            var device = server.accept();
+            deviceSides.add(device);
+            sendToController(device,
+                    newJoinCommand("device" + i),
+                    newAcknowledgementCommand(CorrelationId.EMPTY_CORRELATION, AckStatus.SUCCESS),
+                    new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START),
+                    newAnalogBootCommand(0, DomainFixtures.anAnalogItem("Item", 1), 10 + i),
+                    new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END));
+        }
+
+        long end = System.currentTimeMillis() + 10000;
+        while(!controllers.stream().allMatch(RemoteMenuController::isTreeFullyPopulated) && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(DEVICE_COUNT, hub.getConnectionCount());
+        // connections are accepted in whatever order they complete, so each device is found by its name.
+        var item = DomainFixtures.anAnalogItem("Item", 1);
+        var devicesSeen = new HashSet<String>();
+        for(var controller : controllers) {
+            assertTrue(controller.isTreeFullyPopulated());
+            String name = controller.getConnector().getRemoteParty().getName();
+            int device = Integer.parseInt(name.substring("device".length()));
+            assertEquals(10 + device, (int)controller.getManagedMenu().getMenuState(item).getValue());
+            devicesSeen.add(name);
+        }
+        assertEquals(DEVICE_COUNT, devicesSeen.size());
+    }
+
+    @Test
+    public void testConnectionIsCompletedByTheHub() throws Exception {
+        int port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+        var connector = new SocketBasedConnector(new LocalIdentifier(UUID.randomUUID(), "hubTest"), hub.getExecutor(),
+                Clock.systemUTC(), new TagValMenuCommandProtocol(), "localhost", port, ConnectMode.FULLY_AUTHENTICATED, hub);
+        assertTrue(connector.isConnectionNonBlocking());
+
+        connector.performConnection();
+        deviceSides.add(server.accept());
+        waitForConnection(connector);
+
+        // starting the connection again while connected must not open another channel.
+        connector.performConnection();
+        Thread.sleep(100);
+        assertEquals(1, hub.getConnectionCount());
+    }
+
+    private void waitForConnection(SocketBasedConnector connector) throws InterruptedException {
+        long started = System.currentTimeMillis();
+        while(!connector.isDeviceConnected() && (System.currentTimeMillis() - started) < 5000) {
+            Thread.sleep(10);
+        }
+        assertTrue(connector.isDeviceConnected());
+    }
+
+    @Test
+    public void testSlowDeviceDoesNotHoldTheSendingThread() throws Exception {
+        server.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        int port = ((InetSocketAddress)server.getLocalAddress()).getPort();
+        var connector = new SocketBasedConnector(new LocalIdentifier(UUID.randomUUID(), "hubTest"), hub.getExecutor(),
+                Clock.systemUTC(), new TagValMenuCommandProtocol(), "localhost", port, ConnectMode.FULLY_AUTHENTICATED, hub);
+        connector.performConnection();
+        var device = server.accept();
+        deviceSides.add(device);
+        waitForConnection(connector);
+
+        // the device is not reading, so once the socket buffers are full the rest waits for the selector thread.
+        int chunkSize = 10000;
+        int chunks = 0;
+        long started = System.currentTimeMillis();
+        while(connector.getPendingOutputSize() == 0 && chunks < 1000) {
+            var chunk = ByteBuffer.allocate(chunkSize);
+            while(chunk.hasRemaining()) chunk.put((byte) chunks);
+            connector.sendInternal(chunk.flip());
+            chunks++;
+        }
+        assertTrue(connector.getPendingOutputSize() > 0);
+        assertTrue(System.currentTimeMillis() - started < 5000);
+
+        var received = ByteBuffer.allocate(chunks * chunkSize);
+        long end = System.currentTimeMillis() + 10000;
+        while(received.hasRemaining() && System.currentTimeMillis() < end) {
+            device.read(received);
+        }
+        assertFalse(received.hasRemaining());
+        for(int i=0; i<received.capacity(); i++) {
+            assertEquals((byte)(i / chunkSize), received.get(i));
+        }
+        assertEquals(0, connector.getPendingOutputSize());
+        connector.close();
+    }
+
+    private void sendToController(SocketChannel device, MenuCommand... commands) throws IOException {
+        var protocol = new TagValMenuCommandProtocol();
+        var bb = ByteBuffer.allocate(4096);
+        for(var cmd : commands) {
+            bb.put(START_OF_MSG);
+            bb.put(protocol.getKeyIdentifier());
+            bb.put((byte) cmd.getCommandType().getHigh());
+            bb.put((byte) cmd.getCommandType().getLow());
+            protocol.toChannel(bb, cmd);
+        }
+        bb.flip();
+        while(bb.hasRemaining()) device.write(bb);
+    }
+}
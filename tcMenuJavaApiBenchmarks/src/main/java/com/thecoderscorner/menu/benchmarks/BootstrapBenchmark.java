@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.domain.SubMenuItemBuilder;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.RemoteMenuController;
+import com.thecoderscorner.menu.remote.commands.CommandFactory;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long RemoteMenuController takes to process a complete bootstrap from a device, from the start
+ * message through every boot item to the end message, with a single listener registered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BootstrapBenchmark {
+    private static final int ITEMS_PER_SUB = 20;
+
+    @Param({"100", "1500"})
+    public int itemCount;
+
+    private final List<MenuCommand> bootCommands = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        bootCommands.add(new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START));
+        int subId = 0;
+        for(int id = 1; id <= itemCount; id++) {
+            if(id % ITEMS_PER_SUB == 1) {
+                var sub = SubMenuItemBuilder.aSubMenuItemBuilder().withId(id).withName("Sub" + id).menuItem();
+                bootCommands.add(CommandFactory.newMenuSubBootCommand(subId, sub));
+                subId = id;
+            }
+            else {
+                var item = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(id).withName("Item" + id)
+                        .withMaxValue(100).menuItem();
+                bootCommands.add(CommandFactory.newAnalogBootCommand(subId, item, id % 100));
+            }
+        }
+        bootCommands.add(new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END));
+    }
+
+    @Benchmark
+    public MenuTree bootstrap(Blackhole blackhole) {
+        var connector = new CapturingConnector();
+        var tree = new MenuTree();
+        var controller = new RemoteMenuController(connector, tree);
+        controller.addListener(new ConsumingListener(blackhole));
+        controller.start();
+
+        for(var cmd : bootCommands) {
+            connector.commandListener.onCommand(connector, cmd);
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.remote.*;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+
+/**
+ * A connector that does no IO, it just keeps hold of the listener so the benchmark can feed in commands. The
+ * controller only applies changes once the connection is ready, so benchmarks can set the status to report.
+ */
+class CapturingConnector implements RemoteConnector {
+    RemoteConnectorListener commandListener;
+    AuthStatus authStatus = AuthStatus.BOOTSTRAPPING;
+
+    @Override
+    public void start() { /* nothing to start */ }
+
+    @Override
+    public void stop() { /* nothing to stop */ }
+
+    @Override
+    public void sendMenuCommand(MenuCommand msg) { /* commands are discarded */ }
+
+    @Override
+    public String getConnectionName() {
+        return "Benchmark";
+    }
+
+    @Override
+    public void registerConnectorListener(RemoteConnectorListener listener) {
+        commandListener = listener;
+    }
+
+    @Override
+    public void registerConnectionChangeListener(ConnectionChangeListener listener) { /* not needed */ }
+
+    @Override
+    public void close() { /* nothing to close */ }
+
+    @Override
+    public boolean isDeviceConnected() {
+        return true;
+    }
+
+    @Override
+    public RemoteInformation getRemoteParty() {
+        return RemoteInformation.NOT_CONNECTED;
+    }
+
+    @Override
+    public AuthStatus getAuthenticationStatus() {
+        return authStatus;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.*;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.AuthStatus;
+import com.thecoderscorner.menu.remote.RemoteMenuController;
+import com.thecoderscorner.menu.remote.commands.CommandFactory;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import com.thecoderscorner.menu.remote.commands.MenuChangeCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long RemoteMenuController takes to dispatch a change received from the device, from the command
+ * arriving at the connector listener through updating the tree to notifying a single registered listener. The tree
+ * is fully bootstrapped before measuring, as changes are ignored until then.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeDispatchBenchmark {
+    private static final int ANALOG_ID = 1;
+    private static final int ENUM_ID = 2;
+    private static final int BOOLEAN_ID = 3;
+    private static final int TEXT_ID = 4;
+
+    @Param({"ANALOG", "ENUM", "BOOLEAN", "TEXT"})
+    public String itemType;
+
+    private final CapturingConnector connector = new CapturingConnector();
+    private MenuCommand[] changes;
+    private int nextChange;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        var tree = new MenuTree();
+        var controller = new RemoteMenuController(connector, tree);
+        controller.addListener(new ConsumingListener(blackhole));
+        controller.start();
+
+        var analog = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(ANALOG_ID).withName("Volume")
+                .withMaxValue(255).menuItem();
+        var anEnum = EnumMenuItemBuilder.anEnumMenuItemBuilder().withId(ENUM_ID).withName("Channel")
+                .withEnumList(List.of("Tuner", "CD Player", "Line In", "Aux")).menuItem();
+        var bool = BooleanMenuItemBuilder.aBooleanMenuItemBuilder().withId(BOOLEAN_ID).withName("Mute").menuItem();
+        var text = EditableTextMenuItemBuilder.aTextMenuItemBuilder().withId(TEXT_ID).withName("Station")
+                .withLength(10).menuItem();
+        List<MenuCommand> boot = List.of(
+                new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START),
+                CommandFactory.newAnalogBootCommand(0, analog, 0),
+                CommandFactory.newMenuEnumBootCommand(0, anEnum, 0),
+                CommandFactory.newMenuBooleanBootCommand(0, bool, false),
+                CommandFactory.newMenuTextBootCommand(0, text, ""),
+                new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END)
+        );
+        for(var cmd : boot) {
+            connector.commandListener.onCommand(connector, cmd);
+        }
+        connector.authStatus = AuthStatus.CONNECTION_READY;
+
+        // alternate between two values, so that every change really does change the state in the tree.
+        var correlation = new CorrelationId("3f2a1c");
+        switch (itemType) {
+            case "ENUM":
+                changes = changesFor(correlation, ENUM_ID, "1", "3");
+                break;
+            case "BOOLEAN":
+                changes = changesFor(correlation, BOOLEAN_ID, "0", "1");
+                break;
+            case "TEXT":
+                changes = changesFor(correlation, TEXT_ID, "Radio 1", "Radio 4");
+                break;
+            case "ANALOG":
+            default:
+                changes = changesFor(correlation, ANALOG_ID, "22", "187");
+                break;
+        }
+
+        // make sure the change really reaches the tree, otherwise the benchmark would only measure it being ignored.
+        var item = tree.getMenuById(((MenuChangeCommand) changes[0]).getMenuItemId()).orElseThrow();
+        var stateBefore = tree.getMenuState(item);
+        onChangeField();
+        if(tree.getMenuState(item) == stateBefore) {
+            throw new IllegalStateException("Change was not applied to the tree for " + itemType);
+        }
+    }
+
+    private MenuCommand[] changesFor(CorrelationId correlation, int id, String first, String second) {
+        return new MenuCommand[] {
+                CommandFactory.newAbsoluteMenuChangeCommand(correlation, id, first),
+                CommandFactory.newAbsoluteMenuChangeCommand(correlation, id, second)
+        };
+    }
+
+    @Benchmark
+    public void onChangeField() {
+        nextChange = (nextChange + 1) & 1;
+        connector.commandListener.onCommand(connector, changes[nextChange]);
+    }
+}
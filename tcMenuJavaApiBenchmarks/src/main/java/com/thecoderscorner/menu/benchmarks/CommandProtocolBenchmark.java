@@ -0,0 +1,149 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.*;
+import com.thecoderscorner.menu.domain.state.CurrentScrollPosition;
+import com.thecoderscorner.menu.domain.state.PortableColor;
+import com.thecoderscorner.menu.remote.MenuCommandProtocol;
+import com.thecoderscorner.menu.remote.commands.*;
+import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand.HeartbeatMode;
+import com.thecoderscorner.menu.remote.protocol.ApiPlatform;
+import com.thecoderscorner.menu.remote.protocol.BinaryMenuCommandProtocol;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.thecoderscorner.menu.remote.protocol.BinaryMenuCommandProtocol.PROTOCOL_BINARY;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.PROTOCOL_TAG_VAL;
+
+/**
+ * Measures encoding and decoding a typical message of every command type with both protocols, so that a change
+ * to any one message's reader or writer shows up against its own baseline. REMOTE_BOOT_ITEM is not included as
+ * neither protocol can send it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandProtocolBenchmark {
+    @Param({"TAG_VAL", "BINARY"})
+    public String protocolType;
+
+    @Param({"JOIN", "PAIRING_REQUEST", "HEARTBEAT", "BOOTSTRAP", "ANALOG_BOOT_ITEM", "ACTION_BOOT_ITEM",
+            "SUBMENU_BOOT_ITEM", "ENUM_BOOT_ITEM", "BOOLEAN_BOOT_ITEM", "TEXT_BOOT_ITEM", "RUNTIME_LIST_BOOT",
+            "BOOT_SCROLL_CHOICE", "BOOT_RGB_COLOR", "LARGE_NUM_BOOT_ITEM", "FLOAT_BOOT_ITEM", "ACKNOWLEDGEMENT",
+            "CHANGE_INT_FIELD", "DIALOG_UPDATE"})
+    public String commandType;
+
+    private final ByteBuffer outBuffer = ByteBuffer.allocate(2048);
+    private MenuCommandProtocol protocol;
+    private MenuCommand command;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        protocol = protocolType.equals("BINARY") ? new BinaryMenuCommandProtocol() : new TagValMenuCommandProtocol();
+        command = commandFor(MenuCommandType.valueOf(commandType));
+
+        encoded = ByteBuffer.allocate(2048);
+        encoded.put((byte) command.getCommandType().getHigh());
+        encoded.put((byte) command.getCommandType().getLow());
+        protocol.toChannel(encoded, command);
+        encoded.flip();
+
+        // make sure the message survives the round trip, otherwise the decode figures would mean nothing.
+        var decoded = protocol.fromChannel(encoded.duplicate());
+        if(decoded.getCommandType() != command.getCommandType()) {
+            throw new IllegalStateException("Round trip failed for " + commandType + " got " + decoded);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer toChannel() {
+        outBuffer.clear();
+        protocol.toChannel(outBuffer, command);
+        return outBuffer;
+    }
+
+    @Benchmark
+    public MenuCommand fromChannel() throws IOException {
+        encoded.rewind();
+        return protocol.fromChannel(encoded);
+    }
+
+    private static MenuCommand commandFor(MenuCommandType type) {
+        var correlation = new CorrelationId("3f2a1c");
+        var uuid = UUID.fromString("07cd8bc6-734d-43da-84e7-6084990becfc");
+        switch (type) {
+            case JOIN:
+                return new MenuJoinCommand(uuid, "Benchmark", ApiPlatform.JAVA_API, 101,
+                        List.of(PROTOCOL_TAG_VAL, PROTOCOL_BINARY));
+            case PAIRING_REQUEST:
+                return CommandFactory.newPairingCommand("Benchmark", uuid);
+            case HEARTBEAT:
+                return CommandFactory.newHeartbeatCommand(10000, HeartbeatMode.NORMAL);
+            case BOOTSTRAP:
+                return CommandFactory.newBootstrapCommand(MenuBootstrapCommand.BootType.START);
+            case ANALOG_BOOT_ITEM:
+                return CommandFactory.newAnalogBootCommand(321, AnalogMenuItemBuilder.anAnalogMenuItemBuilder()
+                        .withId(1).withName("Volume").withUnit("dB").withOffset(-180).withDivisor(2)
+                        .withMaxValue(255).withEepromAddr(64).menuItem(), 22);
+            case ACTION_BOOT_ITEM:
+                return CommandFactory.newMenuActionBootCommand(0, ActionMenuItemBuilder.anActionMenuItemBuilder()
+                        .withId(2).withName("Save settings").menuItem());
+            case SUBMENU_BOOT_ITEM:
+                return CommandFactory.newMenuSubBootCommand(0, SubMenuItemBuilder.aSubMenuItemBuilder()
+                        .withId(3).withName("Settings").menuItem());
+            case ENUM_BOOT_ITEM:
+                return CommandFactory.newMenuEnumBootCommand(0, EnumMenuItemBuilder.anEnumMenuItemBuilder()
+                        .withId(4).withName("Channel").withEepromAddr(10)
+                        .withEnumList(List.of("Tuner", "CD Player", "Line In", "Aux")).menuItem(), 2);
+            case BOOLEAN_BOOT_ITEM:
+                return CommandFactory.newMenuBooleanBootCommand(0, BooleanMenuItemBuilder.aBooleanMenuItemBuilder()
+                        .withId(5).withName("Mute").withNaming(BooleanMenuItem.BooleanNaming.ON_OFF).menuItem(), true);
+            case TEXT_BOOT_ITEM:
+                return CommandFactory.newMenuTextBootCommand(0, EditableTextMenuItemBuilder.aTextMenuItemBuilder()
+                        .withId(6).withName("Station").withLength(10).menuItem(), "Radio 4");
+            case RUNTIME_LIST_BOOT:
+                return CommandFactory.newRuntimeListBootCommand(0, RuntimeListMenuItemBuilder.aRuntimeListMenuItemBuilder()
+                        .withId(7).withName("Presets").withInitialRows(3).menuItem(), List.of("Jazz", "Rock", "Classical"));
+            case BOOT_SCROLL_CHOICE:
+                return new MenuScrollChoiceBootCommand(0, new ScrollChoiceMenuItemBuilder().withId(8)
+                        .withName("Scroll").withEepromAddr(300).withItemWidth(10).withNumEntries(5).menuItem(),
+                        new CurrentScrollPosition(3, "Line 3"));
+            case BOOT_RGB_COLOR:
+                return new MenuRgb32BootCommand(0, new Rgb32MenuItemBuilder().withId(9).withName("Color")
+                        .withAlpha(true).menuItem(), new PortableColor(1, 2, 3, 4));
+            case LARGE_NUM_BOOT_ITEM:
+                return CommandFactory.newLargeNumberBootItem(0, EditableLargeNumberMenuItemBuilder.aLargeNumberItemBuilder()
+                        .withId(10).withName("Frequency").withTotalDigits(8).withDecimalPlaces(4)
+                        .withNegativeAllowed(true).menuItem(), new BigDecimal("-1234.5678"));
+            case FLOAT_BOOT_ITEM:
+                return CommandFactory.newMenuFloatBootCommand(0, FloatMenuItemBuilder.aFloatMenuItemBuilder()
+                        .withId(11).withName("Temperature").withDecimalPlaces(2).menuItem(), 12.5F);
+            case ACKNOWLEDGEMENT:
+                return CommandFactory.newAcknowledgementCommand(correlation, AckStatus.SUCCESS);
+            case CHANGE_INT_FIELD:
+                return CommandFactory.newDeltaChangeCommand(correlation, 12, -5);
+            case DIALOG_UPDATE:
+                return CommandFactory.newDialogCommand(DialogMode.SHOW, "Warning", "Battery is low",
+                        MenuButtonType.OK, MenuButtonType.CANCEL, correlation);
+            default:
+                throw new IllegalArgumentException("No benchmark message for " + type);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two sets of benchmark results that were saved in JMH's CSV format (-rf csv -rff file.csv), usually one
+ * from the last release and one from the current build. Each benchmark is matched up by name, mode and parameters,
+ * and the change in score is printed. Any benchmark that got worse by more than the threshold is reported as a
+ * regression and the program exits with status 1, so it can be used to fail a build.
+ *
+ * Arguments are the baseline file, the current file and optionally the threshold percentage, which defaults to 10.
+ */
+public class CompareResults {
+    private static final double DEFAULT_THRESHOLD = 10.0;
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.out.println("Usage: CompareResults baseline.csv current.csv [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        var baseline = readResults(Path.of(args[0]));
+        var current = readResults(Path.of(args[1]));
+
+        int regressions = 0;
+        for(var entry : current.entrySet()) {
+            var now = entry.getValue();
+            var before = baseline.get(entry.getKey());
+            if(before == null) {
+                System.out.printf("NEW        %-90s %12.3f %s%n", entry.getKey(), now.score, now.unit);
+                continue;
+            }
+            // for throughput a higher score is better, for all the time based modes a lower score is better.
+            double change = (now.score - before.score) / before.score * 100.0;
+            double worseBy = now.higherIsBetter() ? -change : change;
+            boolean regressed = worseBy > threshold;
+            if(regressed) regressions++;
+            System.out.printf("%-10s %-90s %12.3f -> %12.3f %s (%+.1f%%)%n", regressed ? "REGRESSED" : "OK",
+                    entry.getKey(), before.score, now.score, now.unit, change);
+        }
+
+        for(var key : baseline.keySet()) {
+            if(!current.containsKey(key)) System.out.printf("MISSING    %s%n", key);
+        }
+
+        System.out.printf("%d benchmarks compared, %d regressed by more than %.1f%%%n",
+                current.size(), regressions, threshold);
+        if(regressions > 0) System.exit(1);
+    }
+
+    private static Map<String, Result> readResults(Path file) throws IOException {
+        var lines = Files.readAllLines(file);
+        if(lines.isEmpty()) throw new IOException("No results in " + file);
+
+        var header = splitCsv(lines.get(0));
+        int benchIdx = header.indexOf("Benchmark");
+        int modeIdx = header.indexOf("Mode");
+        int scoreIdx = header.indexOf("Score");
+        int unitIdx = header.indexOf("Unit");
+        if(benchIdx < 0 || modeIdx < 0 || scoreIdx < 0 || unitIdx < 0) {
+            throw new IOException(file + " is not a JMH CSV result file");
+        }
+
+        var results = new LinkedHashMap<String, Result>();
+        for(var line : lines.subList(1, lines.size())) {
+            if(line.isBlank()) continue;
+            var fields = splitCsv(line);
+            var key = new StringBuilder(fields.get(benchIdx)).append(' ').append(fields.get(modeIdx));
+            for(int i = 0; i < header.size(); i++) {
+                if(header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            double score = Double.parseDouble(fields.get(scoreIdx).replace(',', '.'));
+            results.put(key.toString(), new Result(fields.get(modeIdx), score, fields.get(unitIdx)));
+        }
+        return results;
+    }
+
+    private static List<String> splitCsv(String line) {
+        var fields = new ArrayList<String>();
+        var current = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if(ch == '"') {
+                if(quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                }
+                else quoted = !quoted;
+            }
+            else if(ch == ',' && !quoted) {
+                fields.add(current.toString());
+                current.setLength(0);
+            }
+            else current.append(ch);
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static class Result {
+        private final String mode;
+        private final double score;
+        private final String unit;
+
+        Result(String mode, double score, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.remote.AuthStatus;
+import com.thecoderscorner.menu.remote.RemoteControllerListener;
+import com.thecoderscorner.menu.remote.RemoteInformation;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.DialogMode;
+import com.thecoderscorner.menu.remote.commands.MenuButtonType;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A listener that passes everything it receives to the black hole, as a UI would do some work per event.
+ */
+class ConsumingListener implements RemoteControllerListener {
+    private final Blackhole blackhole;
+
+    ConsumingListener(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void menuItemChanged(MenuItem item, boolean valueOnly) {
+        blackhole.consume(item);
+    }
+
+    @Override
+    public void treeFullyPopulated() {
+        blackhole.consume(true);
+    }
+
+    @Override
+    public void connectionState(RemoteInformation remoteInformation, AuthStatus connected) {
+        blackhole.consume(connected);
+    }
+
+    @Override
+    public void ackReceived(CorrelationId key, MenuItem item, AckStatus status) {
+        blackhole.consume(status);
+    }
+
+    @Override
+    public void dialogUpdate(DialogMode mode, String header, String buffer, MenuButtonType btn1, MenuButtonType btn2) {
+        blackhole.consume(mode);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.remote.AcknowledgementTracker;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.CorrelationIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating correlation ids, which happens for every change sent to a device, along with converting them
+ * to and from the hex text used on the wire. The contended case creates ids from several threads at once, as
+ * happens when many controllers share the same JVM, whereas each controller normally has its own generator. The
+ * round trip through the acknowledgement tracker is what every change sent costs once it is acknowledged.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationIdBenchmark {
+    private final CorrelationId existing = new CorrelationId("3f2a1c");
+    private String asHex = "3f2a1c";
+    private final CorrelationIdGenerator generator = new CorrelationIdGenerator();
+    private final AcknowledgementTracker tracker = new AcknowledgementTracker(Duration.ofSeconds(10));
+    private final MenuItem item = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(1).withName("Volume")
+            .withMaxValue(255).menuItem();
+
+    @Benchmark
+    public CorrelationId newCorrelation() {
+        return new CorrelationId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CorrelationId newCorrelationContended() {
+        return new CorrelationId();
+    }
+
+    @Benchmark
+    public CorrelationId newCorrelationFromGenerator() {
+        return generator.newCorrelation();
+    }
+
+    @Benchmark
+    public MenuItem trackAndAcknowledge() {
+        // the controller checks for timeouts on every send, which also drops acknowledged entries from the wheel.
+        tracker.expire();
+        var correlation = generator.newCorrelation();
+        tracker.track(correlation, item);
+        return tracker.acknowledged(correlation);
+    }
+
+    @Benchmark
+    public CorrelationId fromText() {
+        return new CorrelationId(asHex);
+    }
+
+    @Benchmark
+    public String asText() {
+        return existing.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.EnumMenuItemBuilder;
+import com.thecoderscorner.menu.remote.commands.CommandFactory;
+import com.thecoderscorner.menu.remote.protocol.TagValFrameScanner;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.END_OF_MSG;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.FIELD_TERMINATOR;
+
+/**
+ * Measures the cost of finding the end of a large tag value message that arrives in small pieces, as happens on a
+ * slow serial link. The original check rescanned the whole message after every piece, the frame scanner carries on
+ * from where it stopped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameScanBenchmark {
+    @Param({"1", "16", "128"})
+    public int chunkSize;
+
+    private final TagValFrameScanner scanner = new TagValFrameScanner();
+    private ByteBuffer message;
+
+    @Setup
+    public void setUp() {
+        List<String> choices = new ArrayList<>();
+        for(int i = 0; i < 40; i++) choices.add("Choice number " + i);
+        var item = EnumMenuItemBuilder.anEnumMenuItemBuilder().withId(1).withName("Large enum")
+                .withEnumList(choices).menuItem();
+
+        message = ByteBuffer.allocate(2048);
+        new TagValMenuCommandProtocol().toChannel(message, CommandFactory.newMenuEnumBootCommand(0, item, 0));
+        message.flip();
+    }
+
+    @Benchmark
+    public boolean rescanFromStart() {
+        var buffer = message.duplicate();
+        boolean complete = false;
+        for(int limit = chunkSize; !complete; limit += chunkSize) {
+            buffer.limit(Math.min(limit, message.limit()));
+            complete = false;
+            for(int i = buffer.position(); i < buffer.limit() - 1 && !complete; i++) {
+                complete = buffer.get(i) == FIELD_TERMINATOR && buffer.get(i + 1) == END_OF_MSG;
+            }
+        }
+        return complete;
+    }
+
+    @Benchmark
+    public boolean frameScanner() {
+        var buffer = message.duplicate();
+        scanner.reset();
+        boolean complete = false;
+        for(int limit = chunkSize; !complete; limit += chunkSize) {
+            buffer.limit(Math.min(limit, message.limit()));
+            complete = scanner.isComplete(buffer);
+        }
+        return complete;
+    }
+}
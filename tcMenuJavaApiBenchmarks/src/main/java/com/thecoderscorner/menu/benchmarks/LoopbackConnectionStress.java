@@ -0,0 +1,182 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.ConnectorExecutors;
+import com.thecoderscorner.menu.remote.RemoteMenuController;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.MenuBootstrapCommand;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import com.thecoderscorner.menu.remote.socket.SocketConnectorHub;
+import com.thecoderscorner.menu.remote.socket.SocketControllerBuilder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.thecoderscorner.menu.remote.commands.CommandFactory.*;
+import static com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol.START_OF_MSG;
+
+/**
+ * Not a JMH benchmark, this opens many socket connections over loopback, each to a simulated device that sends a
+ * join, an acknowledgement and a small bootstrap. Once every connection is ready it reports how long that took, the
+ * number of live threads and the heap in use, so that the cost per connection can be compared between modes:
+ *
+ * <ul>
+ *     <li>platform - each connection has its own executor of platform threads, the default for the builders.</li>
+ *     <li>virtual - each connection is built with virtual threads, so they share the process wide executor that
+ *     runs each read loop on a virtual thread (Java 21+).</li>
+ *     <li>hub - all connections are read by a SocketConnectorHub with a few selector threads.</li>
+ * </ul>
+ *
+ * Run each mode in its own JVM, for example:
+ * <pre>
+ *     java -cp target/benchmarks.jar com.thecoderscorner.menu.benchmarks.LoopbackConnectionStress virtual 1000
+ * </pre>
+ */
+public class LoopbackConnectionStress {
+    private static final long READY_TIMEOUT_MS = 120000;
+    private static final long SETTLE_TIME_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.out.println("Usage: LoopbackConnectionStress platform|virtual|hub [connections]");
+            return;
+        }
+        String mode = args[0];
+        int connections = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+
+        System.out.println("Mode " + mode + ", connections " + connections
+                + ", virtual threads available " + ConnectorExecutors.isVirtualThreadAvailable());
+
+        var executors = new ArrayList<ScheduledExecutorService>();
+        var controllers = new ArrayList<RemoteMenuController>();
+        var devices = new ArrayList<SocketChannel>();
+        SocketConnectorHub hub = null;
+        boolean virtual = mode.equals("virtual");
+        if(mode.equals("hub")) {
+            hub = new SocketConnectorHub(2, 4);
+        }
+        else if(!virtual && !mode.equals("platform")) {
+            throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeapAfterGc();
+
+        try(var server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0), connections);
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+            long start = System.currentTimeMillis();
+            for(int i=0; i<connections; i++) {
+                var builder = new SocketControllerBuilder()
+                        .withAddress("localhost").withPort(port)
+                        .withMenuTree(new MenuTree())
+                        .withLocalName("stress").withUUID(UUID.randomUUID());
+                if(hub != null) {
+                    builder.withConnectorHub(hub);
+                }
+                else if(virtual) {
+                    builder.withVirtualThreads(true);
+                }
+                else {
+                    var executor = ConnectorExecutors.newPlatformExecutor("stress-platform");
+                    executors.add(executor);
+                    builder.withExecutor(executor);
+                }
+                var controller = builder.build();
+                controllers.add(controller);
+                controller.start();
+            }
+
+            var deviceMessages = deviceConversation();
+            for(int i=0; i<connections; i++) {
+                var device = server.accept();
+                devices.add(device);
+                var bb = deviceMessages.duplicate();
+                while(bb.hasRemaining()) device.write(bb);
+            }
+
+            long end = start + READY_TIMEOUT_MS;
+            while(countReady(controllers) < connections && System.currentTimeMillis() < end) {
+                Thread.sleep(50);
+            }
+            long taken = System.currentTimeMillis() - start;
+            System.out.println("Ready " + countReady(controllers) + "/" + connections + " in " + taken + "ms");
+            report("at ready", threadsBefore, heapBefore, connections);
+
+            // let threads used only for connecting and bootstrapping time out, leaving the steady state
+            Thread.sleep(SETTLE_TIME_MS);
+            report("settled", threadsBefore, heapBefore, connections);
+        }
+        finally {
+            controllers.forEach(RemoteMenuController::stop);
+            for(var device : devices) device.close();
+            executors.forEach(ScheduledExecutorService::shutdownNow);
+            if(hub != null) hub.close();
+        }
+    }
+
+    private static void report(String when, int threadsBefore, long heapBefore, int connections) {
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        long heap = usedHeapAfterGc() - heapBefore;
+        System.out.println(String.format("%-9s extra live threads %d (%.2f per connection), extra heap %dKB (%dKB per connection)",
+                when, threads, (double)threads / connections, heap / 1024, heap / 1024 / connections));
+    }
+
+    private static int countReady(List<RemoteMenuController> controllers) {
+        int ready = 0;
+        for(var controller : controllers) {
+            if(controller.isTreeFullyPopulated()) ready++;
+        }
+        return ready;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The messages that each simulated device sends as soon as it is connected, they are sent in one burst.
+     */
+    private static ByteBuffer deviceConversation() throws IOException {
+        var protocol = new TagValMenuCommandProtocol();
+        var item = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(1).withName("Item").withMaxValue(100).menuItem();
+        List<MenuCommand> commands = List.of(
+                newJoinCommand("device"),
+                newAcknowledgementCommand(CorrelationId.EMPTY_CORRELATION, AckStatus.SUCCESS),
+                new MenuBootstrapCommand(MenuBootstrapCommand.BootType.START),
+                newAnalogBootCommand(0, item, 10),
+                new MenuBootstrapCommand(MenuBootstrapCommand.BootType.END)
+        );
+
+        var bb = ByteBuffer.allocate(4096);
+        for(var cmd : commands) {
+            bb.put(START_OF_MSG);
+            bb.put(protocol.getKeyIdentifier());
+            bb.put((byte) cmd.getCommandType().getHigh());
+            bb.put((byte) cmd.getCommandType().getLow());
+            protocol.toChannel(bb, cmd);
+        }
+        bb.flip();
+        return bb.asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.SubMenuItem;
+import com.thecoderscorner.menu.domain.SubMenuItemBuilder;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the id based lookups on MenuTree as the tree grows, along with updating an item in place and reading
+ * every item. With the id indexes in place the time taken per lookup should stay flat between the small and large
+ * trees. Building a whole tree item by item, outside of a batch, should take time in proportion to its size, the
+ * same as building it in a batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuTreeBenchmark {
+    private static final int ITEMS_PER_SUB = 20;
+
+    @Param({"100", "1000", "10000"})
+    public int treeSize;
+
+    private MenuTree tree;
+    private MenuItem[] items;
+    private int[] parentIds;
+    private MenuItem lastItem;
+    private int lastSubId;
+    private int lastParentId;
+
+    @Setup
+    public void setUp() {
+        items = new MenuItem[treeSize];
+        parentIds = new int[treeSize];
+        SubMenuItem sub = MenuTree.ROOT;
+        for(int id = 1; id <= treeSize; id++) {
+            parentIds[id - 1] = sub.getId();
+            if(id % ITEMS_PER_SUB == 1) {
+                var newSub = SubMenuItemBuilder.aSubMenuItemBuilder().withId(id).withName("Sub" + id).menuItem();
+                items[id - 1] = newSub;
+                sub = newSub;
+                lastSubId = id;
+            }
+            else {
+                lastItem = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(id).withName("Item" + id)
+                        .withMaxValue(100).menuItem();
+                items[id - 1] = lastItem;
+                lastParentId = sub.getId();
+            }
+        }
+        tree = buildTreeItemByItem();
+    }
+
+    @Benchmark
+    public SubMenuItem findParent() {
+        return tree.findParent(lastItem);
+    }
+
+    @Benchmark
+    public Optional<MenuItem> getMenuById() {
+        return tree.getMenuById(lastItem.getId());
+    }
+
+    @Benchmark
+    public Optional<SubMenuItem> getSubMenuById() {
+        return tree.getSubMenuById(lastSubId);
+    }
+
+    @Benchmark
+    public MenuTree addOrUpdateItem() {
+        tree.addOrUpdateItem(lastParentId, lastItem);
+        return tree;
+    }
+
+    @Benchmark
+    public Collection<MenuItem> getAllMenuItems() {
+        return tree.getAllMenuItems();
+    }
+
+    @Benchmark
+    public MenuTree buildTreeItemByItem() {
+        var built = new MenuTree();
+        for(int i = 0; i < items.length; i++) {
+            built.addOrUpdateItem(parentIds[i], items[i]);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public MenuTree buildTreeInBatch() {
+        var built = new MenuTree();
+        built.updateInBatch(() -> {
+            for(int i = 0; i < items.length; i++) {
+                built.addOrUpdateItem(parentIds[i], items[i]);
+            }
+        });
+        return built;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItem;
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.domain.MenuItem;
+import com.thecoderscorner.menu.domain.state.MenuTree;
+import com.thecoderscorner.menu.remote.*;
+import com.thecoderscorner.menu.remote.commands.AckStatus;
+import com.thecoderscorner.menu.remote.commands.DialogMode;
+import com.thecoderscorner.menu.remote.commands.MenuButtonType;
+import com.thecoderscorner.menu.remote.loopback.LoopbackControllerBuilder;
+import com.thecoderscorner.menu.remote.loopback.SimulatedMenuDevice;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Not a JMH benchmark, this connects many controllers to simulated devices within the same JVM, using the loopback
+ * connector, so no network or hardware is involved and results are repeatable. Once every controller is ready, each
+ * sends a change to its device in a number of rounds, and the time from sending each change to receiving its
+ * acknowledgement is recorded. It reports the time to connect, the change throughput and the latency percentiles.
+ * <pre>
+ *     java -cp target/benchmarks.jar com.thecoderscorner.menu.benchmarks.SimulatedDeviceLoad 1000 20
+ * </pre>
+ */
+public class SimulatedDeviceLoad {
+    private static final long READY_TIMEOUT_MS = 120000;
+    private static final long ROUND_TIMEOUT_MS = 30000;
+    private static final int ITEMS_PER_DEVICE = 20;
+
+    public static void main(String[] args) throws Exception {
+        int devices = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        System.out.println("Devices " + devices + ", rounds " + rounds
+                + ", virtual threads available " + ConnectorExecutors.isVirtualThreadAvailable());
+
+        var executor = ConnectorExecutors.newVirtualThreadExecutor("simulated-load");
+        var controllers = new ArrayList<RemoteMenuController>();
+        var ackedAt = new ConcurrentHashMap<CorrelationId, Long>();
+        var latencies = new long[devices * rounds];
+        int latencyCount = 0;
+        var roundLatch = new AtomicReference<CountDownLatch>();
+        var readyLatch = new CountDownLatch(devices);
+
+        try {
+            long start = System.currentTimeMillis();
+            for(int i = 0; i < devices; i++) {
+                var controller = new LoopbackControllerBuilder()
+                        .withDevice(new SimulatedMenuDevice("device" + i, deviceTree()))
+                        .withMenuTree(new MenuTree())
+                        .withExecutor(executor)
+                        .withLocalName("load").withUUID(UUID.randomUUID())
+                        .build();
+                controller.addListener(new LoadListener(readyLatch, ackedAt, roundLatch));
+                controllers.add(controller);
+                controller.start();
+            }
+
+            if(!readyLatch.await(READY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.out.println("Only " + (devices - readyLatch.getCount()) + " devices became ready");
+                return;
+            }
+            System.out.println("All devices ready in " + (System.currentTimeMillis() - start) + "ms");
+
+            long changesStart = System.nanoTime();
+            for(int round = 0; round < rounds; round++) {
+                var latch = new CountDownLatch(devices);
+                roundLatch.set(latch);
+                var sentAt = new HashMap<CorrelationId, Long>();
+                for(var controller : controllers) {
+                    MenuItem item = controller.getManagedMenu().getMenuById(1 + (round % ITEMS_PER_DEVICE)).orElseThrow();
+                    long sent = System.nanoTime();
+                    sentAt.put(controller.sendAbsoluteUpdate(item, round), sent);
+                }
+                if(!latch.await(ROUND_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    System.out.println("Round " + round + " timed out, " + latch.getCount() + " acks missing");
+                }
+                for(var entry : sentAt.entrySet()) {
+                    Long acked = ackedAt.remove(entry.getKey());
+                    if(acked != null) latencies[latencyCount++] = acked - entry.getValue();
+                }
+            }
+            long changesTaken = System.nanoTime() - changesStart;
+
+            int count = latencyCount;
+            var sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            System.out.println(String.format("%d changes acknowledged in %dms, %.0f changes/s", count,
+                    TimeUnit.NANOSECONDS.toMillis(changesTaken), count / (changesTaken / 1e9)));
+            System.out.println(String.format("Ack latency us: p50 %d, p90 %d, p99 %d, max %d",
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    percentile(sorted, 100)));
+        }
+        finally {
+            controllers.forEach(RemoteMenuController::stop);
+            executor.shutdownNow();
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if(sorted.length == 0) return 0;
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+
+    private static MenuTree deviceTree() {
+        var tree = new MenuTree();
+        for(int i = 1; i <= ITEMS_PER_DEVICE; i++) {
+            AnalogMenuItem item = AnalogMenuItemBuilder.anAnalogMenuItemBuilder().withId(i).withName("Item " + i)
+                    .withMaxValue(1000).menuItem();
+            tree.addMenuItem(MenuTree.ROOT, item);
+        }
+        return tree;
+    }
+
+    private static class LoadListener implements RemoteControllerListener {
+        private final CountDownLatch readyLatch;
+        private final Map<CorrelationId, Long> ackedAt;
+        private final AtomicReference<CountDownLatch> roundLatch;
+        private boolean ready;
+
+        LoadListener(CountDownLatch readyLatch, Map<CorrelationId, Long> ackedAt,
+                     AtomicReference<CountDownLatch> roundLatch) {
+            this.readyLatch = readyLatch;
+            this.ackedAt = ackedAt;
+            this.roundLatch = roundLatch;
+        }
+
+        @Override
+        public void treeFullyPopulated() {
+            if(!ready) {
+                ready = true;
+                readyLatch.countDown();
+            }
+        }
+
+        @Override
+        public void ackReceived(CorrelationId key, MenuItem item, AckStatus status) {
+            if(status != AckStatus.SUCCESS || key.equals(CorrelationId.EMPTY_CORRELATION)) return;
+            ackedAt.put(key, System.nanoTime());
+            var latch = roundLatch.get();
+            if(latch != null) latch.countDown();
+        }
+
+        @Override
+        public void menuItemChanged(MenuItem item, boolean valueOnly) {
+        }
+
+        @Override
+        public void connectionState(RemoteInformation remoteInformation, AuthStatus connected) {
+        }
+
+        @Override
+        public void dialogUpdate(DialogMode mode, String header, String buffer, MenuButtonType btn1, MenuButtonType btn2) {
+        }
+    }
+}
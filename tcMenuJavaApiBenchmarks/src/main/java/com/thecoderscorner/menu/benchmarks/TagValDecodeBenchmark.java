@@ -0,0 +1,87 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.protocol.TagValFieldTable;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import com.thecoderscorner.menu.remote.protocol.TagValTextParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original map based TagValTextParser with the reusable TagValFieldTable used by the protocol for
+ * decoding inbound messages. Run with the GC profiler (-prof gc) to see the allocation rate of each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagValDecodeBenchmark {
+    private static final String CHANGE_MSG = "IC=3f2a1c|ID=12|TC=0|VC=-5|\u0002";
+    private static final String ANALOG_BOOT_MSG = "PI=321|ID=1|IE=64|NM=Volume|RO=0|VI=1|AO=-180|AD=2|AM=255|AU=dB|VC=22|\u0002";
+    private static final String ENUM_BOOT_MSG = "PI=0|ID=7|IE=10|NM=Channel|RO=0|VI=1|VC=2|NC=4|CA=Tuner|CB=CD Player|CC=Line In|CD=Aux|\u0002";
+
+    @Param({"CHANGE", "ANALOG_BOOT", "ENUM_BOOT"})
+    public String message;
+
+    private final TagValMenuCommandProtocol protocol = new TagValMenuCommandProtocol();
+    private final TagValFieldTable fieldTable = new TagValFieldTable();
+    private ByteBuffer fieldsOnly;
+    private ByteBuffer withMsgType;
+
+    @Setup
+    public void setUp() {
+        String fields;
+        String msgType;
+        switch (message) {
+            case "ANALOG_BOOT":
+                fields = ANALOG_BOOT_MSG;
+                msgType = "BA";
+                break;
+            case "ENUM_BOOT":
+                fields = ENUM_BOOT_MSG;
+                msgType = "BE";
+                break;
+            case "CHANGE":
+            default:
+                fields = CHANGE_MSG;
+                msgType = "VC";
+                break;
+        }
+        fieldsOnly = ByteBuffer.wrap(fields.getBytes());
+        withMsgType = ByteBuffer.wrap((msgType + fields).getBytes());
+    }
+
+    @Benchmark
+    public void textParser(Blackhole bh) throws IOException {
+        fieldsOnly.rewind();
+        TagValTextParser parser = new TagValTextParser(fieldsOnly);
+        bh.consume(parser.getValueAsInt("ID"));
+        bh.consume(parser.getValueAsInt("VC"));
+    }
+
+    @Benchmark
+    public void fieldTable(Blackhole bh) throws IOException {
+        fieldsOnly.rewind();
+        fieldTable.parse(fieldsOnly);
+        bh.consume(fieldTable.getValueAsInt("ID"));
+        bh.consume(fieldTable.getValueAsInt("VC"));
+    }
+
+    @Benchmark
+    public MenuCommand protocolFromChannel() throws IOException {
+        withMsgType.rewind();
+        return protocol.fromChannel(withMsgType);
+    }
+}
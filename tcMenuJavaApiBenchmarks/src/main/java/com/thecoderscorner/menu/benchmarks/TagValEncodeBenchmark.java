@@ -0,0 +1,62 @@
+/*
+ * Copyright (c)  2016-2019 https://www.thecoderscorner.com (Nutricherry LTD).
+ * This product is licensed under an Apache license, see the LICENSE file in the top-level directory.
+ *
+ */
+
+package com.thecoderscorner.menu.benchmarks;
+
+import com.thecoderscorner.menu.domain.AnalogMenuItemBuilder;
+import com.thecoderscorner.menu.remote.commands.CommandFactory;
+import com.thecoderscorner.menu.remote.commands.MenuCommand;
+import com.thecoderscorner.menu.remote.commands.MenuHeartbeatCommand;
+import com.thecoderscorner.menu.remote.protocol.CorrelationId;
+import com.thecoderscorner.menu.remote.protocol.TagValMenuCommandProtocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of encoding the most frequently sent messages with TagValMenuCommandProtocol.toChannel.
+ * Run with the GC profiler (-prof gc) to check that the encoder does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagValEncodeBenchmark {
+    @Param({"HEARTBEAT", "DELTA_CHANGE", "ANALOG_BOOT"})
+    public String message;
+
+    private final TagValMenuCommandProtocol protocol = new TagValMenuCommandProtocol();
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private MenuCommand command;
+
+    @Setup
+    public void setUp() {
+        switch (message) {
+            case "DELTA_CHANGE":
+                command = CommandFactory.newDeltaChangeCommand(new CorrelationId("3f2a1c"), 12, -5);
+                break;
+            case "ANALOG_BOOT":
+                command = CommandFactory.newAnalogBootCommand(321, AnalogMenuItemBuilder.anAnalogMenuItemBuilder()
+                        .withId(1).withName("Volume").withUnit("dB").withOffset(-180).withDivisor(2)
+                        .withMaxValue(255).withEepromAddr(64).menuItem(), 22);
+                break;
+            case "HEARTBEAT":
+            default:
+                command = CommandFactory.newHeartbeatCommand(10000, MenuHeartbeatCommand.HeartbeatMode.NORMAL);
+                break;
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer protocolToChannel() {
+        buffer.clear();
+        protocol.toChannel(buffer, command);
+        return buffer;
+    }
+}